@@ -23,32 +23,53 @@
 package no.nordicsemi.android.blinky;
 
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.LinearLayout;
 import android.widget.TextView;
+import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.FileProvider;
 import androidx.lifecycle.ViewModelProvider;
 
 import com.google.android.material.appbar.MaterialToolbar;
+import com.google.android.material.snackbar.Snackbar;
 import com.google.android.material.switchmaterial.SwitchMaterial;
 
+import java.io.File;
+
 import butterknife.BindView;
 import butterknife.ButterKnife;
 import butterknife.OnClick;
 import no.nordicsemi.android.ble.livedata.state.ConnectionState;
+import no.nordicsemi.android.blinky.adapter.DeviceHandles;
 import no.nordicsemi.android.blinky.adapter.DiscoveredBluetoothDevice;
+import no.nordicsemi.android.blinky.stream.SessionExporter;
 import no.nordicsemi.android.blinky.viewmodels.BlinkyViewModel;
+import no.nordicsemi.android.blinky.widget.VoltageChartView;
 
 @SuppressWarnings("ConstantConditions")
 public class BlinkyActivity extends AppCompatActivity {
+	/** The device, as Parcelable. Used if the handle is not given. */
 	public static final String EXTRA_DEVICE = "no.nordicsemi.android.blinky.EXTRA_DEVICE";
+	/** The device handle from {@link DeviceHandles}. */
+	public static final String EXTRA_DEVICE_HANDLE = "no.nordicsemi.android.blinky.EXTRA_DEVICE_HANDLE";
+	/** The device name, used when the handle can't be resolved after the process was restarted. */
+	public static final String EXTRA_DEVICE_NAME = "no.nordicsemi.android.blinky.EXTRA_DEVICE_NAME";
 
 	private BlinkyViewModel viewModel;
+	private Snackbar exportSnackbar;
 
 	@BindView(R.id.led_switch) SwitchMaterial led;
 	@BindView(R.id.button_state) TextView buttonState;
+	@BindView(R.id.sample_rate) TextView sampleRate;
+	@BindView(R.id.voltage_chart) VoltageChartView voltageChart;
+	@BindView(R.id.record_switch) SwitchMaterial record;
 
 	@Override
 	protected void onCreate(final Bundle savedInstanceState) {
@@ -56,8 +77,7 @@ public class BlinkyActivity extends AppCompatActivity {
 		setContentView(R.layout.activity_blinky);
 		ButterKnife.bind(this);
 
-		final Intent intent = getIntent();
-		final DiscoveredBluetoothDevice device = intent.getParcelableExtra(EXTRA_DEVICE);
+		final DiscoveredBluetoothDevice device = getDevice(getIntent());
 		final String deviceName = device.getName();
 		final String deviceAddress = device.getAddress();
 
@@ -70,6 +90,7 @@ public class BlinkyActivity extends AppCompatActivity {
 		// Configure the view model.
 		viewModel = new ViewModelProvider(this).get(BlinkyViewModel.class);
 		viewModel.connect(device);
+		voltageChart.setDecimator(viewModel.getChartDecimator());
 
 		// Set up views.
 		final TextView ledState = findViewById(R.id.led_state);
@@ -79,6 +100,8 @@ public class BlinkyActivity extends AppCompatActivity {
 		final View notSupported = findViewById(R.id.not_supported);
 
 		led.setOnCheckedChangeListener((buttonView, isChecked) -> viewModel.setLedState(isChecked));
+		record.setOnCheckedChangeListener((buttonView, isChecked) -> viewModel.setRecording(isChecked));
+		viewModel.isRecording().observe(this, record::setChecked);
 		viewModel.getConnectionState().observe(this, state -> {
 			switch (state.getState()) {
 				case CONNECTING:
@@ -118,6 +141,50 @@ public class BlinkyActivity extends AppCompatActivity {
 					//buttonState.setText(pressed ? R.string.button_pressed : R.string.button_released);
 				});
 		//pressed -> buttonState.setText(pressed ? R.string.button_pressed : R.string.button_released));
+		viewModel.getSampleRate().observe(this, rate -> {
+			if (rate != null)
+				sampleRate.setText(getString(R.string.sample_rate, rate));
+			else
+				sampleRate.setText(R.string.voltage_unknown);
+		});
+		viewModel.getExportProgress().observe(this, this::onExportProgress);
+		viewModel.getExportedFile().observe(this, this::share);
+	}
+
+	@Override
+	public boolean onCreateOptionsMenu(final Menu menu) {
+		getMenuInflater().inflate(R.menu.blinky, menu);
+		return true;
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(final MenuItem item) {
+		switch (item.getItemId()) {
+			case R.id.export_csv:
+				export(SessionExporter.Format.CSV);
+				return true;
+			case R.id.export_binary:
+				export(SessionExporter.Format.BINARY);
+				return true;
+		}
+		return super.onOptionsItemSelected(item);
+	}
+
+	/**
+	 * Returns the device from the registry, or recreates it from the intent extras if
+	 * the process has been restarted since the device was selected.
+	 */
+	@NonNull
+	private static DiscoveredBluetoothDevice getDevice(@NonNull final Intent intent) {
+		if (intent.hasExtra(EXTRA_DEVICE_HANDLE)) {
+			final long handle = intent.getLongExtra(EXTRA_DEVICE_HANDLE, 0);
+			final DiscoveredBluetoothDevice device = DeviceHandles.resolve(handle);
+			if (device != null)
+				return device;
+			return DiscoveredBluetoothDevice.create(DeviceHandles.getId(handle),
+					intent.getStringExtra(EXTRA_DEVICE_NAME));
+		}
+		return intent.getParcelableExtra(EXTRA_DEVICE);
 	}
 
 	@OnClick(R.id.action_clear_cache)
@@ -125,6 +192,39 @@ public class BlinkyActivity extends AppCompatActivity {
 		viewModel.reconnect();
 	}
 
+	private void export(@NonNull final SessionExporter.Format format) {
+		if (!viewModel.exportLastRecording(format))
+			Toast.makeText(this, R.string.export_no_recording, Toast.LENGTH_SHORT).show();
+	}
+
+	private void onExportProgress(final Integer percent) {
+		if (percent == null) {
+			if (exportSnackbar != null) {
+				exportSnackbar.dismiss();
+				exportSnackbar = null;
+			}
+			return;
+		}
+		if (exportSnackbar == null) {
+			exportSnackbar = Snackbar.make(findViewById(android.R.id.content), "", Snackbar.LENGTH_INDEFINITE)
+					.setAction(android.R.string.cancel, v -> viewModel.cancelExport());
+			exportSnackbar.show();
+		}
+		exportSnackbar.setText(getString(R.string.export_progress, percent));
+	}
+
+	/**
+	 * Shares the exported file with other apps, through the file provider.
+	 */
+	private void share(@NonNull final File file) {
+		final Uri uri = FileProvider.getUriForFile(this, getPackageName() + ".fileprovider", file);
+		final Intent intent = new Intent(Intent.ACTION_SEND)
+				.setType(file.getName().endsWith(".csv") ? "text/csv" : "application/octet-stream")
+				.putExtra(Intent.EXTRA_STREAM, uri)
+				.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+		startActivity(Intent.createChooser(intent, getString(R.string.export_share)));
+	}
+
 	private void onConnectionStateChanged(final boolean connected) {
 		led.setEnabled(connected);
 		if (!connected) {
@@ -3,9 +3,13 @@ package no.nordicsemi.android.blinky;
 import android.app.Application;
 import android.os.Build;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatDelegate;
 
+import no.nordicsemi.android.blinky.profile.BlinkyConnectionManager;
+
 public class BlinkyApplication extends Application {
+    private BlinkyConnectionManager connectionManager;
 
     @Override
     public void onCreate() {
@@ -15,4 +19,16 @@ public class BlinkyApplication extends Application {
             AppCompatDelegate.setCompatVectorFromResourcesEnabled(true);
         }
     }
+
+    /**
+     * Returns the connection manager shared by all screens, so that connections to multiple
+     * devices are scheduled together.
+     */
+    @NonNull
+    public BlinkyConnectionManager getConnectionManager() {
+        if (connectionManager == null) {
+            connectionManager = new BlinkyConnectionManager(this);
+        }
+        return connectionManager;
+    }
 }
@@ -28,14 +28,19 @@ import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.Settings;
+import android.text.TextUtils;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
+import android.widget.EditText;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
 import androidx.core.app.ActivityCompat;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.DividerItemDecoration;
@@ -45,19 +50,29 @@ import androidx.recyclerview.widget.SimpleItemAnimator;
 
 import com.google.android.material.appbar.MaterialToolbar;
 
+import java.io.File;
+import java.io.IOException;
+
 import butterknife.BindView;
 import butterknife.ButterKnife;
 import butterknife.OnClick;
 import no.nordicsemi.android.blinky.adapter.DevicesAdapter;
+import no.nordicsemi.android.blinky.adapter.DeviceHandles;
 import no.nordicsemi.android.blinky.adapter.DiscoveredBluetoothDevice;
+import no.nordicsemi.android.blinky.scanner.ScanStatistics;
 import no.nordicsemi.android.blinky.utils.Utils;
-import no.nordicsemi.android.blinky.viewmodels.ScannerStateLiveData;
+import no.nordicsemi.android.blinky.viewmodels.RssiSmoothing;
+import no.nordicsemi.android.blinky.viewmodels.ScannerState;
 import no.nordicsemi.android.blinky.viewmodels.ScannerViewModel;
+import no.nordicsemi.android.blinky.viewmodels.SortOrder;
 
 public class ScannerActivity extends AppCompatActivity implements DevicesAdapter.OnItemClickListener {
     private static final int REQUEST_ACCESS_FINE_LOCATION = 1022; // random number
 
     private ScannerViewModel scannerViewModel;
+    /** The last state shown, used to skip updating views that have not changed. */
+    private ScannerState lastState;
+    private boolean lastPermissionGranted;
 
     @BindView(R.id.state_scanning) View scanningView;
     @BindView(R.id.no_devices) View emptyView;
@@ -109,8 +124,36 @@ public class ScannerActivity extends AppCompatActivity implements DevicesAdapter
     @Override
     public boolean onCreateOptionsMenu(final Menu menu) {
         getMenuInflater().inflate(R.menu.filter, menu);
+        setUpSearchView(menu.findItem(R.id.search));
         menu.findItem(R.id.filter_uuid).setChecked(scannerViewModel.isUuidFilterEnabled());
         menu.findItem(R.id.filter_nearby).setChecked(scannerViewModel.isNearbyFilterEnabled());
+        switch (scannerViewModel.getSortOrder()) {
+            case RSSI:
+                menu.findItem(R.id.sort_rssi).setChecked(true);
+                break;
+            case NAME:
+                menu.findItem(R.id.sort_name).setChecked(true);
+                break;
+            case LAST_SEEN:
+                menu.findItem(R.id.sort_last_seen).setChecked(true);
+                break;
+            default:
+                menu.findItem(R.id.sort_discovery).setChecked(true);
+                break;
+        }
+        menu.findItem(R.id.record_scan).setChecked(scannerViewModel.isRecording());
+        menu.findItem(R.id.replay_scan).setChecked(scannerViewModel.isReplaying());
+        switch (scannerViewModel.getRssiSmoothing()) {
+            case EMA:
+                menu.findItem(R.id.smoothing_ema).setChecked(true);
+                break;
+            case MEDIAN:
+                menu.findItem(R.id.smoothing_median).setChecked(true);
+                break;
+            default:
+                menu.findItem(R.id.smoothing_kalman).setChecked(true);
+                break;
+        }
         return true;
     }
 
@@ -125,14 +168,57 @@ public class ScannerActivity extends AppCompatActivity implements DevicesAdapter
                 item.setChecked(!item.isChecked());
                 scannerViewModel.filterByDistance(item.isChecked());
                 return true;
+            case R.id.filter_custom:
+                showFilterExpressionDialog();
+                return true;
+            case R.id.sort_discovery:
+                item.setChecked(true);
+                scannerViewModel.setSortOrder(SortOrder.DISCOVERY);
+                return true;
+            case R.id.sort_rssi:
+                item.setChecked(true);
+                scannerViewModel.setSortOrder(SortOrder.RSSI);
+                return true;
+            case R.id.sort_name:
+                item.setChecked(true);
+                scannerViewModel.setSortOrder(SortOrder.NAME);
+                return true;
+            case R.id.sort_last_seen:
+                item.setChecked(true);
+                scannerViewModel.setSortOrder(SortOrder.LAST_SEEN);
+                return true;
+            case R.id.smoothing_kalman:
+                item.setChecked(true);
+                scannerViewModel.setRssiSmoothing(RssiSmoothing.KALMAN);
+                return true;
+            case R.id.smoothing_ema:
+                item.setChecked(true);
+                scannerViewModel.setRssiSmoothing(RssiSmoothing.EMA);
+                return true;
+            case R.id.smoothing_median:
+                item.setChecked(true);
+                scannerViewModel.setRssiSmoothing(RssiSmoothing.MEDIAN);
+                return true;
+            case R.id.scan_statistics:
+                showScanStatisticsDialog();
+                return true;
+            case R.id.record_scan:
+                item.setChecked(toggleScanRecording());
+                return true;
+            case R.id.replay_scan:
+                item.setChecked(toggleScanReplay());
+                return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
     @Override
     public void onItemClick(@NonNull final DiscoveredBluetoothDevice device) {
+        scannerViewModel.onDeviceSelected(device);
+        // Only a handle and the name are passed, the device itself stays in this process.
         final Intent controlBlinkIntent = new Intent(this, BlinkyActivity.class);
-        controlBlinkIntent.putExtra(BlinkyActivity.EXTRA_DEVICE, device);
+        controlBlinkIntent.putExtra(BlinkyActivity.EXTRA_DEVICE_HANDLE, DeviceHandles.register(device));
+        controlBlinkIntent.putExtra(BlinkyActivity.EXTRA_DEVICE_NAME, device.getName());
         startActivity(controlBlinkIntent);
     }
 
@@ -177,10 +263,23 @@ public class ScannerActivity extends AppCompatActivity implements DevicesAdapter
     /**
      * Start scanning for Bluetooth devices or displays a message based on the scanner state.
      */
-    private void startScan(final ScannerStateLiveData state) {
+    private void startScan(final ScannerState state) {
         // First, check the Location permission. This is required on Marshmallow onwards in order
         // to scan for Bluetooth LE devices.
-        if (Utils.isLocationPermissionsGranted(this)) {
+        final boolean permissionGranted = Utils.isLocationPermissionsGranted(this);
+
+        // While scanning, usually only the records flag changes. Then only the empty view
+        // needs to be updated.
+        if (permissionGranted && lastPermissionGranted && state.isBluetoothEnabled()
+                && state.differsOnlyInRecords(lastState)) {
+            lastState = state;
+            updateEmptyView(state);
+            return;
+        }
+        lastState = state;
+        lastPermissionGranted = permissionGranted;
+
+        if (permissionGranted) {
             noLocationPermissionView.setVisibility(View.GONE);
 
             // Bluetooth must be enabled.
@@ -190,18 +289,7 @@ public class ScannerActivity extends AppCompatActivity implements DevicesAdapter
                 // We are now OK to start scanning.
                 scannerViewModel.startScan();
                 scanningView.setVisibility(View.VISIBLE);
-
-                if (!state.hasRecords()) {
-                    emptyView.setVisibility(View.VISIBLE);
-
-                    if (!Utils.isLocationRequired(this) || Utils.isLocationEnabled(this)) {
-                        noLocationView.setVisibility(View.INVISIBLE);
-                    } else {
-                        noLocationView.setVisibility(View.VISIBLE);
-                    }
-                } else {
-                    emptyView.setVisibility(View.GONE);
-                }
+                updateEmptyView(state);
             } else {
                 noBluetoothView.setVisibility(View.VISIBLE);
                 scanningView.setVisibility(View.INVISIBLE);
@@ -220,6 +308,144 @@ public class ScannerActivity extends AppCompatActivity implements DevicesAdapter
         }
     }
 
+    /**
+     * Shows the empty view if no devices have been found.
+     */
+    private void updateEmptyView(final ScannerState state) {
+        if (!state.hasRecords()) {
+            emptyView.setVisibility(View.VISIBLE);
+
+            if (!Utils.isLocationRequired(this) || Utils.isLocationEnabled(this)) {
+                noLocationView.setVisibility(View.INVISIBLE);
+            } else {
+                noLocationView.setVisibility(View.VISIBLE);
+            }
+        } else {
+            emptyView.setVisibility(View.GONE);
+        }
+    }
+
+    /**
+     * Sets up the search action. The list is filtered as the query is typed, and collapsing
+     * the action clears the query.
+     */
+    private void setUpSearchView(@NonNull final MenuItem item) {
+        final SearchView searchView = (SearchView) item.getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+
+        // Restore the query after the activity has been recreated.
+        final String query = scannerViewModel.getSearchQuery();
+        if (!TextUtils.isEmpty(query)) {
+            item.expandActionView();
+            searchView.setQuery(query, false);
+        }
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(final String query) {
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(final String newText) {
+                scannerViewModel.search(newText);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Shows a dialog for editing the custom filter expression. An invalid expression is
+     * reported and the filter is left unchanged.
+     */
+    private void showFilterExpressionDialog() {
+        final EditText input = new EditText(this);
+        input.setSingleLine();
+        input.setHint(R.string.filter_custom_hint);
+        input.setText(scannerViewModel.getFilterExpression());
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.menu_filter_custom)
+                .setView(input)
+                .setPositiveButton(android.R.string.ok, (dialog, which) -> {
+                    try {
+                        scannerViewModel.setFilterExpression(input.getText().toString());
+                    } catch (final IllegalArgumentException e) {
+                        Toast.makeText(this, getString(R.string.filter_custom_invalid, e.getMessage()),
+                                Toast.LENGTH_LONG).show();
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    /**
+     * Shows the number of scan callbacks and results of the current scan, and the number
+     * of callbacks avoided by batching.
+     */
+    private void showScanStatisticsDialog() {
+        final ScanStatistics statistics = scannerViewModel.getScanStatistics();
+        final String offload = getString(scannerViewModel.isHardwareOffloadEnabled()
+                ? R.string.scan_statistics_offload_on : R.string.scan_statistics_offload_off);
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.menu_scan_statistics)
+                .setMessage(getString(R.string.scan_statistics, statistics.getCallbackCount(),
+                        statistics.getResultCount(), statistics.getAvoidedCallbackCount(), offload))
+                .setPositiveButton(android.R.string.ok, null)
+                .show();
+    }
+
+    /**
+     * Starts or stops recording scan results to the recording file, overwriting the
+     * previous recording.
+     *
+     * @return True, if recording.
+     */
+    private boolean toggleScanRecording() {
+        if (scannerViewModel.isRecording()) {
+            scannerViewModel.stopRecording();
+            return false;
+        }
+        // The replay reads the same file.
+        if (scannerViewModel.isReplaying()) {
+            Toast.makeText(this, R.string.record_scan_replaying, Toast.LENGTH_SHORT).show();
+            return false;
+        }
+        try {
+            scannerViewModel.startRecording(scannerViewModel.getScanRecordingFile());
+            return true;
+        } catch (final IOException e) {
+            Toast.makeText(this, getString(R.string.record_scan_failed, e.getMessage()),
+                    Toast.LENGTH_LONG).show();
+            return false;
+        }
+    }
+
+    /**
+     * Switches between scanning and replaying the recorded scan in real time. The replay
+     * starts over when it ends, until it's switched off.
+     *
+     * @return True, if replaying.
+     */
+    private boolean toggleScanReplay() {
+        if (scannerViewModel.isReplaying()) {
+            scannerViewModel.setReplaySource(null, 1);
+            clear();
+            return false;
+        }
+        if (scannerViewModel.isRecording()) {
+            Toast.makeText(this, R.string.replay_scan_recording, Toast.LENGTH_SHORT).show();
+            return false;
+        }
+        final File file = scannerViewModel.getScanRecordingFile();
+        if (!file.isFile()) {
+            Toast.makeText(this, R.string.replay_scan_no_recording, Toast.LENGTH_SHORT).show();
+            return false;
+        }
+        scannerViewModel.setReplaySource(file, 1);
+        clear();
+        return true;
+    }
+
     /**
      * stop scanning for bluetooth devices.
      */
@@ -228,10 +454,10 @@ public class ScannerActivity extends AppCompatActivity implements DevicesAdapter
     }
 
     /**
-     * Clears the list of devices, which will notify the observer.
+     * Clears the list of devices, which will notify the observer. Recently seen devices
+     * are shown again until the scanner finds them.
      */
     private void clear() {
-        scannerViewModel.getDevices().clear();
-        scannerViewModel.getScannerState().clearRecords();
+        scannerViewModel.clearDevices();
     }
 }
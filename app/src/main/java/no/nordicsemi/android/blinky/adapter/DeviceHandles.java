@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.adapter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import no.nordicsemi.android.blinky.utils.LongHashMap;
+
+/**
+ * An in-process registry of devices passed between activities. Instead of parceling the device,
+ * the intent carries a handle: the packed device address in the lower 48 bits and a generation
+ * number in the upper 16 bits, so that a stale handle never resolves to another device.
+ * <p>
+ * Only the most recently registered devices are kept. The registry is lost with the process,
+ * so the receiving activity must be able to recreate the device from the handle.
+ */
+public final class DeviceHandles {
+	private static final int MAX_DEVICES = 8;
+	private static final long ID_MASK = 0xFFFFFFFFFFFFL;
+
+	private static final LongHashMap<DiscoveredBluetoothDevice> devices = new LongHashMap<>();
+	/** Registered handles, in a ring, so that the oldest one is removed when full. */
+	private static final long[] handles = new long[MAX_DEVICES];
+	private static int next;
+	private static int generation;
+
+	private DeviceHandles() {
+		// empty
+	}
+
+	/**
+	 * Registers the device and returns its handle.
+	 *
+	 * @param device the device.
+	 * @return The handle.
+	 */
+	public static synchronized long register(@NonNull final DiscoveredBluetoothDevice device) {
+		generation = (generation + 1) & 0xFFFF;
+		final long handle = ((long) generation << 48) | device.getId();
+
+		devices.remove(handles[next]);
+		handles[next] = handle;
+		next = (next + 1) % MAX_DEVICES;
+		devices.put(handle, device);
+		return handle;
+	}
+
+	/**
+	 * Returns the device registered with the given handle.
+	 *
+	 * @param handle the handle returned by {@link #register(DiscoveredBluetoothDevice)}.
+	 * @return The device, or null if the handle is no longer registered, for example
+	 * after the process has been restarted.
+	 */
+	@Nullable
+	public static synchronized DiscoveredBluetoothDevice resolve(final long handle) {
+		return devices.get(handle);
+	}
+
+	/**
+	 * Returns the packed address of the device from the handle.
+	 *
+	 * @param handle the handle.
+	 * @return The packed device address.
+	 */
+	public static long getId(final long handle) {
+		return handle & ID_MASK;
+	}
+}
@@ -0,0 +1,523 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.adapter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import no.nordicsemi.android.blinky.filter.AdvertisingMatcher;
+import no.nordicsemi.android.blinky.scanner.RssiHistory;
+import no.nordicsemi.android.blinky.scanner.RssiSmoother;
+import no.nordicsemi.android.blinky.utils.MacAddress;
+import no.nordicsemi.android.support.v18.scanner.ScanRecord;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+/**
+ * Stores discovered devices in parallel primitive arrays, one slot per device, instead of
+ * keeping the last {@link ScanResult} of each device with its parsed {@link ScanRecord}.
+ * <p>
+ * Each slot holds the packed address, RSSI values, the time the device was last seen, flags,
+ * the index of the interned device name, the raw advertising data and the RSSI history.
+ * {@link DiscoveredBluetoothDevice} is a view over one slot. When a device is removed, its
+ * values are copied to the view, so views held by the UI stay valid, and the slot is reused.
+ * <p>
+ * All methods are synchronized on the table.
+ */
+@SuppressWarnings("unused")
+public class DeviceTable {
+	/** Legacy advertising data and scan response, 31 bytes each. */
+	private static final int RECORD_SIZE = 62;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int NO_NAME = -1;
+
+	// AD types of the device name.
+	private static final int TYPE_SHORTENED_LOCAL_NAME = 0x08;
+	private static final int TYPE_COMPLETE_LOCAL_NAME = 0x09;
+
+	/** The slot is in use. */
+	private static final int FLAG_IN_USE = 1;
+	/** The last advertising packet was connectable. */
+	private static final int FLAG_CONNECTABLE = 1 << 1;
+	/** The last scan result contained advertising data. */
+	private static final int FLAG_HAS_RECORD = 1 << 2;
+	/** The device was restored from the recent device cache and has not been scanned since. */
+	private static final int FLAG_RECENT = 1 << 3;
+
+	private long[] ids;
+	private byte[] rssi;
+	private byte[] smoothedRssi;
+	private long[] lastSeen;
+	private long[] timestampNanos;
+	private int[] flags;
+	private int[] nameIndexes;
+	private byte[] records;
+	private byte[] recordLengths;
+	/** Records longer than {@link #RECORD_SIZE}, from extended advertising. Allocated when needed. */
+	@Nullable
+	private byte[][] longRecords;
+	private byte[] rssiSamples;
+	private byte[] rssiMeta;
+	private float[] rssiState;
+	private DiscoveredBluetoothDevice[] views;
+
+	/** A cursor over the RSSI history of a slot. */
+	private final RssiHistory rssiHistory = new RssiHistory();
+
+	private int[] freeSlots;
+	private int freeCount;
+	/** Number of slots ever used. Slots above are free, but not on the free list. */
+	private int highWaterMark;
+	private int size;
+
+	// Interned device names, with reference counts so that names of removed devices are freed.
+	@NonNull
+	private final List<String> names = new ArrayList<>();
+	@NonNull
+	private final Map<String, Integer> nameIndexByName = new HashMap<>();
+	private int[] nameRefs = new int[16];
+	@NonNull
+	private final List<Integer> freeNames = new ArrayList<>();
+
+	public DeviceTable(final int initialCapacity) {
+		allocate(Math.max(initialCapacity, 16));
+	}
+
+	/**
+	 * Returns the number of devices in the table.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a new device to the table.
+	 *
+	 * @param result   the first scan result from the device.
+	 * @param smoother the smoother used to calculate the smoothed RSSI value.
+	 * @return The view over the new slot.
+	 */
+	@NonNull
+	public synchronized DiscoveredBluetoothDevice add(@NonNull final ScanResult result,
+													  @NonNull final RssiSmoother smoother) {
+		final int slot;
+		if (freeCount > 0) {
+			slot = freeSlots[--freeCount];
+		} else {
+			if (highWaterMark == ids.length)
+				allocate(ids.length * 2);
+			slot = highWaterMark++;
+		}
+		size++;
+		ids[slot] = MacAddress.pack(result.getDevice().getAddress());
+		flags[slot] = FLAG_IN_USE;
+		nameIndexes[slot] = NO_NAME;
+		recordLengths[slot] = 0;
+		lastSeen[slot] = 0;
+		rssiHistory.wrap(rssiSamples, rssiMeta, rssiState, slot).clear();
+
+		final DiscoveredBluetoothDevice view = new DiscoveredBluetoothDevice(this, slot, ids[slot]);
+		views[slot] = view;
+		update(slot, result, smoother);
+		return view;
+	}
+
+	/**
+	 * Adds a device restored from the recent device cache. The device is marked as recent
+	 * until it's updated with a scan result.
+	 *
+	 * @param result   the scan result created from the cached values.
+	 * @param smoother the smoother used to calculate the smoothed RSSI value.
+	 * @return The view over the new slot.
+	 */
+	@NonNull
+	public synchronized DiscoveredBluetoothDevice addRecent(@NonNull final ScanResult result,
+															@NonNull final RssiSmoother smoother) {
+		final DiscoveredBluetoothDevice view = add(result, smoother);
+		flags[view.slot] |= FLAG_RECENT;
+		return view;
+	}
+
+	/**
+	 * Removes the device from the table. Current values are copied to the view,
+	 * and the slot is reused.
+	 *
+	 * @param device the device to remove.
+	 */
+	public synchronized void remove(@NonNull final DiscoveredBluetoothDevice device) {
+		final int slot = device.slot;
+		if (device.table != this || views[slot] != device)
+			return;
+		detach(slot);
+		freeSlots[freeCount++] = slot;
+		size--;
+	}
+
+	/**
+	 * Removes all devices.
+	 */
+	public synchronized void clear() {
+		for (int slot = 0; slot < highWaterMark; slot++) {
+			if ((flags[slot] & FLAG_IN_USE) != 0)
+				detach(slot);
+		}
+		freeCount = 0;
+		highWaterMark = 0;
+		size = 0;
+	}
+
+	/**
+	 * Resets the smoother state of all devices. Samples are kept.
+	 */
+	public synchronized void resetRssiState() {
+		for (int slot = 0; slot < highWaterMark; slot++) {
+			if ((flags[slot] & FLAG_IN_USE) != 0)
+				rssiHistory.wrap(rssiSamples, rssiMeta, rssiState, slot).resetState();
+		}
+	}
+
+	/**
+	 * Updates the device slot based on the scan result.
+	 *
+	 * @return A bit mask of {@link DiscoveredBluetoothDevice#CHANGED_RSSI},
+	 * {@link DiscoveredBluetoothDevice#CHANGED_NAME} and
+	 * {@link DiscoveredBluetoothDevice#CHANGED_DATA} flags, or 0 if nothing has changed.
+	 */
+	/* package */ synchronized int update(final int slot, @NonNull final ScanResult result,
+										  @NonNull final RssiSmoother smoother) {
+		int changes = 0;
+		if ((flags[slot] & FLAG_RECENT) != 0) {
+			flags[slot] &= ~FLAG_RECENT;
+			changes |= DiscoveredBluetoothDevice.CHANGED_RECENT;
+		}
+		final ScanRecord record = result.getScanRecord();
+		final byte[] bytes = record != null ? record.getBytes() : null;
+		final int length = bytes != null ? significantLength(bytes) : 0;
+		if (!recordEquals(slot, bytes, length)) {
+			changes |= DiscoveredBluetoothDevice.CHANGED_DATA;
+
+			// The name may only change together with the advertising data. Raw name bytes are
+			// compared first, so that a String is only created when the name has changed.
+			if (updateName(slot, bytes, length))
+				changes |= DiscoveredBluetoothDevice.CHANGED_NAME;
+			setRecord(slot, bytes, length);
+		}
+
+		flags[slot] = result.isConnectable() ? flags[slot] | FLAG_CONNECTABLE : flags[slot] & ~FLAG_CONNECTABLE;
+		rssi[slot] = (byte) result.getRssi();
+		final RssiHistory history = rssiHistory.wrap(rssiSamples, rssiMeta, rssiState, slot);
+		history.add(result.getRssi());
+		final int smoothed = Math.round(smoother.smooth(history, result.getRssi()));
+		if (smoothed != smoothedRssi[slot] || history.size() == 1)
+			changes |= DiscoveredBluetoothDevice.CHANGED_RSSI;
+		smoothedRssi[slot] = (byte) smoothed;
+		// Results in a batch may be delivered out of order.
+		final long time = result.getTimestampNanos() / 1_000_000;
+		if (time >= lastSeen[slot]) {
+			lastSeen[slot] = time;
+			timestampNanos[slot] = result.getTimestampNanos();
+		}
+		return changes;
+	}
+
+	/* package */ synchronized void addRssi(final int slot, final int rssi,
+											@NonNull final RssiSmoother smoother) {
+		final RssiHistory history = rssiHistory.wrap(rssiSamples, rssiMeta, rssiState, slot);
+		history.add(rssi);
+		smoother.smooth(history, rssi);
+	}
+
+	/* package */ synchronized int getRssi(final int slot) {
+		return rssi[slot];
+	}
+
+	/* package */ synchronized int getSmoothedRssi(final int slot) {
+		return smoothedRssi[slot];
+	}
+
+	/* package */ synchronized long getLastSeen(final int slot) {
+		return lastSeen[slot];
+	}
+
+	/* package */ synchronized long getTimestampNanos(final int slot) {
+		return timestampNanos[slot];
+	}
+
+	/* package */ synchronized boolean isConnectable(final int slot) {
+		return (flags[slot] & FLAG_CONNECTABLE) != 0;
+	}
+
+	/* package */ synchronized boolean isRecent(final int slot) {
+		return (flags[slot] & FLAG_RECENT) != 0;
+	}
+
+	@Nullable
+	/* package */ synchronized String getName(final int slot) {
+		final int index = nameIndexes[slot];
+		return index == NO_NAME ? null : names.get(index);
+	}
+
+	/**
+	 * Matches the raw advertising data and the smoothed RSSI of the slot, without copying.
+	 */
+	/* package */ synchronized boolean matches(final int slot, @NonNull final AdvertisingMatcher matcher,
+											  final boolean visible) {
+		final int length = recordLengths[slot] & 0xFF;
+		if (length == 0 && longRecords != null && longRecords[slot] != null)
+			return matcher.matches(longRecords[slot], 0, longRecords[slot].length, smoothedRssi[slot], visible);
+		return matcher.matches(records, slot * RECORD_SIZE, length, smoothedRssi[slot], visible);
+	}
+
+	/**
+	 * Returns a copy of the raw advertising data of the slot.
+	 */
+	@NonNull
+	/* package */ synchronized byte[] getScanRecord(final int slot) {
+		final int length = recordLengths[slot] & 0xFF;
+		if (length == 0 && longRecords != null && longRecords[slot] != null)
+			return longRecords[slot].clone();
+		return Arrays.copyOfRange(records, slot * RECORD_SIZE, slot * RECORD_SIZE + length);
+	}
+
+	private void detach(final int slot) {
+		final DiscoveredBluetoothDevice view = views[slot];
+		view.detach(getName(slot), rssi[slot], smoothedRssi[slot], lastSeen[slot],
+				timestampNanos[slot], isConnectable(slot), getScanRecord(slot));
+		views[slot] = null;
+		releaseName(nameIndexes[slot]);
+		nameIndexes[slot] = NO_NAME;
+		flags[slot] = 0;
+		if (longRecords != null)
+			longRecords[slot] = null;
+	}
+
+	/**
+	 * Returns the length of the advertising data without the zero padding added by Android
+	 * to legacy advertising packets.
+	 */
+	private static int significantLength(@NonNull final byte[] bytes) {
+		int offset = 0;
+		while (offset < bytes.length) {
+			final int fieldLength = bytes[offset] & 0xFF;
+			if (fieldLength == 0)
+				break;
+			offset += fieldLength + 1;
+		}
+		return Math.min(offset, bytes.length);
+	}
+
+	private boolean recordEquals(final int slot, @Nullable final byte[] bytes, final int length) {
+		final byte[] stored;
+		final int base;
+		if (length > RECORD_SIZE) {
+			if (longRecords == null || longRecords[slot] == null || longRecords[slot].length != length)
+				return false;
+			stored = longRecords[slot];
+			base = 0;
+		} else {
+			if ((bytes != null) != ((flags[slot] & FLAG_HAS_RECORD) != 0)
+					|| (recordLengths[slot] & 0xFF) != length)
+				return false;
+			stored = records;
+			base = slot * RECORD_SIZE;
+		}
+		for (int i = 0; i < length; i++) {
+			//noinspection ConstantConditions
+			if (stored[base + i] != bytes[i])
+				return false;
+		}
+		return true;
+	}
+
+	private void setRecord(final int slot, @Nullable final byte[] bytes, final int length) {
+		flags[slot] = bytes != null ? flags[slot] | FLAG_HAS_RECORD : flags[slot] & ~FLAG_HAS_RECORD;
+		if (length > RECORD_SIZE) {
+			if (longRecords == null)
+				longRecords = new byte[ids.length][];
+			//noinspection ConstantConditions
+			longRecords[slot] = Arrays.copyOf(bytes, length);
+			recordLengths[slot] = 0;
+			return;
+		}
+		if (longRecords != null)
+			longRecords[slot] = null;
+		if (length > 0)
+			System.arraycopy(bytes, 0, records, slot * RECORD_SIZE, length);
+		recordLengths[slot] = (byte) length;
+	}
+
+	/**
+	 * Updates the interned name of the slot from the new advertising data, before
+	 * the new data are stored.
+	 *
+	 * @return True if the name has changed.
+	 */
+	private boolean updateName(final int slot, @Nullable final byte[] bytes, final int length) {
+		final long field = bytes != null ? findName(bytes, 0, length) : -1;
+		final int index = nameIndexes[slot];
+		if (field == -1) {
+			if (index == NO_NAME)
+				return false;
+			releaseName(index);
+			nameIndexes[slot] = NO_NAME;
+			return true;
+		}
+
+		final int offset = (int) (field >>> 32);
+		final int nameLength = (int) field;
+		if (index != NO_NAME && nameEquals(slot, bytes, offset, nameLength))
+			return false;
+
+		//noinspection ConstantConditions
+		final String name = new String(bytes, offset, nameLength, UTF_8);
+		final int newIndex = internName(name);
+		releaseName(index);
+		nameIndexes[slot] = newIndex;
+		return index != newIndex;
+	}
+
+	/**
+	 * Compares the name in the new advertising data with the name in the stored data.
+	 */
+	private boolean nameEquals(final int slot, @NonNull final byte[] bytes, final int offset, final int length) {
+		final byte[] stored;
+		final int base;
+		final int storedLength;
+		if (longRecords != null && longRecords[slot] != null) {
+			stored = longRecords[slot];
+			base = 0;
+			storedLength = stored.length;
+		} else {
+			stored = records;
+			base = slot * RECORD_SIZE;
+			storedLength = recordLengths[slot] & 0xFF;
+		}
+		final long field = findName(stored, base, storedLength);
+		if (field == -1 || (int) field != length)
+			return false;
+		final int storedOffset = (int) (field >>> 32);
+		for (int i = 0; i < length; i++) {
+			if (stored[storedOffset + i] != bytes[offset + i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the local name in the advertising data. The complete name is preferred over
+	 * the shortened one.
+	 *
+	 * @return The offset of the name in the upper and its length in the lower 32 bits,
+	 * or -1 if not found.
+	 */
+	private static long findName(@NonNull final byte[] data, final int start, final int length) {
+		long shortened = -1;
+		int offset = start;
+		final int end = start + length;
+		while (offset < end) {
+			final int fieldLength = data[offset] & 0xFF;
+			if (fieldLength == 0 || offset + fieldLength >= end)
+				break;
+			final int type = data[offset + 1] & 0xFF;
+			final long field = ((long) (offset + 2) << 32) | (fieldLength - 1);
+			if (type == TYPE_COMPLETE_LOCAL_NAME)
+				return field;
+			if (type == TYPE_SHORTENED_LOCAL_NAME && shortened == -1)
+				shortened = field;
+			offset += fieldLength + 1;
+		}
+		return shortened;
+	}
+
+	private int internName(@NonNull final String name) {
+		final Integer existing = nameIndexByName.get(name);
+		final int index;
+		if (existing != null) {
+			index = existing;
+		} else if (!freeNames.isEmpty()) {
+			index = freeNames.remove(freeNames.size() - 1);
+			names.set(index, name);
+			nameIndexByName.put(name, index);
+		} else {
+			index = names.size();
+			names.add(name);
+			nameIndexByName.put(name, index);
+			if (index == nameRefs.length)
+				nameRefs = Arrays.copyOf(nameRefs, index * 2);
+		}
+		nameRefs[index]++;
+		return index;
+	}
+
+	private void releaseName(final int index) {
+		if (index == NO_NAME)
+			return;
+		if (--nameRefs[index] == 0) {
+			nameIndexByName.remove(names.get(index));
+			names.set(index, null);
+			freeNames.add(index);
+		}
+	}
+
+	private void allocate(final int capacity) {
+		if (ids == null) {
+			ids = new long[capacity];
+			rssi = new byte[capacity];
+			smoothedRssi = new byte[capacity];
+			lastSeen = new long[capacity];
+			timestampNanos = new long[capacity];
+			flags = new int[capacity];
+			nameIndexes = new int[capacity];
+			records = new byte[capacity * RECORD_SIZE];
+			recordLengths = new byte[capacity];
+			rssiSamples = new byte[capacity * RssiHistory.SAMPLES_PER_SLOT];
+			rssiMeta = new byte[capacity];
+			rssiState = new float[capacity * RssiHistory.STATE_PER_SLOT];
+			views = new DiscoveredBluetoothDevice[capacity];
+			freeSlots = new int[capacity];
+			return;
+		}
+		ids = Arrays.copyOf(ids, capacity);
+		rssi = Arrays.copyOf(rssi, capacity);
+		smoothedRssi = Arrays.copyOf(smoothedRssi, capacity);
+		lastSeen = Arrays.copyOf(lastSeen, capacity);
+		timestampNanos = Arrays.copyOf(timestampNanos, capacity);
+		flags = Arrays.copyOf(flags, capacity);
+		nameIndexes = Arrays.copyOf(nameIndexes, capacity);
+		records = Arrays.copyOf(records, capacity * RECORD_SIZE);
+		recordLengths = Arrays.copyOf(recordLengths, capacity);
+		if (longRecords != null)
+			longRecords = Arrays.copyOf(longRecords, capacity);
+		rssiSamples = Arrays.copyOf(rssiSamples, capacity * RssiHistory.SAMPLES_PER_SLOT);
+		rssiMeta = Arrays.copyOf(rssiMeta, capacity);
+		rssiState = Arrays.copyOf(rssiState, capacity * RssiHistory.STATE_PER_SLOT);
+		views = Arrays.copyOf(views, capacity);
+		freeSlots = Arrays.copyOf(freeSlots, capacity);
+	}
+}
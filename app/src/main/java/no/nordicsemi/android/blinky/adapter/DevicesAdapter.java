@@ -30,9 +30,11 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
-import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import butterknife.BindView;
@@ -40,10 +42,28 @@ import butterknife.ButterKnife;
 import no.nordicsemi.android.blinky.R;
 import no.nordicsemi.android.blinky.ScannerActivity;
 import no.nordicsemi.android.blinky.viewmodels.DevicesLiveData;
-
+import no.nordicsemi.android.blinky.viewmodels.DevicesUpdate;
+
+/**
+ * Shows the filtered list of devices. No diff is calculated: {@link DevicesLiveData} emits
+ * each change of the list as an ordered change set with positions, built on the scan thread
+ * as devices are added, removed and moved, so the main thread only applies the operations.
+ * <p>
+ * Updates are numbered and linked. Ones already applied, like the current value delivered
+ * when observing starts, are skipped, and updates replaced by newer ones before being
+ * delivered are applied together with them.
+ */
 @SuppressWarnings("unused")
 public class DevicesAdapter extends RecyclerView.Adapter<DevicesAdapter.ViewHolder> {
-	private List<DiscoveredBluetoothDevice> devices;
+	/** The signal strength of devices not confirmed by the scanner yet is dimmed. */
+	private static final float RECENT_RSSI_ALPHA = 0.3f;
+
+	/** The currently shown devices, with values as they were when they were dispatched. */
+	private final List<DevicesUpdate.Item> devices;
+	private final ListUpdateCallback updateCallback = new AdapterListUpdateCallback(this);
+	/** The last applied update. */
+	@NonNull
+	private DevicesUpdate lastUpdate;
 	private OnItemClickListener onItemClickListener;
 
 	@FunctionalInterface
@@ -58,12 +78,39 @@ public class DevicesAdapter extends RecyclerView.Adapter<DevicesAdapter.ViewHold
 	public DevicesAdapter(@NonNull final ScannerActivity activity,
 						  @NonNull final DevicesLiveData devicesLiveData) {
 		setHasStableIds(true);
-		devicesLiveData.observe(activity, newDevices -> {
-			final DiffUtil.DiffResult result = DiffUtil.calculateDiff(
-					new DeviceDiffCallback(devices, newDevices), false);
-			devices = newDevices;
-			result.dispatchUpdatesTo(this);
-		});
+		lastUpdate = devicesLiveData.snapshot();
+		devices = new ArrayList<>(lastUpdate.getItems());
+		devicesLiveData.observe(activity, this::applyUpdates);
+	}
+
+	/**
+	 * Applies all updates following the last applied one, up to the given update. Updates are
+	 * posted, so some of them may have been replaced by newer ones before being delivered.
+	 *
+	 * @param update the most recent update.
+	 */
+	private void applyUpdates(@NonNull final DevicesUpdate update) {
+		// The current value is delivered when observing starts, which may be older.
+		if (update.getSequence() - lastUpdate.getSequence() <= 0)
+			return;
+
+		DevicesUpdate next = lastUpdate;
+		do {
+			next = next.getNext();
+			//noinspection ConstantConditions
+			apply(next);
+		} while (next != update);
+		lastUpdate = update;
+	}
+
+	private void apply(@NonNull final DevicesUpdate update) {
+		if (update.isReset()) {
+			devices.clear();
+			devices.addAll(update.getItems());
+			notifyDataSetChanged();
+			return;
+		}
+		update.applyTo(devices, updateCallback);
 	}
 
 	@NonNull
@@ -76,26 +123,54 @@ public class DevicesAdapter extends RecyclerView.Adapter<DevicesAdapter.ViewHold
 
 	@Override
 	public void onBindViewHolder(@NonNull final ViewHolder holder, final int position) {
-		final DiscoveredBluetoothDevice device = devices.get(position);
-		final String deviceName = device.getName();
+		final DevicesUpdate.Item item = devices.get(position);
+		final DiscoveredBluetoothDevice device = item.getDevice();
+		final String deviceName = item.getName();
 
 		if (!TextUtils.isEmpty(deviceName))
 			holder.deviceName.setText(deviceName);
 		else
 			holder.deviceName.setText(R.string.unknown_device);
-		holder.deviceAddress.setText(device.getAddress());
-		final int rssiPercent = (int) (100.0f * (127.0f + device.getRssi()) / (127.0f + 20.0f));
-		holder.rssi.setImageLevel(rssiPercent);
+		// Devices restored from the cache are shown until the scanner confirms them.
+		if (item.isRecent()) {
+			holder.deviceAddress.setText(holder.itemView.getContext()
+					.getString(R.string.device_recent, device.getAddress()));
+			holder.rssi.setAlpha(RECENT_RSSI_ALPHA);
+		} else {
+			holder.deviceAddress.setText(device.getAddress());
+			holder.rssi.setAlpha(1.0f);
+		}
+		holder.rssi.setImageLevel(DiscoveredBluetoothDevice.getRssiPercent(item.getRssi()));
+	}
+
+	@Override
+	public void onBindViewHolder(@NonNull final ViewHolder holder, final int position,
+								 @NonNull final List<Object> payloads) {
+		// If only the RSSI level has changed, update just the signal icon.
+		// The name and address views are left untouched.
+		if (!payloads.isEmpty() && allRssiPayloads(payloads)) {
+			holder.rssi.setImageLevel(DiscoveredBluetoothDevice.getRssiPercent(devices.get(position).getRssi()));
+			return;
+		}
+		onBindViewHolder(holder, position);
+	}
+
+	private static boolean allRssiPayloads(@NonNull final List<Object> payloads) {
+		for (final Object payload : payloads) {
+			if (payload != DevicesUpdate.PAYLOAD_RSSI)
+				return false;
+		}
+		return true;
 	}
 
 	@Override
 	public long getItemId(final int position) {
-		return devices.get(position).hashCode();
+		return devices.get(position).getDevice().getId();
 	}
 
 	@Override
 	public int getItemCount() {
-		return devices != null ? devices.size() : 0;
+		return devices.size();
 	}
 
 	public boolean isEmpty() {
@@ -113,7 +188,9 @@ public class DevicesAdapter extends RecyclerView.Adapter<DevicesAdapter.ViewHold
 
 			view.findViewById(R.id.device_container).setOnClickListener(v -> {
 				if (onItemClickListener != null) {
-					onItemClickListener.onItemClick(devices.get(getAdapterPosition()));
+					final int position = getAdapterPosition();
+					if (position != RecyclerView.NO_POSITION)
+						onItemClickListener.onItemClick(devices.get(position).getDevice());
 				}
 			});
 		}
@@ -22,6 +22,7 @@
 
 package no.nordicsemi.android.blinky.adapter;
 
+import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.os.Parcel;
 import android.os.Parcelable;
@@ -29,113 +30,333 @@ import android.os.Parcelable;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import no.nordicsemi.android.blinky.filter.AdvertisingMatcher;
+import no.nordicsemi.android.blinky.scanner.RssiSmoother;
+import no.nordicsemi.android.blinky.utils.MacAddress;
+import no.nordicsemi.android.support.v18.scanner.ScanRecordParser;
 import no.nordicsemi.android.support.v18.scanner.ScanResult;
 
+/**
+ * A discovered device. The values are kept in a slot of the {@link DeviceTable}; this object
+ * is only a view over the slot. When the device is removed from the table, the last values
+ * are copied here, so the object may still be displayed or passed to another activity.
+ */
 public class DiscoveredBluetoothDevice implements Parcelable {
-	private final BluetoothDevice device;
-	private ScanResult lastScanResult;
+	/** The smoothed RSSI value has changed. */
+	public static final int CHANGED_RSSI = 1;
+	/** The device name has changed. */
+	public static final int CHANGED_NAME = 1 << 1;
+	/** The advertising data (service UUIDs, manufacturer data, etc.) have changed. */
+	public static final int CHANGED_DATA = 1 << 2;
+	/** The device, restored from the recent device cache, has been seen by the scanner. */
+	public static final int CHANGED_RECENT = 1 << 3;
+
+	private final long id;
+	/** The table holding the values, or null if the device has been removed from it. */
+	@Nullable
+	/* package */ volatile DeviceTable table;
+	/* package */ final int slot;
+
+	// Values of a device removed from the table.
 	private String name;
 	private int rssi;
-	private int previousRssi;
-	private int highestRssi = -128;
+	private int smoothedRssi;
+	private long lastSeen;
+	private long timestampNanos;
+	private boolean connectable;
+	private byte[] scanRecord;
+
+	// Created on demand.
+	private String address;
+	private BluetoothDevice device;
+
+	/* package */ DiscoveredBluetoothDevice(@NonNull final DeviceTable table, final int slot, final long id) {
+		this.table = table;
+		this.slot = slot;
+		this.id = id;
+	}
+
+	/**
+	 * Creates a device not backed by a table, with only the address and name known.
+	 * Used when the device can't be obtained from the {@link DeviceHandles} registry.
+	 *
+	 * @param id   the packed device address.
+	 * @param name the device name, or null.
+	 * @return The device.
+	 */
+	@NonNull
+	public static DiscoveredBluetoothDevice create(final long id, @Nullable final String name) {
+		return new DiscoveredBluetoothDevice(id, name);
+	}
 
-	public DiscoveredBluetoothDevice(@NonNull final ScanResult scanResult) {
-		device = scanResult.getDevice();
-		update(scanResult);
+	private DiscoveredBluetoothDevice(final long id, @Nullable final String name) {
+		this.id = id;
+		this.slot = -1;
+		this.name = name;
+		this.rssi = this.smoothedRssi = -127;
+		this.scanRecord = new byte[0];
 	}
 
+	/**
+	 * Returns the Bluetooth device. The object is created when first needed, as only the
+	 * device selected for connection needs it.
+	 */
 	@NonNull
-	public BluetoothDevice getDevice() {
+	public synchronized BluetoothDevice getDevice() {
+		if (device == null)
+			device = BluetoothAdapter.getDefaultAdapter().getRemoteDevice(getAddress());
 		return device;
 	}
 
 	@NonNull
-	public String getAddress() {
-		return device.getAddress();
+	public synchronized String getAddress() {
+		if (address == null)
+			address = MacAddress.unpack(id);
+		return address;
+	}
+
+	/**
+	 * Returns the 48-bit device address packed into a long. The value is unique for each
+	 * device and does not change, so it may be used as a key or a stable item id.
+	 *
+	 * @return The packed device address.
+	 * @see MacAddress#pack(String)
+	 */
+	public long getId() {
+		return id;
 	}
 
 	@Nullable
 	public String getName() {
+		final DeviceTable table = this.table;
+		if (table != null) {
+			synchronized (table) {
+				if (this.table != null)
+					return table.getName(slot);
+			}
+		}
 		return name;
 	}
 
+	/**
+	 * Returns the RSSI value of the last received packet.
+	 *
+	 * @see #getSmoothedRssi()
+	 */
 	@SuppressWarnings("WeakerAccess")
 	public int getRssi() {
+		final DeviceTable table = this.table;
+		if (table != null) {
+			synchronized (table) {
+				if (this.table != null)
+					return table.getRssi(slot);
+			}
+		}
 		return rssi;
 	}
 
+	/**
+	 * Returns the RSSI value smoothed over recent packets. This value should be used for
+	 * filtering, sorting and display, as the raw value fluctuates by several dBm.
+	 *
+	 * @return The smoothed RSSI value in dBm.
+	 */
+	public int getSmoothedRssi() {
+		final DeviceTable table = this.table;
+		if (table != null) {
+			synchronized (table) {
+				if (this.table != null)
+					return table.getSmoothedRssi(slot);
+			}
+		}
+		return smoothedRssi;
+	}
+
+	/**
+	 * Returns the time the device was last seen, in milliseconds of
+	 * {@link android.os.SystemClock#elapsedRealtime()}.
+	 */
+	public long getLastSeen() {
+		final DeviceTable table = this.table;
+		if (table != null) {
+			synchronized (table) {
+				if (this.table != null)
+					return table.getLastSeen(slot);
+			}
+		}
+		return lastSeen;
+	}
+
+	/**
+	 * Returns whether the device was restored from the recent device cache and has not been
+	 * seen by the scanner since. Returns false for a device removed from the table.
+	 */
+	public boolean isRecent() {
+		final DeviceTable table = this.table;
+		if (table != null) {
+			synchronized (table) {
+				if (this.table != null)
+					return table.isRecent(slot);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether the last advertising packet was connectable.
+	 */
+	public boolean isConnectable() {
+		final DeviceTable table = this.table;
+		if (table != null) {
+			synchronized (table) {
+				if (this.table != null)
+					return table.isConnectable(slot);
+			}
+		}
+		return connectable;
+	}
+
+	/**
+	 * Returns a copy of the raw advertising data from the last packet, without padding.
+	 */
+	@NonNull
+	public byte[] getScanRecord() {
+		final DeviceTable table = this.table;
+		if (table != null) {
+			synchronized (table) {
+				if (this.table != null)
+					return table.getScanRecord(slot);
+			}
+		}
+		return scanRecord.clone();
+	}
+
+	/**
+	 * Creates a scan result with the last values of the device, parsing its advertising data.
+	 * Devices don't keep scan results, so this should only be used when one is needed, e.g.
+	 * to pass the device to an API expecting a scan result.
+	 */
 	@NonNull
-	public ScanResult getScanResult() {
-		return lastScanResult;
+	public ScanResult toScanResult() {
+		final DeviceTable table = this.table;
+		if (table != null) {
+			synchronized (table) {
+				if (this.table != null)
+					return new ScanResult(getDevice(), ScanRecordParser.parse(table.getScanRecord(slot)),
+							table.getRssi(slot), table.getTimestampNanos(slot));
+			}
+		}
+		return new ScanResult(getDevice(), ScanRecordParser.parse(scanRecord), rssi, timestampNanos);
 	}
+
 	/**
-	 * Returns the highest recorded RSSI value during the scan.
+	 * Converts the RSSI value to the level of the
+	 * {@link no.nordicsemi.android.blinky.R.drawable#ic_signal_bar} drawable.
 	 *
-	 * @return Highest RSSI value.
+	 * @param rssi the RSSI value in dBm.
+	 * @return The drawable level, in percent.
 	 */
-	public int getHighestRssi() {
-		return highestRssi;
+	public static int getRssiPercent(final int rssi) {
+		return (int) (100.0f * (127.0f + rssi) / (127.0f + 20.0f));
 	}
 
 	/**
-	 * This method returns true if the RSSI range has changed. The RSSI range depends on drawable
+	 * Returns the number of bars shown for the given RSSI value. The ranges depend on drawable
 	 * levels from {@link no.nordicsemi.android.blinky.R.drawable#ic_signal_bar}.
 	 *
-	 * @return True, if the RSSI range has changed.
-	 */
-	/* package */ boolean hasRssiLevelChanged() {
-		final int newLevel =
-				rssi <= 10 ?
-						0 :
-						rssi <= 28 ?
-								1 :
-								rssi <= 45 ?
-										2 :
-										rssi <= 65 ?
-												3 :
-												4;
-		final int oldLevel =
-				previousRssi <= 10 ?
-						0 :
-						previousRssi <= 28 ?
-								1 :
-								previousRssi <= 45 ?
-										2 :
-										previousRssi <= 65 ?
-												3 :
-												4;
-		return newLevel != oldLevel;
+	 * @param rssi the RSSI value in dBm.
+	 * @return The number of bars, from 0 to 4.
+	 */
+	public static int getRssiLevel(final int rssi) {
+		final int percent = getRssiPercent(rssi);
+		return percent <= 10 ? 0 :
+				percent <= 28 ? 1 :
+						percent <= 45 ? 2 :
+								percent <= 65 ? 3 : 4;
 	}
 
 	/**
 	 * Updates the device values based on the scan result.
 	 *
 	 * @param scanResult the new received scan result.
+	 * @param smoother   the smoother used to calculate the smoothed RSSI value.
+	 * @return A bit mask of {@link #CHANGED_RSSI}, {@link #CHANGED_NAME} and
+	 * {@link #CHANGED_DATA} flags, or 0 if nothing has changed.
+	 * @throws IllegalStateException if the device has been removed from the table.
 	 */
-	public void update(@NonNull final ScanResult scanResult) {
-		lastScanResult = scanResult;
-		name = scanResult.getScanRecord() != null ?
-				scanResult.getScanRecord().getDeviceName() : null;
-		previousRssi = rssi;
-		rssi = scanResult.getRssi();
-		if (highestRssi < rssi)
-			highestRssi = rssi;
+	public int update(@NonNull final ScanResult scanResult, @NonNull final RssiSmoother smoother) {
+		return requireTable().update(slot, scanResult, smoother);
+	}
+
+	/**
+	 * Adds an RSSI value of a packet that was merged into a later scan result, so that
+	 * the smoother sees every packet. The smoothed RSSI value is updated, and the change
+	 * reported, on the next call to {@link #update(ScanResult, RssiSmoother)}.
+	 *
+	 * @param rssi     the RSSI value in dBm.
+	 * @param smoother the smoother used to calculate the smoothed RSSI value.
+	 * @throws IllegalStateException if the device has been removed from the table.
+	 */
+	public void addRssi(final int rssi, @NonNull final RssiSmoother smoother) {
+		requireTable().addRssi(slot, rssi, smoother);
 	}
 
 	public boolean matches(@NonNull final ScanResult scanResult) {
-		return device.getAddress().equals(scanResult.getDevice().getAddress());
+		return getAddress().equals(scanResult.getDevice().getAddress());
+	}
+
+	/**
+	 * Returns whether the last advertising data and the smoothed RSSI match the filter.
+	 *
+	 * @param matcher the compiled filter.
+	 * @param visible whether the device currently matches the filter.
+	 */
+	public boolean matches(@NonNull final AdvertisingMatcher matcher, final boolean visible) {
+		final DeviceTable table = this.table;
+		if (table != null) {
+			synchronized (table) {
+				if (this.table != null)
+					return table.matches(slot, matcher, visible);
+			}
+		}
+		return matcher.matches(scanRecord, 0, scanRecord.length, smoothedRssi, visible);
+	}
+
+	@NonNull
+	private DeviceTable requireTable() {
+		final DeviceTable table = this.table;
+		if (table == null)
+			throw new IllegalStateException("Device has been removed");
+		return table;
+	}
+
+	/**
+	 * Copies the last values of the device from the table. Called by the table, with its lock
+	 * held, when the device is removed.
+	 */
+	/* package */ void detach(@Nullable final String name, final int rssi, final int smoothedRssi,
+							  final long lastSeen, final long timestampNanos, final boolean connectable,
+							  @NonNull final byte[] scanRecord) {
+		this.name = name;
+		this.rssi = rssi;
+		this.smoothedRssi = smoothedRssi;
+		this.lastSeen = lastSeen;
+		this.timestampNanos = timestampNanos;
+		this.connectable = connectable;
+		this.scanRecord = scanRecord;
+		this.table = null;
 	}
 
 	@Override
 	public int hashCode() {
-		return device.hashCode();
+		return (int) (id ^ (id >>> 32));
 	}
 
 	@Override
 	public boolean equals(final Object o) {
 		if (o instanceof DiscoveredBluetoothDevice) {
 			final DiscoveredBluetoothDevice that = (DiscoveredBluetoothDevice) o;
-			return device.getAddress().equals(that.device.getAddress());
+			return id == that.id;
 		}
 		return super.equals(o);
 	}
@@ -143,22 +364,47 @@ public class DiscoveredBluetoothDevice implements Parcelable {
 	// Parcelable implementation
 
 	private DiscoveredBluetoothDevice(final Parcel in) {
-		device = in.readParcelable(BluetoothDevice.class.getClassLoader());
-		lastScanResult = in.readParcelable(ScanResult.class.getClassLoader());
+		id = in.readLong();
+		slot = -1;
 		name = in.readString();
 		rssi = in.readInt();
-		previousRssi = in.readInt();
-		highestRssi = in.readInt();
+		smoothedRssi = in.readInt();
+		lastSeen = in.readLong();
+		timestampNanos = in.readLong();
+		connectable = in.readInt() != 0;
+		scanRecord = in.createByteArray();
 	}
 
 	@Override
 	public void writeToParcel(final Parcel parcel, final int flags) {
-		parcel.writeParcelable(device, flags);
-		parcel.writeParcelable(lastScanResult, flags);
+		// A parceled device is always detached, so current values are written.
+		final DeviceTable table = this.table;
+		if (table != null) {
+			synchronized (table) {
+				if (this.table != null) {
+					writeToParcel(parcel, table.getName(slot), table.getRssi(slot),
+							table.getSmoothedRssi(slot), table.getLastSeen(slot),
+							table.getTimestampNanos(slot), table.isConnectable(slot),
+							table.getScanRecord(slot));
+					return;
+				}
+			}
+		}
+		writeToParcel(parcel, name, rssi, smoothedRssi, lastSeen, timestampNanos, connectable, scanRecord);
+	}
+
+	private void writeToParcel(@NonNull final Parcel parcel, @Nullable final String name,
+							   final int rssi, final int smoothedRssi,
+							   final long lastSeen, final long timestampNanos,
+							   final boolean connectable, @NonNull final byte[] scanRecord) {
+		parcel.writeLong(id);
 		parcel.writeString(name);
 		parcel.writeInt(rssi);
-		parcel.writeInt(previousRssi);
-		parcel.writeInt(highestRssi);
+		parcel.writeInt(smoothedRssi);
+		parcel.writeLong(lastSeen);
+		parcel.writeLong(timestampNanos);
+		parcel.writeInt(connectable ? 1 : 0);
+		parcel.writeByteArray(scanRecord);
 	}
 
 	@Override
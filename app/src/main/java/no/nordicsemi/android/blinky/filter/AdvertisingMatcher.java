@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.filter;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A compiled device filter, matching raw advertising data and the RSSI of a device.
+ * Matchers are created by {@link FilterCompiler} and don't allocate while matching.
+ */
+@FunctionalInterface
+public interface AdvertisingMatcher {
+	/** Matches all devices. */
+	AdvertisingMatcher ALL = (data, offset, length, rssi, visible) -> true;
+
+	/**
+	 * Returns whether the device matches.
+	 *
+	 * @param data    the array containing the raw advertising data and scan response.
+	 * @param offset  the offset of the advertising data in the array.
+	 * @param length  the length of the advertising data, 0 if the device has none.
+	 * @param rssi    the RSSI of the device, in dBm.
+	 * @param visible whether the device currently matches. RSSI ranges are widened for
+	 *                matching devices, so that they don't flicker at the boundaries.
+	 * @return True if the device matches.
+	 */
+	boolean matches(@NonNull byte[] data, int offset, int length, int rssi, boolean visible);
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.filter;
+
+import androidx.annotation.NonNull;
+
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Matchers of the filter expression predicates and operators.
+ * <p>
+ * Advertising data are scanned field by field, without parsing them into a
+ * {@link no.nordicsemi.android.support.v18.scanner.ScanRecord}.
+ */
+/* package */ final class AdvertisingMatchers {
+	/** RSSI ranges are widened by this much for devices already matching. */
+	/* package */ static final int RSSI_HYSTERESIS = 5; // [dB]
+
+	// AD types.
+	private static final int TYPE_UUID16_INCOMPLETE = 0x02;
+	private static final int TYPE_UUID16 = 0x03;
+	private static final int TYPE_UUID32_INCOMPLETE = 0x04;
+	private static final int TYPE_UUID32 = 0x05;
+	private static final int TYPE_UUID128_INCOMPLETE = 0x06;
+	private static final int TYPE_UUID128 = 0x07;
+	private static final int TYPE_SHORTENED_LOCAL_NAME = 0x08;
+	private static final int TYPE_COMPLETE_LOCAL_NAME = 0x09;
+	private static final int TYPE_MANUFACTURER_SPECIFIC_DATA = 0xFF;
+
+	/** The Bluetooth Base UUID, 00000000-0000-1000-8000-00805F9B34FB. */
+	private static final long BASE_UUID_MSB = 0x0000000000001000L;
+	private static final long BASE_UUID_LSB = 0x800000805F9B34FBL;
+
+	private AdvertisingMatchers() {
+		// empty
+	}
+
+	/**
+	 * Returns the offset of the next AD field of one of the given types, or -1.
+	 * The field length is at the returned offset, the type follows.
+	 */
+	private static int findField(@NonNull final byte[] data, int offset, final int end,
+								 final int type1, final int type2) {
+		while (offset < end) {
+			final int fieldLength = data[offset] & 0xFF;
+			if (fieldLength == 0 || offset + 1 + fieldLength > end)
+				return -1;
+			final int type = data[offset + 1] & 0xFF;
+			if (type == type1 || type == type2)
+				return offset;
+			offset += fieldLength + 1;
+		}
+		return -1;
+	}
+
+	private static boolean regionEquals(@NonNull final byte[] data, final int offset,
+										@NonNull final byte[] value) {
+		for (int i = 0; i < value.length; i++) {
+			if (data[offset + i] != value[i])
+				return false;
+		}
+		return true;
+	}
+
+	/** Matches devices advertising the service UUID in a 16, 32 or 128-bit UUID list. */
+	/* package */ static final class Uuid implements AdvertisingMatcher {
+		/* package */ final UUID uuid;
+		/** The UUID in little endian, as advertised. */
+		private final byte[] uuid128 = new byte[16];
+		private final byte[] uuid32;
+		private final byte[] uuid16;
+
+		/* package */ Uuid(@NonNull final UUID uuid) {
+			this.uuid = uuid;
+			final long msb = uuid.getMostSignificantBits();
+			final long lsb = uuid.getLeastSignificantBits();
+			for (int i = 0; i < 8; i++) {
+				uuid128[i] = (byte) (lsb >>> (8 * i));
+				uuid128[8 + i] = (byte) (msb >>> (8 * i));
+			}
+			// Shortened UUIDs are only possible for UUIDs based on the Bluetooth Base UUID.
+			if (lsb == BASE_UUID_LSB && (msb & 0xFFFFFFFFL) == BASE_UUID_MSB) {
+				uuid32 = new byte[4];
+				System.arraycopy(uuid128, 12, uuid32, 0, 4);
+				uuid16 = uuid128[14] == 0 && uuid128[15] == 0 ? new byte[]{uuid128[12], uuid128[13]} : null;
+			} else {
+				uuid32 = null;
+				uuid16 = null;
+			}
+		}
+
+		@Override
+		public boolean matches(@NonNull final byte[] data, final int offset, final int length,
+							   final int rssi, final boolean visible) {
+			final int end = offset + length;
+			return (uuid16 != null && contains(data, offset, end, TYPE_UUID16_INCOMPLETE, TYPE_UUID16, uuid16))
+					|| (uuid32 != null && contains(data, offset, end, TYPE_UUID32_INCOMPLETE, TYPE_UUID32, uuid32))
+					|| contains(data, offset, end, TYPE_UUID128_INCOMPLETE, TYPE_UUID128, uuid128);
+		}
+
+		private static boolean contains(@NonNull final byte[] data, final int offset, final int end,
+										final int type1, final int type2, @NonNull final byte[] uuid) {
+			int field = offset;
+			while ((field = findField(data, field, end, type1, type2)) >= 0) {
+				final int fieldEnd = field + 1 + (data[field] & 0xFF);
+				for (int i = field + 2; i + uuid.length <= fieldEnd; i += uuid.length) {
+					if (regionEquals(data, i, uuid))
+						return true;
+				}
+				field = fieldEnd;
+			}
+			return false;
+		}
+	}
+
+	/** Matches manufacturer specific data by company ID and optionally a masked data prefix. */
+	/* package */ static final class Manufacturer implements AdvertisingMatcher {
+		private final int companyId;
+		private final byte[] prefix;
+		private final byte[] mask;
+
+		/* package */ Manufacturer(final int companyId, @NonNull final byte[] prefix,
+								   @NonNull final byte[] mask) {
+			if (prefix.length != mask.length)
+				throw new IllegalArgumentException("Data and mask lengths differ");
+			this.companyId = companyId;
+			this.prefix = prefix;
+			this.mask = mask;
+		}
+
+		@Override
+		public boolean matches(@NonNull final byte[] data, final int offset, final int length,
+							   final int rssi, final boolean visible) {
+			final int end = offset + length;
+			int field = offset;
+			while ((field = findField(data, field, end, TYPE_MANUFACTURER_SPECIFIC_DATA, -1)) >= 0) {
+				final int fieldLength = data[field] & 0xFF;
+				// Type, company ID and the prefix.
+				if (fieldLength >= 3 + prefix.length
+						&& ((data[field + 2] & 0xFF) | (data[field + 3] & 0xFF) << 8) == companyId
+						&& prefixMatches(data, field + 4))
+					return true;
+				field += fieldLength + 1;
+			}
+			return false;
+		}
+
+		private boolean prefixMatches(@NonNull final byte[] data, final int offset) {
+			for (int i = 0; i < prefix.length; i++) {
+				if (((data[offset + i] ^ prefix[i]) & mask[i]) != 0)
+					return false;
+			}
+			return true;
+		}
+	}
+
+	/** Matches the shortened or complete local name by its UTF-8 prefix. */
+	/* package */ static final class NamePrefix implements AdvertisingMatcher {
+		private final byte[] prefix;
+
+		/* package */ NamePrefix(@NonNull final String prefix) {
+			this.prefix = prefix.getBytes(FilterCompiler.UTF_8);
+		}
+
+		@Override
+		public boolean matches(@NonNull final byte[] data, final int offset, final int length,
+							   final int rssi, final boolean visible) {
+			final int end = offset + length;
+			int field = offset;
+			while ((field = findField(data, field, end, TYPE_SHORTENED_LOCAL_NAME, TYPE_COMPLETE_LOCAL_NAME)) >= 0) {
+				final int fieldLength = data[field] & 0xFF;
+				if (fieldLength - 1 >= prefix.length && regionEquals(data, field + 2, prefix))
+					return true;
+				field += fieldLength + 1;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Matches the shortened or complete local name against a regular expression, which may
+	 * match any part of the name. Names are read one byte per character, so non-ASCII
+	 * characters only match as individual bytes. Matching is synchronized, as the
+	 * {@link Matcher} is reused.
+	 */
+	/* package */ static final class NameRegex implements AdvertisingMatcher {
+		private final ByteCharSequence name = new ByteCharSequence();
+		private final Matcher matcher;
+
+		/* package */ NameRegex(@NonNull final Pattern pattern) {
+			matcher = pattern.matcher("");
+		}
+
+		@Override
+		public synchronized boolean matches(@NonNull final byte[] data, final int offset, final int length,
+											final int rssi, final boolean visible) {
+			final int end = offset + length;
+			int field = offset;
+			while ((field = findField(data, field, end, TYPE_SHORTENED_LOCAL_NAME, TYPE_COMPLETE_LOCAL_NAME)) >= 0) {
+				final int fieldLength = data[field] & 0xFF;
+				name.wrap(data, field + 2, fieldLength - 1);
+				final boolean found = matcher.reset(name).find();
+				name.wrap(null, 0, 0);
+				if (found)
+					return true;
+				field += fieldLength + 1;
+			}
+			return false;
+		}
+	}
+
+	/** Matches the RSSI range, inclusive. */
+	/* package */ static final class Rssi implements AdvertisingMatcher {
+		private final int min;
+		private final int max;
+
+		/* package */ Rssi(final int min, final int max) {
+			if (min > max)
+				throw new IllegalArgumentException("Invalid RSSI range: " + min + ", " + max);
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		public boolean matches(@NonNull final byte[] data, final int offset, final int length,
+							   final int rssi, final boolean visible) {
+			if (visible)
+				return rssi >= min - RSSI_HYSTERESIS && rssi <= max + RSSI_HYSTERESIS;
+			return rssi >= min && rssi <= max;
+		}
+	}
+
+	/* package */ static final class And implements AdvertisingMatcher {
+		/* package */ final AdvertisingMatcher[] operands;
+
+		/* package */ And(@NonNull final AdvertisingMatcher[] operands) {
+			this.operands = operands;
+		}
+
+		@Override
+		public boolean matches(@NonNull final byte[] data, final int offset, final int length,
+							   final int rssi, final boolean visible) {
+			for (final AdvertisingMatcher operand : operands) {
+				if (!operand.matches(data, offset, length, rssi, visible))
+					return false;
+			}
+			return true;
+		}
+	}
+
+	/* package */ static final class Or implements AdvertisingMatcher {
+		private final AdvertisingMatcher[] operands;
+
+		/* package */ Or(@NonNull final AdvertisingMatcher[] operands) {
+			this.operands = operands;
+		}
+
+		@Override
+		public boolean matches(@NonNull final byte[] data, final int offset, final int length,
+							   final int rssi, final boolean visible) {
+			for (final AdvertisingMatcher operand : operands) {
+				if (operand.matches(data, offset, length, rssi, visible))
+					return true;
+			}
+			return false;
+		}
+	}
+
+	/* package */ static final class Not implements AdvertisingMatcher {
+		private final AdvertisingMatcher operand;
+
+		/* package */ Not(@NonNull final AdvertisingMatcher operand) {
+			this.operand = operand;
+		}
+
+		@Override
+		public boolean matches(@NonNull final byte[] data, final int offset, final int length,
+							   final int rssi, final boolean visible) {
+			// The hysteresis of the operand must apply to devices not matching it.
+			return !operand.matches(data, offset, length, rssi, !visible);
+		}
+	}
+
+	/** A char sequence over a byte array, one byte per character. */
+	private static final class ByteCharSequence implements CharSequence {
+		private byte[] data;
+		private int offset;
+		private int length;
+
+		private void wrap(final byte[] data, final int offset, final int length) {
+			this.data = data;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(final int index) {
+			if (index < 0 || index >= length)
+				throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+			return (char) (data[offset + index] & 0xFF);
+		}
+
+		@NonNull
+		@Override
+		public CharSequence subSequence(final int start, final int end) {
+			return toString().substring(start, end);
+		}
+
+		@NonNull
+		@Override
+		public String toString() {
+			final char[] chars = new char[length];
+			for (int i = 0; i < length; i++)
+				chars[i] = charAt(i);
+			return new String(chars);
+		}
+	}
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.filter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiles filter expressions into {@link AdvertisingMatcher}s.
+ * <p>
+ * An expression combines predicates with <code>and</code> (<code>&amp;&amp;</code>),
+ * <code>or</code> (<code>||</code>), <code>not</code> (<code>!</code>) and parentheses.
+ * <code>not</code> binds strongest, <code>or</code> weakest. Predicates are:
+ * <ul>
+ * <li><code>uuid(180D)</code> - a service UUID, given as 16-bit, 32-bit or full UUID,</li>
+ * <li><code>manufacturer(0x0059[, 0102[, FF0F]])</code> - a company ID, optionally followed by
+ * a data prefix in hex and a mask of the same length,</li>
+ * <li><code>name("Nordic")</code> - a name prefix,</li>
+ * <li><code>name_regex("^Nordic_[0-9]+")</code> - a regular expression found in the name,</li>
+ * <li><code>rssi(-50[, 0])</code> - an RSSI range in dBm, inclusive.</li>
+ * </ul>
+ * Keywords are case insensitive. An empty expression matches all devices, for example:
+ * <pre>uuid(00001523-1212-EFDE-1523-785FEABCD123) and not name("DFU") and rssi(-70)</pre>
+ */
+public final class FilterCompiler {
+	/* package */ static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@NonNull
+	private final String expression;
+	private int position;
+
+	private FilterCompiler(@NonNull final String expression) {
+		this.expression = expression;
+	}
+
+	/**
+	 * Compiles the filter expression.
+	 *
+	 * @param expression the expression, or null.
+	 * @return The matcher, or {@link AdvertisingMatcher#ALL} for a null or empty expression.
+	 * @throws IllegalArgumentException if the expression is invalid. The message contains
+	 *                                  the position of the error.
+	 */
+	@NonNull
+	public static AdvertisingMatcher compile(@Nullable final String expression) {
+		if (expression == null || expression.trim().isEmpty())
+			return AdvertisingMatcher.ALL;
+
+		final FilterCompiler compiler = new FilterCompiler(expression);
+		final AdvertisingMatcher matcher = compiler.parseOr();
+		compiler.skipWhitespace();
+		if (compiler.position < expression.length())
+			throw compiler.error("Unexpected '" + expression.charAt(compiler.position) + "'");
+		return matcher;
+	}
+
+	/**
+	 * Returns the service UUIDs that every device matching the expression advertises, that is
+	 * the <code>uuid()</code> predicates of the expression, if it's an <code>and</code> of
+	 * predicates or a single predicate. Scanning may be limited to devices advertising one
+	 * of them by the Bluetooth controller.
+	 *
+	 * @param expression the expression, or null.
+	 * @return The UUIDs, empty if there are none.
+	 * @throws IllegalArgumentException if the expression is invalid.
+	 */
+	@NonNull
+	public static List<UUID> getRequiredServiceUuids(@Nullable final String expression) {
+		final List<UUID> uuids = new ArrayList<>();
+		addRequiredServiceUuids(compile(expression), uuids);
+		return uuids;
+	}
+
+	private static void addRequiredServiceUuids(@NonNull final AdvertisingMatcher matcher,
+												@NonNull final List<UUID> uuids) {
+		if (matcher instanceof AdvertisingMatchers.Uuid) {
+			uuids.add(((AdvertisingMatchers.Uuid) matcher).uuid);
+		} else if (matcher instanceof AdvertisingMatchers.And) {
+			// Parenthesized operands may be nested ands.
+			for (final AdvertisingMatcher operand : ((AdvertisingMatchers.And) matcher).operands)
+				addRequiredServiceUuids(operand, uuids);
+		}
+	}
+
+	@NonNull
+	private AdvertisingMatcher parseOr() {
+		final List<AdvertisingMatcher> operands = new ArrayList<>();
+		operands.add(parseAnd());
+		while (accept("||") || acceptKeyword("or"))
+			operands.add(parseAnd());
+		return operands.size() == 1 ? operands.get(0)
+				: new AdvertisingMatchers.Or(operands.toArray(new AdvertisingMatcher[0]));
+	}
+
+	@NonNull
+	private AdvertisingMatcher parseAnd() {
+		final List<AdvertisingMatcher> operands = new ArrayList<>();
+		operands.add(parseUnary());
+		while (accept("&&") || acceptKeyword("and"))
+			operands.add(parseUnary());
+		return operands.size() == 1 ? operands.get(0)
+				: new AdvertisingMatchers.And(operands.toArray(new AdvertisingMatcher[0]));
+	}
+
+	@NonNull
+	private AdvertisingMatcher parseUnary() {
+		if (accept("!") || acceptKeyword("not"))
+			return new AdvertisingMatchers.Not(parseUnary());
+		if (accept("(")) {
+			final AdvertisingMatcher matcher = parseOr();
+			expect(")");
+			return matcher;
+		}
+		return parsePredicate();
+	}
+
+	@NonNull
+	private AdvertisingMatcher parsePredicate() {
+		final int start = skipWhitespace();
+		final String name = readIdentifier().toLowerCase(Locale.US);
+		expect("(");
+		final List<String> arguments = new ArrayList<>();
+		if (!accept(")")) {
+			do {
+				arguments.add(readArgument());
+			} while (accept(","));
+			expect(")");
+		}
+
+		try {
+			switch (name) {
+				case "uuid":
+					checkArguments(name, arguments, 1, 1);
+					return new AdvertisingMatchers.Uuid(parseUuid(arguments.get(0)));
+				case "manufacturer": {
+					checkArguments(name, arguments, 1, 3);
+					final int companyId = parseInt(arguments.get(0));
+					if (companyId < 0 || companyId > 0xFFFF)
+						throw new IllegalArgumentException("Invalid company ID: " + arguments.get(0));
+					final byte[] prefix = arguments.size() > 1 ? parseHex(arguments.get(1)) : new byte[0];
+					final byte[] mask;
+					if (arguments.size() > 2) {
+						mask = parseHex(arguments.get(2));
+					} else {
+						mask = new byte[prefix.length];
+						Arrays.fill(mask, (byte) 0xFF);
+					}
+					return new AdvertisingMatchers.Manufacturer(companyId, prefix, mask);
+				}
+				case "name":
+					checkArguments(name, arguments, 1, 1);
+					return new AdvertisingMatchers.NamePrefix(arguments.get(0));
+				case "name_regex":
+					checkArguments(name, arguments, 1, 1);
+					return new AdvertisingMatchers.NameRegex(Pattern.compile(arguments.get(0)));
+				case "rssi":
+					checkArguments(name, arguments, 1, 2);
+					return new AdvertisingMatchers.Rssi(parseInt(arguments.get(0)),
+							arguments.size() > 1 ? parseInt(arguments.get(1)) : Byte.MAX_VALUE);
+				default:
+					throw new IllegalArgumentException("Unknown predicate: " + name);
+			}
+		} catch (final PatternSyntaxException e) {
+			throw error(start, "Invalid regular expression: " + e.getDescription());
+		} catch (final IllegalArgumentException e) {
+			throw error(start, e.getMessage());
+		}
+	}
+
+	private static void checkArguments(@NonNull final String name, @NonNull final List<String> arguments,
+									   final int min, final int max) {
+		if (arguments.size() < min || arguments.size() > max)
+			throw new IllegalArgumentException(name + "() takes " + (min == max ? min : min + " to " + max)
+					+ " argument(s), " + arguments.size() + " given");
+	}
+
+	@NonNull
+	private static UUID parseUuid(@NonNull final String value) {
+		switch (value.length()) {
+			case 4:
+			case 8:
+				final long shortUuid = Long.parseLong(value, 16);
+				return new UUID(shortUuid << 32 | 0x1000L, 0x800000805F9B34FBL);
+			case 36:
+				return UUID.fromString(value);
+			default:
+				throw new IllegalArgumentException("Invalid UUID: " + value);
+		}
+	}
+
+	private static int parseInt(@NonNull final String value) {
+		if (value.startsWith("0x") || value.startsWith("0X"))
+			return Integer.parseInt(value.substring(2), 16);
+		return Integer.parseInt(value);
+	}
+
+	@NonNull
+	private static byte[] parseHex(@NonNull final String value) {
+		final String hex = value.startsWith("0x") || value.startsWith("0X") ? value.substring(2) : value;
+		if (hex.length() % 2 != 0)
+			throw new IllegalArgumentException("Invalid hex data: " + value);
+		final byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			final int high = Character.digit(hex.charAt(2 * i), 16);
+			final int low = Character.digit(hex.charAt(2 * i + 1), 16);
+			if (high < 0 || low < 0)
+				throw new IllegalArgumentException("Invalid hex data: " + value);
+			bytes[i] = (byte) (high << 4 | low);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Reads a quoted string, with <code>\"</code> and <code>\\</code> escapes, or an unquoted
+	 * argument up to the next comma or closing parenthesis.
+	 */
+	@NonNull
+	private String readArgument() {
+		skipWhitespace();
+		if (position < expression.length() && expression.charAt(position) == '"') {
+			final StringBuilder builder = new StringBuilder();
+			position++;
+			while (position < expression.length()) {
+				char c = expression.charAt(position++);
+				if (c == '"')
+					return builder.toString();
+				if (c == '\\' && position < expression.length())
+					c = expression.charAt(position++);
+				builder.append(c);
+			}
+			throw error("Unterminated string");
+		}
+		final int start = position;
+		while (position < expression.length()
+				&& expression.charAt(position) != ',' && expression.charAt(position) != ')')
+			position++;
+		final String argument = expression.substring(start, position).trim();
+		if (argument.isEmpty())
+			throw error(start, "Missing argument");
+		return argument;
+	}
+
+	@NonNull
+	private String readIdentifier() {
+		final int start = position;
+		while (position < expression.length()
+				&& (Character.isLetterOrDigit(expression.charAt(position)) || expression.charAt(position) == '_'))
+			position++;
+		if (start == position)
+			throw error(position < expression.length() ? "Unexpected '" + expression.charAt(position) + "'"
+					: "Unexpected end of expression");
+		return expression.substring(start, position);
+	}
+
+	private boolean accept(@NonNull final String token) {
+		skipWhitespace();
+		if (expression.startsWith(token, position)) {
+			position += token.length();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Accepts the keyword, if it's not a prefix of a longer identifier.
+	 */
+	private boolean acceptKeyword(@NonNull final String keyword) {
+		skipWhitespace();
+		final int end = position + keyword.length();
+		if (expression.regionMatches(true, position, keyword, 0, keyword.length())
+				&& (end == expression.length()
+				|| !(Character.isLetterOrDigit(expression.charAt(end)) || expression.charAt(end) == '_'))) {
+			position = end;
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(@NonNull final String token) {
+		if (!accept(token))
+			throw error("Expected '" + token + "'");
+	}
+
+	private int skipWhitespace() {
+		while (position < expression.length() && Character.isWhitespace(expression.charAt(position)))
+			position++;
+		return position;
+	}
+
+	@NonNull
+	private IllegalArgumentException error(@NonNull final String message) {
+		return error(position, message);
+	}
+
+	@NonNull
+	private static IllegalArgumentException error(final int position, @Nullable final String message) {
+		return new IllegalArgumentException(message + " at position " + (position + 1));
+	}
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.profile;
+
+import android.bluetooth.BluetoothDevice;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import no.nordicsemi.android.ble.livedata.state.ConnectionState;
+import no.nordicsemi.android.blinky.adapter.DiscoveredBluetoothDevice;
+import no.nordicsemi.android.blinky.utils.Clock;
+import no.nordicsemi.android.blinky.utils.RateMeter;
+import no.nordicsemi.android.log.LogSession;
+import no.nordicsemi.android.log.Logger;
+
+/**
+ * Keeps a {@link BlinkyManager} for each connected device, keyed by the device address.
+ * <p>
+ * The Android Bluetooth stack handles several pending connections poorly, so only a limited
+ * number of connection attempts are run at once, and the remaining devices wait in a queue
+ * in the order they were requested. An attempt ends when the device is ready, or when it fails
+ * after all retries, and the next queued device is connected.
+ * <p>
+ * The states of all managed devices are combined into a single {@link LiveData}, next to
+ * the connection rate. All methods must be called on the main thread.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class BlinkyConnectionManager {
+	private static final String TAG = "BlinkyConnectionManager";
+	/** The default number of connection attempts run at once. */
+	public static final int DEFAULT_MAX_CONCURRENT_CONNECTS = 2;
+	/** Timeout of a single connection attempt, including service discovery. */
+	private static final long CONNECT_TIMEOUT = 15000; // [ms]
+	/** The window used to calculate the connection rate. */
+	private static final long RATE_WINDOW = 60000; // [ms]
+	/** How often the observed connection rate is updated, the bucket size of the rate meter. */
+	private static final long RATE_UPDATE_INTERVAL = 1000; // [ms]
+
+	/**
+	 * A managed device and the state of its connection attempt.
+	 */
+	private static final class Connection {
+		@NonNull
+		private final BluetoothDevice device;
+		@NonNull
+		private final BlinkyManager manager;
+		/** Whether the device is waiting for a free connection slot. */
+		private boolean queued;
+		/** Whether a connection attempt is in progress. */
+		private boolean pending;
+
+		private Connection(@NonNull final BluetoothDevice device, @NonNull final BlinkyManager manager) {
+			this.device = device;
+			this.manager = manager;
+		}
+	}
+
+	@NonNull
+	private final Context context;
+	private final int maxConcurrentConnects;
+	/** Managed devices, in the order they were first requested. */
+	@NonNull
+	private final Map<String, Connection> connections = new LinkedHashMap<>();
+	@NonNull
+	private final ArrayDeque<Connection> queue = new ArrayDeque<>();
+	private int pendingCount;
+	@NonNull
+	private final MediatorLiveData<Map<String, ConnectionState>> states = new MediatorLiveData<>();
+	@NonNull
+	private final RateMeter connectionRate;
+	@NonNull
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	@NonNull
+	private final ConnectionRateLiveData connectionsPerMinute = new ConnectionRateLiveData();
+	private long connectedCount;
+	private long failedCount;
+
+	/**
+	 * The number of connections per minute. It's updated on each connection and, while
+	 * observed, periodically, as connections leave the window.
+	 */
+	private final class ConnectionRateLiveData extends LiveData<Float> implements Runnable {
+		@Override
+		protected void onActive() {
+			run();
+		}
+
+		@Override
+		protected void onInactive() {
+			handler.removeCallbacks(this);
+		}
+
+		@Override
+		public void run() {
+			update();
+			handler.removeCallbacks(this);
+			handler.postDelayed(this, RATE_UPDATE_INTERVAL);
+		}
+
+		private void update() {
+			final float rate = getConnectionsPerMinute();
+			final Float value = getValue();
+			if (value == null || value != rate)
+				setValue(rate);
+		}
+	}
+
+	public BlinkyConnectionManager(@NonNull final Context context) {
+		this(context, DEFAULT_MAX_CONCURRENT_CONNECTS, Clock.SYSTEM);
+	}
+
+	/**
+	 * Creates the connection manager.
+	 *
+	 * @param context               the context.
+	 * @param maxConcurrentConnects the maximum number of connection attempts run at once.
+	 * @param clock                 the clock used to measure the connection rate.
+	 */
+	public BlinkyConnectionManager(@NonNull final Context context, final int maxConcurrentConnects,
+								   @NonNull final Clock clock) {
+		if (maxConcurrentConnects < 1)
+			throw new IllegalArgumentException("At least one connection attempt must be allowed");
+		this.context = context.getApplicationContext();
+		this.maxConcurrentConnects = maxConcurrentConnects;
+		this.connectionRate = new RateMeter(clock, RATE_WINDOW, 60);
+		states.setValue(Collections.emptyMap());
+	}
+
+	/**
+	 * Connects to the given device, or queues the connection if the maximum number of
+	 * connection attempts is in progress. Does nothing if the device is already connected
+	 * or being connected.
+	 *
+	 * @param target the device to connect to.
+	 * @return The manager of the device.
+	 */
+	@MainThread
+	@NonNull
+	public BlinkyManager connect(@NonNull final DiscoveredBluetoothDevice target) {
+		final String address = target.getAddress();
+		Connection connection = connections.get(address);
+		if (connection == null) {
+			final BlinkyManager manager = new BlinkyManager(context);
+			final LogSession logSession = Logger
+					.newSession(context, null, address, target.getName());
+			manager.setLogger(logSession);
+			connection = new Connection(target.getDevice(), manager);
+			connections.put(address, connection);
+			states.addSource(manager.getState(), state -> publishStates());
+		}
+		if (!connection.queued && !connection.pending && !connection.manager.isConnected()) {
+			connection.queued = true;
+			queue.add(connection);
+			connectNext();
+		}
+		return connection.manager;
+	}
+
+	/**
+	 * Disconnects the device, or cancels its queued connection, and stops managing it.
+	 *
+	 * @param address the device address.
+	 */
+	@MainThread
+	public void disconnect(@NonNull final String address) {
+		final Connection connection = connections.remove(address);
+		if (connection == null)
+			return;
+
+		if (connection.queued) {
+			connection.queued = false;
+			queue.remove(connection);
+		}
+		states.removeSource(connection.manager.getState());
+		connection.manager.disconnect().enqueue();
+		// The result of a cancelled attempt is ignored, so the slot is released immediately.
+		onAttemptFinished(connection);
+		publishStates();
+	}
+
+	/**
+	 * Disconnects all devices and cancels queued connections.
+	 */
+	@MainThread
+	public void disconnectAll() {
+		while (!connections.isEmpty()) {
+			disconnect(connections.keySet().iterator().next());
+		}
+	}
+
+	/**
+	 * Returns the manager of the given device, or null if the device is not managed.
+	 *
+	 * @param address the device address.
+	 */
+	@MainThread
+	@Nullable
+	public BlinkyManager getManager(@NonNull final String address) {
+		final Connection connection = connections.get(address);
+		return connection != null ? connection.manager : null;
+	}
+
+	/**
+	 * Returns the connection states of all managed devices, keyed by the device address,
+	 * in the order they were first requested. A new map is emitted whenever any state changes.
+	 */
+	@NonNull
+	public LiveData<Map<String, ConnectionState>> getConnectionStates() {
+		return states;
+	}
+
+	/**
+	 * Returns the number of connections established per minute, over the last minute.
+	 * While observed, the value is updated every second.
+	 */
+	@NonNull
+	public LiveData<Float> getConnectionRate() {
+		return connectionsPerMinute;
+	}
+
+	/**
+	 * Returns the number of connection attempts in progress.
+	 */
+	public int getPendingCount() {
+		return pendingCount;
+	}
+
+	/**
+	 * Returns the number of devices waiting for a connection attempt.
+	 */
+	public int getQueuedCount() {
+		return queue.size();
+	}
+
+	/**
+	 * Returns the number of connections established since the manager was created.
+	 */
+	public long getConnectedCount() {
+		return connectedCount;
+	}
+
+	/**
+	 * Returns the number of connection attempts that failed after all retries.
+	 */
+	public long getFailedCount() {
+		return failedCount;
+	}
+
+	/**
+	 * Returns the number of connections established per minute, over the last minute.
+	 */
+	public float getConnectionsPerMinute() {
+		return connectionRate.getRate(60000);
+	}
+
+	/**
+	 * Starts connection attempts for queued devices, as long as there are free slots.
+	 */
+	private void connectNext() {
+		while (pendingCount < maxConcurrentConnects && !queue.isEmpty()) {
+			final Connection connection = queue.poll();
+			connection.queued = false;
+			connection.pending = true;
+			pendingCount++;
+			connection.manager.connect(connection.device)
+					.retry(3, 100)
+					.useAutoConnect(false)
+					.timeout(CONNECT_TIMEOUT)
+					.done(device -> {
+						if (connection.pending) {
+							connectedCount++;
+							connectionRate.record();
+							connectionsPerMinute.update();
+							Log.i(TAG, "Connected to " + device.getAddress() + ", "
+									+ getConnectionsPerMinute() + " connections/min");
+						}
+						onAttemptFinished(connection);
+					})
+					.fail((device, status) -> {
+						if (connection.pending) {
+							failedCount++;
+							Log.w(TAG, "Connection to " + device.getAddress() + " failed: " + status);
+						}
+						onAttemptFinished(connection);
+					})
+					.enqueue();
+		}
+	}
+
+	private void onAttemptFinished(@NonNull final Connection connection) {
+		if (!connection.pending)
+			return;
+		connection.pending = false;
+		pendingCount--;
+		connectNext();
+	}
+
+	private void publishStates() {
+		final Map<String, ConnectionState> map = new LinkedHashMap<>(connections.size());
+		for (final Map.Entry<String, Connection> entry : connections.entrySet()) {
+			final ConnectionState state = entry.getValue().manager.getState().getValue();
+			if (state != null)
+				map.put(entry.getKey(), state);
+		}
+		states.setValue(Collections.unmodifiableMap(map));
+	}
+}
@@ -22,11 +22,16 @@
 
 package no.nordicsemi.android.blinky.profile;
 
+import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattService;
 import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -36,11 +41,16 @@ import androidx.lifecycle.MutableLiveData;
 
 import java.util.UUID;
 
+import no.nordicsemi.android.ble.ConnectionPriorityRequest;
+import no.nordicsemi.android.ble.PhyRequest;
 import no.nordicsemi.android.ble.data.Data;
 import no.nordicsemi.android.ble.livedata.ObservableBleManager;
 import no.nordicsemi.android.blinky.profile.callback.BlinkyButtonDataCallback;
 import no.nordicsemi.android.blinky.profile.callback.BlinkyLedDataCallback;
 import no.nordicsemi.android.blinky.profile.data.BlinkyLED;
+import no.nordicsemi.android.blinky.stream.SampleRingBuffer;
+import no.nordicsemi.android.blinky.utils.Clock;
+import no.nordicsemi.android.blinky.utils.RateMeter;
 import no.nordicsemi.android.log.LogContract;
 import no.nordicsemi.android.log.LogSession;
 import no.nordicsemi.android.log.Logger;
@@ -52,9 +62,27 @@ public class BlinkyManager extends ObservableBleManager {
 	private final static UUID LBS_UUID_BUTTON_CHAR = UUID.fromString("00001524-1212-efde-1523-785feabcd123");
 	/** LED characteristic UUID. */
 	private final static UUID LBS_UUID_LED_CHAR = UUID.fromString("00001525-1212-efde-1523-785feabcd123");
+	/** The MTU requested, the largest that fits a single Link Layer packet with Data Length Extension. */
+	private final static int MTU = 247;
+	/** Number of voltage samples kept for consumers, a few seconds at the highest rate. */
+	private final static int SAMPLE_BUFFER_CAPACITY = 1 << 16;
+	/** The button state is published at most this often. The chart shows all samples. */
+	private final static long BUTTON_STATE_INTERVAL = 100; // [ms]
+	/** How often the sample rate is published. */
+	private final static long SAMPLE_RATE_INTERVAL = 1000; // [ms]
 
 	private final MutableLiveData<Integer> ledState = new MutableLiveData<>();	//to change
 	private final MutableLiveData<Integer> buttonState = new MutableLiveData<>();
+	private final MutableLiveData<Float> sampleRate = new MutableLiveData<>();
+	/** Counts voltage samples received over the last 5 seconds. */
+	private final RateMeter sampleMeter = new RateMeter(Clock.SYSTEM, 5000, 10);
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	/** All voltage samples, unlike the button state which only holds the latest one. */
+	private final SampleRingBuffer sampleBuffer =
+			new SampleRingBuffer(SAMPLE_BUFFER_CAPACITY, SampleRingBuffer.OverflowPolicy.DROP_OLDEST);
+	private Integer latestButtonState;
+	private boolean buttonStatePending;
+	private long buttonStatePublished;
 
 	private BluetoothGattCharacteristic buttonCharacteristic, ledCharacteristic;
 	private LogSession logSession;
@@ -74,6 +102,24 @@ public class BlinkyManager extends ObservableBleManager {
 		return buttonState;
 	}
 
+	/**
+	 * Returns the buffer of all voltage samples received, with their timestamps in nanoseconds
+	 * of {@link SystemClock#elapsedRealtimeNanos()}. Each consumer should read them with its own
+	 * {@link SampleRingBuffer#newCursor() cursor}.
+	 */
+	@NonNull
+	public final SampleRingBuffer getSampleBuffer() {
+		return sampleBuffer;
+	}
+
+	/**
+	 * Returns the number of voltage samples received per second, published every second
+	 * while the device is ready, or null when disconnected.
+	 */
+	public final LiveData<Float> getSampleRate() {
+		return sampleRate;
+	}
+
 	@NonNull
 	@Override
 	protected BleManagerGattCallback getGattCallback() {
@@ -116,7 +162,26 @@ public class BlinkyManager extends ObservableBleManager {
 //			buttonState.setValue(pressed);
 		public void onButtonStateChanged(@NonNull final BluetoothDevice device,
 										 final Integer pressed) {
-			buttonState.setValue(pressed);
+			// Publishing every sample would update the UI hundreds of times per second.
+			latestButtonState = pressed;
+			if (!buttonStatePending) {
+				buttonStatePending = true;
+				final long delay = buttonStatePublished + BUTTON_STATE_INTERVAL - SystemClock.elapsedRealtime();
+				handler.postDelayed(buttonStateTask, Math.max(0, delay));
+			}
+		}
+
+		@Override
+		public void onSamplesReceived(@NonNull final BluetoothDevice device,
+									  @NonNull final int[] samples, final int count) {
+			sampleMeter.record(count);
+			try {
+				sampleBuffer.write(samples, count, SystemClock.elapsedRealtimeNanos());
+			} catch (final InterruptedException e) {
+				// Dropping the oldest samples never blocks.
+				Thread.currentThread().interrupt();
+			}
+			super.onSamplesReceived(device, samples, count);
 		}
 
 		@Override
@@ -154,12 +219,44 @@ public class BlinkyManager extends ObservableBleManager {
 		}
 	};
 
+	private final Runnable buttonStateTask = () -> {
+		buttonStatePending = false;
+		buttonStatePublished = SystemClock.elapsedRealtime();
+		buttonState.setValue(latestButtonState);
+	};
+
+	private final Runnable sampleRateTask = new Runnable() {
+		@Override
+		public void run() {
+			sampleRate.setValue(sampleMeter.getRate(1000));
+			handler.postDelayed(this, SAMPLE_RATE_INTERVAL);
+		}
+	};
+
 	/**
 	 * BluetoothGatt callbacks object.
 	 */
 	private class BlinkyBleManagerGattCallback extends BleManagerGattCallback {
 		@Override
 		protected void initialize() {
+			// Negotiate the link before the voltage stream starts. A larger MTU allows packing
+			// more samples into each notification, and the high priority shortens the
+			// connection interval, so that more notifications are sent per second.
+			requestMtu(MTU)
+					.with((device, mtu) -> log(Log.INFO, "MTU set to " + mtu))
+					.fail((device, status) -> log(Log.WARN, "MTU request failed: " + status))
+					.enqueue();
+			requestConnectionPriority(ConnectionPriorityRequest.CONNECTION_PRIORITY_HIGH)
+					.fail((device, status) -> log(Log.WARN, "Connection priority request failed: " + status))
+					.enqueue();
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+					&& BluetoothAdapter.getDefaultAdapter().isLe2MPhySupported()) {
+				setPreferredPhy(PhyRequest.PHY_LE_2M_MASK, PhyRequest.PHY_LE_2M_MASK,
+						PhyRequest.PHY_OPTION_NO_PREFERRED)
+						.with((device, txPhy, rxPhy) -> log(Log.INFO, "PHY TX: " + txPhy + ", RX: " + rxPhy))
+						.fail((device, status) -> log(Log.WARN, "PHY request failed: " + status))
+						.enqueue();
+			}
 			setNotificationCallback(buttonCharacteristic).with(buttonCallback);
 			readCharacteristic(ledCharacteristic).with(ledCallback).enqueue();
 			readCharacteristic(buttonCharacteristic).with(buttonCallback).enqueue();
@@ -184,10 +281,22 @@ public class BlinkyManager extends ObservableBleManager {
 			return supported;
 		}
 
+		@Override
+		protected void onDeviceReady() {
+			super.onDeviceReady();
+			handler.post(() -> {
+				sampleMeter.reset();
+				handler.removeCallbacks(sampleRateTask);
+				handler.postDelayed(sampleRateTask, SAMPLE_RATE_INTERVAL);
+			});
+		}
+
 		@Override
 		protected void onDeviceDisconnected() {
 			buttonCharacteristic = null;
 			ledCharacteristic = null;
+			handler.removeCallbacks(sampleRateTask);
+			sampleRate.postValue(null);
 		}
 	}
 
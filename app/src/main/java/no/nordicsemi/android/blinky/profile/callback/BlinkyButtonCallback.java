@@ -36,4 +36,14 @@ public interface BlinkyButtonCallback {
      */
     //void onButtonStateChanged(@NonNull final BluetoothDevice device, final boolean pressed);
     void onButtonStateChanged(@NonNull final BluetoothDevice device, final Integer pressed);
+
+    /**
+     * Called when a notification with one or more voltage samples has been received.
+     * The array is reused for the next notification.
+     *
+     * @param device  the target device.
+     * @param samples the samples, in the order they were taken.
+     * @param count   number of samples in the array.
+     */
+    void onSamplesReceived(@NonNull final BluetoothDevice device, @NonNull final int[] samples, final int count);
 }
@@ -34,20 +34,29 @@ import no.nordicsemi.android.ble.data.Data;
 public abstract class BlinkyButtonDataCallback implements ProfileDataCallback, BlinkyButtonCallback {
     private static final int STATE_RELEASED = 0x00;
     private static final int STATE_PRESSED = 0x01;
+    /** Size of a single uint16 voltage sample. A notification may pack several of them. */
+    private static final int SAMPLE_SIZE = 2;
+
+    private int[] samples = new int[1];
 
     @Override
     public void onDataReceived(@NonNull final BluetoothDevice device, @NonNull final Data data) {
-        if (data.size() != 2) {
+        final int size = data.size();
+        if (size == 0 || size % SAMPLE_SIZE != 0) {
             onInvalidDataReceived(device, data);
             Log.d("myTag", "wrong Size");
             return;
         }
-        final int state = data.getIntValue(Data.FORMAT_UINT16, 0);
-        if(state == 0)
-        {
-            Log.d("myTag", "receive 0");
+        final byte[] value = data.getValue();
+        final int count = size / SAMPLE_SIZE;
+        if (samples.length < count) {
+            samples = new int[count];
+        }
+        // Little Endian, as Data.FORMAT_UINT16.
+        for (int i = 0, offset = 0; i < count; i++, offset += SAMPLE_SIZE) {
+            samples[i] = (value[offset] & 0xFF) | (value[offset + 1] & 0xFF) << 8;
         }
-        onButtonStateChanged(device, state);
+        onSamplesReceived(device, samples, count);
 //        final int state = data.getIntValue(Data.FORMAT_UINT8, 0);
 //        if (state == STATE_PRESSED) {
 //            onButtonStateChanged(device, true);
@@ -58,4 +67,13 @@ public abstract class BlinkyButtonDataCallback implements ProfileDataCallback, B
 //            onInvalidDataReceived(device, data);
 //        }
     }
+
+    /**
+     * Reports the last sample as the button state. Override to process all samples.
+     */
+    @Override
+    public void onSamplesReceived(@NonNull final BluetoothDevice device,
+                                  @NonNull final int[] samples, final int count) {
+        onButtonStateChanged(device, samples[count - 1]);
+    }
 }
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.scanner;
+
+import android.bluetooth.BluetoothAdapter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import no.nordicsemi.android.blinky.utils.MacAddress;
+import no.nordicsemi.android.support.v18.scanner.ScanRecordParser;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+/**
+ * A persistent cache of recently seen and recently connected devices, kept in a memory-mapped
+ * file of fixed size, so that opening it requires no parsing and writes don't need to be
+ * flushed explicitly.
+ * <p>
+ * The file starts with a 16-byte header: the magic number <code>BLKR</code>, a 16-bit version
+ * and the 16-bit capacity. Slots of {@link #SLOT_SIZE} bytes follow, each with the packed
+ * address, the time the device was last seen in milliseconds of
+ * {@link System#currentTimeMillis()}, RSSI, flags and up to 62 bytes of legacy advertising
+ * data, from which the name is restored. Longer advertising data are not cached.
+ * <p>
+ * When the cache is full, the least recently seen device is replaced, preferring devices that
+ * have never been connected. Slots are looked up linearly, so the capacity should be small.
+ * All methods are synchronized.
+ */
+public class RecentDeviceCache implements Closeable {
+	private static final int MAGIC = 0x424C4B52; // "BLKR"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int RECORD_SIZE = 62;
+	/* package */ static final int SLOT_SIZE = 88;
+
+	// Offsets within a slot.
+	private static final int OFFSET_ID = 0;
+	private static final int OFFSET_TIME = 8;
+	private static final int OFFSET_RSSI = 16;
+	private static final int OFFSET_FLAGS = 17;
+	private static final int OFFSET_RECORD_LENGTH = 18;
+	private static final int OFFSET_RECORD = 19;
+
+	private static final int FLAG_IN_USE = 1;
+	private static final int FLAG_CONNECTED = 1 << 1;
+
+	/** A device restored from the cache. */
+	public static final class Entry {
+		private final long id;
+		private final long time;
+		private final int rssi;
+		private final boolean connected;
+		@Nullable
+		private final byte[] record;
+
+		private Entry(final long id, final long time, final int rssi, final boolean connected,
+					  @Nullable final byte[] record) {
+			this.id = id;
+			this.time = time;
+			this.rssi = rssi;
+			this.connected = connected;
+			this.record = record;
+		}
+
+		/**
+		 * Returns the packed device address.
+		 */
+		public long getId() {
+			return id;
+		}
+
+		/**
+		 * Returns the time the device was last seen, in milliseconds of
+		 * {@link System#currentTimeMillis()}.
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * Returns the last RSSI value, in dBm.
+		 */
+		public int getRssi() {
+			return rssi;
+		}
+
+		/**
+		 * Returns whether the user has connected to the device.
+		 */
+		public boolean isConnected() {
+			return connected;
+		}
+
+		/**
+		 * Creates a scan result with the cached values, as if the device was just scanned.
+		 *
+		 * @param timestampNanos the timestamp of the result.
+		 */
+		@NonNull
+		public ScanResult toScanResult(final long timestampNanos) {
+			return new ScanResult(
+					BluetoothAdapter.getDefaultAdapter().getRemoteDevice(MacAddress.unpack(id)),
+					ScanRecordParser.parse(record), rssi, timestampNanos);
+		}
+	}
+
+	@NonNull
+	private final RandomAccessFile file;
+	@NonNull
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+
+	/**
+	 * Opens the cache, creating the file if it does not exist. A file with a different format
+	 * or capacity is cleared.
+	 *
+	 * @param file     the cache file.
+	 * @param capacity the number of devices kept.
+	 * @throws IOException if the file could not be opened or mapped.
+	 */
+	public RecentDeviceCache(@NonNull final File file, final int capacity) throws IOException {
+		if (capacity <= 0 || capacity > 0xFFFF)
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		this.capacity = capacity;
+		this.file = new RandomAccessFile(file, "rw");
+		final int size = HEADER_SIZE + capacity * SLOT_SIZE;
+		final boolean valid = this.file.length() == size;
+		try {
+			this.file.setLength(size);
+			buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} catch (final IOException e) {
+			this.file.close();
+			throw e;
+		}
+		if (!valid || buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION
+				|| (buffer.getShort(6) & 0xFFFF) != capacity) {
+			clear();
+		}
+	}
+
+	/**
+	 * Returns devices seen or connected at or after the given time, most recently seen first.
+	 *
+	 * @param minTime the oldest time, in milliseconds of {@link System#currentTimeMillis()}.
+	 */
+	@NonNull
+	public synchronized List<Entry> load(final long minTime) {
+		final List<Entry> entries = new ArrayList<>();
+		for (int i = 0; i < capacity; i++) {
+			final int base = HEADER_SIZE + i * SLOT_SIZE;
+			final int flags = buffer.get(base + OFFSET_FLAGS);
+			final long time = buffer.getLong(base + OFFSET_TIME);
+			if ((flags & FLAG_IN_USE) == 0 || time < minTime)
+				continue;
+
+			final int length = buffer.get(base + OFFSET_RECORD_LENGTH) & 0xFF;
+			byte[] record = null;
+			if (length > 0) {
+				record = new byte[length];
+				for (int j = 0; j < length; j++)
+					record[j] = buffer.get(base + OFFSET_RECORD + j);
+			}
+			entries.add(new Entry(buffer.getLong(base + OFFSET_ID), time,
+					buffer.get(base + OFFSET_RSSI), (flags & FLAG_CONNECTED) != 0, record));
+		}
+		// Insertion sort, as the cache is small.
+		for (int i = 1; i < entries.size(); i++) {
+			final Entry entry = entries.get(i);
+			int j = i - 1;
+			while (j >= 0 && entries.get(j).time < entry.time) {
+				entries.set(j + 1, entries.get(j));
+				j--;
+			}
+			entries.set(j + 1, entry);
+		}
+		return entries;
+	}
+
+	/**
+	 * Stores the device, replacing the previous values.
+	 *
+	 * @param id     the packed device address.
+	 * @param time   the time the device was last seen, in milliseconds of
+	 *               {@link System#currentTimeMillis()}.
+	 * @param rssi   the last RSSI value.
+	 * @param record the raw advertising data, or null.
+	 */
+	public synchronized void put(final long id, final long time, final int rssi,
+								 @Nullable final byte[] record) {
+		final int base = findOrReplace(id);
+		final boolean known = (buffer.get(base + OFFSET_FLAGS) & FLAG_IN_USE) != 0
+				&& buffer.getLong(base + OFFSET_ID) == id;
+		// A device may be stored again with an older time when it was seen in a previous session.
+		if (known && buffer.getLong(base + OFFSET_TIME) > time)
+			return;
+
+		final int flags = known ? buffer.get(base + OFFSET_FLAGS) : FLAG_IN_USE;
+		final int length = record != null && record.length <= RECORD_SIZE ? record.length : 0;
+		buffer.putLong(base + OFFSET_ID, id);
+		buffer.putLong(base + OFFSET_TIME, time);
+		buffer.put(base + OFFSET_RSSI, (byte) rssi);
+		buffer.put(base + OFFSET_FLAGS, (byte) flags);
+		buffer.put(base + OFFSET_RECORD_LENGTH, (byte) length);
+		for (int j = 0; j < length; j++)
+			buffer.put(base + OFFSET_RECORD + j, record[j]);
+	}
+
+	/**
+	 * Marks the device as connected, so that it's kept longer than devices only seen.
+	 * Devices not in the cache are ignored.
+	 *
+	 * @param id the packed device address.
+	 */
+	public synchronized void markConnected(final long id) {
+		final int base = find(id);
+		if (base >= 0)
+			buffer.put(base + OFFSET_FLAGS, (byte) (buffer.get(base + OFFSET_FLAGS) | FLAG_CONNECTED));
+	}
+
+	/**
+	 * Removes all devices.
+	 */
+	public synchronized void clear() {
+		for (int i = 0; i < HEADER_SIZE + capacity * SLOT_SIZE; i++)
+			buffer.put(i, (byte) 0);
+		buffer.putInt(0, MAGIC);
+		buffer.putShort(4, (short) VERSION);
+		buffer.putShort(6, (short) capacity);
+	}
+
+	/**
+	 * Writes pending changes to the file and closes it.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		buffer.force();
+		file.close();
+	}
+
+	/**
+	 * Returns the offset of the slot of the device, or -1.
+	 */
+	private int find(final long id) {
+		for (int i = 0; i < capacity; i++) {
+			final int base = HEADER_SIZE + i * SLOT_SIZE;
+			if ((buffer.get(base + OFFSET_FLAGS) & FLAG_IN_USE) != 0
+					&& buffer.getLong(base + OFFSET_ID) == id)
+				return base;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the offset of the slot of the device, a free slot, or the slot to be replaced.
+	 */
+	private int findOrReplace(final long id) {
+		final int base = find(id);
+		if (base >= 0)
+			return base;
+
+		int victim = -1;
+		long victimTime = Long.MAX_VALUE;
+		boolean victimConnected = true;
+		for (int i = 0; i < capacity; i++) {
+			final int slot = HEADER_SIZE + i * SLOT_SIZE;
+			final int flags = buffer.get(slot + OFFSET_FLAGS);
+			if ((flags & FLAG_IN_USE) == 0)
+				return slot;
+			final boolean connected = (flags & FLAG_CONNECTED) != 0;
+			final long time = buffer.getLong(slot + OFFSET_TIME);
+			if ((victimConnected && !connected) || (victimConnected == connected && time < victimTime)) {
+				victim = slot;
+				victimTime = time;
+				victimConnected = connected;
+			}
+		}
+		return victim;
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.scanner;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Recent RSSI samples of a single device, kept in a ring buffer of primitive values, together
+ * with the state of the {@link RssiSmoother} used for the device.
+ * <p>
+ * A history may own its storage, or be a cursor over one slot of arrays shared by many devices,
+ * see {@link #wrap(byte[], byte[], float[], int)}. RSSI values are in range from -127 to 20 dBm,
+ * so they are stored as bytes.
+ */
+@SuppressWarnings("unused")
+public final class RssiHistory {
+	/** The maximum number of samples kept. */
+	public static final int CAPACITY = 8;
+	/** The number of bytes of sample storage used by each slot. */
+	public static final int SAMPLES_PER_SLOT = CAPACITY;
+	/** The number of floats of state storage used by each slot. */
+	public static final int STATE_PER_SLOT = 2;
+
+	// Layout of the meta byte: bits 0-2 head index, bits 3-6 size, bit 7 initialized.
+	private static final int HEAD_MASK = 0x07;
+	private static final int SIZE_SHIFT = 3;
+	private static final int SIZE_MASK = 0x0F;
+	private static final int INITIALIZED = 0x80;
+
+	private byte[] samples;
+	private byte[] meta;
+	private float[] state;
+	private int slot;
+
+	/**
+	 * Creates a history with its own storage.
+	 */
+	public RssiHistory() {
+		wrap(new byte[SAMPLES_PER_SLOT], new byte[1], new float[STATE_PER_SLOT], 0);
+	}
+
+	/**
+	 * Points this history at a slot of shared storage. The arrays must have at least
+	 * {@link #SAMPLES_PER_SLOT}, 1 and {@link #STATE_PER_SLOT} elements per slot, respectively.
+	 * A zeroed slot is an empty history.
+	 *
+	 * @param samples the sample storage.
+	 * @param meta    the head, size and initialized flag storage.
+	 * @param state   the smoother state storage.
+	 * @param slot    the slot index.
+	 * @return This history.
+	 */
+	@NonNull
+	public RssiHistory wrap(@NonNull final byte[] samples, @NonNull final byte[] meta,
+							@NonNull final float[] state, final int slot) {
+		this.samples = samples;
+		this.meta = meta;
+		this.state = state;
+		this.slot = slot;
+		return this;
+	}
+
+	/**
+	 * Adds a new sample, overwriting the oldest one if the buffer is full.
+	 *
+	 * @param rssi the RSSI value in dBm.
+	 */
+	public void add(final int rssi) {
+		final int m = meta[slot];
+		int size = (m >> SIZE_SHIFT) & SIZE_MASK;
+		final int head = size == 0 ? 0 : ((m & HEAD_MASK) + 1) % CAPACITY;
+		samples[slot * SAMPLES_PER_SLOT + head] = (byte) Math.max(-127, Math.min(rssi, 127));
+		if (size < CAPACITY)
+			size++;
+		meta[slot] = (byte) ((m & INITIALIZED) | (size << SIZE_SHIFT) | head);
+	}
+
+	/**
+	 * Returns the number of samples kept, at most {@link #CAPACITY}.
+	 */
+	public int size() {
+		return (meta[slot] >> SIZE_SHIFT) & SIZE_MASK;
+	}
+
+	/**
+	 * Returns a sample from the history.
+	 *
+	 * @param age 0 for the most recent sample, 1 for the previous one, and so on,
+	 *            up to {@link #size()} - 1.
+	 * @return The RSSI value in dBm.
+	 */
+	public int get(final int age) {
+		final int size = size();
+		if (age < 0 || age >= size)
+			throw new IndexOutOfBoundsException("age: " + age + ", size: " + size);
+		final int head = meta[slot] & HEAD_MASK;
+		return samples[slot * SAMPLES_PER_SLOT + (head - age + CAPACITY) % CAPACITY];
+	}
+
+	/**
+	 * Returns whether the smoother state has been initialized. The state is reset when
+	 * the smoother is changed.
+	 */
+	public boolean isInitialized() {
+		return (meta[slot] & INITIALIZED) != 0;
+	}
+
+	/**
+	 * Returns the estimated RSSI value, as stored by the smoother.
+	 */
+	public float getEstimate() {
+		return state[slot * STATE_PER_SLOT];
+	}
+
+	/**
+	 * Returns the variance of the estimate, as stored by the smoother.
+	 */
+	public float getVariance() {
+		return state[slot * STATE_PER_SLOT + 1];
+	}
+
+	/**
+	 * Sets the smoother state and marks it as initialized.
+	 *
+	 * @param estimate the estimated RSSI value.
+	 * @param variance the variance of the estimate, if used by the smoother.
+	 */
+	public void setState(final float estimate, final float variance) {
+		state[slot * STATE_PER_SLOT] = estimate;
+		state[slot * STATE_PER_SLOT + 1] = variance;
+		meta[slot] |= INITIALIZED;
+	}
+
+	/**
+	 * Resets the smoother state. Samples are kept.
+	 */
+	public void resetState() {
+		state[slot * STATE_PER_SLOT] = 0;
+		state[slot * STATE_PER_SLOT + 1] = 0;
+		meta[slot] &= ~INITIALIZED;
+	}
+
+	/**
+	 * Removes all samples and resets the smoother state.
+	 */
+	public void clear() {
+		resetState();
+		meta[slot] = 0;
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.scanner;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Smooths RSSI values of a device. Received signal strength fluctuates by several dBm between
+ * advertising packets, so raw values make the list flicker when used for filtering or sorting.
+ * <p>
+ * Smoothers are stateless; the state of each device is kept in its {@link RssiHistory}, so
+ * a single instance may be shared by all devices.
+ */
+public interface RssiSmoother {
+	/** Exponential moving average with factor 0.3. */
+	RssiSmoother EMA = new Ema(0.3f);
+	/** 1-D Kalman filter tuned for slowly moving devices. */
+	RssiSmoother KALMAN = new Kalman(0.5f, 16.0f);
+	/** Median of the 5 most recent samples. */
+	RssiSmoother MEDIAN = new Median(5);
+
+	/**
+	 * Returns the smoothed RSSI value. The new sample has already been added to the history.
+	 *
+	 * @param history the samples and smoother state of the device.
+	 * @param rssi    the new RSSI value in dBm.
+	 * @return The smoothed RSSI value in dBm.
+	 */
+	float smooth(@NonNull RssiHistory history, int rssi);
+
+	/**
+	 * Exponential moving average. Cheap, but reacts to outliers.
+	 */
+	final class Ema implements RssiSmoother {
+		private final float alpha;
+
+		/**
+		 * @param alpha the weight of the new sample, from 0 to 1.
+		 */
+		public Ema(final float alpha) {
+			if (alpha <= 0 || alpha > 1)
+				throw new IllegalArgumentException("Alpha must be in range (0, 1]");
+			this.alpha = alpha;
+		}
+
+		@Override
+		public float smooth(@NonNull final RssiHistory history, final int rssi) {
+			if (!history.isInitialized()) {
+				history.setState(rssi, 0);
+				return rssi;
+			}
+			final float estimate = history.getEstimate() + alpha * (rssi - history.getEstimate());
+			history.setState(estimate, 0);
+			return estimate;
+		}
+	}
+
+	/**
+	 * One dimensional Kalman filter, assuming the signal strength is constant between samples
+	 * apart from the process noise.
+	 */
+	final class Kalman implements RssiSmoother {
+		private final float processNoise;
+		private final float measurementNoise;
+
+		/**
+		 * @param processNoise     the expected variance of the real signal strength between
+		 *                         samples, in dBm<sup>2</sup>.
+		 * @param measurementNoise the variance of a single measurement, in dBm<sup>2</sup>.
+		 */
+		public Kalman(final float processNoise, final float measurementNoise) {
+			if (processNoise <= 0 || measurementNoise <= 0)
+				throw new IllegalArgumentException("Noise must be positive");
+			this.processNoise = processNoise;
+			this.measurementNoise = measurementNoise;
+		}
+
+		@Override
+		public float smooth(@NonNull final RssiHistory history, final int rssi) {
+			if (!history.isInitialized()) {
+				history.setState(rssi, measurementNoise);
+				return rssi;
+			}
+			final float predictedVariance = history.getVariance() + processNoise;
+			final float gain = predictedVariance / (predictedVariance + measurementNoise);
+			final float estimate = history.getEstimate() + gain * (rssi - history.getEstimate());
+			history.setState(estimate, (1 - gain) * predictedVariance);
+			return estimate;
+		}
+	}
+
+	/**
+	 * Median of the most recent samples. Ignores single outliers, but lags behind
+	 * real changes by half of the window.
+	 */
+	final class Median implements RssiSmoother {
+		private final int window;
+
+		/**
+		 * @param window the number of samples, at most {@link RssiHistory#CAPACITY}.
+		 */
+		public Median(final int window) {
+			if (window < 1 || window > RssiHistory.CAPACITY)
+				throw new IllegalArgumentException("Window must be in range [1, " + RssiHistory.CAPACITY + "]");
+			this.window = window;
+		}
+
+		@Override
+		public float smooth(@NonNull final RssiHistory history, final int rssi) {
+			final int n = Math.min(window, history.size());
+			final float median;
+			if (n % 2 == 1) {
+				median = select(history, n, n / 2);
+			} else {
+				median = (select(history, n, n / 2 - 1) + select(history, n, n / 2)) / 2.0f;
+			}
+			history.setState(median, 0);
+			return median;
+		}
+
+		/**
+		 * Returns the k-th smallest of the n most recent samples. The window is tiny, so
+		 * counting is faster than sorting a copy, and doesn't allocate.
+		 */
+		private static int select(@NonNull final RssiHistory history, final int n, final int k) {
+			for (int i = 0; i < n; i++) {
+				final int value = history.get(i);
+				int less = 0;
+				int equal = 0;
+				for (int j = 0; j < n; j++) {
+					final int other = history.get(j);
+					if (other < value)
+						less++;
+					else if (other == value)
+						equal++;
+				}
+				if (less <= k && k < less + equal)
+					return value;
+			}
+			throw new IllegalStateException();
+		}
+	}
+}
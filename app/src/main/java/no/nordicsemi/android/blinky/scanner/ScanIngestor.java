@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.scanner;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import no.nordicsemi.android.blinky.utils.LongHashMap;
+import no.nordicsemi.android.blinky.utils.MacAddress;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+/**
+ * Moves processing of scan results off the scan callback thread.
+ * <p>
+ * Results are queued in a lock-free queue. The first result queued schedules a tick on the
+ * ingestion thread after the coalescing window. The tick drains the queue, merges results
+ * from the same device, and passes them to the {@link Listener} in a single call, so the
+ * device list is locked and updated once per window instead of once per result.
+ * <p>
+ * When results are merged, only the last one is kept, but RSSI values of the previous ones are
+ * preserved, so that RSSI smoothing sees every packet.
+ * <p>
+ * If a {@link ScanRecorder} is set, every result is recorded before merging.
+ */
+@SuppressWarnings("unused")
+public class ScanIngestor {
+	private static final String TAG = "ScanIngestor";
+	/** The default coalescing window. */
+	public static final long DEFAULT_WINDOW = 100; // [ms]
+
+	public interface Listener {
+		/**
+		 * Called on the ingestion thread with results received during the window, at most
+		 * one per device, in order of arrival of the first result from each device.
+		 * The list and its elements are reused and are valid only during this call.
+		 *
+		 * @param results the coalesced results.
+		 */
+		@WorkerThread
+		void onResultsIngested(@NonNull List<CoalescedResult> results);
+	}
+
+	/**
+	 * The last scan result from a device, together with RSSI values of the results
+	 * merged into it.
+	 */
+	public static final class CoalescedResult {
+		/** The number of RSSI values of merged results kept. Older values are dropped. */
+		private static final int MAX_PREVIOUS_RSSI = RssiHistory.CAPACITY - 1;
+
+		private ScanResult result;
+		private final int[] previousRssi = new int[MAX_PREVIOUS_RSSI];
+		private int previousRssiCount;
+
+		private CoalescedResult() {
+			// empty
+		}
+
+		/**
+		 * Returns the last result received from the device.
+		 */
+		@NonNull
+		public ScanResult getResult() {
+			return result;
+		}
+
+		/**
+		 * Returns the number of RSSI values of results merged into this one.
+		 */
+		public int getPreviousRssiCount() {
+			return previousRssiCount;
+		}
+
+		/**
+		 * Returns the RSSI value of a merged result.
+		 *
+		 * @param index 0 for the oldest merged result kept.
+		 * @return The RSSI value in dBm.
+		 */
+		public int getPreviousRssi(final int index) {
+			if (index < 0 || index >= previousRssiCount)
+				throw new IndexOutOfBoundsException("index: " + index + ", count: " + previousRssiCount);
+			return previousRssi[index];
+		}
+
+		private void merge(@NonNull final ScanResult newResult) {
+			if (previousRssiCount == MAX_PREVIOUS_RSSI) {
+				System.arraycopy(previousRssi, 1, previousRssi, 0, MAX_PREVIOUS_RSSI - 1);
+				previousRssiCount--;
+			}
+			previousRssi[previousRssiCount++] = result.getRssi();
+			result = newResult;
+		}
+	}
+
+	@NonNull
+	private final ConcurrentLinkedQueue<ScanResult> queue = new ConcurrentLinkedQueue<>();
+	@NonNull
+	private final AtomicBoolean tickScheduled = new AtomicBoolean();
+	@NonNull
+	private final HandlerThread thread;
+	@NonNull
+	private final Handler handler;
+	@NonNull
+	private final Listener listener;
+	private final long window;
+
+	// The following fields are accessed only on the ingestion thread.
+	@NonNull
+	private final LongHashMap<CoalescedResult> pending = new LongHashMap<>();
+	@NonNull
+	private final List<CoalescedResult> batch = new ArrayList<>();
+	@NonNull
+	private final ArrayDeque<CoalescedResult> pool = new ArrayDeque<>();
+	@Nullable
+	private ScanRecorder recorder;
+
+	private volatile long receivedCount;
+	private volatile long mergedCount;
+
+	/**
+	 * Creates the ingestor and starts its thread.
+	 *
+	 * @param window   the coalescing window, in milliseconds.
+	 * @param listener the listener called on the ingestion thread.
+	 */
+	public ScanIngestor(final long window, @NonNull final Listener listener) {
+		this.window = window;
+		this.listener = listener;
+		thread = new HandlerThread("ScanIngestor", Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+		handler = new Handler(thread.getLooper());
+	}
+
+	/**
+	 * Queues the scan result. Never blocks.
+	 *
+	 * @param result the scan result.
+	 */
+	@AnyThread
+	public void submit(@NonNull final ScanResult result) {
+		queue.offer(result);
+		scheduleTick();
+	}
+
+	/**
+	 * Queues the scan results. Never blocks.
+	 *
+	 * @param results the scan results.
+	 */
+	@AnyThread
+	public void submit(@NonNull final List<ScanResult> results) {
+		for (int i = 0; i < results.size(); i++)
+			queue.offer(results.get(i));
+		scheduleTick();
+	}
+
+	/**
+	 * Runs the task on the ingestion thread, after results queued so far have been passed
+	 * to the listener.
+	 *
+	 * @param task the task to run.
+	 */
+	@AnyThread
+	public void post(@NonNull final Runnable task) {
+		handler.post(() -> {
+			ingest();
+			task.run();
+		});
+	}
+
+	/**
+	 * Starts recording all results, or stops recording if null is given. Results queued before
+	 * this call are written by the previous recorder, which is then closed.
+	 *
+	 * @param recorder the recorder, or null.
+	 */
+	@AnyThread
+	public void setRecorder(@Nullable final ScanRecorder recorder) {
+		post(() -> {
+			closeRecorder();
+			this.recorder = recorder;
+		});
+	}
+
+	/**
+	 * Drops results that have not been passed to the listener yet.
+	 */
+	@AnyThread
+	public void clear() {
+		queue.clear();
+	}
+
+	/**
+	 * Stops the ingestion thread. Queued results are dropped and the recorder, if any,
+	 * is closed.
+	 */
+	@AnyThread
+	public void quit() {
+		queue.clear();
+		handler.post(() -> {
+			closeRecorder();
+			thread.quit();
+		});
+	}
+
+	/**
+	 * Returns the number of results received.
+	 */
+	public long getReceivedCount() {
+		return receivedCount;
+	}
+
+	/**
+	 * Returns the number of results merged into a later result from the same device.
+	 */
+	public long getMergedCount() {
+		return mergedCount;
+	}
+
+	private void scheduleTick() {
+		if (tickScheduled.compareAndSet(false, true))
+			handler.postDelayed(tick, window);
+	}
+
+	private final Runnable tick = this::ingest;
+
+	@WorkerThread
+	private void ingest() {
+		// Cleared before draining, so that results queued meanwhile schedule another tick.
+		tickScheduled.set(false);
+
+		int received = 0;
+		int merged = 0;
+		ScanResult result;
+		while ((result = queue.poll()) != null) {
+			received++;
+			if (recorder != null)
+				record(result);
+			final long id = MacAddress.pack(result.getDevice().getAddress());
+			CoalescedResult coalesced = pending.get(id);
+			if (coalesced == null) {
+				coalesced = pool.isEmpty() ? new CoalescedResult() : pool.pop();
+				coalesced.result = result;
+				pending.put(id, coalesced);
+				batch.add(coalesced);
+			} else {
+				coalesced.merge(result);
+				merged++;
+			}
+		}
+		if (batch.isEmpty())
+			return;
+
+		receivedCount += received;
+		mergedCount += merged;
+		try {
+			listener.onResultsIngested(batch);
+		} finally {
+			for (int i = 0; i < batch.size(); i++) {
+				final CoalescedResult coalesced = batch.get(i);
+				coalesced.result = null;
+				coalesced.previousRssiCount = 0;
+				pool.push(coalesced);
+			}
+			batch.clear();
+			pending.clear();
+		}
+	}
+
+	@WorkerThread
+	private void record(@NonNull final ScanResult result) {
+		try {
+			recorder.write(result);
+		} catch (final IOException e) {
+			Log.w(TAG, "Recording failed after " + recorder.getCount() + " results", e);
+			closeRecorder();
+		}
+	}
+
+	@WorkerThread
+	private void closeRecorder() {
+		if (recorder == null)
+			return;
+		try {
+			recorder.close();
+			Log.d(TAG, "Recorded " + recorder.getCount() + " results");
+		} catch (final IOException e) {
+			Log.w(TAG, "Closing recording failed", e);
+		}
+		recorder = null;
+	}
+}
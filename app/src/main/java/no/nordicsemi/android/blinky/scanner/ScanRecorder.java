@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.scanner;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import no.nordicsemi.android.blinky.utils.MacAddress;
+import no.nordicsemi.android.support.v18.scanner.ScanRecord;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+/**
+ * Writes scan results to a binary file, so that a scan session can be replayed later using
+ * {@link ScanReplayer}.
+ * <p>
+ * The file starts with the magic number <code>BLKS</code> and a 16-bit version. Each result
+ * follows as a big-endian entry of 24 bytes and the raw advertising data:
+ * <pre>
+ * timestamp [ns]           8 bytes
+ * address                  6 bytes
+ * RSSI [dBm]               1 byte, signed
+ * event type               2 bytes
+ * primary, secondary PHY   1 byte, 4 bits each
+ * advertising SID          1 byte
+ * TX power [dBm]           1 byte, signed
+ * periodic adv. interval   2 bytes
+ * data length              2 bytes
+ * data                     data length bytes
+ * </pre>
+ * This class is not thread safe. It's used by {@link ScanIngestor} on the ingestion thread.
+ */
+public class ScanRecorder implements Closeable {
+	/* package */ static final int MAGIC = 0x424C4B53; // "BLKS"
+	/* package */ static final int VERSION = 1;
+
+	@NonNull
+	private final DataOutputStream output;
+	private long count;
+
+	/**
+	 * Creates the file, overwriting existing one, and writes the header.
+	 *
+	 * @param file the file to write results to.
+	 * @throws IOException if the file could not be created.
+	 */
+	public ScanRecorder(@NonNull final File file) throws IOException {
+		output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		output.writeInt(MAGIC);
+		output.writeShort(VERSION);
+	}
+
+	/**
+	 * Appends the scan result to the file.
+	 *
+	 * @param result the scan result.
+	 * @throws IOException if writing failed.
+	 */
+	@WorkerThread
+	public void write(@NonNull final ScanResult result) throws IOException {
+		final long id = MacAddress.pack(result.getDevice().getAddress());
+		final ScanRecord record = result.getScanRecord();
+		final byte[] bytes = record != null ? record.getBytes() : null;
+
+		output.writeLong(result.getTimestampNanos());
+		output.writeShort((int) (id >>> 32));
+		output.writeInt((int) id);
+		output.writeByte(result.getRssi());
+		output.writeShort(result.getEventType());
+		output.writeByte(result.getPrimaryPhy() << 4 | result.getSecondaryPhy());
+		output.writeByte(result.getAdvertisingSid());
+		output.writeByte(result.getTxPower());
+		output.writeShort(result.getPeriodicAdvertisingInterval());
+		if (bytes != null) {
+			output.writeShort(bytes.length);
+			output.write(bytes);
+		} else {
+			output.writeShort(0);
+		}
+		count++;
+	}
+
+	/**
+	 * Returns the number of results written.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Flushes buffered results and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		output.close();
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.scanner;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import no.nordicsemi.android.blinky.utils.Clock;
+import no.nordicsemi.android.blinky.utils.LongHashMap;
+import no.nordicsemi.android.blinky.utils.MacAddress;
+import no.nordicsemi.android.support.v18.scanner.ScanCallback;
+import no.nordicsemi.android.support.v18.scanner.ScanRecordParser;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+import no.nordicsemi.android.support.v18.scanner.ScanSettings;
+
+/**
+ * Feeds scan results recorded by {@link ScanRecorder} to a {@link ScanCallback}, as if they
+ * were received from the scanner.
+ * <p>
+ * Results are replayed with their original spacing, scaled by the speed factor, each in a
+ * separate {@link ScanCallback#onScanResult(int, ScanResult)} call. With
+ * {@link #SPEED_UNLIMITED} results are delivered as fast as they can be read, in batches of
+ * {@link #BATCH_SIZE}, using {@link ScanCallback#onBatchScanResults(List)}.
+ * <p>
+ * Timestamps are shifted to the given clock, so that replayed devices expire as if
+ * they were scanned live.
+ */
+public class ScanReplayer {
+	/** Replays results as fast as possible. */
+	public static final float SPEED_UNLIMITED = 0;
+	/** The number of results per batch when replaying with {@link #SPEED_UNLIMITED}. */
+	public static final int BATCH_SIZE = 1000;
+
+	@NonNull
+	private final File file;
+	@NonNull
+	private final ScanCallback callback;
+	@NonNull
+	private final Clock clock;
+	private final float speed;
+	/** Devices are reused, so that each result doesn't create a new one. */
+	@NonNull
+	private final LongHashMap<BluetoothDevice> devices = new LongHashMap<>();
+	private volatile boolean cancelled;
+
+	/**
+	 * Creates the replayer.
+	 *
+	 * @param file     the file written by {@link ScanRecorder}.
+	 * @param speed    the speed factor, 1 for real time, or {@link #SPEED_UNLIMITED}.
+	 * @param clock    the clock used for pacing and timestamps.
+	 * @param callback the callback to deliver results to.
+	 */
+	public ScanReplayer(@NonNull final File file, final float speed,
+						@NonNull final Clock clock, @NonNull final ScanCallback callback) {
+		if (speed < 0)
+			throw new IllegalArgumentException("Invalid speed: " + speed);
+		this.file = file;
+		this.speed = speed;
+		this.clock = clock;
+		this.callback = callback;
+	}
+
+	/**
+	 * Replays the file on the calling thread. Returns when all results were delivered
+	 * or the replay has been cancelled.
+	 *
+	 * @return The number of results delivered.
+	 * @throws IOException if the file could not be read, or is not a scan recording.
+	 */
+	@WorkerThread
+	public long replay() throws IOException {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (input.readInt() != ScanRecorder.MAGIC)
+				throw new IOException("Not a scan recording: " + file);
+			final int version = input.readUnsignedShort();
+			if (version != ScanRecorder.VERSION)
+				throw new IOException("Unsupported scan recording version: " + version);
+
+			final long startNanos = clock.elapsedRealtime() * 1_000_000L;
+			long firstTimestamp = 0;
+			long count = 0;
+			List<ScanResult> batch = new ArrayList<>(BATCH_SIZE);
+			while (!cancelled) {
+				final long timestamp;
+				try {
+					timestamp = input.readLong();
+				} catch (final EOFException e) {
+					break;
+				}
+				final long id = (long) input.readUnsignedShort() << 32 | input.readInt() & 0xFFFFFFFFL;
+				final int rssi = input.readByte();
+				final int eventType = input.readUnsignedShort();
+				final int phy = input.readUnsignedByte();
+				final int advertisingSid = input.readUnsignedByte();
+				final int txPower = input.readByte();
+				final int periodicAdvertisingInterval = input.readUnsignedShort();
+				final int length = input.readUnsignedShort();
+				final byte[] bytes = length > 0 ? new byte[length] : null;
+				if (bytes != null)
+					input.readFully(bytes);
+
+				if (count == 0)
+					firstTimestamp = timestamp;
+				count++;
+
+				if (speed == SPEED_UNLIMITED) {
+					batch.add(createResult(id, eventType, phy, advertisingSid, txPower, rssi,
+							periodicAdvertisingInterval, bytes, clock.elapsedRealtime() * 1_000_000L));
+					if (batch.size() == BATCH_SIZE) {
+						callback.onBatchScanResults(batch);
+						batch = new ArrayList<>(BATCH_SIZE);
+					}
+				} else {
+					final long replayTimestamp = startNanos + (long) ((timestamp - firstTimestamp) / speed);
+					if (!sleepUntil(replayTimestamp / 1_000_000L))
+						break;
+					callback.onScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES,
+							createResult(id, eventType, phy, advertisingSid, txPower, rssi,
+									periodicAdvertisingInterval, bytes, replayTimestamp));
+				}
+			}
+			if (!batch.isEmpty() && !cancelled)
+				callback.onBatchScanResults(batch);
+			return count;
+		}
+	}
+
+	/**
+	 * Stops the replay. Results being delivered are not interrupted.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	@NonNull
+	private ScanResult createResult(final long id, final int eventType, final int phy,
+									final int advertisingSid, final int txPower, final int rssi,
+									final int periodicAdvertisingInterval, final byte[] bytes,
+									final long timestampNanos) {
+		BluetoothDevice device = devices.get(id);
+		if (device == null) {
+			device = BluetoothAdapter.getDefaultAdapter().getRemoteDevice(MacAddress.unpack(id));
+			devices.put(id, device);
+		}
+		return new ScanResult(device, eventType, phy >>> 4, phy & 0x0F, advertisingSid, txPower,
+				rssi, periodicAdvertisingInterval, ScanRecordParser.parse(bytes), timestampNanos);
+	}
+
+	/**
+	 * Sleeps until the given time.
+	 *
+	 * @return False, if the replay was cancelled or the thread was interrupted meanwhile.
+	 */
+	private boolean sleepUntil(final long time) {
+		long delay;
+		while (!cancelled && (delay = time - clock.elapsedRealtime()) > 0) {
+			try {
+				Thread.sleep(delay);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return !cancelled;
+	}
+}
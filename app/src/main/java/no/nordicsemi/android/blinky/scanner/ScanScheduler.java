@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.scanner;
+
+import androidx.annotation.NonNull;
+
+import no.nordicsemi.android.blinky.utils.Clock;
+import no.nordicsemi.android.support.v18.scanner.ScanSettings;
+
+/**
+ * Decides which scan mode and report delay should be used, based on how often new devices
+ * appear, how long ago the last new device was found, and the battery level.
+ * <p>
+ * Scanning starts with a low latency burst. As long as new devices keep appearing the burst
+ * continues, after that the scanner switches to balanced mode, and when nothing new
+ * has been found for a while, to low power mode. Low battery lowers the policy by one level,
+ * while charging prevents the low power mode.
+ * <p>
+ * Changing the policy requires restarting the scan, and Android throttles apps that start
+ * scanning too often, so each policy is kept for at least {@link #MIN_DWELL_TIME}.
+ */
+public class ScanScheduler {
+	/** Duration of the low latency burst after the scan was started. */
+	private static final long INITIAL_BURST_TIME = 10_000; // [ms]
+	/** Time window in which the discovery rate is calculated. */
+	private static final long RATE_WINDOW = 30_000; // [ms]
+	/** Number of new devices within {@link #RATE_WINDOW} to keep the low latency mode. */
+	private static final int BURST_RATE = 2;
+	/** The low latency mode is kept for this long after the last new device. */
+	private static final long BURST_TIME = 10_000; // [ms]
+	/** After this time without new devices the scanner switches to low power mode. */
+	private static final long SETTLE_TIME = 60_000; // [ms]
+	/** Minimum time between policy changes. */
+	private static final long MIN_DWELL_TIME = 10_000; // [ms]
+	/** Battery level, in percent, below which scanning is less aggressive. */
+	private static final int LOW_BATTERY_LEVEL = 20;
+	/** Number of recent discovery times kept to calculate the rate. */
+	private static final int HISTORY_SIZE = 16;
+
+	public enum Policy {
+		LOW_LATENCY(ScanSettings.SCAN_MODE_LOW_LATENCY, 500),
+		BALANCED(ScanSettings.SCAN_MODE_BALANCED, 2000),
+		LOW_POWER(ScanSettings.SCAN_MODE_LOW_POWER, 5000);
+
+		private final int scanMode;
+		private final long reportDelay;
+
+		Policy(final int scanMode, final long reportDelay) {
+			this.scanMode = scanMode;
+			this.reportDelay = reportDelay;
+		}
+
+		/**
+		 * Returns one of the ScanSettings.SCAN_MODE_* constants.
+		 */
+		public int getScanMode() {
+			return scanMode;
+		}
+
+		/**
+		 * Returns the report delay, in milliseconds.
+		 */
+		public long getReportDelay() {
+			return reportDelay;
+		}
+	}
+
+	@NonNull
+	private final Clock clock;
+	/** Ring buffer with times when new devices were found. */
+	private final long[] discoveryTimes = new long[HISTORY_SIZE];
+	private int discoveryIndex;
+	private int discoveryCount;
+	private long startTime;
+	private long lastDiscoveryTime;
+	private long lastChangeTime;
+	@NonNull
+	private Policy policy = Policy.LOW_LATENCY;
+	private int batteryLevel = 100;
+	private boolean charging;
+
+	public ScanScheduler(@NonNull final Clock clock) {
+		this.clock = clock;
+		reset();
+	}
+
+	/**
+	 * Starts a new low latency burst. Should be called when scanning is started.
+	 */
+	public synchronized void reset() {
+		startTime = lastChangeTime = lastDiscoveryTime = clock.elapsedRealtime();
+		discoveryIndex = 0;
+		discoveryCount = 0;
+		policy = Policy.LOW_LATENCY;
+	}
+
+	/**
+	 * Records that new devices have been found.
+	 *
+	 * @param count number of new devices.
+	 */
+	public synchronized void onDevicesDiscovered(final int count) {
+		if (count <= 0)
+			return;
+		final long now = clock.elapsedRealtime();
+		lastDiscoveryTime = now;
+		for (int i = 0; i < Math.min(count, HISTORY_SIZE); i++) {
+			discoveryTimes[discoveryIndex] = now;
+			discoveryIndex = (discoveryIndex + 1) % HISTORY_SIZE;
+			if (discoveryCount < HISTORY_SIZE)
+				discoveryCount++;
+		}
+	}
+
+	/**
+	 * Updates the battery state.
+	 *
+	 * @param level    battery level, in percent.
+	 * @param charging whether the device is connected to a power source.
+	 */
+	public synchronized void setBatteryState(final int level, final boolean charging) {
+		this.batteryLevel = level;
+		this.charging = charging;
+	}
+
+	/**
+	 * Returns the policy that should be currently used.
+	 */
+	@NonNull
+	public synchronized Policy evaluate() {
+		final long now = clock.elapsedRealtime();
+		if (now - lastChangeTime < MIN_DWELL_TIME)
+			return policy;
+
+		final Policy target = adjustForBattery(getTargetPolicy(now));
+		if (target != policy) {
+			policy = target;
+			lastChangeTime = now;
+		}
+		return policy;
+	}
+
+	@NonNull
+	private Policy getTargetPolicy(final long now) {
+		if (now - startTime < INITIAL_BURST_TIME)
+			return Policy.LOW_LATENCY;
+
+		final long sinceLastDiscovery = now - lastDiscoveryTime;
+		if (sinceLastDiscovery < BURST_TIME && getRecentDiscoveries(now) >= BURST_RATE)
+			return Policy.LOW_LATENCY;
+		if (sinceLastDiscovery < SETTLE_TIME)
+			return Policy.BALANCED;
+		return Policy.LOW_POWER;
+	}
+
+	@NonNull
+	private Policy adjustForBattery(@NonNull final Policy target) {
+		if (charging)
+			return target == Policy.LOW_POWER ? Policy.BALANCED : target;
+		if (batteryLevel < LOW_BATTERY_LEVEL)
+			return target == Policy.LOW_LATENCY ? Policy.BALANCED : Policy.LOW_POWER;
+		return target;
+	}
+
+	/**
+	 * Returns the number of new devices found within the {@link #RATE_WINDOW}. The history is
+	 * walked back from the most recent discovery, until a discovery older than the window.
+	 */
+	private int getRecentDiscoveries(final long now) {
+		int count = 0;
+		int index = discoveryIndex;
+		while (count < discoveryCount) {
+			index = (index + HISTORY_SIZE - 1) % HISTORY_SIZE;
+			if (now - discoveryTimes[index] >= RATE_WINDOW)
+				break;
+			count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.scanner;
+
+/**
+ * Counts scan callbacks and scan results delivered to the app.
+ * <p>
+ * Without batching each scan result wakes the app with a separate callback. With batching,
+ * hardware or software, many results are delivered at once, and the difference between the
+ * number of results and callbacks is the number of callbacks avoided. Advertisements dropped
+ * by controller-side filters never reach the app, so they are not counted.
+ */
+public class ScanStatistics {
+	private long callbackCount;
+	private long resultCount;
+
+	/**
+	 * Records a scan callback.
+	 *
+	 * @param results number of results delivered in the callback.
+	 */
+	public synchronized void onCallback(final int results) {
+		callbackCount++;
+		resultCount += results;
+	}
+
+	public synchronized void reset() {
+		callbackCount = 0;
+		resultCount = 0;
+	}
+
+	/**
+	 * Returns the number of scan callbacks received.
+	 */
+	public synchronized long getCallbackCount() {
+		return callbackCount;
+	}
+
+	/**
+	 * Returns the number of scan results received.
+	 */
+	public synchronized long getResultCount() {
+		return resultCount;
+	}
+
+	/**
+	 * Returns the number of callbacks avoided thanks to batching.
+	 */
+	public synchronized long getAvoidedCallbackCount() {
+		return resultCount - callbackCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "callbacks: " + callbackCount + ", results: " + resultCount
+				+ ", avoided: " + (resultCount - callbackCount);
+	}
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.stream;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Decimates the voltage sample stream for a chart, on a background thread.
+ * <p>
+ * Once per frame the decimator reads all new samples from its cursor into a
+ * {@link MinMaxHistory} and, if a chart is attached, calculates the minimum and maximum of
+ * each pixel column of the current viewport into a back buffer, which is then swapped with
+ * the front buffer. The chart copies the front buffer into its own preallocated {@link Frame}
+ * when drawing, so drawing never waits for decimation, and costs the same at any sample rate.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class ChartDecimator {
+	/** The decimation period, matching 60 frames per second. */
+	private static final long FRAME_INTERVAL = 16; // [ms]
+	/** The reading period while no chart is attached, well below the sample buffer capacity. */
+	private static final long IDLE_INTERVAL = 250; // [ms]
+	private static final int READ_CHUNK = 4096;
+
+	/**
+	 * A decimated chart: the minimum and maximum sample of each pixel column.
+	 */
+	public static final class Frame {
+		/** Minimum of each column, NaN if the column has no samples. */
+		@NonNull
+		public float[] mins = new float[0];
+		/** Maximum of each column, NaN if the column has no samples. */
+		@NonNull
+		public float[] maxs = new float[0];
+		public int width;
+		/** The time at the right edge, in nanoseconds of {@link SystemClock#elapsedRealtimeNanos()}. */
+		public long end;
+		public long span;
+		/** The minimum and maximum of all columns, or NaN if there are no samples. */
+		public float min = Float.NaN;
+		public float max = Float.NaN;
+
+		private void ensureWidth(final int width) {
+			if (mins.length < width) {
+				mins = new float[width];
+				maxs = new float[width];
+			}
+			this.width = width;
+		}
+
+		private void copyTo(@NonNull final Frame target) {
+			target.ensureWidth(width);
+			System.arraycopy(mins, 0, target.mins, 0, width);
+			System.arraycopy(maxs, 0, target.maxs, 0, width);
+			target.end = end;
+			target.span = span;
+			target.min = min;
+			target.max = max;
+		}
+	}
+
+	@NonNull
+	private final SampleRingBuffer.Cursor cursor;
+	@NonNull
+	private final MinMaxHistory history = new MinMaxHistory();
+	@NonNull
+	private final HandlerThread thread;
+	@NonNull
+	private final Handler handler;
+	private final int[] samples = new int[READ_CHUNK];
+	private final long[] timestamps = new long[READ_CHUNK];
+	private final Object lock = new Object();
+	@NonNull
+	private Frame front = new Frame();
+	@NonNull
+	private Frame back = new Frame();
+	private boolean frameReady;
+	private volatile int width;
+	private volatile long span = 10_000_000_000L; // 10 s
+	@Nullable
+	private volatile Runnable listener;
+
+	private final Runnable decimateTask = new Runnable() {
+		@Override
+		public void run() {
+			decimate();
+			handler.postDelayed(this, listener != null ? FRAME_INTERVAL : IDLE_INTERVAL);
+		}
+	};
+
+	/** Decimates a frame now, instead of at the end of the idle period, and continues per frame. */
+	private final Runnable resumeTask = () -> {
+		handler.removeCallbacks(decimateTask);
+		decimateTask.run();
+	};
+
+	/**
+	 * Creates the decimator and starts reading samples written to the buffer from now on.
+	 *
+	 * @param buffer the sample buffer.
+	 */
+	public ChartDecimator(@NonNull final SampleRingBuffer buffer) {
+		cursor = buffer.newCursor();
+		thread = new HandlerThread("ChartDecimator", Process.THREAD_PRIORITY_DISPLAY);
+		thread.start();
+		handler = new Handler(thread.getLooper());
+		handler.post(decimateTask);
+	}
+
+	/**
+	 * Stops decimation and releases the cursor.
+	 */
+	public void quit() {
+		handler.removeCallbacks(decimateTask);
+		handler.post(cursor::close);
+		thread.quitSafely();
+	}
+
+	/**
+	 * Returns the longest time span the chart may show, in nanoseconds.
+	 */
+	public long getMaxSpan() {
+		return history.getMaxSpan();
+	}
+
+	/**
+	 * Sets the size of the chart. The next frame is decimated to the new size.
+	 *
+	 * @param width number of pixel columns.
+	 * @param span  the time span, in nanoseconds.
+	 */
+	public void setViewport(final int width, final long span) {
+		this.width = width;
+		this.span = Math.max(1, Math.min(span, history.getMaxSpan()));
+	}
+
+	public long getSpan() {
+		return span;
+	}
+
+	/**
+	 * Sets the listener called on the decimator thread when a new frame is ready, or null
+	 * to stop decimating frames. Samples are still added to the history, but read only
+	 * every {@link #IDLE_INTERVAL} ms.
+	 */
+	public void setOnFrameReadyListener(@Nullable final Runnable listener) {
+		final boolean attached = listener != null && this.listener == null;
+		this.listener = listener;
+		// Posted, so that the task is not rescheduled while running.
+		if (attached)
+			handler.post(resumeTask);
+	}
+
+	/**
+	 * Copies the latest frame into the given one, reusing its arrays if large enough.
+	 *
+	 * @param target the frame to copy to.
+	 * @return False if no frame has been decimated yet.
+	 */
+	public boolean copyFrame(@NonNull final Frame target) {
+		synchronized (lock) {
+			if (!frameReady)
+				return false;
+			front.copyTo(target);
+			return true;
+		}
+	}
+
+	private void decimate() {
+		int count;
+		while ((count = cursor.read(samples, timestamps, 0, READ_CHUNK)) > 0) {
+			history.add(samples, timestamps, count);
+		}
+
+		final Runnable listener = this.listener;
+		final int width = this.width;
+		if (listener == null || width <= 0)
+			return;
+
+		final Frame frame = back;
+		frame.ensureWidth(width);
+		frame.span = span;
+		frame.end = SystemClock.elapsedRealtimeNanos();
+		history.decimate(frame.end, frame.span, width, frame.mins, frame.maxs);
+		float min = Float.NaN, max = Float.NaN;
+		for (int i = 0; i < width; i++) {
+			// Columns without samples are NaN in both arrays.
+			if (Float.isNaN(frame.mins[i]))
+				continue;
+			if (Float.isNaN(min) || frame.mins[i] < min)
+				min = frame.mins[i];
+			if (Float.isNaN(max) || frame.maxs[i] > max)
+				max = frame.maxs[i];
+		}
+		frame.min = min;
+		frame.max = max;
+
+		synchronized (lock) {
+			back = front;
+			front = frame;
+			frameReady = true;
+		}
+		listener.run();
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.stream;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The minimum and maximum of samples in fixed time buckets, kept at several resolutions,
+ * so that a chart of any time span can be decimated from a bounded number of buckets.
+ * <p>
+ * Each level is a ring of buckets, each level 10 times coarser than the previous one. Adding
+ * a sample updates one bucket on every level, and a bucket is reset when its slot is reused
+ * for a newer time. With the default parameters the levels cover 4 seconds at 1 ms resolution
+ * up to 11 hours at 10 s resolution, in about 330 kB.
+ * <p>
+ * This class is not thread safe.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class MinMaxHistory {
+	public static final long DEFAULT_FINEST_BUCKET = 1_000_000L; // [ns]
+	public static final int DEFAULT_LEVELS = 5;
+	public static final int DEFAULT_BUCKETS_PER_LEVEL = 4096;
+	private static final int LEVEL_FACTOR = 10;
+
+	private final long[] bucketDurations;
+	private final int bucketsPerLevel;
+	private final int mask;
+	private final long[][] bucketIds;
+	private final int[][] mins;
+	private final int[][] maxs;
+
+	public MinMaxHistory() {
+		this(DEFAULT_FINEST_BUCKET, DEFAULT_LEVELS, DEFAULT_BUCKETS_PER_LEVEL);
+	}
+
+	/**
+	 * Creates the history.
+	 *
+	 * @param finestBucket    the bucket duration of the finest level, in nanoseconds.
+	 * @param levels          number of levels, each 10 times coarser than the previous one.
+	 * @param bucketsPerLevel number of buckets on each level, a power of 2.
+	 */
+	public MinMaxHistory(final long finestBucket, final int levels, final int bucketsPerLevel) {
+		if (finestBucket <= 0 || levels < 1 || Integer.bitCount(bucketsPerLevel) != 1)
+			throw new IllegalArgumentException("Invalid history parameters");
+		this.bucketsPerLevel = bucketsPerLevel;
+		this.mask = bucketsPerLevel - 1;
+		this.bucketDurations = new long[levels];
+		this.bucketIds = new long[levels][bucketsPerLevel];
+		this.mins = new int[levels][bucketsPerLevel];
+		this.maxs = new int[levels][bucketsPerLevel];
+		long duration = finestBucket;
+		for (int level = 0; level < levels; level++) {
+			bucketDurations[level] = duration;
+			duration *= LEVEL_FACTOR;
+		}
+		clear();
+	}
+
+	/**
+	 * Returns the longest time span that can be decimated, in nanoseconds.
+	 */
+	public long getMaxSpan() {
+		return bucketDurations[bucketDurations.length - 1] * bucketsPerLevel;
+	}
+
+	/**
+	 * Adds samples. Timestamps must not decrease.
+	 *
+	 * @param samples    the samples.
+	 * @param timestamps the timestamps of the samples, in nanoseconds.
+	 * @param count      number of samples to add.
+	 */
+	public void add(@NonNull final int[] samples, @NonNull final long[] timestamps, final int count) {
+		for (int level = 0; level < bucketDurations.length; level++) {
+			final long duration = bucketDurations[level];
+			final long[] ids = bucketIds[level];
+			final int[] min = mins[level];
+			final int[] max = maxs[level];
+			for (int i = 0; i < count; i++) {
+				final long id = timestamps[i] / duration;
+				final int slot = (int) (id & mask);
+				final int sample = samples[i];
+				if (ids[slot] != id) {
+					ids[slot] = id;
+					min[slot] = sample;
+					max[slot] = sample;
+				} else if (sample < min[slot]) {
+					min[slot] = sample;
+				} else if (sample > max[slot]) {
+					max[slot] = sample;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calculates the minimum and maximum of samples for each pixel column of a chart.
+	 * The finest level covering the span is used. Columns without samples are set to NaN.
+	 *
+	 * @param end   the time at the right edge of the chart, in nanoseconds.
+	 * @param span  the time span of the chart, in nanoseconds.
+	 * @param width number of columns.
+	 * @param min   the array to store the minimum of each column in.
+	 * @param max   the array to store the maximum of each column in.
+	 * @return The number of columns with samples.
+	 */
+	public int decimate(final long end, final long span, final int width,
+						@NonNull final float[] min, @NonNull final float[] max) {
+		for (int i = 0; i < width; i++) {
+			min[i] = Float.NaN;
+			max[i] = Float.NaN;
+		}
+		if (width <= 0 || span <= 0)
+			return 0;
+
+		int level = 0;
+		while (level < bucketDurations.length - 1 && bucketDurations[level] * bucketsPerLevel < span)
+			level++;
+		final long duration = bucketDurations[level];
+		final long[] ids = bucketIds[level];
+		final int[] levelMin = mins[level];
+		final int[] levelMax = maxs[level];
+
+		final long start = end - span;
+		final long firstId = Math.max(floorDiv(start, duration), end / duration - mask);
+		final long lastId = floorDiv(end - 1, duration);
+		int columns = 0;
+		for (long id = firstId; id <= lastId; id++) {
+			final int slot = (int) (id & mask);
+			if (ids[slot] != id)
+				continue;
+			// A bucket may span several columns, or share a column with other buckets.
+			final int first = column(Math.max(id * duration, start) - start, span, width);
+			final int last = column(Math.min((id + 1) * duration, end) - 1 - start, span, width);
+			for (int c = first; c <= last; c++) {
+				if (Float.isNaN(min[c])) {
+					min[c] = levelMin[slot];
+					max[c] = levelMax[slot];
+					columns++;
+				} else {
+					min[c] = Math.min(min[c], levelMin[slot]);
+					max[c] = Math.max(max[c], levelMax[slot]);
+				}
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * Removes all samples.
+	 */
+	public void clear() {
+		for (final long[] ids : bucketIds) {
+			for (int i = 0; i < ids.length; i++)
+				ids[i] = Long.MIN_VALUE;
+		}
+	}
+
+	private static long floorDiv(final long x, final long y) {
+		return x >= 0 ? x / y : (x - y + 1) / y;
+	}
+
+	private static int column(final long offset, final long span, final int width) {
+		// Multiply in double precision, the product may overflow for spans of hours.
+		return (int) Math.min(width - 1, Math.max(0, (long) ((double) offset * width / span)));
+	}
+}
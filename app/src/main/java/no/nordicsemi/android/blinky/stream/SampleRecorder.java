@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.stream;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Records the voltage sample stream of a device to a session directory, on a background
+ * thread, using a {@link SessionWriter}.
+ * <p>
+ * The recorder reads new samples from its cursor every {@link #DRAIN_INTERVAL} ms and appends
+ * them to the mapped segment, reusing its arrays, so nothing is allocated per sample. Records
+ * are forced to storage in group commits every {@link #COMMIT_INTERVAL} ms. Samples the
+ * recorder could not read before they were overwritten in the buffer are counted as dropped.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class SampleRecorder {
+	private static final String TAG = "SampleRecorder";
+	private static final long DRAIN_INTERVAL = 20; // [ms]
+	private static final long COMMIT_INTERVAL = 1000; // [ms]
+	private static final int READ_CHUNK = 4096;
+
+	public interface OnErrorListener {
+		/**
+		 * Called on the recorder thread when recording failed. The recorder has stopped.
+		 *
+		 * @param e the cause.
+		 */
+		void onError(@NonNull final IOException e);
+	}
+
+	@NonNull
+	private final SampleRingBuffer.Cursor cursor;
+	@NonNull
+	private final File directory;
+	private final long address;
+	@NonNull
+	private final HandlerThread thread;
+	@NonNull
+	private final Handler handler;
+	private final int[] samples = new int[READ_CHUNK];
+	private final long[] timestamps = new long[READ_CHUNK];
+	@Nullable
+	private SessionWriter writer;
+	private long lastCommitTime;
+	@Nullable
+	private volatile OnErrorListener listener;
+	private volatile long count;
+	private volatile long committedCount;
+	private volatile boolean recording = true;
+
+	private final Runnable drainTask = new Runnable() {
+		@Override
+		public void run() {
+			if (!recording)
+				return;
+			try {
+				drain();
+				final long now = SystemClock.elapsedRealtime();
+				if (now - lastCommitTime >= COMMIT_INTERVAL) {
+					lastCommitTime = now;
+					writer.commit();
+					committedCount = writer.getCommittedCount();
+				}
+				handler.postDelayed(this, DRAIN_INTERVAL);
+			} catch (final IOException e) {
+				fail(e);
+			}
+		}
+	};
+
+	/**
+	 * Creates the recorder and starts recording samples written to the buffer from now on.
+	 * The session is opened on the recorder thread, recovering segments of a previous
+	 * recording to the same directory.
+	 *
+	 * @param buffer    the sample buffer.
+	 * @param directory the session directory.
+	 * @param address   the packed address of the device.
+	 */
+	public SampleRecorder(@NonNull final SampleRingBuffer buffer, @NonNull final File directory,
+						  final long address) {
+		this.cursor = buffer.newCursor();
+		this.directory = directory;
+		this.address = address;
+		thread = new HandlerThread("SampleRecorder", Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+		handler = new Handler(thread.getLooper());
+		handler.post(() -> {
+			try {
+				writer = new SessionWriter(directory, address, SessionWriter.DEFAULT_SEGMENT_CAPACITY);
+				lastCommitTime = SystemClock.elapsedRealtime();
+				drainTask.run();
+			} catch (final IOException e) {
+				fail(e);
+			}
+		});
+	}
+
+	/**
+	 * Sets the listener called when recording fails.
+	 */
+	public void setOnErrorListener(@Nullable final OnErrorListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Stops recording. Samples already in the buffer are written, committed, and the session
+	 * is closed on the recorder thread.
+	 */
+	public void stop() {
+		if (!recording)
+			return;
+		recording = false;
+		handler.removeCallbacks(drainTask);
+		handler.post(() -> {
+			try {
+				if (writer != null) {
+					drain();
+					writer.close();
+					count = writer.getCount();
+					committedCount = writer.getCommittedCount();
+					Log.d(TAG, "Recorded " + count + " samples, " + cursor.getDroppedCount() + " dropped");
+				}
+			} catch (final IOException e) {
+				Log.w(TAG, "Closing session failed", e);
+			} finally {
+				cursor.close();
+			}
+		});
+		thread.quitSafely();
+	}
+
+	/**
+	 * Returns whether the recorder is running, that is neither stopped nor failed.
+	 */
+	public boolean isRecording() {
+		return recording;
+	}
+
+	@NonNull
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the number of samples written to the session.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the number of samples forced to storage.
+	 */
+	public long getCommittedCount() {
+		return committedCount;
+	}
+
+	/**
+	 * Returns the number of samples lost because the recorder did not keep up with the stream.
+	 */
+	public long getDroppedCount() {
+		return cursor.getDroppedCount();
+	}
+
+	private void drain() throws IOException {
+		final SessionWriter writer = this.writer;
+		int read;
+		while ((read = cursor.read(samples, timestamps, 0, READ_CHUNK)) > 0) {
+			writer.append(samples, timestamps, 0, read);
+		}
+		count = writer.getCount();
+	}
+
+	private void fail(@NonNull final IOException e) {
+		Log.w(TAG, "Recording failed after " + count + " samples", e);
+		recording = false;
+		handler.removeCallbacks(drainTask);
+		cursor.close();
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (final IOException ignored) {
+				// The session will be recovered when opened again.
+			}
+		}
+		thread.quitSafely();
+		final OnErrorListener listener = this.listener;
+		if (listener != null)
+			listener.onError(e);
+	}
+}
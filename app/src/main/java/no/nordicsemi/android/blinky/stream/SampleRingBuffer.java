@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.stream;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A ring buffer of uint16 samples with timestamps, written by a single producer and read by
+ * any number of consumers, each at its own pace through a {@link Cursor}.
+ * <p>
+ * Samples are stored in primitive arrays, so nothing is allocated or boxed per sample. Each
+ * sample has a sequence number, counting from 0. The buffer keeps the sequence number of the
+ * next sample to be written, and each cursor the sequence number of the next sample to be read.
+ * Samples are copied in and out in blocks, holding a lock only for the copy, so a consumer
+ * never sees a sample being overwritten.
+ * <p>
+ * When a consumer falls behind by more than the capacity, the {@link OverflowPolicy} decides
+ * what happens: either the oldest samples are overwritten and the consumer skips them, counting
+ * them as dropped, or the producer waits until the slowest consumer has read enough.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class SampleRingBuffer {
+
+	public enum OverflowPolicy {
+		/** Overwrite the oldest samples. Consumers that did not read them count them as dropped. */
+		DROP_OLDEST,
+		/**
+		 * Block the producer until all consumers have read enough samples. Consumers must not
+		 * run on the producer thread.
+		 */
+		BLOCK
+	}
+
+	/**
+	 * A read position of a single consumer. Each cursor must be used by one thread at a time.
+	 */
+	public final class Cursor {
+		/** Sequence number of the next sample to read. */
+		private long sequence;
+		private long droppedCount;
+
+		private Cursor(final long sequence) {
+			this.sequence = sequence;
+		}
+
+		/**
+		 * Returns the number of samples available to read, including those overwritten.
+		 */
+		public long available() {
+			synchronized (lock) {
+				return writeSequence - sequence;
+			}
+		}
+
+		/**
+		 * Reads up to the given number of samples, oldest first. Samples overwritten before
+		 * they were read are skipped and counted as dropped.
+		 *
+		 * @param samples    the array to copy the samples to, as unsigned values.
+		 * @param timestamps the array to copy the timestamps to, or null.
+		 * @param offset     the offset in the arrays.
+		 * @param length     the maximum number of samples to read.
+		 * @return The number of samples read.
+		 */
+		public int read(@NonNull final int[] samples, @Nullable final long[] timestamps,
+						final int offset, final int length) {
+			synchronized (lock) {
+				final long oldest = writeSequence - capacity;
+				if (sequence < oldest) {
+					droppedCount += oldest - sequence;
+					sequence = oldest;
+				}
+				final int count = (int) Math.min(writeSequence - sequence, length);
+				for (int i = 0; i < count; i++) {
+					final int slot = (int) ((sequence + i) & mask);
+					samples[offset + i] = buffer[slot] & 0xFFFF;
+					if (timestamps != null)
+						timestamps[offset + i] = SampleRingBuffer.this.timestamps[slot];
+				}
+				sequence += count;
+				if (count > 0 && policy == OverflowPolicy.BLOCK)
+					lock.notifyAll();
+				return count;
+			}
+		}
+
+		/**
+		 * Skips all samples available, so that the next read returns only new samples.
+		 */
+		public void skipToLatest() {
+			synchronized (lock) {
+				sequence = writeSequence;
+				lock.notifyAll();
+			}
+		}
+
+		/**
+		 * Returns the number of samples this consumer has missed because they were overwritten.
+		 */
+		public long getDroppedCount() {
+			synchronized (lock) {
+				return droppedCount;
+			}
+		}
+
+		/**
+		 * Removes the cursor from the buffer. A blocked producer is no longer held by it.
+		 */
+		public void close() {
+			synchronized (lock) {
+				cursors.remove(this);
+				lock.notifyAll();
+			}
+		}
+	}
+
+	private final short[] buffer;
+	private final long[] timestamps;
+	private final int capacity;
+	private final int mask;
+	@NonNull
+	private final OverflowPolicy policy;
+	@NonNull
+	private final List<Cursor> cursors = new ArrayList<>();
+	private final Object lock = new Object();
+	/** Sequence number of the next sample to be written. */
+	private long writeSequence;
+	private long blockedCount;
+
+	/**
+	 * Creates the buffer.
+	 *
+	 * @param capacity the number of samples kept, rounded up to a power of 2.
+	 * @param policy   what to do when a consumer falls behind by more than the capacity.
+	 */
+	public SampleRingBuffer(final int capacity, @NonNull final OverflowPolicy policy) {
+		if (capacity < 1 || capacity > 1 << 30)
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		this.mask = this.capacity - 1;
+		this.buffer = new short[this.capacity];
+		this.timestamps = new long[this.capacity];
+		this.policy = policy;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@NonNull
+	public OverflowPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Creates a cursor, which will read samples written from now on.
+	 */
+	@NonNull
+	public Cursor newCursor() {
+		synchronized (lock) {
+			final Cursor cursor = new Cursor(writeSequence);
+			cursors.add(cursor);
+			return cursor;
+		}
+	}
+
+	/**
+	 * Appends samples taken at the same time, e.g. received in a single notification.
+	 * Must be called from a single producer thread.
+	 *
+	 * @param samples   the uint16 samples.
+	 * @param count     number of samples to append.
+	 * @param timestamp the timestamp of the samples, in nanoseconds of a monotonic clock.
+	 * @throws InterruptedException if interrupted while blocked by a slow consumer.
+	 */
+	public void write(@NonNull final int[] samples, final int count, final long timestamp)
+			throws InterruptedException {
+		int offset = 0;
+		while (offset < count) {
+			synchronized (lock) {
+				int chunk = Math.min(count - offset, capacity);
+				if (policy == OverflowPolicy.BLOCK) {
+					boolean blocked = false;
+					long free;
+					while ((free = capacity - (writeSequence - minCursorSequence())) == 0) {
+						blocked = true;
+						lock.wait();
+					}
+					if (blocked)
+						blockedCount++;
+					chunk = (int) Math.min(chunk, free);
+				}
+				for (int i = 0; i < chunk; i++) {
+					final int slot = (int) ((writeSequence + i) & mask);
+					buffer[slot] = (short) samples[offset + i];
+					timestamps[slot] = timestamp;
+				}
+				writeSequence += chunk;
+				offset += chunk;
+			}
+		}
+	}
+
+	/**
+	 * Returns the total number of samples written.
+	 */
+	public long getWrittenCount() {
+		synchronized (lock) {
+			return writeSequence;
+		}
+	}
+
+	/**
+	 * Returns how many times the producer had to wait for a slow consumer.
+	 */
+	public long getBlockedCount() {
+		synchronized (lock) {
+			return blockedCount;
+		}
+	}
+
+	private long minCursorSequence() {
+		long min = writeSequence;
+		for (int i = 0; i < cursors.size(); i++)
+			min = Math.min(min, cursors.get(i).sequence);
+		return min;
+	}
+}
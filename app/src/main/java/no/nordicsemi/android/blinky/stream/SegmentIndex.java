@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.stream;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A sparse time index of a segment written by {@link SessionWriter}, with a summary of each
+ * block of {@link #BLOCK_SIZE} records: the timestamps of the first and last record, and the
+ * minimum, maximum, sum and number of samples.
+ * <p>
+ * The index is stored next to the segment, in a file with the same name and the extension
+ * <code>blki</code>. It starts with a 32-byte header: the magic number <code>BLKI</code>, a
+ * 16-bit version, the 16-bit size of an entry, the block size, the number of blocks and the
+ * number of records of the segment it was built from, so an index of an older version of the
+ * segment is rebuilt. Entries of {@link #ENTRY_SIZE} bytes follow:
+ * <pre>
+ * first timestamp [ns]     8 bytes
+ * last timestamp [ns]      8 bytes
+ * sum                      8 bytes
+ * minimum, maximum         2 bytes each, unsigned
+ * count                    4 bytes
+ * </pre>
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class SegmentIndex {
+	/* package */ static final int MAGIC = 0x424C4B49; // "BLKI"
+	/* package */ static final int VERSION = 1;
+	/* package */ static final int HEADER_SIZE = 32;
+	/* package */ static final int ENTRY_SIZE = 32;
+	/** The number of records summarized by an entry. */
+	public static final int BLOCK_SIZE = 1024;
+
+	// Offsets within the header.
+	private static final int OFFSET_VERSION = 4;
+	private static final int OFFSET_ENTRY_SIZE = 6;
+	private static final int OFFSET_BLOCK_SIZE = 8;
+	private static final int OFFSET_BLOCK_COUNT = 12;
+	private static final int OFFSET_RECORD_COUNT = 16;
+
+	// Offsets within an entry.
+	private static final int OFFSET_FIRST = 0;
+	private static final int OFFSET_LAST = 8;
+	private static final int OFFSET_SUM = 16;
+	private static final int OFFSET_MIN = 24;
+	private static final int OFFSET_MAX = 26;
+	private static final int OFFSET_COUNT = 28;
+
+	private static final String SUFFIX = ".blki";
+
+	/** The index, including the header. */
+	@NonNull
+	private final ByteBuffer buffer;
+	private final int blockCount;
+
+	private SegmentIndex(@NonNull final ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.blockCount = buffer.getInt(OFFSET_BLOCK_COUNT);
+	}
+
+	/**
+	 * Returns the index file of the given segment.
+	 */
+	@NonNull
+	public static File getFile(@NonNull final File segment) {
+		final String name = segment.getName();
+		return new File(segment.getParentFile(), name.substring(0, name.lastIndexOf('.')) + SUFFIX);
+	}
+
+	/**
+	 * Maps the index of the segment, or builds it if there is none or it was built from a
+	 * different number of records.
+	 *
+	 * @param segment the segment file.
+	 * @param records the mapped segment.
+	 * @param count   the number of records of the segment.
+	 * @param persist whether to write the built index to its file. Indexes of segments
+	 *                still being written should be kept in memory.
+	 * @throws IOException if the index could not be read or written.
+	 */
+	@WorkerThread
+	@NonNull
+	public static SegmentIndex open(@NonNull final File segment, @NonNull final ByteBuffer records,
+									final int count, final boolean persist) throws IOException {
+		final File file = getFile(segment);
+		if (persist && file.length() >= HEADER_SIZE) {
+			try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+				final ByteBuffer buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+				if (buffer.getInt(0) == MAGIC && buffer.getShort(OFFSET_VERSION) == VERSION
+						&& buffer.getShort(OFFSET_ENTRY_SIZE) == ENTRY_SIZE
+						&& buffer.getInt(OFFSET_BLOCK_SIZE) == BLOCK_SIZE
+						&& buffer.getLong(OFFSET_RECORD_COUNT) == count
+						&& input.length() == size(blockCount(count)))
+					return new SegmentIndex(buffer);
+			}
+		}
+		if (persist)
+			return write(segment, records, count);
+		final ByteBuffer buffer = ByteBuffer.allocate(size(blockCount(count)));
+		build(records, count, buffer);
+		return new SegmentIndex(buffer);
+	}
+
+	/**
+	 * Builds the index of the segment and writes it to its file, replacing the previous one.
+	 *
+	 * @param segment the segment file.
+	 * @param records the mapped segment.
+	 * @param count   the number of records of the segment.
+	 * @throws IOException if the index could not be written.
+	 */
+	@WorkerThread
+	@NonNull
+	public static SegmentIndex write(@NonNull final File segment, @NonNull final ByteBuffer records,
+									 final int count) throws IOException {
+		final int size = size(blockCount(count));
+		try (RandomAccessFile output = new RandomAccessFile(getFile(segment), "rw")) {
+			output.setLength(size);
+			final ByteBuffer buffer = output.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			build(records, count, buffer);
+			return new SegmentIndex(buffer);
+		}
+	}
+
+	/**
+	 * Deletes the index of the segment, if there is one.
+	 */
+	public static void delete(@NonNull final File segment) throws IOException {
+		final File file = getFile(segment);
+		if (file.exists() && !file.delete())
+			throw new IOException("Could not delete " + file);
+	}
+
+	private static int blockCount(final int count) {
+		return (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+	}
+
+	private static int size(final int blockCount) {
+		return HEADER_SIZE + blockCount * ENTRY_SIZE;
+	}
+
+	private static void build(@NonNull final ByteBuffer records, final int count,
+							  @NonNull final ByteBuffer out) {
+		final int blockCount = blockCount(count);
+		for (int block = 0; block < blockCount; block++) {
+			final int start = block * BLOCK_SIZE;
+			final int end = Math.min(count, start + BLOCK_SIZE);
+			int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+			long sum = 0;
+			int position = SessionWriter.HEADER_SIZE + start * SessionWriter.RECORD_SIZE
+					+ SessionWriter.OFFSET_SAMPLE;
+			for (int i = start; i < end; i++) {
+				final int sample = records.getShort(position) & 0xFFFF;
+				if (sample < min)
+					min = sample;
+				if (sample > max)
+					max = sample;
+				sum += sample;
+				position += SessionWriter.RECORD_SIZE;
+			}
+			final int entry = HEADER_SIZE + block * ENTRY_SIZE;
+			out.putLong(entry + OFFSET_FIRST, SessionWriter.timestampAt(records, start));
+			out.putLong(entry + OFFSET_LAST, SessionWriter.timestampAt(records, end - 1));
+			out.putLong(entry + OFFSET_SUM, sum);
+			out.putShort(entry + OFFSET_MIN, (short) min);
+			out.putShort(entry + OFFSET_MAX, (short) max);
+			out.putInt(entry + OFFSET_COUNT, end - start);
+		}
+		out.putShort(OFFSET_VERSION, (short) VERSION);
+		out.putShort(OFFSET_ENTRY_SIZE, (short) ENTRY_SIZE);
+		out.putInt(OFFSET_BLOCK_SIZE, BLOCK_SIZE);
+		out.putInt(OFFSET_BLOCK_COUNT, blockCount);
+		out.putLong(OFFSET_RECORD_COUNT, count);
+		// The magic number is written last, so that an index with a valid header is complete.
+		out.putInt(0, MAGIC);
+	}
+
+	public int getBlockCount() {
+		return blockCount;
+	}
+
+	public long getFirstTimestamp(final int block) {
+		return buffer.getLong(HEADER_SIZE + block * ENTRY_SIZE + OFFSET_FIRST);
+	}
+
+	public long getLastTimestamp(final int block) {
+		return buffer.getLong(HEADER_SIZE + block * ENTRY_SIZE + OFFSET_LAST);
+	}
+
+	public long getSum(final int block) {
+		return buffer.getLong(HEADER_SIZE + block * ENTRY_SIZE + OFFSET_SUM);
+	}
+
+	public int getMin(final int block) {
+		return buffer.getShort(HEADER_SIZE + block * ENTRY_SIZE + OFFSET_MIN) & 0xFFFF;
+	}
+
+	public int getMax(final int block) {
+		return buffer.getShort(HEADER_SIZE + block * ENTRY_SIZE + OFFSET_MAX) & 0xFFFF;
+	}
+
+	public int getCount(final int block) {
+		return buffer.getInt(HEADER_SIZE + block * ENTRY_SIZE + OFFSET_COUNT);
+	}
+
+	/**
+	 * Returns the first block whose last timestamp is at or after the given one, or
+	 * {@link #getBlockCount()} if there is none. The first record with a timestamp at or
+	 * after the given one is in this block.
+	 *
+	 * @param timestamp the timestamp, in nanoseconds.
+	 */
+	public int findBlock(final long timestamp) {
+		int low = 0, high = blockCount;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (getLastTimestamp(mid) < timestamp)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.stream;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Exports a recorded session to a channel, e.g. a {@link java.nio.channels.FileChannel} or a
+ * channel of a content URI, in constant memory.
+ * <p>
+ * Samples are read from the {@link SessionReader} in chunks into reused arrays, formatted
+ * into a reused byte buffer without creating strings, and the buffer is written to the
+ * channel whenever it's full. Two formats are supported:
+ * <ul>
+ * <li>{@link Format#CSV} with a header line and a line <code>timestamp_us,sample</code> for
+ * each sample, where the timestamp is in microseconds of Unix time.</li>
+ * <li>{@link Format#BINARY}, starting with the magic number <code>BLKE</code>, a 16-bit
+ * version, 2 reserved bytes, the packed device address, the wall clock time in milliseconds
+ * and the monotonic time in nanoseconds at the same time, the first timestamp in nanoseconds
+ * and the number of samples, each 8 bytes. Runs of samples with the same timestamp follow,
+ * each with the difference to the previous timestamp in nanoseconds and the number of samples
+ * as unsigned LEB128 varints, and the uint16 samples. Numbers are big-endian.</li>
+ * </ul>
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class SessionExporter {
+	/* package */ static final int MAGIC = 0x424C4B45; // "BLKE"
+	/* package */ static final int VERSION = 1;
+	private static final byte[] CSV_HEADER = "timestamp_us,sample\n".getBytes(Charset.forName("US-ASCII"));
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int READ_CHUNK = 4096;
+	/** Longest CSV line or binary run header. */
+	private static final int MAX_ENTRY_SIZE = 32;
+
+	public enum Format {
+		CSV,
+		BINARY
+	}
+
+	public interface ProgressListener {
+		/**
+		 * Called on the exporting thread after each chunk of samples.
+		 *
+		 * @param exported number of samples exported.
+		 * @param total    number of samples of the session.
+		 */
+		void onProgress(final long exported, final long total);
+	}
+
+	@NonNull
+	private final Format format;
+	private final byte[] bytes = new byte[BUFFER_SIZE];
+	private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+	private final int[] samples = new int[READ_CHUNK];
+	private final long[] timestamps = new long[READ_CHUNK];
+	private final byte[] digits = new byte[20];
+	private int position;
+	private volatile boolean cancelled;
+
+	/**
+	 * Creates the exporter.
+	 *
+	 * @param format the format.
+	 */
+	public SessionExporter(@NonNull final Format format) {
+		this.format = format;
+	}
+
+	/**
+	 * Writes all samples of the session to the channel. The channel is not closed.
+	 *
+	 * @param reader   the session to export.
+	 * @param channel  the channel to write to.
+	 * @param listener the progress listener, or null.
+	 * @return False, if the export has been cancelled. The channel may contain a part of the
+	 * session.
+	 * @throws IOException if writing failed.
+	 */
+	@WorkerThread
+	public boolean export(@NonNull final SessionReader reader,
+						  @NonNull final WritableByteChannel channel,
+						  @Nullable final ProgressListener listener) throws IOException {
+		final long total = reader.getCount();
+		position = 0;
+		if (format == Format.CSV) {
+			System.arraycopy(CSV_HEADER, 0, bytes, 0, CSV_HEADER.length);
+			position = CSV_HEADER.length;
+		} else {
+			putInt(MAGIC);
+			putShort(VERSION);
+			putShort(0);
+			putLong(reader.getAddress());
+			putLong(reader.getWallTime());
+			putLong(reader.getMonotonicTime());
+			putLong(reader.getFirstTimestamp());
+			putLong(total);
+		}
+
+		// Microseconds of Unix time are calculated from the session start, so that the
+		// timestamps are not rounded to milliseconds.
+		final long wallTimeMicros = reader.getWallTime() * 1000L;
+		final long monotonicTime = reader.getMonotonicTime();
+		long previous = reader.getFirstTimestamp();
+		int runLengthPosition = -1;
+		int runLength = 0;
+
+		long exported = 0;
+		int read;
+		while (!cancelled && (read = reader.read(exported, samples, timestamps, 0, READ_CHUNK)) > 0) {
+			for (int i = 0; i < read; i++) {
+				if (position > BUFFER_SIZE - MAX_ENTRY_SIZE) {
+					if (runLengthPosition >= 0) {
+						// A run ends where the buffer is flushed, the next one continues it.
+						endRun(runLengthPosition, runLength);
+						runLengthPosition = -1;
+					}
+					flush(channel);
+				}
+				final int sample = samples[i];
+				final long timestamp = timestamps[i];
+				if (format == Format.CSV) {
+					putDecimal(wallTimeMicros + (timestamp - monotonicTime) / 1000L);
+					bytes[position++] = ',';
+					putDecimal(sample);
+					bytes[position++] = '\n';
+				} else {
+					if (runLengthPosition < 0 || timestamp != previous) {
+						if (runLengthPosition >= 0)
+							endRun(runLengthPosition, runLength);
+						putVarint(timestamp - previous);
+						// The run length is written when the run ends, in a fixed space.
+						runLengthPosition = position;
+						position += 3;
+						runLength = 0;
+						previous = timestamp;
+					}
+					bytes[position++] = (byte) (sample >> 8);
+					bytes[position++] = (byte) sample;
+					runLength++;
+				}
+			}
+			exported += read;
+			if (listener != null)
+				listener.onProgress(exported, total);
+		}
+		if (runLengthPosition >= 0)
+			endRun(runLengthPosition, runLength);
+		flush(channel);
+		return !cancelled;
+	}
+
+	/**
+	 * Cancels the export. It stops after the current chunk of samples, or before it starts.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	private void flush(@NonNull final WritableByteChannel channel) throws IOException {
+		buffer.clear();
+		buffer.limit(position);
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		position = 0;
+	}
+
+	/**
+	 * Writes the run length as a varint of 3 bytes, padded with continuation bits, so that
+	 * it fits the space reserved at the start of the run. A run never exceeds the buffer.
+	 */
+	private void endRun(final int at, final int length) {
+		bytes[at] = (byte) (length & 0x7F | 0x80);
+		bytes[at + 1] = (byte) (length >> 7 & 0x7F | 0x80);
+		bytes[at + 2] = (byte) (length >> 14 & 0x7F);
+	}
+
+	private void putVarint(long value) {
+		while ((value & ~0x7FL) != 0) {
+			bytes[position++] = (byte) (value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		bytes[position++] = (byte) value;
+	}
+
+	private void putDecimal(long value) {
+		// Timestamps and samples are never negative.
+		int length = 0;
+		do {
+			digits[length++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		while (length > 0)
+			bytes[position++] = digits[--length];
+	}
+
+	private void putShort(final int value) {
+		bytes[position++] = (byte) (value >> 8);
+		bytes[position++] = (byte) value;
+	}
+
+	private void putInt(final int value) {
+		putShort(value >> 16);
+		putShort(value);
+	}
+
+	private void putLong(final long value) {
+		putInt((int) (value >> 32));
+		putInt((int) value);
+	}
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.stream;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Answers time-range queries over a recording session written by {@link SessionWriter},
+ * through memory-mapped reads, without loading the samples into the heap.
+ * <p>
+ * Samples of the session are addressed by their position, counting from 0 across all
+ * segments. {@link #find(long)} looks up the position of a timestamp with a binary search of
+ * the segments, of the {@link SegmentIndex} of the segment, and of the records of a single
+ * block. {@link #aggregate(long, long, Summary)} uses the block summaries for whole blocks,
+ * and reads samples only in the first and last block of the range.
+ * <p>
+ * A segment that was not closed, because it's still being written or the writer was killed,
+ * is read up to its last complete record when the reader is opened, and its index is kept in
+ * memory. The reader may be used by one thread at a time.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class SessionReader {
+
+	/**
+	 * The minimum, maximum, sum and number of samples in a time range.
+	 */
+	public static final class Summary {
+		public long count;
+		public long sum;
+		/** The minimum sample, valid if {@link #count} is not 0. */
+		public int min;
+		/** The maximum sample, valid if {@link #count} is not 0. */
+		public int max;
+
+		/**
+		 * Returns the average sample, or NaN if there are no samples.
+		 */
+		public double getAverage() {
+			return count > 0 ? (double) sum / count : Double.NaN;
+		}
+
+		private void clear() {
+			count = 0;
+			sum = 0;
+			min = Integer.MAX_VALUE;
+			max = Integer.MIN_VALUE;
+		}
+
+		private void add(final int sample) {
+			if (sample < min)
+				min = sample;
+			if (sample > max)
+				max = sample;
+			sum += sample;
+			count++;
+		}
+	}
+
+	private static final class Segment {
+		@NonNull
+		private final MappedByteBuffer buffer;
+		@NonNull
+		private final SegmentIndex index;
+		private final int count;
+		/** Position of the first sample of the segment in the session. */
+		private final long base;
+
+		private Segment(@NonNull final MappedByteBuffer buffer, @NonNull final SegmentIndex index,
+						final int count, final long base) {
+			this.buffer = buffer;
+			this.index = index;
+			this.count = count;
+			this.base = base;
+		}
+
+		private long timestampAt(final int i) {
+			return SessionWriter.timestampAt(buffer, i);
+		}
+
+		private int sampleAt(final int i) {
+			return buffer.getShort(SessionWriter.HEADER_SIZE + i * SessionWriter.RECORD_SIZE
+					+ SessionWriter.OFFSET_SAMPLE) & 0xFFFF;
+		}
+
+		/**
+		 * Returns the first record with a timestamp at or after the given one, or the count.
+		 */
+		private int find(final long timestamp) {
+			final int block = index.findBlock(timestamp);
+			if (block == index.getBlockCount())
+				return count;
+			int low = block * SegmentIndex.BLOCK_SIZE;
+			int high = low + index.getCount(block) - 1; // the last record is at or after
+			while (low < high) {
+				final int mid = (low + high) >>> 1;
+				if (timestampAt(mid) < timestamp)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+
+		/**
+		 * Adds samples from record start (inclusive) to end (exclusive) to the summary.
+		 */
+		private void aggregate(final int start, final int end, @NonNull final Summary out) {
+			int i = start;
+			// Samples before the first whole block.
+			final int firstWhole = Math.min(end,
+					(start + SegmentIndex.BLOCK_SIZE - 1) / SegmentIndex.BLOCK_SIZE * SegmentIndex.BLOCK_SIZE);
+			for (; i < firstWhole; i++)
+				out.add(sampleAt(i));
+			// Whole blocks.
+			for (; i + SegmentIndex.BLOCK_SIZE <= end; i += SegmentIndex.BLOCK_SIZE) {
+				final int block = i / SegmentIndex.BLOCK_SIZE;
+				out.min = Math.min(out.min, index.getMin(block));
+				out.max = Math.max(out.max, index.getMax(block));
+				out.sum += index.getSum(block);
+				out.count += SegmentIndex.BLOCK_SIZE;
+			}
+			// Samples after the last whole block.
+			for (; i < end; i++)
+				out.add(sampleAt(i));
+		}
+	}
+
+	@NonNull
+	private final Segment[] segments;
+	private final long count;
+	private final long address;
+	private final long wallTime;
+	private final long monotonicTime;
+
+	/**
+	 * Opens the session. Indexes of closed segments are built and written if missing.
+	 *
+	 * @param directory the session directory.
+	 * @throws IOException if a segment or an index could not be read, or the session has
+	 *                     no valid segments.
+	 */
+	@WorkerThread
+	public SessionReader(@NonNull final File directory) throws IOException {
+		final List<Segment> segments = new ArrayList<>();
+		long base = 0;
+		long address = 0, wallTime = 0, monotonicTime = 0;
+		for (final File file : SessionWriter.listSegments(directory)) {
+			final MappedByteBuffer buffer;
+			try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+				final long length = input.length();
+				if (length < SessionWriter.HEADER_SIZE || length > Integer.MAX_VALUE)
+					continue;
+				// The mapping stays valid after the file is closed.
+				buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+			}
+			if (buffer.getInt(0) != SessionWriter.MAGIC
+					|| buffer.getShort(SessionWriter.OFFSET_VERSION) != SessionWriter.VERSION
+					|| buffer.getShort(SessionWriter.OFFSET_RECORD_SIZE) != SessionWriter.RECORD_SIZE)
+				continue;
+
+			final boolean closed = (buffer.getInt(SessionWriter.OFFSET_FLAGS) & SessionWriter.FLAG_CLOSED) != 0;
+			final long capacity = (buffer.capacity() - SessionWriter.HEADER_SIZE) / SessionWriter.RECORD_SIZE;
+			// The written count of a segment that was not closed may be ahead of its records.
+			final int count = closed
+					? (int) Math.min(buffer.getLong(SessionWriter.OFFSET_WRITTEN), capacity)
+					: SessionWriter.findLastRecord(buffer, capacity);
+			if (count <= 0)
+				continue;
+			if (segments.isEmpty()) {
+				address = buffer.getLong(SessionWriter.OFFSET_ADDRESS);
+				wallTime = buffer.getLong(SessionWriter.OFFSET_WALL_TIME);
+				monotonicTime = buffer.getLong(SessionWriter.OFFSET_MONOTONIC_TIME);
+			}
+			segments.add(new Segment(buffer, SegmentIndex.open(file, buffer, count, closed), count, base));
+			base += count;
+		}
+		if (segments.isEmpty())
+			throw new IOException("No samples in " + directory);
+		this.segments = segments.toArray(new Segment[0]);
+		this.count = base;
+		this.address = address;
+		this.wallTime = wallTime;
+		this.monotonicTime = monotonicTime;
+	}
+
+	/**
+	 * Returns the number of samples of the session.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the packed address of the device.
+	 */
+	public long getAddress() {
+		return address;
+	}
+
+	public long getFirstTimestamp() {
+		return segments[0].timestampAt(0);
+	}
+
+	public long getLastTimestamp() {
+		final Segment last = segments[segments.length - 1];
+		return last.timestampAt(last.count - 1);
+	}
+
+	/**
+	 * Converts a timestamp of the session to milliseconds of {@link System#currentTimeMillis()},
+	 * using the time the session was started.
+	 *
+	 * @param timestamp the timestamp, in nanoseconds.
+	 */
+	public long toWallTime(final long timestamp) {
+		return wallTime + (timestamp - monotonicTime) / 1_000_000L;
+	}
+
+	/**
+	 * Returns the time the first segment of the session was created, in milliseconds of
+	 * {@link System#currentTimeMillis()}.
+	 */
+	public long getWallTime() {
+		return wallTime;
+	}
+
+	/**
+	 * Returns the monotonic time in nanoseconds at {@link #getWallTime()}.
+	 */
+	public long getMonotonicTime() {
+		return monotonicTime;
+	}
+
+	/**
+	 * Returns the position of the first sample with a timestamp at or after the given one,
+	 * or {@link #getCount()} if there is none.
+	 *
+	 * @param timestamp the timestamp, in nanoseconds.
+	 */
+	public long find(final long timestamp) {
+		// The segment of the sample is the first one that ends at or after the timestamp.
+		int low = 0, high = segments.length;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			final Segment segment = segments[mid];
+			if (segment.timestampAt(segment.count - 1) < timestamp)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		if (low == segments.length)
+			return count;
+		final Segment segment = segments[low];
+		return segment.base + segment.find(timestamp);
+	}
+
+	public long getTimestamp(final long position) {
+		final Segment segment = segmentAt(position);
+		return segment.timestampAt((int) (position - segment.base));
+	}
+
+	public int getSample(final long position) {
+		final Segment segment = segmentAt(position);
+		return segment.sampleAt((int) (position - segment.base));
+	}
+
+	/**
+	 * Reads samples starting at the given position, e.g. to show samples around a spike,
+	 * found with {@link #find(long)}.
+	 *
+	 * @param position   the position of the first sample.
+	 * @param samples    the array to copy the samples to.
+	 * @param timestamps the array to copy the timestamps to, or null.
+	 * @param offset     the offset in the arrays.
+	 * @param length     the maximum number of samples to read.
+	 * @return The number of samples read, less than the length only at the end of the session.
+	 */
+	public int read(final long position, @NonNull final int[] samples, @Nullable final long[] timestamps,
+					final int offset, final int length) {
+		if (position < 0 || position > count)
+			throw new IndexOutOfBoundsException("Position " + position + " of " + count);
+		int read = 0;
+		int s = segmentIndexAt(Math.min(position, count - 1));
+		long p = position;
+		while (read < length && p < count) {
+			final Segment segment = segments[s];
+			final int start = (int) (p - segment.base);
+			final int n = Math.min(length - read, segment.count - start);
+			int record = SessionWriter.HEADER_SIZE + start * SessionWriter.RECORD_SIZE;
+			for (int i = 0; i < n; i++) {
+				samples[offset + read + i] = segment.buffer.getShort(record + SessionWriter.OFFSET_SAMPLE) & 0xFFFF;
+				if (timestamps != null)
+					timestamps[offset + read + i] = segment.buffer.getLong(record + SessionWriter.OFFSET_TIMESTAMP);
+				record += SessionWriter.RECORD_SIZE;
+			}
+			read += n;
+			p += n;
+			s++;
+		}
+		return read;
+	}
+
+	/**
+	 * Calculates the minimum, maximum, sum and number of samples with timestamps in the given
+	 * range.
+	 *
+	 * @param from the first timestamp, inclusive, in nanoseconds.
+	 * @param to   the last timestamp, exclusive, in nanoseconds.
+	 * @param out  the summary to write to.
+	 * @return False if there are no samples in the range.
+	 */
+	public boolean aggregate(final long from, final long to, @NonNull final Summary out) {
+		out.clear();
+		final long start = find(from);
+		final long end = from < to ? find(to) : start;
+		if (start >= end)
+			return false;
+
+		for (int s = segmentIndexAt(start); s < segments.length; s++) {
+			final Segment segment = segments[s];
+			if (segment.base >= end)
+				break;
+			segment.aggregate((int) Math.max(0, start - segment.base),
+					(int) Math.min(segment.count, end - segment.base), out);
+		}
+		return true;
+	}
+
+	@NonNull
+	private Segment segmentAt(final long position) {
+		if (position < 0 || position >= count)
+			throw new IndexOutOfBoundsException("Position " + position + " of " + count);
+		return segments[segmentIndexAt(position)];
+	}
+
+	private int segmentIndexAt(final long position) {
+		int low = 0, high = segments.length - 1;
+		while (low < high) {
+			final int mid = (low + high + 1) >>> 1;
+			if (segments[mid].base <= position)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+}
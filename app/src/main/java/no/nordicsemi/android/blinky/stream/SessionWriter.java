@@ -0,0 +1,447 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.stream;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Writes a recording session of timestamped voltage samples: a directory of append-only,
+ * memory-mapped segment files of fixed size.
+ * <p>
+ * Each segment starts with a 64-byte header, followed by records of {@link #RECORD_SIZE}
+ * bytes, each with the timestamp in nanoseconds of a monotonic clock and the uint16 sample:
+ * <pre>
+ * magic "BLKV"             4 bytes
+ * version                  2 bytes
+ * record size              2 bytes
+ * segment index            4 bytes
+ * flags                    4 bytes, bit 0 set when the segment was closed
+ * written count            8 bytes
+ * committed count          8 bytes
+ * device address           8 bytes, packed
+ * wall clock time [ms]     8 bytes, {@link System#currentTimeMillis()} when created
+ * monotonic time [ns]      8 bytes, the monotonic clock at the same time
+ * capacity                 4 bytes, number of records
+ * reserved                 4 bytes
+ * </pre>
+ * Records are written to the mapped memory, and the written count in the header is updated
+ * after each block, so records up to that count survive the process being killed. A
+ * {@link #commit()} forces the mapped segment to storage and only then updates the committed
+ * count, so records up to that count also survive a crash of the system. Timestamps must not
+ * decrease, which lets {@link #recover(File)} find the last complete record of a segment that
+ * was not closed. Closed segments are truncated to their records, and a {@link SegmentIndex}
+ * is written for each. Sessions left unclosed by a previous process are recovered by
+ * {@link #recoverSessions(File)}, which skips sessions open for writing.
+ * <p>
+ * This class is not thread safe. It's used by {@link SampleRecorder} on its own thread.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class SessionWriter implements Closeable {
+	/* package */ static final int MAGIC = 0x424C4B56; // "BLKV"
+	/* package */ static final int VERSION = 1;
+	/* package */ static final int HEADER_SIZE = 64;
+	/* package */ static final int RECORD_SIZE = 10;
+	/** The default number of records of a segment, about 40 MB. */
+	public static final int DEFAULT_SEGMENT_CAPACITY = 1 << 22;
+
+	// Offsets within the header.
+	/* package */ static final int OFFSET_VERSION = 4;
+	/* package */ static final int OFFSET_RECORD_SIZE = 6;
+	/* package */ static final int OFFSET_SEGMENT = 8;
+	/* package */ static final int OFFSET_FLAGS = 12;
+	/* package */ static final int OFFSET_WRITTEN = 16;
+	/* package */ static final int OFFSET_COMMITTED = 24;
+	/* package */ static final int OFFSET_ADDRESS = 32;
+	/* package */ static final int OFFSET_WALL_TIME = 40;
+	/* package */ static final int OFFSET_MONOTONIC_TIME = 48;
+	/* package */ static final int OFFSET_CAPACITY = 56;
+
+	// Offsets within a record.
+	/* package */ static final int OFFSET_TIMESTAMP = 0;
+	/* package */ static final int OFFSET_SAMPLE = 8;
+
+	/* package */ static final int FLAG_CLOSED = 1;
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".blkv";
+
+	/** Session directories being written or recovered in this process. */
+	private static final Set<File> busySessions = new HashSet<>();
+
+	@NonNull
+	private final File directory;
+	private final long address;
+	private final int segmentCapacity;
+	@Nullable
+	private RandomAccessFile file;
+	@Nullable
+	private MappedByteBuffer buffer;
+	private int segmentIndex;
+	/** Number of records in the current segment. */
+	private int count;
+	private long totalCount;
+	private long committedCount;
+	private long lastTimestamp;
+	private boolean closed;
+
+	/**
+	 * Opens the session directory, creating it if needed. Segments of a previous recording to
+	 * the same directory are recovered, and the following samples are written to new segments.
+	 *
+	 * @param directory       the session directory.
+	 * @param address         the packed address of the device, see
+	 *                        {@link no.nordicsemi.android.blinky.utils.MacAddress}.
+	 * @param segmentCapacity the number of records of a segment.
+	 * @throws IOException if the directory could not be created, or a segment could not be
+	 *                     recovered or created.
+	 */
+	public SessionWriter(@NonNull final File directory, final long address, final int segmentCapacity)
+			throws IOException {
+		if (segmentCapacity <= 0 || segmentCapacity > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE)
+			throw new IllegalArgumentException("Invalid segment capacity: " + segmentCapacity);
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Could not create " + directory);
+		this.directory = directory;
+		this.address = address;
+		this.segmentCapacity = segmentCapacity;
+		acquire(directory);
+		try {
+			segmentIndex = recover(directory);
+			openSegment();
+		} catch (final IOException | RuntimeException e) {
+			release(directory);
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the segment files of the session, in order.
+	 *
+	 * @param directory the session directory.
+	 */
+	@NonNull
+	public static File[] listSegments(@NonNull final File directory) {
+		final File[] files = directory.listFiles((dir, name) ->
+				name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+		if (files == null)
+			return new File[0];
+		// Segment indexes have a fixed number of digits.
+		Arrays.sort(files);
+		return files;
+	}
+
+	/**
+	 * Recovers all sessions in the given directory, e.g. the recordings of a device, in which
+	 * each subdirectory is a session. Sessions open for writing in this process are skipped.
+	 *
+	 * @param directory the directory with session directories.
+	 * @throws IOException if a segment could not be read or written.
+	 * @see #recover(File)
+	 */
+	@WorkerThread
+	public static void recoverSessions(@NonNull final File directory) throws IOException {
+		final File[] sessions = directory.listFiles(File::isDirectory);
+		if (sessions == null)
+			return;
+		for (final File session : sessions) {
+			synchronized (busySessions) {
+				if (!busySessions.add(session.getAbsoluteFile()))
+					continue;
+			}
+			try {
+				recover(session);
+			} finally {
+				release(session);
+			}
+		}
+	}
+
+	/**
+	 * Recovers segments that were not closed, because the process was killed or the system
+	 * crashed during recording. Each is truncated to its last complete record, which is at
+	 * least the last committed one, and closed. Segments without a valid header are deleted.
+	 * The session must not be open for writing, see {@link #recoverSessions(File)}.
+	 *
+	 * @param directory the session directory.
+	 * @return The index of the next segment.
+	 * @throws IOException if a segment could not be read or written.
+	 */
+	@WorkerThread
+	public static int recover(@NonNull final File directory) throws IOException {
+		int next = 0;
+		for (final File segment : listSegments(directory)) {
+			boolean valid = false;
+			try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+				final long length = file.length();
+				final MappedByteBuffer header = length >= HEADER_SIZE && length <= Integer.MAX_VALUE
+						? file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE) : null;
+				valid = header != null && header.getInt(0) == MAGIC && header.getShort(OFFSET_VERSION) == VERSION
+						&& header.getShort(OFFSET_RECORD_SIZE) == RECORD_SIZE;
+				if (valid) {
+					next = Math.max(next, header.getInt(OFFSET_SEGMENT) + 1);
+					if ((header.getInt(OFFSET_FLAGS) & FLAG_CLOSED) == 0)
+						close(segment, file, length);
+				}
+			}
+			// The file is deleted once it's closed.
+			if (!valid) {
+				delete(segment);
+				SegmentIndex.delete(segment);
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Truncates a segment that was not closed to its last complete record, and closes it.
+	 */
+	private static void close(@NonNull final File segment, @NonNull final RandomAccessFile file,
+							  final long length) throws IOException {
+		final MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+		final int count = findLastRecord(buffer, (length - HEADER_SIZE) / RECORD_SIZE);
+		buffer.putLong(OFFSET_WRITTEN, count);
+		buffer.putLong(OFFSET_COMMITTED, count);
+		buffer.putInt(OFFSET_FLAGS, buffer.getInt(OFFSET_FLAGS) | FLAG_CLOSED);
+		buffer.force();
+		file.setLength(HEADER_SIZE + (long) count * RECORD_SIZE);
+		SegmentIndex.write(segment, buffer, count);
+	}
+
+	/**
+	 * Marks the session as busy, waiting until it's released if it's being recovered.
+	 */
+	private static void acquire(@NonNull final File directory) throws IOException {
+		final File key = directory.getAbsoluteFile();
+		synchronized (busySessions) {
+			try {
+				while (!busySessions.add(key))
+					busySessions.wait();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for " + directory);
+			}
+		}
+	}
+
+	private static void release(@NonNull final File directory) {
+		synchronized (busySessions) {
+			busySessions.remove(directory.getAbsoluteFile());
+			busySessions.notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the number of complete records of a segment that was not closed. It's also used
+	 * by {@link SessionReader} for segments still being written, or left by a crash.
+	 *
+	 * @param buffer   the mapped segment.
+	 * @param capacity the number of records that fit in the mapping.
+	 */
+	/* package */ static int findLastRecord(@NonNull final ByteBuffer buffer, final long capacity) {
+		// The committed records have been forced to storage. Records after them, up to the
+		// written count, are complete if only the process was killed. After a system crash,
+		// the written count may have been stored before the records, so they are validated.
+		final long committed = Math.min(buffer.getLong(OFFSET_COMMITTED), capacity);
+		final long written = Math.min(buffer.getLong(OFFSET_WRITTEN), capacity);
+		long previous = committed > 0 ? timestampAt(buffer, committed - 1) : 1;
+		long count = Math.max(committed, 0);
+		while (count < written) {
+			final long timestamp = timestampAt(buffer, count);
+			if (timestamp < previous)
+				break;
+			previous = timestamp;
+			count++;
+		}
+		return (int) count;
+	}
+
+	/* package */ static long timestampAt(@NonNull final ByteBuffer buffer, final long index) {
+		return buffer.getLong((int) (HEADER_SIZE + index * RECORD_SIZE + OFFSET_TIMESTAMP));
+	}
+
+	private static void delete(@NonNull final File file) throws IOException {
+		if (!file.delete())
+			throw new IOException("Could not delete " + file);
+	}
+
+	@NonNull
+	private static File segmentFile(@NonNull final File directory, final int index) {
+		return new File(directory, String.format(Locale.US, "%s%06d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+	}
+
+	/**
+	 * Appends samples with their timestamps, starting new segments as needed.
+	 *
+	 * @param samples    the uint16 samples.
+	 * @param timestamps the timestamps, in nanoseconds of a monotonic clock. They must be
+	 *                   positive and not lower than the last timestamp written.
+	 * @param offset     the offset in the arrays.
+	 * @param length     the number of samples.
+	 * @throws IOException if a new segment could not be created.
+	 */
+	@WorkerThread
+	public void append(@NonNull final int[] samples, @NonNull final long[] timestamps,
+					   final int offset, final int length) throws IOException {
+		int i = offset;
+		final int end = offset + length;
+		while (i < end) {
+			if (count == segmentCapacity) {
+				closeSegment();
+				segmentIndex++;
+				openSegment();
+			}
+			final MappedByteBuffer buffer = this.buffer;
+			final int chunkEnd = Math.min(end, i + segmentCapacity - count);
+			int position = HEADER_SIZE + count * RECORD_SIZE;
+			for (; i < chunkEnd; i++) {
+				final long timestamp = timestamps[i];
+				if (timestamp <= 0 || timestamp < lastTimestamp)
+					throw new IllegalArgumentException("Timestamps must be positive and not decrease");
+				// The sample is written first, so that a record with a timestamp is complete.
+				buffer.putShort(position + OFFSET_SAMPLE, (short) samples[i]);
+				buffer.putLong(position + OFFSET_TIMESTAMP, timestamp);
+				lastTimestamp = timestamp;
+				position += RECORD_SIZE;
+				count++;
+				totalCount++;
+			}
+			buffer.putLong(OFFSET_WRITTEN, count);
+		}
+	}
+
+	/**
+	 * Forces all records written to storage and marks them as committed. This may take a
+	 * while, and should be called periodically rather than after each block of samples.
+	 */
+	@WorkerThread
+	public void commit() {
+		final MappedByteBuffer buffer = this.buffer;
+		if (buffer == null || committedCount == totalCount)
+			return;
+		buffer.force();
+		// The committed count itself is stored with the next commit, or when closed.
+		buffer.putLong(OFFSET_COMMITTED, count);
+		committedCount = totalCount;
+	}
+
+	/**
+	 * Returns the session directory.
+	 */
+	@NonNull
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the number of samples written by this writer.
+	 */
+	public long getCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Returns the number of samples written by this writer and forced to storage.
+	 */
+	public long getCommittedCount() {
+		return committedCount;
+	}
+
+	/**
+	 * Commits the records and closes the current segment.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			if (file != null)
+				closeSegment();
+		} finally {
+			release(directory);
+		}
+	}
+
+	private void openSegment() throws IOException {
+		final long size = HEADER_SIZE + (long) segmentCapacity * RECORD_SIZE;
+		final RandomAccessFile file = new RandomAccessFile(segmentFile(directory, segmentIndex), "rw");
+		final MappedByteBuffer buffer;
+		try {
+			// The file is sparse until records are written.
+			file.setLength(size);
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} catch (final IOException e) {
+			file.close();
+			throw e;
+		}
+		buffer.putShort(OFFSET_VERSION, (short) VERSION);
+		buffer.putShort(OFFSET_RECORD_SIZE, (short) RECORD_SIZE);
+		buffer.putInt(OFFSET_SEGMENT, segmentIndex);
+		buffer.putInt(OFFSET_FLAGS, 0);
+		buffer.putLong(OFFSET_WRITTEN, 0);
+		buffer.putLong(OFFSET_COMMITTED, 0);
+		buffer.putLong(OFFSET_ADDRESS, address);
+		buffer.putLong(OFFSET_WALL_TIME, System.currentTimeMillis());
+		buffer.putLong(OFFSET_MONOTONIC_TIME, SystemClock.elapsedRealtimeNanos());
+		buffer.putInt(OFFSET_CAPACITY, segmentCapacity);
+		// The magic number is written last, so that a segment with a valid header has one.
+		buffer.putInt(0, MAGIC);
+		this.file = file;
+		this.buffer = buffer;
+		this.count = 0;
+	}
+
+	private void closeSegment() throws IOException {
+		final RandomAccessFile file = this.file;
+		final MappedByteBuffer buffer = this.buffer;
+		this.file = null;
+		this.buffer = null;
+		try {
+			buffer.putLong(OFFSET_COMMITTED, count);
+			buffer.putInt(OFFSET_FLAGS, buffer.getInt(OFFSET_FLAGS) | FLAG_CLOSED);
+			buffer.force();
+			committedCount = totalCount;
+			// Segments are sparse, but readers don't need to map the free space.
+			file.setLength(HEADER_SIZE + (long) count * RECORD_SIZE);
+		} finally {
+			file.close();
+		}
+		SegmentIndex.write(segmentFile(directory, segmentIndex), buffer, count);
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.utils;
+
+import java.util.Arrays;
+
+/**
+ * A priority queue of ids ordered by time, backed by a binary heap of primitive arrays.
+ * <p>
+ * The queue is meant to be used lazily: each object is added once with the time it was last
+ * seen, and when it reaches the head of the queue the owner checks the current time of the
+ * object. If it has been seen since, it is added back with the new time instead of being
+ * expired. This way updating the time of an object costs nothing, and finding expired or least
+ * recently seen objects does not require scanning all of them.
+ * <p>
+ * This class is not thread safe.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class ExpiryQueue {
+	private long[] times;
+	private long[] ids;
+	private int size;
+
+	public ExpiryQueue() {
+		this(16);
+	}
+
+	public ExpiryQueue(final int initialCapacity) {
+		times = new long[Math.max(1, initialCapacity)];
+		ids = new long[times.length];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Adds the id with the given time.
+	 *
+	 * @param id   the id.
+	 * @param time the time.
+	 */
+	public void add(final long id, final long time) {
+		if (size == times.length) {
+			times = Arrays.copyOf(times, size << 1);
+			ids = Arrays.copyOf(ids, size << 1);
+		}
+		int i = size++;
+		// Sift up.
+		while (i > 0) {
+			final int parent = (i - 1) >>> 1;
+			if (times[parent] <= time)
+				break;
+			times[i] = times[parent];
+			ids[i] = ids[parent];
+			i = parent;
+		}
+		times[i] = time;
+		ids[i] = id;
+	}
+
+	/**
+	 * Returns the time of the head of the queue, that is the lowest time.
+	 * The queue must not be empty.
+	 */
+	public long peekTime() {
+		if (size == 0)
+			throw new IllegalStateException("Queue is empty");
+		return times[0];
+	}
+
+	/**
+	 * Returns the id at the head of the queue. The queue must not be empty.
+	 */
+	public long peekId() {
+		if (size == 0)
+			throw new IllegalStateException("Queue is empty");
+		return ids[0];
+	}
+
+	/**
+	 * Removes the head of the queue. The queue must not be empty.
+	 *
+	 * @return The removed id.
+	 */
+	public long poll() {
+		final long id = peekId();
+		final int last = --size;
+		if (last > 0) {
+			final long time = times[last];
+			final long lastId = ids[last];
+			int i = 0;
+			// Sift down.
+			while (true) {
+				int child = (i << 1) + 1;
+				if (child >= last)
+					break;
+				if (child + 1 < last && times[child + 1] < times[child])
+					child++;
+				if (time <= times[child])
+					break;
+				times[i] = times[child];
+				ids[i] = ids[child];
+				i = child;
+			}
+			times[i] = time;
+			ids[i] = lastId;
+		}
+		return id;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A sorted list with O(log n) insertion, removal and access by index.
+ * <p>
+ * Each node keeps, for every level, the number of elements its link skips over, so the index
+ * of an element is the sum of the widths of the links followed to reach it. Elements must not
+ * change their order while on the list: remove an element, change its sort key and add it again.
+ * The comparator must not consider two different elements equal.
+ * <p>
+ * This class is not thread safe.
+ */
+@SuppressWarnings("unused")
+public class IndexedSkipList<E> implements Iterable<E> {
+	private static final int MAX_LEVEL = 16;
+
+	private static final class Node<E> {
+		@Nullable
+		private final E value;
+		@NonNull
+		private final Node<E>[] next;
+		@NonNull
+		private final int[] width;
+
+		@SuppressWarnings("unchecked")
+		private Node(@Nullable final E value, final int level) {
+			this.value = value;
+			this.next = (Node<E>[]) new Node<?>[level];
+			this.width = new int[level];
+		}
+	}
+
+	@NonNull
+	private final Comparator<? super E> comparator;
+	@NonNull
+	private final Node<E> head = new Node<>(null, MAX_LEVEL);
+	private int level = 1;
+	private int size;
+	/** State of the xorshift generator of node levels. */
+	private int seed = 0x2545F491;
+
+	// Reused by add and remove.
+	@SuppressWarnings("unchecked")
+	private final Node<E>[] update = (Node<E>[]) new Node<?>[MAX_LEVEL];
+	private final int[] rank = new int[MAX_LEVEL];
+
+	public IndexedSkipList(@NonNull final Comparator<? super E> comparator) {
+		this.comparator = comparator;
+	}
+
+	/**
+	 * Returns the number of elements.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Inserts the element at its sorted position.
+	 *
+	 * @param element the element.
+	 * @return The index of the element.
+	 */
+	public int add(@NonNull final E element) {
+		Node<E> x = head;
+		for (int i = level - 1; i >= 0; i--) {
+			rank[i] = i == level - 1 ? 0 : rank[i + 1];
+			while (x.next[i] != null && comparator.compare(x.next[i].value, element) < 0) {
+				rank[i] += x.width[i];
+				x = x.next[i];
+			}
+			update[i] = x;
+		}
+
+		final int nodeLevel = randomLevel();
+		if (nodeLevel > level) {
+			for (int i = level; i < nodeLevel; i++) {
+				rank[i] = 0;
+				update[i] = head;
+				head.width[i] = size;
+			}
+			level = nodeLevel;
+		}
+
+		final Node<E> node = new Node<>(element, nodeLevel);
+		for (int i = 0; i < nodeLevel; i++) {
+			node.next[i] = update[i].next[i];
+			update[i].next[i] = node;
+			node.width[i] = update[i].width[i] - (rank[0] - rank[i]);
+			update[i].width[i] = rank[0] - rank[i] + 1;
+		}
+		// Links above the new node now skip over one more element.
+		for (int i = nodeLevel; i < level; i++)
+			update[i].width[i]++;
+		size++;
+		clearUpdate();
+		return rank[0];
+	}
+
+	/**
+	 * Removes the element.
+	 *
+	 * @param element the element, with the same sort key as when it was added.
+	 * @return The index the element had, or -1 if it was not found.
+	 */
+	public int remove(@NonNull final E element) {
+		Node<E> x = head;
+		int index = 0;
+		for (int i = level - 1; i >= 0; i--) {
+			while (x.next[i] != null && comparator.compare(x.next[i].value, element) < 0) {
+				index += x.width[i];
+				x = x.next[i];
+			}
+			update[i] = x;
+		}
+		x = x.next[0];
+		if (x == null || comparator.compare(x.value, element) != 0) {
+			clearUpdate();
+			return -1;
+		}
+
+		for (int i = 0; i < level; i++) {
+			if (update[i].next[i] == x) {
+				update[i].width[i] += x.width[i] - 1;
+				update[i].next[i] = x.next[i];
+			} else {
+				update[i].width[i]--;
+			}
+		}
+		while (level > 1 && head.next[level - 1] == null)
+			level--;
+		size--;
+		clearUpdate();
+		return index;
+	}
+
+	/**
+	 * Returns the index of the element, or -1 if it's not on the list.
+	 *
+	 * @param element the element, with the same sort key as when it was added.
+	 */
+	public int indexOf(@NonNull final E element) {
+		Node<E> x = head;
+		int traversed = 0;
+		for (int i = level - 1; i >= 0; i--) {
+			while (x.next[i] != null && comparator.compare(x.next[i].value, element) <= 0) {
+				traversed += x.width[i];
+				x = x.next[i];
+			}
+			if (x != head && comparator.compare(x.value, element) == 0)
+				return traversed - 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the element at the given index.
+	 *
+	 * @param index the index.
+	 * @throws IndexOutOfBoundsException if the index is out of range.
+	 */
+	@NonNull
+	public E get(final int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+		Node<E> x = head;
+		int traversed = 0;
+		for (int i = level - 1; i >= 0; i--) {
+			while (x.next[i] != null && traversed + x.width[i] <= index + 1) {
+				traversed += x.width[i];
+				x = x.next[i];
+			}
+			if (traversed == index + 1)
+				break;
+		}
+		//noinspection ConstantConditions
+		return x.value;
+	}
+
+	/**
+	 * Adds all elements, in order, to the given collection.
+	 */
+	public void copyTo(@NonNull final Collection<? super E> collection) {
+		for (Node<E> x = head.next[0]; x != null; x = x.next[0])
+			collection.add(x.value);
+	}
+
+	/**
+	 * Returns an iterator over the elements in order, walking the lowest level of the list,
+	 * so that iterating all elements takes O(n). The list must not be modified meanwhile.
+	 */
+	@NonNull
+	@Override
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+			@Nullable
+			private Node<E> next = head.next[0];
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public E next() {
+				final Node<E> node = next;
+				if (node == null)
+					throw new NoSuchElementException();
+				next = node.next[0];
+				return node.value;
+			}
+		};
+	}
+
+	/**
+	 * Removes all elements.
+	 */
+	public void clear() {
+		for (int i = 0; i < MAX_LEVEL; i++) {
+			head.next[i] = null;
+			head.width[i] = 0;
+		}
+		level = 1;
+		size = 0;
+	}
+
+	/**
+	 * Returns a level with probability 1/4 of each next level.
+	 */
+	private int randomLevel() {
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		final int level = 1 + Integer.numberOfTrailingZeros(seed | 1 << 30) / 2;
+		return Math.min(level, MAX_LEVEL);
+	}
+
+	/** Drops references to nodes, so that removed nodes can be collected. */
+	private void clearUpdate() {
+		for (int i = 0; i < MAX_LEVEL; i++)
+			update[i] = null;
+	}
+}
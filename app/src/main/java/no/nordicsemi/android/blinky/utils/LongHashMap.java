@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.utils;
+
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A hash map with primitive long keys, using open addressing with linear probing.
+ * <p>
+ * Compared to {@link java.util.HashMap} it does not box the keys and does not allocate
+ * entries, and compared to {@link android.util.LongSparseArray} lookups and inserts take
+ * constant time instead of a binary search. Null values are not allowed.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @param <V> the value type.
+ */
+@SuppressWarnings({"unchecked", "WeakerAccess", "unused"})
+public final class LongHashMap<V> {
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private long[] keys;
+	private Object[] values;
+	private int mask;
+	private int size;
+
+	public LongHashMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates the map able to hold the given number of entries without resizing.
+	 *
+	 * @param expectedSize the expected number of entries.
+	 */
+	public LongHashMap(final int expectedSize) {
+		allocate(tableSizeFor(expectedSize));
+	}
+
+	/**
+	 * Returns the number of entries in the map.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the value associated with the key, or null, if there is none.
+	 *
+	 * @param key the key.
+	 * @return The value or null.
+	 */
+	@Nullable
+	public V get(final long key) {
+		int i = indexOf(key);
+		Object value;
+		while ((value = values[i]) != null) {
+			if (keys[i] == key)
+				return (V) value;
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	public boolean containsKey(final long key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Associates the value with the given key.
+	 *
+	 * @param key   the key.
+	 * @param value the value, not null.
+	 * @return The previous value associated with the key, or null.
+	 */
+	@Nullable
+	public V put(final long key, @NonNull final V value) {
+		//noinspection ConstantConditions
+		if (value == null)
+			throw new NullPointerException("Null values are not supported");
+
+		int i = indexOf(key);
+		Object current;
+		while ((current = values[i]) != null) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return (V) current;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size > (mask + 1) * 3 / 4)
+			resize((mask + 1) << 1);
+		return null;
+	}
+
+	/**
+	 * Removes the value associated with the given key.
+	 *
+	 * @param key the key.
+	 * @return The removed value, or null if there was none.
+	 */
+	@Nullable
+	public V remove(final long key) {
+		int i = indexOf(key);
+		Object current;
+		while ((current = values[i]) != null) {
+			if (keys[i] == key) {
+				shiftBack(i);
+				size--;
+				return (V) current;
+			}
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Removes all entries. The allocated table is kept.
+	 */
+	public void clear() {
+		if (size > 0) {
+			Arrays.fill(values, null);
+			size = 0;
+		}
+	}
+
+	/**
+	 * Closes the gap left by a removed entry by moving back following entries from the same
+	 * probe sequence, so that lookups never need tombstones.
+	 */
+	private void shiftBack(int gap) {
+		int i = gap;
+		while (true) {
+			i = (i + 1) & mask;
+			final Object value = values[i];
+			if (value == null)
+				break;
+			final int home = indexOf(keys[i]);
+			// Move the entry if its home slot is not in the cyclic range (gap, i].
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				keys[gap] = keys[i];
+				values[gap] = value;
+				gap = i;
+			}
+		}
+		values[gap] = null;
+	}
+
+	private int indexOf(final long key) {
+		// Finalizer of MurmurHash3, spreads the bits of sequential addresses.
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return (int) h & mask;
+	}
+
+	private void resize(final int capacity) {
+		final long[] oldKeys = keys;
+		final Object[] oldValues = values;
+		allocate(capacity);
+		for (int j = 0; j < oldValues.length; j++) {
+			final Object value = oldValues[j];
+			if (value != null) {
+				int i = indexOf(oldKeys[j]);
+				while (values[i] != null)
+					i = (i + 1) & mask;
+				keys[i] = oldKeys[j];
+				values[i] = value;
+			}
+		}
+	}
+
+	private void allocate(final int capacity) {
+		keys = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+	}
+
+	private static int tableSizeFor(final int expectedSize) {
+		final int required = Math.max(DEFAULT_CAPACITY, expectedSize * 4 / 3 + 1);
+		return Integer.highestOneBit(required - 1) << 1;
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.utils;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Helper methods for converting Bluetooth MAC addresses between their textual form
+ * (<code>AA:BB:CC:DD:EE:FF</code>) and a 48-bit value packed into a primitive long.
+ * <p>
+ * A packed address is unique for each device, never negative and does not require any
+ * allocation to compare or hash, which makes it a good key for device lookups and a stable
+ * id for list items.
+ */
+public final class MacAddress {
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private MacAddress() {
+		// empty
+	}
+
+	/**
+	 * Packs the given MAC address into a long.
+	 *
+	 * @param address the address in <code>AA:BB:CC:DD:EE:FF</code> format.
+	 * @return The 48-bit address as a long.
+	 * @throws IllegalArgumentException if the address is not a valid MAC address.
+	 */
+	public static long pack(@NonNull final String address) {
+		if (address.length() != 17)
+			throw new IllegalArgumentException("Invalid MAC address: " + address);
+
+		long value = 0;
+		for (int i = 0; i < 17; i += 3) {
+			if (i > 0 && address.charAt(i - 1) != ':')
+				throw new IllegalArgumentException("Invalid MAC address: " + address);
+			final int high = Character.digit(address.charAt(i), 16);
+			final int low = Character.digit(address.charAt(i + 1), 16);
+			if (high < 0 || low < 0)
+				throw new IllegalArgumentException("Invalid MAC address: " + address);
+			value = (value << 8) | (high << 4) | low;
+		}
+		return value;
+	}
+
+	/**
+	 * Converts the packed address back to the <code>AA:BB:CC:DD:EE:FF</code> format.
+	 *
+	 * @param value the address packed using {@link #pack(String)}.
+	 * @return The address as a String.
+	 */
+	@NonNull
+	public static String unpack(final long value) {
+		final char[] chars = new char[17];
+		for (int i = 0; i < 6; i++) {
+			final int octet = (int) (value >>> (40 - 8 * i)) & 0xFF;
+			final int offset = i * 3;
+			chars[offset] = HEX[octet >>> 4];
+			chars[offset + 1] = HEX[octet & 0x0F];
+			if (i < 5)
+				chars[offset + 2] = ':';
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.utils;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Counts events in a sliding time window, divided into buckets, to report their rate.
+ * <p>
+ * Recording an event only increments the counter of the current bucket, and buckets older
+ * than the window are reset when their slot is reused, so no timestamps are stored. The window
+ * slides with the resolution of one bucket.
+ * <p>
+ * This class is thread safe.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class RateMeter {
+	@NonNull
+	private final Clock clock;
+	private final long bucketDuration;
+	/** Number of events in each bucket. */
+	private final long[] counts;
+	/** The bucket number, since the clock's epoch, each slot is counting. */
+	private final long[] buckets;
+	private long startTime;
+
+	/**
+	 * Creates the meter.
+	 *
+	 * @param clock   the clock.
+	 * @param window  the window duration, in milliseconds.
+	 * @param buckets number of buckets the window is divided into.
+	 */
+	public RateMeter(@NonNull final Clock clock, final long window, final int buckets) {
+		if (buckets < 1 || window < buckets)
+			throw new IllegalArgumentException("Invalid window: " + window + " ms in " + buckets + " buckets");
+		this.clock = clock;
+		this.bucketDuration = window / buckets;
+		this.counts = new long[buckets];
+		this.buckets = new long[buckets];
+		reset();
+	}
+
+	/**
+	 * Records a single event.
+	 */
+	public void record() {
+		record(1);
+	}
+
+	/**
+	 * Records the given number of events at the current time.
+	 *
+	 * @param count number of events.
+	 */
+	public synchronized void record(final long count) {
+		final long bucket = clock.elapsedRealtime() / bucketDuration;
+		final int slot = (int) (bucket % counts.length);
+		if (buckets[slot] != bucket) {
+			buckets[slot] = bucket;
+			counts[slot] = 0;
+		}
+		counts[slot] += count;
+	}
+
+	/**
+	 * Returns the number of events recorded in the window.
+	 */
+	public synchronized long getCount() {
+		final long current = clock.elapsedRealtime() / bucketDuration;
+		long count = 0;
+		for (int i = 0; i < counts.length; i++) {
+			if (buckets[i] > current - counts.length)
+				count += counts[i];
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the average rate of events in the window. Until the window has passed since
+	 * the meter was created or reset, the time since then is used instead.
+	 *
+	 * @param unit the time unit of the rate, in milliseconds, e.g. 1000 for events per second.
+	 * @return The number of events per time unit.
+	 */
+	public synchronized float getRate(final long unit) {
+		final long now = clock.elapsedRealtime();
+		// The current bucket is only partially elapsed.
+		final long window = (counts.length - 1) * bucketDuration + now % bucketDuration;
+		final long elapsed = Math.max(1, Math.min(window, now - startTime));
+		return (float) getCount() * unit / elapsed;
+	}
+
+	/**
+	 * Clears all recorded events.
+	 */
+	public synchronized void reset() {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = 0;
+			buckets[i] = Long.MIN_VALUE;
+		}
+		startTime = clock.elapsedRealtime();
+	}
+}
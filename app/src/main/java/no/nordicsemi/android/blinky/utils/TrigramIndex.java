@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.utils;
+
+import java.util.Collection;
+
+import androidx.annotation.NonNull;
+
+/**
+ * An index of elements by the trigrams (3 consecutive characters) of their keys, used to find
+ * elements whose key contains a given substring.
+ * <p>
+ * Each trigram of a query is contained in every matching key, so the shortest posting list
+ * of the query trigrams is a superset of the matches. The candidates must be verified by the
+ * caller, which also handles duplicates, reported when a trigram occurs more than once in
+ * a key, or when the key of an element has changed.
+ * <p>
+ * Removing an element only counts its postings as stale. When more than half of the postings
+ * are stale, {@link #isCompactionNeeded()} returns true, and the caller should
+ * {@link #clear()} the index and add all current elements again.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @param <E> the element type.
+ */
+@SuppressWarnings({"unchecked", "WeakerAccess", "unused"})
+public final class TrigramIndex<E> {
+	/** The number of stale postings below which the index is never compacted. */
+	private static final int MIN_STALE_POSTINGS = 1024;
+
+	private static final class Postings {
+		private Object[] elements = new Object[4];
+		private int size;
+
+		private void add(@NonNull final Object element) {
+			if (size == elements.length) {
+				final Object[] grown = new Object[size * 2];
+				System.arraycopy(elements, 0, grown, 0, size);
+				elements = grown;
+			}
+			elements[size++] = element;
+		}
+	}
+
+	@NonNull
+	private final LongHashMap<Postings> postings = new LongHashMap<>();
+	private int size;
+	private int staleSize;
+
+	/**
+	 * Adds the element with all trigrams of the key. Keys shorter than 3 characters
+	 * are not indexed.
+	 *
+	 * @param element the element.
+	 * @param key     the key, normalized the same way as queries.
+	 */
+	public void add(@NonNull final E element, @NonNull final CharSequence key) {
+		for (int i = 0; i + 3 <= key.length(); i++) {
+			final long trigram = trigram(key, i);
+			Postings list = postings.get(trigram);
+			if (list == null) {
+				list = new Postings();
+				postings.put(trigram, list);
+			}
+			list.add(element);
+			size++;
+		}
+	}
+
+	/**
+	 * Marks postings of the element with the given key as stale. The element will still be
+	 * returned as a candidate until the index is compacted.
+	 *
+	 * @param key the key the element was added with.
+	 */
+	public void remove(@NonNull final CharSequence key) {
+		staleSize += Math.max(key.length() - 2, 0);
+	}
+
+	/**
+	 * Returns true if more than half of the postings are stale.
+	 */
+	public boolean isCompactionNeeded() {
+		return staleSize > MIN_STALE_POSTINGS && staleSize > size / 2;
+	}
+
+	/**
+	 * Adds elements that may contain the query to the given collection.
+	 *
+	 * @param query the query, normalized the same way as keys.
+	 * @param out   the collection to add the candidates to.
+	 * @return False if the query is shorter than 3 characters and can't be looked up,
+	 * in which case all elements are candidates.
+	 */
+	public boolean candidates(@NonNull final CharSequence query,
+							  @NonNull final Collection<? super E> out) {
+		if (query.length() < 3)
+			return false;
+
+		Postings shortest = null;
+		for (int i = 0; i + 3 <= query.length(); i++) {
+			final Postings list = postings.get(trigram(query, i));
+			if (list == null)
+				return true;
+			if (shortest == null || list.size < shortest.size)
+				shortest = list;
+		}
+		for (int i = 0; i < shortest.size; i++)
+			out.add((E) shortest.elements[i]);
+		return true;
+	}
+
+	/**
+	 * Removes all elements.
+	 */
+	public void clear() {
+		postings.clear();
+		size = 0;
+		staleSize = 0;
+	}
+
+	private static long trigram(@NonNull final CharSequence s, final int offset) {
+		return ((long) s.charAt(offset) << 32) | ((long) s.charAt(offset + 1) << 16) | s.charAt(offset + 2);
+	}
+}
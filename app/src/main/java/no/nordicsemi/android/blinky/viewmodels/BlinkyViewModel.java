@@ -23,27 +23,61 @@
 package no.nordicsemi.android.blinky.viewmodels;
 
 import android.app.Application;
-import android.bluetooth.BluetoothDevice;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import no.nordicsemi.android.ble.livedata.state.ConnectionState;
+import no.nordicsemi.android.blinky.BlinkyApplication;
 import no.nordicsemi.android.blinky.adapter.DiscoveredBluetoothDevice;
+import no.nordicsemi.android.blinky.profile.BlinkyConnectionManager;
 import no.nordicsemi.android.blinky.profile.BlinkyManager;
-import no.nordicsemi.android.log.LogSession;
-import no.nordicsemi.android.log.Logger;
+import no.nordicsemi.android.blinky.stream.ChartDecimator;
+import no.nordicsemi.android.blinky.stream.SampleRecorder;
+import no.nordicsemi.android.blinky.stream.SessionExporter;
+import no.nordicsemi.android.blinky.stream.SessionReader;
+import no.nordicsemi.android.blinky.stream.SessionWriter;
+import no.nordicsemi.android.blinky.utils.MacAddress;
 
 public class BlinkyViewModel extends AndroidViewModel {
-	private final BlinkyManager blinkyManager;
-	private BluetoothDevice device;
+	private static final String TAG = "BlinkyViewModel";
+	/** Directory in the app files directory with a directory of sessions for each device. */
+	public static final String RECORDINGS_DIRECTORY = "recordings";
+	/** Directory in the app cache directory with exported sessions, shared with other apps. */
+	public static final String EXPORTS_DIRECTORY = "exports";
+
+	private final BlinkyConnectionManager connectionManager;
+	private final MutableLiveData<Boolean> recording = new MutableLiveData<>(false);
+	private final MutableLiveData<Integer> exportProgress = new MutableLiveData<>();
+	private final SingleLiveEvent<File> exportedFile = new SingleLiveEvent<>();
+	/** Recovers sessions and exports them, one at a time. */
+	private final ExecutorService sessionExecutor =
+			Executors.newSingleThreadExecutor(r -> new Thread(r, "Sessions"));
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	/** The running export. It's set and cleared on the main thread. */
+	private SessionExporter sessionExporter;
+	private BlinkyManager blinkyManager;
+	private ChartDecimator chartDecimator;
+	private SampleRecorder sampleRecorder;
+	private DiscoveredBluetoothDevice device;
 
 	public BlinkyViewModel(@NonNull final Application application) {
 		super(application);
 
-		// Initialize the manager.
-		blinkyManager = new BlinkyManager(getApplication());
+		// Connections are scheduled by the connection manager, shared with other screens.
+		connectionManager = ((BlinkyApplication) application).getConnectionManager();
 	}
 
 	public LiveData<ConnectionState> getConnectionState() {
@@ -60,18 +94,187 @@ public class BlinkyViewModel extends AndroidViewModel {
 	}
 
 	/**
-	 * Connect to the given peripheral.
+	 * Returns the decimator of the voltage chart. It keeps the history of samples received
+	 * since {@link #connect(DiscoveredBluetoothDevice)} was called.
+	 */
+	public ChartDecimator getChartDecimator() {
+		return chartDecimator;
+	}
+
+	/**
+	 * Returns the number of voltage samples received per second, or null when disconnected.
+	 */
+	public LiveData<Float> getSampleRate() {
+		return blinkyManager.getSampleRate();
+	}
+
+	/**
+	 * Returns whether voltage samples are being recorded.
+	 */
+	public LiveData<Boolean> isRecording() {
+		return recording;
+	}
+
+	/**
+	 * Starts or stops recording voltage samples. Each recording is a new session in the
+	 * device directory in {@link #RECORDINGS_DIRECTORY}, named by the time it was started.
+	 *
+	 * @param enabled true to start recording, false to stop.
+	 */
+	public void setRecording(final boolean enabled) {
+		if (enabled == (sampleRecorder != null && sampleRecorder.isRecording()))
+			return;
+
+		// A recorder that failed has already stopped.
+		if (sampleRecorder != null) {
+			sampleRecorder.stop();
+			sampleRecorder = null;
+		}
+		if (enabled) {
+			final File directory = new File(getDeviceRecordingsDirectory(),
+					String.valueOf(System.currentTimeMillis()));
+			sampleRecorder = new SampleRecorder(blinkyManager.getSampleBuffer(),
+					directory, MacAddress.pack(device.getAddress()));
+			// Called on the recorder thread.
+			sampleRecorder.setOnErrorListener(e -> recording.postValue(false));
+		}
+		recording.setValue(enabled);
+	}
+
+	/**
+	 * Returns the progress of the export in percent, or null if no export is running.
+	 */
+	public LiveData<Integer> getExportProgress() {
+		return exportProgress;
+	}
+
+	/**
+	 * Returns the event with the file written by an export that has completed.
+	 */
+	public LiveData<File> getExportedFile() {
+		return exportedFile;
+	}
+
+	/**
+	 * Exports the last recording of the device, which may still be running, to a file in
+	 * {@link #EXPORTS_DIRECTORY} on a background thread. Samples are streamed to the file,
+	 * so sessions of any length are exported in constant memory. Sessions that were not
+	 * closed are recovered first.
+	 *
+	 * @param format the format of the file.
+	 * @return False if the device has no recordings, or an export is already running.
+	 */
+	public boolean exportLastRecording(@NonNull final SessionExporter.Format format) {
+		final File session = getLastRecording();
+		if (session == null || sessionExporter != null)
+			return false;
+
+		final SessionExporter exporter = new SessionExporter(format);
+		final File output = new File(new File(getApplication().getCacheDir(), EXPORTS_DIRECTORY),
+				session.getParentFile().getName() + "-" + session.getName()
+						+ (format == SessionExporter.Format.CSV ? ".csv" : ".blke"));
+		sessionExporter = exporter;
+		exportProgress.setValue(0);
+		sessionExecutor.execute(() -> {
+			final int[] percent = { 0 };
+			try {
+				recoverSessions(session.getParentFile());
+				final File directory = output.getParentFile();
+				if (!directory.isDirectory() && !directory.mkdirs())
+					throw new IOException("Could not create " + directory);
+				final SessionReader reader = new SessionReader(session);
+				final boolean completed;
+				try (FileChannel channel = new FileOutputStream(output).getChannel()) {
+					completed = exporter.export(reader, channel, (exported, total) -> {
+						final int p = (int) (exported * 100 / total);
+						if (p != percent[0]) {
+							percent[0] = p;
+							exportProgress.postValue(p);
+						}
+					});
+				}
+				if (completed) {
+					Log.d(TAG, "Exported " + reader.getCount() + " samples to " + output);
+					exportedFile.postValue(output);
+				} else {
+					output.delete();
+				}
+			} catch (final IOException e) {
+				Log.w(TAG, "Export failed", e);
+				output.delete();
+			} finally {
+				// Cleared on the main thread, so that a new export can't start before the
+				// progress of this one is cleared.
+				handler.post(() -> {
+					sessionExporter = null;
+					exportProgress.setValue(null);
+				});
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Cancels the running export, if any. The partially written file is deleted.
+	 */
+	public void cancelExport() {
+		final SessionExporter exporter = sessionExporter;
+		if (exporter != null)
+			exporter.cancel();
+	}
+
+	/**
+	 * Recovers sessions of the device that were not closed, because the app was killed
+	 * while recording. The current recording is skipped.
+	 */
+	private static void recoverSessions(@NonNull final File directory) {
+		try {
+			SessionWriter.recoverSessions(directory);
+		} catch (final IOException e) {
+			Log.w(TAG, "Recovering sessions failed", e);
+		}
+	}
+
+	/**
+	 * Returns the directory with recording sessions of the device.
+	 */
+	@NonNull
+	private File getDeviceRecordingsDirectory() {
+		return new File(new File(getApplication().getFilesDir(), RECORDINGS_DIRECTORY),
+				device.getAddress().replace(":", ""));
+	}
+
+	/**
+	 * Returns the session directory of the current or last recording, or null.
+	 */
+	private File getLastRecording() {
+		if (sampleRecorder != null)
+			return sampleRecorder.getDirectory();
+		final File[] sessions = getDeviceRecordingsDirectory().listFiles(File::isDirectory);
+		if (sessions == null || sessions.length == 0)
+			return null;
+		// Sessions are named by the time they were started, with the same number of digits.
+		File last = sessions[0];
+		for (final File session : sessions)
+			if (session.getName().compareTo(last.getName()) > 0)
+				last = session;
+		return last;
+	}
+
+	/**
+	 * Connect to the given peripheral. The connection may be queued if other devices
+	 * are being connected.
 	 *
 	 * @param target the target device.
 	 */
 	public void connect(@NonNull final DiscoveredBluetoothDevice target) {
 		// Prevent from calling again when called again (screen orientation changed).
 		if (device == null) {
-			device = target.getDevice();
-			final LogSession logSession = Logger
-					.newSession(getApplication(), null, target.getAddress(), target.getName());
-			blinkyManager.setLogger(logSession);
-			reconnect();
+			device = target;
+			blinkyManager = connectionManager.connect(target);
+			chartDecimator = new ChartDecimator(blinkyManager.getSampleBuffer());
+			final File directory = getDeviceRecordingsDirectory();
+			sessionExecutor.execute(() -> recoverSessions(directory));
 		}
 	}
 
@@ -82,10 +285,7 @@ public class BlinkyViewModel extends AndroidViewModel {
 	 */
 	public void reconnect() {
 		if (device != null) {
-			blinkyManager.connect(device)
-					.retry(3, 100)
-					.useAutoConnect(false)
-					.enqueue();
+			connectionManager.connect(device);
 		}
 	}
 
@@ -93,8 +293,8 @@ public class BlinkyViewModel extends AndroidViewModel {
 	 * Disconnect from peripheral.
 	 */
 	private void disconnect() {
+		connectionManager.disconnect(device.getAddress());
 		device = null;
-		blinkyManager.disconnect().enqueue();
 	}
 
 	/**
@@ -109,7 +309,15 @@ public class BlinkyViewModel extends AndroidViewModel {
 	@Override
 	protected void onCleared() {
 		super.onCleared();
-		if (blinkyManager.isConnected()) {
+		if (chartDecimator != null) {
+			chartDecimator.quit();
+		}
+		if (sampleRecorder != null) {
+			sampleRecorder.stop();
+		}
+		cancelExport();
+		sessionExecutor.shutdown();
+		if (device != null) {
 			disconnect();
 		}
 	}
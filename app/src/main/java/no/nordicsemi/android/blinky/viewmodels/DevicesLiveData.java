@@ -25,136 +25,874 @@ package no.nordicsemi.android.blinky.viewmodels;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.lifecycle.LiveData;
-import android.os.ParcelUuid;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 
+import no.nordicsemi.android.blinky.adapter.DeviceTable;
 import no.nordicsemi.android.blinky.adapter.DiscoveredBluetoothDevice;
+import no.nordicsemi.android.blinky.filter.AdvertisingMatcher;
+import no.nordicsemi.android.blinky.filter.FilterCompiler;
 import no.nordicsemi.android.blinky.profile.BlinkyManager;
-import no.nordicsemi.android.support.v18.scanner.ScanRecord;
+import no.nordicsemi.android.blinky.scanner.RssiSmoother;
+import no.nordicsemi.android.blinky.scanner.ScanIngestor;
+import no.nordicsemi.android.blinky.utils.ExpiryQueue;
+import no.nordicsemi.android.blinky.utils.IndexedSkipList;
+import no.nordicsemi.android.blinky.utils.LongHashMap;
+import no.nordicsemi.android.blinky.utils.MacAddress;
+import no.nordicsemi.android.blinky.utils.TrigramIndex;
 import no.nordicsemi.android.support.v18.scanner.ScanResult;
 
 /**
  * This class keeps the current list of discovered Bluetooth LE devices matching filter.
- * Each time @{link {@link #applyFilter()} is called, the observers are notified with a new
- * list instance.
+ * <p>
+ * The filtered list is maintained incrementally: a device is evaluated against the filter only
+ * when its RSSI, name or advertising data change, and the result of parsing the advertising
+ * data is cached. Matching devices are kept on an {@link IndexedSkipList}, so the position of
+ * each device inserted, removed or moved is known when the change is made. Changes are
+ * collected until {@link #dispatchChanges()} is called, when the observers are notified with
+ * a {@link DevicesUpdate} containing the operations made since the previous update.
+ * <p>
+ * Devices not seen for longer than the time to live are evicted by {@link #evictExpired(long)},
+ * and when the number of devices exceeds the capacity, the least recently seen ones are evicted
+ * immediately. Both use an {@link ExpiryQueue}, so no scan over all devices is needed.
+ * <p>
+ * Devices are filtered by a {@link FilterCompiler filter expression}, matched directly against
+ * the raw advertising data. The UUID and nearby filters are preset expressions, combined with
+ * the custom expression, if set. RSSI predicates use the RSSI smoothed by the
+ * {@link RssiSmoother}, with hysteresis, so devices moving away are removed from the list
+ * without flickering at the threshold.
+ * <p>
+ * Unless shown in {@link SortOrder#DISCOVERY discovery order}, a device is moved only when its
+ * sort key changes by more than the hysteresis, so devices with nearly equal RSSI don't keep
+ * swapping places.
+ * <p>
+ * The search query is matched against device names and addresses, in addition to the filter.
+ * Names and addresses are indexed in a {@link TrigramIndex} as devices are added, renamed and
+ * evicted, so only devices containing the least common trigram of the query are checked.
  */
 @SuppressWarnings("unused")
-public class DevicesLiveData extends LiveData<List<DiscoveredBluetoothDevice>> {
-	private static final ParcelUuid FILTER_UUID = new ParcelUuid(BlinkyManager.LBS_UUID_SERVICE);
-	private static final int FILTER_RSSI = -50; // [dBm]
+public class DevicesLiveData extends LiveData<DevicesUpdate> {
+	/** The preset expression of the UUID filter. */
+	private static final String PRESET_UUID = "uuid(" + BlinkyManager.LBS_UUID_SERVICE + ")";
+	/** The preset expression of the nearby filter. */
+	private static final String PRESET_NEARBY = "rssi(-50)";
+	/** A device is moved when its smoothed RSSI changes this much since it was sorted. */
+	private static final int SORT_RSSI_HYSTERESIS = 4; // [dB]
+	/** A device is moved when it was sorted this long before it was last seen. */
+	private static final long SORT_LAST_SEEN_HYSTERESIS = 5000; // [ms]
 
+	/** Values of all discovered devices. */
 	@NonNull
-	private final List<DiscoveredBluetoothDevice> devices = new ArrayList<>();
+	private final DeviceTable deviceTable = new DeviceTable(64);
+	/**
+	 * All discovered devices, in the order of discovery. Evicted devices are removed lazily,
+	 * when more than half of the list is evicted.
+	 */
+	@NonNull
+	private final List<Entry> entries = new ArrayList<>();
+	private int evictedEntries;
+	/** All discovered devices, indexed by the packed device address. */
+	@NonNull
+	private final LongHashMap<Entry> entriesById = new LongHashMap<>();
+	@NonNull
+	private SortOrder sortOrder = SortOrder.DISCOVERY;
+	/** Devices matching the filter, in the sort order. */
+	@NonNull
+	private IndexedSkipList<Entry> visibleEntries = new IndexedSkipList<>(comparator(sortOrder));
+	private int visibleCount;
+	/** Incremented each time a device starts to match, used as the discovery order. */
+	private long visibleOrder;
+	/** Discovered devices ordered by the time they were last seen. */
+	@NonNull
+	private final ExpiryQueue expiryQueue = new ExpiryQueue();
+	private long timeToLive = Long.MAX_VALUE;
+	private int capacity = Integer.MAX_VALUE;
+	@NonNull
+	private RssiSmoother rssiSmoother = RssiSmoother.KALMAN;
+
+	/** Type, position and argument of each operation made since the last update. */
+	@NonNull
+	private int[] operations = new int[3 * 16];
+	private int operationsLength;
+	/** Devices inserted since the last update, referred to by the insert operations. */
+	@NonNull
+	private final List<Entry> inserted = new ArrayList<>();
+	/** Devices whose name, RSSI or state changed since the last update, unless inserted. */
+	@NonNull
+	private final List<Entry> updated = new ArrayList<>();
+	/** Whether the whole list is to be dispatched, instead of the operations. */
+	private boolean reset;
+	/** The last dispatched update, to which the next one is linked. */
 	@Nullable
-	private List<DiscoveredBluetoothDevice> filteredDevices = null;
+	private DevicesUpdate lastUpdate;
+	/** Incremented with each dispatched update, used to report each device only once. */
+	private int generation;
+	/** Total number of devices discovered, never decremented. */
+	private int discoveredCount;
+
 	private boolean filterUuidRequired;
 	private boolean filterNearbyOnly;
+	@Nullable
+	private String filterExpression;
+	/** The presets and the custom expression, compiled. */
+	@NonNull
+	private AdvertisingMatcher filter = AdvertisingMatcher.ALL;
+
+	/** Devices indexed by their search keys. */
+	@NonNull
+	private final TrigramIndex<Entry> searchIndex = new TrigramIndex<>();
+	/** The normalized search query, empty if not searching. */
+	@NonNull
+	private String searchQuery = "";
+	/**
+	 * Devices that matched the search query when it was set, or started to match after, or null
+	 * if not searching. Devices which stopped matching are not removed.
+	 */
+	@Nullable
+	private List<Entry> searchResults;
+	/** Incremented with each search, used to mark devices matching the query. */
+	private int searchGeneration;
+
+	/**
+	 * A discovered device together with cached filtering state.
+	 */
+	private static final class Entry {
+		@NonNull
+		private final DiscoveredBluetoothDevice device;
+		/** Whether the device matches the filter. */
+		private boolean visible;
+		/** The discovery order, set when the device started to match. */
+		private long order;
+		/** The values last dispatched to the observers. */
+		@Nullable
+		private DevicesUpdate.Item shown;
+		/** Whether the device has been evicted. */
+		private boolean evicted;
+		/** The generation in which the device was last inserted. */
+		private int addedGeneration = -1;
+		/** The generation in which the device was last reported as updated. */
+		private int updatedGeneration = -1;
+		// Sort keys, as they were when the entry was added to the sorted list.
+		private int sortRssi;
+		@Nullable
+		private String sortName;
+		private long sortLastSeen;
+		/** The normalized name and address, or null before the device is indexed. */
+		@Nullable
+		private String searchKey;
+		/** Whether the device matches the search query. */
+		private boolean searchMatch = true;
+		/** The search generation in which the device was last found. */
+		private int searchGeneration = -1;
+
+		private Entry(@NonNull final DiscoveredBluetoothDevice device) {
+			this.device = device;
+		}
+	}
 
 	/* package */ DevicesLiveData(final boolean filterUuidRequired, final boolean filterNearbyOnly) {
 		this.filterUuidRequired = filterUuidRequired;
 		this.filterNearbyOnly = filterNearbyOnly;
+		filter = compileFilter();
 	}
 
 	/* package */ synchronized void bluetoothDisabled() {
-		devices.clear();
-		filteredDevices = null;
-		postValue(null);
+		clear();
 	}
 
-	/* package */  boolean filterByUuid(final boolean uuidRequired) {
+	/* package */ synchronized boolean filterByUuid(final boolean uuidRequired) {
 		filterUuidRequired = uuidRequired;
-		return applyFilter();
+		filter = compileFilter();
+		return refilter();
 	}
 
-	/* package */  boolean filterByDistance(final boolean nearbyOnly) {
+	/* package */ synchronized boolean filterByDistance(final boolean nearbyOnly) {
 		filterNearbyOnly = nearbyOnly;
-		return applyFilter();
+		filter = compileFilter();
+		return refilter();
+	}
+
+	/**
+	 * Sets the custom filter expression, combined with the enabled presets.
+	 *
+	 * @param expression the expression, or null to use only the presets.
+	 * @return True if the filtered list is not empty.
+	 * @throws IllegalArgumentException if the expression is invalid. The filter is not changed.
+	 */
+	/* package */ synchronized boolean setFilterExpression(@Nullable final String expression) {
+		// Validate the expression on its own, so that error positions refer to it.
+		FilterCompiler.compile(expression);
+		filterExpression = expression;
+		filter = compileFilter();
+		return refilter();
+	}
+
+	/**
+	 * Sets the search query. Only devices whose name or address contains the query, ignoring
+	 * case, are shown. Only devices that matched the previous query, or may match the new one,
+	 * are evaluated.
+	 *
+	 * @param query the query, or null or empty to show all devices matching the filter.
+	 * @return True if the filtered list is not empty.
+	 */
+	/* package */ synchronized boolean setSearchQuery(@Nullable final String query) {
+		final String normalized = query == null ? "" : normalize(query.trim());
+		if (normalized.equals(searchQuery))
+			return visibleCount > 0;
+
+		final List<Entry> previousResults = searchResults;
+		List<Entry> results = null;
+		final int mark = ++searchGeneration;
+		if (!normalized.isEmpty()) {
+			// Refining the query can only remove devices from the results.
+			final boolean refined = previousResults != null && normalized.contains(searchQuery);
+			List<Entry> candidates = new ArrayList<>();
+			if (!searchIndex.candidates(normalized, candidates)
+					|| (refined && previousResults.size() < candidates.size())) {
+				candidates = refined ? previousResults : entries;
+			}
+			results = new ArrayList<>();
+			for (int i = 0; i < candidates.size(); i++) {
+				final Entry entry = candidates.get(i);
+				if (!entry.evicted && entry.searchGeneration != mark
+						&& entry.searchKey != null && entry.searchKey.contains(normalized)) {
+					entry.searchGeneration = mark;
+					results.add(entry);
+				}
+			}
+		}
+		searchQuery = normalized;
+		searchResults = results;
+
+		// Update devices that no longer match, and those that started to. When the search is
+		// cleared, all devices are shown again.
+		final List<Entry> previous = previousResults != null && results != null ? previousResults : entries;
+		for (int i = 0; i < previous.size(); i++) {
+			final Entry entry = previous.get(i);
+			if (!entry.evicted)
+				setSearchMatch(entry, results == null || entry.searchGeneration == mark);
+		}
+		if (results != null) {
+			for (int i = 0; i < results.size(); i++)
+				setSearchMatch(results.get(i), true);
+		}
+		return dispatchChanges();
 	}
 
+	/**
+	 * Sets the order of devices. The filtered list is sorted once, and then kept sorted
+	 * as devices are updated.
+	 *
+	 * @param order the sort order.
+	 * @return True if the filtered list is not empty.
+	 */
+	/* package */ synchronized boolean setSortOrder(@NonNull final SortOrder order) {
+		if (order == sortOrder)
+			return visibleCount > 0;
+
+		sortOrder = order;
+		final IndexedSkipList<Entry> sortedEntries = new IndexedSkipList<>(comparator(order));
+		for (final Entry entry : visibleEntries) {
+			updateSortKeys(entry);
+			sortedEntries.add(entry);
+		}
+		visibleEntries = sortedEntries;
+		reset = true;
+		return dispatchChanges();
+	}
+
+	/**
+	 * Sets the eviction policy. Devices not seen for longer than the time to live will be
+	 * removed on the next call to {@link #evictExpired(long)}. If the number of devices exceeds
+	 * the capacity, the least recently seen devices are removed immediately.
+	 *
+	 * @param timeToLive time to live, in milliseconds.
+	 * @param capacity   the maximum number of devices kept.
+	 */
+	/* package */ synchronized void setEvictionPolicy(final long timeToLive, final int capacity) {
+		this.timeToLive = timeToLive;
+		this.capacity = capacity;
+		evictOverCapacity();
+	}
+
+	/**
+	 * Sets the smoother used to calculate the RSSI of devices. The smoother state of all
+	 * devices is reset, so the new smoother starts from the next received packet.
+	 *
+	 * @param smoother the RSSI smoother.
+	 */
+	/* package */ synchronized void setRssiSmoother(@NonNull final RssiSmoother smoother) {
+		rssiSmoother = smoother;
+		deviceTable.resetRssiState();
+	}
+
+	/**
+	 * Updates the device matching the scan result, or adds a new one.
+	 *
+	 * @param result scan result.
+	 * @return True if the device is on the filtered list.
+	 */
 	/* package */ synchronized boolean deviceDiscovered(@NonNull final ScanResult result) {
-		DiscoveredBluetoothDevice device;
+		return deviceDiscovered(result, null);
+	}
+
+	/**
+	 * Updates devices matching the coalesced scan results, or adds new ones, holding the lock
+	 * only once for all of them.
+	 *
+	 * @param results scan results, at most one per device.
+	 */
+	/* package */ synchronized void devicesDiscovered(@NonNull final List<ScanIngestor.CoalescedResult> results) {
+		for (int i = 0; i < results.size(); i++) {
+			final ScanIngestor.CoalescedResult coalesced = results.get(i);
+			deviceDiscovered(coalesced.getResult(), coalesced);
+		}
+	}
+
+	private boolean deviceDiscovered(@NonNull final ScanResult result,
+									 @Nullable final ScanIngestor.CoalescedResult coalesced) {
+		final long id = MacAddress.pack(result.getDevice().getAddress());
 
 		// Check if it's a new device.
-		final int index = indexOf(result);
-		if (index == -1) {
-			device = new DiscoveredBluetoothDevice(result);
-			devices.add(device);
+		Entry entry = entriesById.get(id);
+		final int changes;
+		if (entry == null) {
+			entry = addEntry(id, deviceTable.add(result, rssiSmoother));
+			discoveredCount++;
+			changes = DiscoveredBluetoothDevice.CHANGED_RSSI
+					| DiscoveredBluetoothDevice.CHANGED_NAME
+					| DiscoveredBluetoothDevice.CHANGED_DATA;
 		} else {
-			device = devices.get(index);
+			// RSSI values of merged results are only used for smoothing.
+			if (coalesced != null) {
+				for (int i = 0; i < coalesced.getPreviousRssiCount(); i++)
+					entry.device.addRssi(coalesced.getPreviousRssi(i), rssiSmoother);
+			}
+			// Update RSSI and name.
+			changes = entry.device.update(result, rssiSmoother);
 		}
 
-		// Update RSSI and name.
-		device.update(result);
+		if (changes != 0) {
+			evaluate(entry, changes);
+		}
+		// The last seen time changes with every result, without being reported as a change.
+		if (sortOrder != SortOrder.DISCOVERY && entry.visible) {
+			reposition(entry);
+		}
+		if (entriesById.size() > capacity) {
+			evictOverCapacity();
+		}
+		return entry.visible;
+	}
 
-		// Return true if the device was on the filtered list or is to be added.
-		return (filteredDevices != null && filteredDevices.contains(device))
-				|| (matchesUuidFilter(result) && matchesNearbyFilter(device.getHighestRssi()));
-    }
+	/**
+	 * Adds devices restored from the recent device cache. They are shown as recent until
+	 * scanned, and evicted like other devices if they are not. Devices already known are
+	 * skipped.
+	 *
+	 * @param results scan results created from the cached values.
+	 */
+	/* package */ synchronized void addRecentDevices(@NonNull final List<ScanResult> results) {
+		for (int i = 0; i < results.size(); i++) {
+			final ScanResult result = results.get(i);
+			final long id = MacAddress.pack(result.getDevice().getAddress());
+			if (entriesById.get(id) != null)
+				continue;
+
+			final Entry entry = addEntry(id, deviceTable.addRecent(result, rssiSmoother));
+			evaluate(entry, DiscoveredBluetoothDevice.CHANGED_RSSI
+					| DiscoveredBluetoothDevice.CHANGED_NAME
+					| DiscoveredBluetoothDevice.CHANGED_DATA);
+		}
+		if (entriesById.size() > capacity) {
+			evictOverCapacity();
+		}
+	}
+
+	/**
+	 * Returns devices seen by the scanner, which are not evicted, in no particular order.
+	 * Devices restored from the recent device cache and not scanned since are not included.
+	 */
+	@NonNull
+	/* package */ synchronized List<DiscoveredBluetoothDevice> getScannedDevices() {
+		final List<DiscoveredBluetoothDevice> devices = new ArrayList<>(entriesById.size());
+		for (final Entry entry : entries) {
+			if (!entry.evicted && !entry.device.isRecent())
+				devices.add(entry.device);
+		}
+		return devices;
+	}
+
+	@NonNull
+	private Entry addEntry(final long id, @NonNull final DiscoveredBluetoothDevice device) {
+		final Entry entry = new Entry(device);
+		entries.add(entry);
+		entriesById.put(id, entry);
+		expiryQueue.add(id, device.getLastSeen());
+		return entry;
+	}
+
+	/**
+	 * Removes devices that have not been seen for longer than the time to live.
+	 * The removals are dispatched to observers with the next update, at positions the devices
+	 * had on the list.
+	 *
+	 * @param now the current time, in milliseconds of
+	 *            {@link android.os.SystemClock#elapsedRealtime()}.
+	 * @return True if any device has been evicted.
+	 */
+	/* package */ synchronized boolean evictExpired(final long now) {
+		final long threshold = now - timeToLive;
+		boolean evicted = false;
+		while (!expiryQueue.isEmpty() && expiryQueue.peekTime() <= threshold) {
+			final long id = expiryQueue.poll();
+			final Entry entry = entriesById.get(id);
+			if (entry == null)
+				continue;
+			final long lastSeen = entry.device.getLastSeen();
+			if (lastSeen <= threshold) {
+				evict(entry);
+				evicted = true;
+			} else {
+				// The device has been seen since, check again later.
+				expiryQueue.add(id, lastSeen);
+			}
+		}
+		return evicted;
+	}
+
+	/**
+	 * Returns the total number of devices discovered. The value is never decremented, so
+	 * the number of new devices may be obtained by comparing two values.
+	 */
+	/* package */ synchronized int getDiscoveredCount() {
+		return discoveredCount;
+	}
 
 	/**
 	 * Clears the list of devices.
 	 */
 	public synchronized void clear() {
-		devices.clear();
-		filteredDevices = null;
-		postValue(null);
+		if (visibleCount > 0)
+			logRemove(0, visibleCount);
+		updated.clear();
+		entries.clear();
+		evictedEntries = 0;
+		deviceTable.clear();
+		entriesById.clear();
+		visibleEntries.clear();
+		searchIndex.clear();
+		if (searchResults != null)
+			searchResults.clear();
+		visibleCount = 0;
+		expiryQueue.clear();
+		dispatchChanges();
 	}
 
 	/**
-	 * Refreshes the filtered device list based on the filter flags.
+	 * Dispatches the whole filtered list to the observers, as an update which
+	 * {@link DevicesUpdate#isReset() resets} the list, and returns it. Observers which start
+	 * showing the list apply the updates following this one.
+	 *
+	 * @return The dispatched update.
 	 */
-	/* package */ synchronized boolean applyFilter() {
-		final List<DiscoveredBluetoothDevice> tmp = new ArrayList<>();
-		for (final DiscoveredBluetoothDevice device : devices) {
-			final ScanResult result = device.getScanResult();
-			if (matchesUuidFilter(result) && matchesNearbyFilter(device.getHighestRssi())) {
-				tmp.add(device);
+	@NonNull
+	public synchronized DevicesUpdate snapshot() {
+		reset = true;
+		dispatchChanges();
+		//noinspection ConstantConditions
+		return lastUpdate;
+	}
+
+	/**
+	 * Notifies the observers about changes made to the filtered list since the last call.
+	 * Nothing is posted if there were no changes.
+	 *
+	 * @return True if the filtered list is not empty.
+	 */
+	/* package */ synchronized boolean dispatchChanges() {
+		if (reset || operationsLength > 0 || !updated.isEmpty()) {
+			final int sequence = lastUpdate != null ? lastUpdate.getSequence() + 1 : 0;
+			final DevicesUpdate update;
+			if (reset) {
+				final List<DevicesUpdate.Item> items = new ArrayList<>(visibleEntries.size());
+				for (final Entry entry : visibleEntries)
+					items.add(show(entry));
+				update = new DevicesUpdate(sequence, new int[0], items, true, items.size());
+			} else {
+				update = createUpdate(sequence);
+			}
+			if (update != null) {
+				if (lastUpdate != null)
+					lastUpdate.setNext(update);
+				lastUpdate = update;
+				postValue(update);
 			}
+			operationsLength = 0;
+			inserted.clear();
+			updated.clear();
+			reset = false;
+			generation++;
 		}
-		filteredDevices = tmp;
-        postValue(filteredDevices);
-        return !filteredDevices.isEmpty();
+		return visibleCount > 0;
 	}
 
 	/**
-	 * Finds the index of existing devices on the device list.
+	 * Creates an update with the logged operations, followed by changes of updated devices
+	 * at their current positions. Devices whose values shown on the list have not changed
+	 * are skipped.
 	 *
-	 * @param result scan result.
-	 * @return Index of -1 if not found.
+	 * @return The update, or null if there are no changes to dispatch.
 	 */
-	private int indexOf(@NonNull final ScanResult result) {
-		int i = 0;
-		for (final DiscoveredBluetoothDevice device : devices) {
-			if (device.matches(result))
-				return i;
-			i++;
+	@Nullable
+	private DevicesUpdate createUpdate(final int sequence) {
+		final List<DevicesUpdate.Item> items = new ArrayList<>(inserted.size() + updated.size());
+		// Values of inserted devices are taken now, so later changes in this generation are included.
+		for (int i = 0; i < inserted.size(); i++)
+			items.add(show(inserted.get(i)));
+		for (int i = 0; i < updated.size(); i++) {
+			final Entry entry = updated.get(i);
+			// Devices hidden since they were updated have been removed.
+			if (entry.updatedGeneration != generation)
+				continue;
+			final int type = getChangeType(entry);
+			if (type != -1) {
+				logOperation(type, visibleEntries.indexOf(entry), items.size());
+				items.add(show(entry));
+			}
 		}
+		if (operationsLength == 0)
+			return null;
+		return new DevicesUpdate(sequence, Arrays.copyOf(operations, operationsLength), items,
+				false, visibleEntries.size());
+	}
+
+	/**
+	 * Returns {@link DevicesUpdate#CHANGE} if the name or state of the device have changed
+	 * since they were shown, {@link DevicesUpdate#CHANGE_RSSI} if only the RSSI level has
+	 * changed, or -1 if no value shown on the list has changed.
+	 */
+	private static int getChangeType(@NonNull final Entry entry) {
+		final DiscoveredBluetoothDevice device = entry.device;
+		final DevicesUpdate.Item shown = entry.shown;
+		if (shown == null)
+			return DevicesUpdate.CHANGE;
+		final String name = device.getName();
+		if (name == null ? shown.getName() != null : !name.equals(shown.getName()))
+			return DevicesUpdate.CHANGE;
+		if (device.isRecent() != shown.isRecent())
+			return DevicesUpdate.CHANGE;
+		if (DiscoveredBluetoothDevice.getRssiLevel(device.getSmoothedRssi())
+				!= DiscoveredBluetoothDevice.getRssiLevel(shown.getRssi()))
+			return DevicesUpdate.CHANGE_RSSI;
 		return -1;
 	}
 
-	@SuppressWarnings("SimplifiableIfStatement")
-	private boolean matchesUuidFilter(@NonNull final ScanResult result) {
-		if (!filterUuidRequired)
-			return true;
+	/**
+	 * Takes the values of the device shown on the list.
+	 */
+	@NonNull
+	private static DevicesUpdate.Item show(@NonNull final Entry entry) {
+		final DiscoveredBluetoothDevice device = entry.device;
+		entry.shown = new DevicesUpdate.Item(device, device.getName(), device.getSmoothedRssi(),
+				device.isRecent());
+		return entry.shown;
+	}
+
+	private void logOperation(final int type, final int position, final int argument) {
+		if (operationsLength == operations.length)
+			operations = Arrays.copyOf(operations, 2 * operations.length);
+		operations[operationsLength++] = type;
+		operations[operationsLength++] = position;
+		operations[operationsLength++] = argument;
+	}
+
+	private void logInsert(final int position, @NonNull final Entry entry) {
+		// The whole list will be dispatched anyway.
+		if (reset)
+			return;
+		logOperation(DevicesUpdate.INSERT, position, inserted.size());
+		inserted.add(entry);
+	}
+
+	private void logRemove(final int position, final int count) {
+		if (reset)
+			return;
+		// Devices next to each other, e.g. expiring together, are removed as a single range.
+		if (operationsLength > 0 && operations[operationsLength - 3] == DevicesUpdate.REMOVE) {
+			final int lastPosition = operations[operationsLength - 2];
+			if (position == lastPosition || position + count == lastPosition) {
+				operations[operationsLength - 2] = position;
+				operations[operationsLength - 1] += count;
+				return;
+			}
+		}
+		logOperation(DevicesUpdate.REMOVE, position, count);
+	}
+
+	private void logMove(final int from, final int to) {
+		if (reset)
+			return;
+		logOperation(DevicesUpdate.MOVE, from, to);
+	}
+
+	/**
+	 * Re-evaluates all devices after the filter has changed, using cached filtering state.
+	 * Devices that are still matching keep their positions, new ones are appended at the end.
+	 *
+	 * @return True if the filtered list is not empty.
+	 */
+	private boolean refilter() {
+		for (final Entry entry : entries) {
+			if (entry.evicted)
+				continue;
+			final boolean matches = matches(entry);
+			if (matches != entry.visible) {
+				setVisible(entry, matches);
+			}
+		}
+		return dispatchChanges();
+	}
+
+	/**
+	 * Adds, removes or marks as updated the given device on the filtered list.
+	 *
+	 * @param entry   the device entry.
+	 * @param changes the changes as returned by {@link DiscoveredBluetoothDevice#update}.
+	 */
+	private void evaluate(@NonNull final Entry entry, final int changes) {
+		if ((changes & DiscoveredBluetoothDevice.CHANGED_NAME) != 0) {
+			index(entry);
+		}
+		final boolean matches = matches(entry);
+		if (matches != entry.visible) {
+			setVisible(entry, matches);
+		} else if (matches && entry.addedGeneration != generation
+				&& entry.updatedGeneration != generation
+				&& (changes & (DiscoveredBluetoothDevice.CHANGED_RSSI | DiscoveredBluetoothDevice.CHANGED_NAME
+				| DiscoveredBluetoothDevice.CHANGED_RECENT)) != 0) {
+			entry.updatedGeneration = generation;
+			updated.add(entry);
+		}
+	}
+
+	/**
+	 * Inserts the device to or removes it from the filtered list.
+	 */
+	private void setVisible(@NonNull final Entry entry, final boolean visible) {
+		entry.visible = visible;
+		if (visible) {
+			visibleCount++;
+			entry.order = visibleOrder++;
+			entry.addedGeneration = generation;
+			updateSortKeys(entry);
+			logInsert(visibleEntries.add(entry), entry);
+		} else {
+			visibleCount--;
+			// A change of a removed device is not dispatched.
+			entry.updatedGeneration = -1;
+			logRemove(visibleEntries.remove(entry), 1);
+		}
+	}
+
+	/**
+	 * Removes the device from the list of devices and from the filtered list.
+	 */
+	private void evict(@NonNull final Entry entry) {
+		entriesById.remove(entry.device.getId());
+		entry.evicted = true;
+		if (entry.visible) {
+			setVisible(entry, false);
+		}
+		deviceTable.remove(entry.device);
+		if (entry.searchKey != null) {
+			searchIndex.remove(entry.searchKey);
+			compactSearchIndex();
+		}
+
+		// Compact the list of all devices when more than half of it has been evicted.
+		if (++evictedEntries > entries.size() / 2) {
+			int size = 0;
+			for (int i = 0; i < entries.size(); i++) {
+				final Entry e = entries.get(i);
+				if (!e.evicted)
+					entries.set(size++, e);
+			}
+			entries.subList(size, entries.size()).clear();
+			evictedEntries = 0;
+		}
+	}
+
+	/**
+	 * Evicts least recently seen devices until the number of devices does not exceed
+	 * the capacity.
+	 */
+	private void evictOverCapacity() {
+		while (entriesById.size() > capacity && !expiryQueue.isEmpty()) {
+			final long time = expiryQueue.peekTime();
+			final long id = expiryQueue.poll();
+			final Entry entry = entriesById.get(id);
+			if (entry == null)
+				continue;
+			final long lastSeen = entry.device.getLastSeen();
+			if (lastSeen == time) {
+				// All other devices were seen at the same time or later.
+				evict(entry);
+			} else {
+				expiryQueue.add(id, lastSeen);
+			}
+		}
+	}
+
+	private boolean matches(@NonNull final Entry entry) {
+		return entry.searchMatch && entry.device.matches(filter, entry.visible);
+	}
 
-		final ScanRecord record = result.getScanRecord();
-		if (record == null)
-			return false;
+	/**
+	 * Indexes the current name and address of the device and matches them against
+	 * the search query.
+	 */
+	private void index(@NonNull final Entry entry) {
+		final String name = entry.device.getName();
+		final String address = MacAddress.unpack(entry.device.getId());
+		final String key = normalize(name != null ? name + '\n' + address : address);
+		if (key.equals(entry.searchKey))
+			return;
 
-		final List<ParcelUuid> uuids = record.getServiceUuids();
-		if (uuids == null)
-			return false;
+		if (entry.searchKey != null)
+			searchIndex.remove(entry.searchKey);
+		entry.searchKey = key;
+		searchIndex.add(entry, key);
+		// Devices renamed often, e.g. with a counter in the name, leave stale postings too.
+		compactSearchIndex();
 
-		return uuids.contains(FILTER_UUID);
+		entry.searchMatch = key.contains(searchQuery);
+		if (entry.searchMatch && searchResults != null && entry.searchGeneration != searchGeneration) {
+			entry.searchGeneration = searchGeneration;
+			searchResults.add(entry);
+		}
 	}
 
-	@SuppressWarnings("SimplifiableIfStatement")
-	private boolean matchesNearbyFilter(final int rssi) {
-		if (!filterNearbyOnly)
-			return true;
+	/**
+	 * Rebuilds the search index from the current keys, if more than half of it is stale.
+	 */
+	private void compactSearchIndex() {
+		if (!searchIndex.isCompactionNeeded())
+			return;
+		searchIndex.clear();
+		for (int i = 0; i < entries.size(); i++) {
+			final Entry entry = entries.get(i);
+			if (!entry.evicted && entry.searchKey != null)
+				searchIndex.add(entry, entry.searchKey);
+		}
+	}
+
+	/**
+	 * Sets whether the device matches the search query, and shows or hides it.
+	 */
+	private void setSearchMatch(@NonNull final Entry entry, final boolean searchMatch) {
+		if (entry.searchMatch == searchMatch)
+			return;
+		entry.searchMatch = searchMatch;
+		final boolean matches = matches(entry);
+		if (matches != entry.visible) {
+			setVisible(entry, matches);
+		}
+	}
+
+	@NonNull
+	private static String normalize(@NonNull final String text) {
+		return text.toLowerCase(Locale.US);
+	}
+
+	/**
+	 * Moves the device on the sorted list, if its sort key has changed by more than
+	 * the hysteresis.
+	 */
+	private void reposition(@NonNull final Entry entry) {
+		if (!isSortKeyChanged(entry))
+			return;
+		final int from = visibleEntries.remove(entry);
+		updateSortKeys(entry);
+		final int to = visibleEntries.add(entry);
+		if (to != from)
+			logMove(from, to);
+	}
+
+	private boolean isSortKeyChanged(@NonNull final Entry entry) {
+		final DiscoveredBluetoothDevice device = entry.device;
+		switch (sortOrder) {
+			case RSSI:
+				return Math.abs(device.getSmoothedRssi() - entry.sortRssi) >= SORT_RSSI_HYSTERESIS;
+			case NAME: {
+				final String name = device.getName();
+				return name == null ? entry.sortName != null : !name.equals(entry.sortName);
+			}
+			case LAST_SEEN:
+				return device.getLastSeen() - entry.sortLastSeen >= SORT_LAST_SEEN_HYSTERESIS;
+			default:
+				return false;
+		}
+	}
+
+	private static void updateSortKeys(@NonNull final Entry entry) {
+		entry.sortRssi = entry.device.getSmoothedRssi();
+		entry.sortName = entry.device.getName();
+		entry.sortLastSeen = entry.device.getLastSeen();
+	}
+
+	/**
+	 * Returns the comparator of entries for the given order. Ties are broken by the device
+	 * address, so that no two entries are equal.
+	 */
+	@NonNull
+	private static Comparator<Entry> comparator(@NonNull final SortOrder order) {
+		switch (order) {
+			case DISCOVERY:
+				return (e1, e2) -> Long.compare(e1.order, e2.order);
+			case RSSI:
+				return (e1, e2) -> {
+					final int result = Integer.compare(e2.sortRssi, e1.sortRssi);
+					return result != 0 ? result : Long.compare(e1.device.getId(), e2.device.getId());
+				};
+			case NAME:
+				return (e1, e2) -> {
+					final int result;
+					if (e1.sortName == null || e2.sortName == null)
+						result = e1.sortName == null ? (e2.sortName == null ? 0 : 1) : -1;
+					else
+						result = String.CASE_INSENSITIVE_ORDER.compare(e1.sortName, e2.sortName);
+					return result != 0 ? result : Long.compare(e1.device.getId(), e2.device.getId());
+				};
+			case LAST_SEEN:
+				return (e1, e2) -> {
+					final int result = Long.compare(e2.sortLastSeen, e1.sortLastSeen);
+					return result != 0 ? result : Long.compare(e1.device.getId(), e2.device.getId());
+				};
+			default:
+				throw new IllegalArgumentException("Unknown order: " + order);
+		}
+	}
+
+	@NonNull
+	private AdvertisingMatcher compileFilter() {
+		final StringBuilder expression = new StringBuilder();
+		if (filterUuidRequired)
+			expression.append(PRESET_UUID);
+		if (filterNearbyOnly)
+			append(expression, PRESET_NEARBY);
+		if (filterExpression != null && !filterExpression.trim().isEmpty())
+			append(expression, "(" + filterExpression + ")");
+		return FilterCompiler.compile(expression.toString());
+	}
 
-		return rssi >= FILTER_RSSI;
+	private static void append(@NonNull final StringBuilder expression, @NonNull final String operand) {
+		if (expression.length() > 0)
+			expression.append(" and ");
+		expression.append(operand);
 	}
 }
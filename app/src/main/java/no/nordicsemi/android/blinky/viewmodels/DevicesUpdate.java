@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import java.util.Collections;
+import java.util.List;
+
+import no.nordicsemi.android.blinky.adapter.DiscoveredBluetoothDevice;
+
+/**
+ * A change set emitted by {@link DevicesLiveData}. It contains the operations which, applied in
+ * order to the filtered list as it was after the previous update, give the current list:
+ * devices inserted, removed, moved or changed at given positions. Inserted and changed devices
+ * carry the values shown on the list, as device objects are mutable and shared.
+ * <p>
+ * An update may instead {@link #isReset() reset} the whole list, when the sort order has
+ * changed or a new observer needs the current list. Updates are linked in the order they
+ * were created, so an observer which missed some of them, as {@code postValue} keeps only
+ * the last posted value, can apply all of them using {@link #getNext()}.
+ */
+public final class DevicesUpdate {
+	/** Inserts {@link #getItem(int) the item} at the position. */
+	public static final int INSERT = 0;
+	/** Removes {@link #getCount(int) a number} of items starting at the position. */
+	public static final int REMOVE = 1;
+	/** Replaces the item at the position. */
+	public static final int CHANGE = 2;
+	/** Replaces the item at the position, when only its RSSI level has changed. */
+	public static final int CHANGE_RSSI = 3;
+	/** Moves the item from the position to {@link #getTarget(int) the target position}. */
+	public static final int MOVE = 4;
+	/** Payload of the changes reported for {@link #CHANGE_RSSI} operations. */
+	public static final Object PAYLOAD_RSSI = new Object();
+
+	/**
+	 * Values of a device shown on the list, as they were when the update was created.
+	 */
+	public static final class Item {
+		@NonNull
+		private final DiscoveredBluetoothDevice device;
+		@Nullable
+		private final String name;
+		private final int rssi;
+		private final boolean recent;
+
+		/* package */ Item(@NonNull final DiscoveredBluetoothDevice device,
+						   @Nullable final String name, final int rssi, final boolean recent) {
+			this.device = device;
+			this.name = name;
+			this.rssi = rssi;
+			this.recent = recent;
+		}
+
+		@NonNull
+		public DiscoveredBluetoothDevice getDevice() {
+			return device;
+		}
+
+		/**
+		 * Returns the device name, or null.
+		 */
+		@Nullable
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the smoothed RSSI in dBm.
+		 */
+		public int getRssi() {
+			return rssi;
+		}
+
+		/**
+		 * Returns whether the device was restored from the recent device cache and has not
+		 * been scanned yet.
+		 */
+		public boolean isRecent() {
+			return recent;
+		}
+	}
+
+	private final int sequence;
+	/** Type, position and argument of each operation. */
+	@NonNull
+	private final int[] operations;
+	/** Items of insert and change operations, or the whole list if reset. */
+	@NonNull
+	private final List<Item> items;
+	private final boolean reset;
+	private final int size;
+	@Nullable
+	private volatile DevicesUpdate next;
+
+	/* package */ DevicesUpdate(final int sequence, @NonNull final int[] operations,
+								@NonNull final List<Item> items, final boolean reset, final int size) {
+		this.sequence = sequence;
+		this.operations = operations;
+		this.items = Collections.unmodifiableList(items);
+		this.reset = reset;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the sequence number of the update. Each update has a number greater by one
+	 * than the previous one.
+	 */
+	public int getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Returns the update created after this one, or null if there was none yet.
+	 */
+	@Nullable
+	public DevicesUpdate getNext() {
+		return next;
+	}
+
+	/* package */ void setNext(@NonNull final DevicesUpdate next) {
+		this.next = next;
+	}
+
+	/**
+	 * Returns whether the update replaces the whole list with {@link #getItems() its items},
+	 * instead of containing operations.
+	 */
+	public boolean isReset() {
+		return reset;
+	}
+
+	/**
+	 * Returns the whole filtered list, if {@link #isReset() reset}.
+	 */
+	@NonNull
+	public List<Item> getItems() {
+		return reset ? items : Collections.emptyList();
+	}
+
+	/**
+	 * Returns the number of devices on the filtered list after applying this update.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of operations.
+	 */
+	public int getOperationCount() {
+		return operations.length / 3;
+	}
+
+	/**
+	 * Returns the type of the operation: {@link #INSERT}, {@link #REMOVE}, {@link #CHANGE},
+	 * {@link #CHANGE_RSSI} or {@link #MOVE}.
+	 *
+	 * @param index the index of the operation.
+	 */
+	public int getType(final int index) {
+		return operations[3 * index];
+	}
+
+	/**
+	 * Returns the position on the list, as it is after applying all previous operations.
+	 *
+	 * @param index the index of the operation.
+	 */
+	public int getPosition(final int index) {
+		return operations[3 * index + 1];
+	}
+
+	/**
+	 * Returns the number of removed items.
+	 *
+	 * @param index the index of a {@link #REMOVE} operation.
+	 */
+	public int getCount(final int index) {
+		return operations[3 * index + 2];
+	}
+
+	/**
+	 * Returns the position the item is moved to.
+	 *
+	 * @param index the index of a {@link #MOVE} operation.
+	 */
+	public int getTarget(final int index) {
+		return operations[3 * index + 2];
+	}
+
+	/**
+	 * Returns the inserted or changed item.
+	 *
+	 * @param index the index of an {@link #INSERT}, {@link #CHANGE} or {@link #CHANGE_RSSI}
+	 *              operation.
+	 */
+	@NonNull
+	public Item getItem(final int index) {
+		return items.get(operations[3 * index + 2]);
+	}
+
+	/**
+	 * Applies the update to the list, as it was after the previous update, and reports
+	 * the changes to the callback. Items inserted next to each other, e.g. devices discovered
+	 * one after another, are reported as a single range.
+	 *
+	 * @param list     the list of items.
+	 * @param callback the callback notified about the changes.
+	 */
+	public void applyTo(@NonNull final List<Item> list, @NonNull final ListUpdateCallback callback) {
+		if (reset) {
+			final int previousSize = list.size();
+			list.clear();
+			if (previousSize > 0)
+				callback.onRemoved(0, previousSize);
+			list.addAll(items);
+			if (!items.isEmpty())
+				callback.onInserted(0, items.size());
+			return;
+		}
+
+		int insertStart = 0;
+		int insertCount = 0;
+		for (int i = 0; i < getOperationCount(); i++) {
+			final int type = getType(i);
+			final int position = getPosition(i);
+			if (type == INSERT && insertCount > 0
+					&& position >= insertStart && position <= insertStart + insertCount) {
+				list.add(position, getItem(i));
+				insertCount++;
+				continue;
+			}
+			if (insertCount > 0) {
+				callback.onInserted(insertStart, insertCount);
+				insertCount = 0;
+			}
+
+			switch (type) {
+				case INSERT:
+					list.add(position, getItem(i));
+					insertStart = position;
+					insertCount = 1;
+					break;
+				case REMOVE: {
+					final int count = getCount(i);
+					list.subList(position, position + count).clear();
+					callback.onRemoved(position, count);
+					break;
+				}
+				case CHANGE:
+					list.set(position, getItem(i));
+					callback.onChanged(position, 1, null);
+					break;
+				case CHANGE_RSSI:
+					list.set(position, getItem(i));
+					callback.onChanged(position, 1, PAYLOAD_RSSI);
+					break;
+				case MOVE: {
+					final int target = getTarget(i);
+					list.add(target, list.remove(position));
+					callback.onMoved(position, target);
+					break;
+				}
+			}
+		}
+		if (insertCount > 0)
+			callback.onInserted(insertStart, insertCount);
+	}
+
+	/**
+	 * Returns whether the update contains any changes.
+	 */
+	public boolean isEmpty() {
+		return !reset && operations.length == 0;
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * An immutable snapshot of the scanner state, emitted by {@link ScannerStateLiveData}.
+ * Each snapshot has a version number, higher than the one of the previous snapshot.
+ */
+@SuppressWarnings("unused")
+public final class ScannerState {
+	private final int version;
+	private final boolean scanning;
+	private final boolean hasRecords;
+	private final boolean bluetoothEnabled;
+	private final boolean locationEnabled;
+
+	/* package */ ScannerState(final int version,
+							   final boolean scanning, final boolean hasRecords,
+							   final boolean bluetoothEnabled, final boolean locationEnabled) {
+		this.version = version;
+		this.scanning = scanning;
+		this.hasRecords = hasRecords;
+		this.bluetoothEnabled = bluetoothEnabled;
+		this.locationEnabled = locationEnabled;
+	}
+
+	/**
+	 * Returns the version of the snapshot.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns whether scanning is in progress.
+	 */
+	public boolean isScanning() {
+		return scanning;
+	}
+
+	/**
+	 * Returns whether any records matching filter criteria has been found.
+	 */
+	public boolean hasRecords() {
+		return hasRecords;
+	}
+
+	/**
+	 * Returns whether Bluetooth adapter is enabled.
+	 */
+	public boolean isBluetoothEnabled() {
+		return bluetoothEnabled;
+	}
+
+	/**
+	 * Returns whether Location is enabled.
+	 */
+	public boolean isLocationEnabled() {
+		return locationEnabled;
+	}
+
+	/**
+	 * Returns whether the only difference from the other state is whether records
+	 * have been found.
+	 *
+	 * @param other the other state, or null.
+	 * @return True if all other fields are equal.
+	 */
+	public boolean differsOnlyInRecords(@Nullable final ScannerState other) {
+		return other != null
+				&& scanning == other.scanning
+				&& bluetoothEnabled == other.bluetoothEnabled
+				&& locationEnabled == other.locationEnabled;
+	}
+
+	@NonNull
+	@Override
+	public String toString() {
+		return "ScannerState{version=" + version + ", scanning=" + scanning
+				+ ", hasRecords=" + hasRecords + ", bluetoothEnabled=" + bluetoothEnabled
+				+ ", locationEnabled=" + locationEnabled + "}";
+	}
+}
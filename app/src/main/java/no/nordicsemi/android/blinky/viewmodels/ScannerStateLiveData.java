@@ -22,94 +22,142 @@
 
 package no.nordicsemi.android.blinky.viewmodels;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
 import androidx.lifecycle.LiveData;
 
 /**
  * This class keeps the current state of the scanner.
+ * <p>
+ * Observers receive immutable {@link ScannerState} snapshots. A snapshot is emitted only when
+ * a field has changed, and at most once per frame, so a burst of changes from the scanning
+ * thread results in a single update of the scanner screen.
  */
 @SuppressWarnings("unused")
-public class ScannerStateLiveData extends LiveData<ScannerStateLiveData> {
+public class ScannerStateLiveData extends LiveData<ScannerState> {
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
 	private boolean scanningStarted;
 	private boolean hasRecords;
 	private boolean bluetoothEnabled;
 	private boolean locationEnabled;
+	/** Incremented with each change. */
+	private int version;
+	/** The version of the last snapshot emitted. */
+	private int dispatchedVersion = -1;
+	private boolean dispatchScheduled;
 
 	/* package */ ScannerStateLiveData(final boolean bluetoothEnabled,
 									   final boolean locationEnabled) {
 		this.scanningStarted = false;
 		this.bluetoothEnabled = bluetoothEnabled;
 		this.locationEnabled = locationEnabled;
-		postValue(this);
+		changed();
 	}
 
-	/* package */ void refresh() {
-		postValue(this);
+	/**
+	 * Emits the current state even if nothing has changed.
+	 */
+	/* package */ synchronized void refresh() {
+		changed();
 	}
 
-	/* package */ void scanningStarted() {
-		scanningStarted = true;
-		postValue(this);
+	/* package */ synchronized void scanningStarted() {
+		if (!scanningStarted) {
+			scanningStarted = true;
+			changed();
+		}
 	}
 
-	/* package */ void scanningStopped() {
-		scanningStarted = false;
-		postValue(this);
+	/* package */ synchronized void scanningStopped() {
+		if (scanningStarted) {
+			scanningStarted = false;
+			changed();
+		}
 	}
 
-	/* package */ void bluetoothEnabled() {
-		bluetoothEnabled = true;
-		postValue(this);
+	/* package */ synchronized void bluetoothEnabled() {
+		if (!bluetoothEnabled) {
+			bluetoothEnabled = true;
+			changed();
+		}
 	}
 
 	/* package */ synchronized void bluetoothDisabled() {
-		bluetoothEnabled = false;
-		hasRecords = false;
-		postValue(this);
+		if (bluetoothEnabled || hasRecords) {
+			bluetoothEnabled = false;
+			hasRecords = false;
+			changed();
+		}
 	}
 
-	/* package */ void setLocationEnabled(final boolean enabled) {
-		locationEnabled = enabled;
-		postValue(this);
+	/* package */ synchronized void setLocationEnabled(final boolean enabled) {
+		if (locationEnabled != enabled) {
+			locationEnabled = enabled;
+			changed();
+		}
 	}
 
-	/* package */ void recordFound() {
-		hasRecords = true;
-		postValue(this);
+	/* package */ synchronized void recordFound() {
+		// This is called for every batch of scan results, but only the first one changes the state.
+		if (!hasRecords) {
+			hasRecords = true;
+			changed();
+		}
 	}
 
 	/**
 	 * Returns whether scanning is in progress.
 	 */
-	boolean isScanning() {
+	/* package */ synchronized boolean isScanning() {
 		return scanningStarted;
 	}
 
-	/**
-	 * Returns whether any records matching filter criteria has been found.
-	 */
-	public boolean hasRecords() {
-		return hasRecords;
-	}
-
 	/**
 	 * Returns whether Bluetooth adapter is enabled.
 	 */
-	public boolean isBluetoothEnabled() {
+	/* package */ synchronized boolean isBluetoothEnabled() {
 		return bluetoothEnabled;
 	}
 
 	/**
-	 * Returns whether Location is enabled.
+	 * Notifies the observer that scanner has no records to show.
 	 */
-	public boolean isLocationEnabled() {
-		return locationEnabled;
+	public synchronized void clearRecords() {
+		if (hasRecords) {
+			hasRecords = false;
+			changed();
+		}
 	}
 
 	/**
-	 * Notifies the observer that scanner has no records to show.
+	 * Increments the version and schedules emitting a snapshot on the next frame, unless
+	 * one is already scheduled.
 	 */
-	public void clearRecords() {
-		hasRecords = false;
-		postValue(this);
+	private void changed() {
+		version++;
+		if (!dispatchScheduled) {
+			dispatchScheduled = true;
+			// The Choreographer must be obtained on the main thread.
+			mainHandler.post(scheduleFrame);
+		}
+	}
+
+	private final Choreographer.FrameCallback frameCallback = this::dispatch;
+	private final Runnable scheduleFrame = () ->
+			Choreographer.getInstance().postFrameCallback(frameCallback);
+
+	private void dispatch(final long frameTimeNanos) {
+		final ScannerState state;
+		synchronized (this) {
+			dispatchScheduled = false;
+			if (version == dispatchedVersion)
+				return;
+			dispatchedVersion = version;
+			state = new ScannerState(version, scanningStarted, hasRecords, bluetoothEnabled, locationEnabled);
+		}
+		setValue(state);
 	}
 }
@@ -30,22 +30,63 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.location.LocationManager;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelUuid;
 import android.preference.PreferenceManager;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.AndroidViewModel;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-
+import java.util.UUID;
+
+import no.nordicsemi.android.blinky.adapter.DiscoveredBluetoothDevice;
+import no.nordicsemi.android.blinky.filter.FilterCompiler;
+import no.nordicsemi.android.blinky.profile.BlinkyManager;
+import no.nordicsemi.android.blinky.scanner.RecentDeviceCache;
+import no.nordicsemi.android.blinky.scanner.ScanIngestor;
+import no.nordicsemi.android.blinky.scanner.ScanRecorder;
+import no.nordicsemi.android.blinky.scanner.ScanReplayer;
+import no.nordicsemi.android.blinky.scanner.ScanScheduler;
+import no.nordicsemi.android.blinky.scanner.ScanStatistics;
+import no.nordicsemi.android.blinky.utils.Clock;
 import no.nordicsemi.android.blinky.utils.Utils;
 import no.nordicsemi.android.support.v18.scanner.BluetoothLeScannerCompat;
 import no.nordicsemi.android.support.v18.scanner.ScanCallback;
+import no.nordicsemi.android.support.v18.scanner.ScanFilter;
 import no.nordicsemi.android.support.v18.scanner.ScanResult;
 import no.nordicsemi.android.support.v18.scanner.ScanSettings;
 
 public class ScannerViewModel extends AndroidViewModel {
+	private static final String TAG = "ScannerViewModel";
 	private static final String PREFS_FILTER_UUID_REQUIRED = "filter_uuid";
 	private static final String PREFS_FILTER_NEARBY_ONLY = "filter_nearby";
+	private static final String PREFS_FILTER_EXPRESSION = "filter_expression";
+	private static final String PREFS_SORT_ORDER = "sort_order";
+	private static final String PREFS_RSSI_SMOOTHING = "rssi_smoothing";
+	/** How often the scan scheduler is asked whether the scan policy should change. */
+	private static final long SCHEDULER_INTERVAL = 5000; // [ms]
+	/** Devices not seen for this long are removed from the list. */
+	private static final long DEVICE_TIME_TO_LIVE = 60_000; // [ms]
+	/** The maximum number of devices kept. The least recently seen are removed first. */
+	private static final int DEVICE_CAPACITY = 1000;
+	/** How often devices are checked for expiry. */
+	private static final long EVICTION_INTERVAL = 1000; // [ms]
+	private static final String RECENT_DEVICES_FILE = "recent_devices";
+	/** The number of devices kept in the recent device cache. */
+	private static final int RECENT_DEVICES_CAPACITY = 64;
+	/** Devices not seen for this long are not restored from the cache. */
+	private static final long RECENT_DEVICE_MAX_AGE = 7 * 24 * 60 * 60 * 1000L; // [ms]
+	/** The scan session recorded from the Diagnostics menu. */
+	private static final String SCAN_RECORDING_FILE = "scan.blks";
 
 	/**
 	 * MutableLiveData containing the list of devices.
@@ -58,6 +99,49 @@ public class ScannerViewModel extends AndroidViewModel {
 
 	private final SharedPreferences preferences;
 
+	/**
+	 * The scheduler adjusting the scan mode and report delay to save battery.
+	 */
+	private final ScanScheduler scanScheduler = new ScanScheduler(Clock.SYSTEM);
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	/** The policy used by the current scan, or null if not scanning. */
+	@Nullable
+	private ScanScheduler.Policy scanPolicy;
+	/**
+	 * The number of discovered devices already reported to the scan scheduler.
+	 * Accessed only on the ingestion thread.
+	 */
+	private int reportedDiscoveredCount;
+	/**
+	 * Whether filtering and batching should be offloaded to the Bluetooth controller.
+	 * Cleared when the controller rejects the offload; the scanner library then falls back to
+	 * filtering and batching in software.
+	 */
+	private boolean hardwareOffload = true;
+	private final ScanStatistics scanStatistics = new ScanStatistics();
+	/**
+	 * Processes scan results on a background thread, one batch per coalescing window.
+	 */
+	private final ScanIngestor scanIngestor = new ScanIngestor(ScanIngestor.DEFAULT_WINDOW, this::onResultsIngested);
+	/** The search query typed by the user, not persisted. */
+	@Nullable
+	private String searchQuery;
+	/** The recorded session to replay instead of scanning, or null to scan. */
+	@Nullable
+	private File replayFile;
+	private float replaySpeed;
+	/** Whether scan results are being recorded. */
+	private boolean recording;
+	/** The replay in progress, or null. */
+	@Nullable
+	private ScanReplayer scanReplayer;
+	/**
+	 * Recently seen and connected devices, shown before they are scanned again.
+	 * Opened and accessed only on the ingestion thread.
+	 */
+	@Nullable
+	private RecentDeviceCache recentDeviceCache;
+
 	public DevicesLiveData getDevices() {
 		return devicesLiveData;
 	}
@@ -66,6 +150,22 @@ public class ScannerViewModel extends AndroidViewModel {
 		return scannerStateLiveData;
 	}
 
+	/**
+	 * Returns the statistics of the current scan, including the number of callbacks avoided
+	 * by batching.
+	 */
+	public ScanStatistics getScanStatistics() {
+		return scanStatistics;
+	}
+
+	/**
+	 * Returns whether filtering and batching are requested from the Bluetooth controller.
+	 * It's false after the controller rejected the offload, and software fallback is used.
+	 */
+	public boolean isHardwareOffloadEnabled() {
+		return hardwareOffload;
+	}
+
 	public ScannerViewModel(final Application application) {
 		super(application);
 		preferences = PreferenceManager.getDefaultSharedPreferences(application);
@@ -76,13 +176,30 @@ public class ScannerViewModel extends AndroidViewModel {
 		scannerStateLiveData = new ScannerStateLiveData(Utils.isBleEnabled(),
 				Utils.isLocationEnabled(application));
 		devicesLiveData = new DevicesLiveData(filterUuidRequired, filerNearbyOnly);
+		try {
+			devicesLiveData.setFilterExpression(getFilterExpression());
+		} catch (final IllegalArgumentException e) {
+			Log.w(TAG, "Stored filter expression is invalid", e);
+		}
+		devicesLiveData.setSortOrder(getSortOrder());
+		devicesLiveData.setRssiSmoother(getRssiSmoothing().getSmoother());
+		devicesLiveData.setEvictionPolicy(DEVICE_TIME_TO_LIVE, DEVICE_CAPACITY);
 		registerBroadcastReceivers(application);
+		scanIngestor.post(this::restoreRecentDevices);
 	}
 
 	@Override
 	protected void onCleared() {
 		super.onCleared();
+		handler.removeCallbacks(schedulerTask);
+		handler.removeCallbacks(evictionTask);
+		scanIngestor.post(() -> {
+			saveRecentDevices();
+			closeRecentDeviceCache();
+		});
+		scanIngestor.quit();
 		getApplication().unregisterReceiver(bluetoothStateBroadcastReceiver);
+		getApplication().unregisterReceiver(batteryStateBroadcastReceiver);
 
 		if (Utils.isMarshmallowOrAbove()) {
 			getApplication().unregisterReceiver(locationProviderChangedReceiver);
@@ -97,6 +214,54 @@ public class ScannerViewModel extends AndroidViewModel {
 		return preferences.getBoolean(PREFS_FILTER_NEARBY_ONLY, false);
 	}
 
+	/**
+	 * Returns the custom filter expression, or null if not set.
+	 */
+	@Nullable
+	public String getFilterExpression() {
+		return preferences.getString(PREFS_FILTER_EXPRESSION, null);
+	}
+
+	/**
+	 * Returns the current search query, or null if not searching.
+	 */
+	@Nullable
+	public String getSearchQuery() {
+		return searchQuery;
+	}
+
+	/**
+	 * Returns the order of devices on the list.
+	 */
+	@NonNull
+	public SortOrder getSortOrder() {
+		final String order = preferences.getString(PREFS_SORT_ORDER, null);
+		if (order != null) {
+			try {
+				return SortOrder.valueOf(order);
+			} catch (final IllegalArgumentException e) {
+				Log.w(TAG, "Unknown sort order: " + order);
+			}
+		}
+		return SortOrder.DISCOVERY;
+	}
+
+	/**
+	 * Returns the smoothing of device RSSI values.
+	 */
+	@NonNull
+	public RssiSmoothing getRssiSmoothing() {
+		final String smoothing = preferences.getString(PREFS_RSSI_SMOOTHING, null);
+		if (smoothing != null) {
+			try {
+				return RssiSmoothing.valueOf(smoothing);
+			} catch (final IllegalArgumentException e) {
+				Log.w(TAG, "Unknown RSSI smoothing: " + smoothing);
+			}
+		}
+		return RssiSmoothing.KALMAN;
+	}
+
 	/**
 	 * Forces the observers to be notified. This method is used to refresh the screen after the
 	 * location permission has been granted. In result, the observer in
@@ -107,9 +272,37 @@ public class ScannerViewModel extends AndroidViewModel {
 	}
 
 	/**
-	 * Updates the device filter. Devices that once passed the filter will still be shown
-	 * even if they move away from the phone, or change the advertising packet. This is to
-	 * avoid removing devices from the list.
+	 * Clears the list of devices. Devices from the recent device cache, including those just
+	 * removed, are shown again as recent, until they are scanned or expire.
+	 */
+	public void clearDevices() {
+		scanIngestor.post(() -> {
+			saveRecentDevices();
+			devicesLiveData.clear();
+			restoreRecentDevices();
+		});
+	}
+
+	/**
+	 * Marks the device as connected in the recent device cache, so that it's kept there longer
+	 * than devices only seen. Call when the user selects the device to connect to.
+	 *
+	 * @param device the selected device.
+	 */
+	public void onDeviceSelected(@NonNull final DiscoveredBluetoothDevice device) {
+		scanIngestor.post(() -> {
+			final RecentDeviceCache cache = openRecentDeviceCache();
+			if (cache == null)
+				return;
+			cache.put(device.getId(), toWallTime(device.getLastSeen()),
+					device.getSmoothedRssi(), device.getScanRecord());
+			cache.markConnected(device.getId());
+		});
+	}
+
+	/**
+	 * Updates the device filter. Only the cached filtering state of each device is
+	 * re-evaluated, so this is cheap even with thousands of devices.
 	 *
 	 * @param uuidRequired if true, the list will display only devices with Led-Button Service UUID
 	 *                     in the advertising packet.
@@ -120,12 +313,15 @@ public class ScannerViewModel extends AndroidViewModel {
 			scannerStateLiveData.recordFound();
 		else
 			scannerStateLiveData.clearRecords();
+
+		// The UUID filter is applied by the controller, so the scan has to be restarted.
+		if (scanPolicy != null)
+			restartScan(scanPolicy);
 	}
 
 	/**
-	 * Updates the device filter. Devices that once passed the filter will still be shown
-	 * even if they move away from the phone, or change the advertising packet. This is to
-	 * avoid removing devices from the list.
+	 * Updates the device filter. The smoothed RSSI is used, so devices that move away from
+	 * the phone are removed from the list.
 	 *
 	 * @param nearbyOnly if true, the list will show only devices with high RSSI.
 	 */
@@ -138,22 +334,142 @@ public class ScannerViewModel extends AndroidViewModel {
 	}
 
 	/**
-	 * Start scanning for Bluetooth devices.
+	 * Starts recording all scan results to the given file, until
+	 * {@link #stopRecording()} is called. The file may be replayed using
+	 * {@link #setReplaySource(File, float)}.
+	 *
+	 * @param file the file to write to. Existing file is overwritten.
+	 * @throws IOException if the file could not be created.
+	 */
+	public void startRecording(@NonNull final File file) throws IOException {
+		scanIngestor.setRecorder(new ScanRecorder(file));
+		recording = true;
+	}
+
+	/**
+	 * Stops recording scan results and closes the file.
+	 */
+	public void stopRecording() {
+		scanIngestor.setRecorder(null);
+		recording = false;
+	}
+
+	/**
+	 * Returns true if scan results are being recorded.
+	 */
+	public boolean isRecording() {
+		return recording;
+	}
+
+	/**
+	 * Returns the file in the app's private storage to record the scan session to.
+	 * Only the last session is kept.
+	 */
+	@NonNull
+	public File getScanRecordingFile() {
+		return new File(getApplication().getFilesDir(), SCAN_RECORDING_FILE);
+	}
+
+	/**
+	 * Sets a recorded scan session to be replayed instead of scanning. Results are delivered
+	 * to the same callback as results from the scanner. If scanning, the scan is restarted
+	 * with the new source, otherwise the replay starts on the next call to {@link #startScan()}.
+	 *
+	 * @param file  the file written by {@link #startRecording(File)}, or null to scan.
+	 * @param speed the speed factor, 1 for real time, or {@link ScanReplayer#SPEED_UNLIMITED}.
+	 */
+	public void setReplaySource(@Nullable final File file, final float speed) {
+		final boolean scanning = scannerStateLiveData.isScanning();
+		if (scanning)
+			stopScan();
+		replayFile = file;
+		replaySpeed = speed;
+		if (scanning)
+			startScan();
+	}
+
+	/**
+	 * Returns true if a recorded scan session is replayed instead of scanning.
+	 */
+	public boolean isReplaying() {
+		return replayFile != null;
+	}
+
+	/**
+	 * Sets the custom filter expression, combined with the UUID and nearby filters.
+	 * The expression is matched against the raw advertising data of each device.
+	 *
+	 * @param expression the expression, see {@link no.nordicsemi.android.blinky.filter.FilterCompiler},
+	 *                   or null or empty to clear it.
+	 * @throws IllegalArgumentException if the expression is invalid. The filter is not changed.
+	 */
+	public void setFilterExpression(@Nullable final String expression) {
+		final boolean hasRecords = devicesLiveData.setFilterExpression(expression);
+		preferences.edit().putString(PREFS_FILTER_EXPRESSION, expression).apply();
+		if (hasRecords)
+			scannerStateLiveData.recordFound();
+		else
+			scannerStateLiveData.clearRecords();
+
+		// Service UUIDs of the expression may be offloaded to the controller.
+		if (scanPolicy != null)
+			restartScan(scanPolicy);
+	}
+
+	/**
+	 * Shows only devices whose name or address contains the query, ignoring case.
+	 * The search is combined with the filters.
+	 *
+	 * @param query the query, or null or empty to show all devices matching the filters.
+	 */
+	public void search(@Nullable final String query) {
+		searchQuery = query;
+		if (devicesLiveData.setSearchQuery(query))
+			scannerStateLiveData.recordFound();
+		else
+			scannerStateLiveData.clearRecords();
+	}
+
+	/**
+	 * Sets the order of devices on the list. The list is kept sorted as devices are updated.
+	 *
+	 * @param order the new sort order.
+	 */
+	public void setSortOrder(@NonNull final SortOrder order) {
+		preferences.edit().putString(PREFS_SORT_ORDER, order.name()).apply();
+		devicesLiveData.setSortOrder(order);
+	}
+
+	/**
+	 * Sets the smoothing of device RSSI values. The smoothing starts over from the next
+	 * packet received from each device.
+	 *
+	 * @param smoothing the new smoothing.
+	 */
+	public void setRssiSmoothing(@NonNull final RssiSmoothing smoothing) {
+		preferences.edit().putString(PREFS_RSSI_SMOOTHING, smoothing.name()).apply();
+		devicesLiveData.setRssiSmoother(smoothing.getSmoother());
+	}
+
+	/**
+	 * Start scanning for Bluetooth devices. The scan starts with a low latency burst,
+	 * and the {@link ScanScheduler} lowers the duty cycle when no new devices appear.
+	 * If a replay source is set, the recorded session is replayed instead.
 	 */
 	public void startScan() {
 		if (scannerStateLiveData.isScanning()) {
 			return;
 		}
 
-		// Scanning settings
-		final ScanSettings settings = new ScanSettings.Builder()
-				.setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
-				.setReportDelay(500)
-				.setUseHardwareBatchingIfSupported(false)
-				.build();
-
-		final BluetoothLeScannerCompat scanner = BluetoothLeScannerCompat.getScanner();
-		scanner.startScan(null, settings, scanCallback);
+		scanStatistics.reset();
+		if (replayFile != null) {
+			startReplay(replayFile, replaySpeed);
+		} else {
+			scanScheduler.reset();
+			startScan(scanScheduler.evaluate());
+			handler.postDelayed(schedulerTask, SCHEDULER_INTERVAL);
+		}
+		handler.postDelayed(evictionTask, EVICTION_INTERVAL);
 		scannerStateLiveData.scanningStarted();
 	}
 
@@ -161,11 +477,246 @@ public class ScannerViewModel extends AndroidViewModel {
 	 * Stop scanning for bluetooth devices.
 	 */
 	public void stopScan() {
-		if (scannerStateLiveData.isScanning() && scannerStateLiveData.isBluetoothEnabled()) {
+		handler.removeCallbacks(schedulerTask);
+		handler.removeCallbacks(evictionTask);
+		if (scanReplayer != null) {
+			scanReplayer.cancel();
+			scanReplayer = null;
+			scannerStateLiveData.scanningStopped();
+			Log.d(TAG, "Replay stopped (" + scanStatistics + ")");
+			scanIngestor.post(this::saveRecentDevices);
+		} else if (scannerStateLiveData.isScanning() && scannerStateLiveData.isBluetoothEnabled()) {
 			final BluetoothLeScannerCompat scanner = BluetoothLeScannerCompat.getScanner();
 			scanner.stopScan(scanCallback);
 			scannerStateLiveData.scanningStopped();
+			Log.d(TAG, "Scan stopped (" + scanStatistics + ", merged: " + scanIngestor.getMergedCount() + ")");
+			scanIngestor.post(this::saveRecentDevices);
 		}
+		scanPolicy = null;
+	}
+
+	/**
+	 * Starts the scan using settings from the given policy.
+	 *
+	 * @param policy the scan policy.
+	 */
+	private void startScan(@NonNull final ScanScheduler.Policy policy) {
+		// Scanning settings
+		final ScanSettings settings = new ScanSettings.Builder()
+				.setScanMode(policy.getScanMode())
+				.setReportDelay(policy.getReportDelay())
+				.setUseHardwareFilteringIfSupported(hardwareOffload)
+				.setUseHardwareBatchingIfSupported(hardwareOffload)
+				.build();
+
+		final BluetoothLeScannerCompat scanner = BluetoothLeScannerCompat.getScanner();
+		scanner.startScan(buildScanFilters(), settings, scanCallback);
+		scanPolicy = policy;
+	}
+
+	/**
+	 * Replays the recorded session on a new thread.
+	 *
+	 * @param file  the recorded session.
+	 * @param speed the speed factor.
+	 */
+	private void startReplay(@NonNull final File file, final float speed) {
+		final ScanReplayer replayer = new ScanReplayer(file, speed, Clock.SYSTEM, scanCallback);
+		scanReplayer = replayer;
+		new Thread(() -> {
+			try {
+				final long count = replayer.replay();
+				Log.d(TAG, "Replayed " + count + " results from " + file);
+			} catch (final IOException e) {
+				Log.w(TAG, "Replay failed", e);
+			}
+			handler.post(() -> {
+				if (scanReplayer == replayer) {
+					stopScan();
+				}
+			});
+		}, "ScanReplayer").start();
+	}
+
+	/**
+	 * Stops the current scan and starts it again with the given policy and current filters.
+	 *
+	 * @param policy the scan policy.
+	 */
+	private void restartScan(@NonNull final ScanScheduler.Policy policy) {
+		final BluetoothLeScannerCompat scanner = BluetoothLeScannerCompat.getScanner();
+		scanner.stopScan(scanCallback);
+		startScan(policy);
+	}
+
+	/**
+	 * Creates scan filters matching the active device filters, so that advertisements from
+	 * other devices are dropped by the Bluetooth controller and don't wake up the app.
+	 * A filter takes a single service UUID, which is either the LBS UUID, or a UUID required
+	 * by the custom filter expression. The rest of the filters is still applied by the app.
+	 * The RSSI filter uses the smoothed RSSI with hysteresis, and a scan filter name must match
+	 * the complete name while <code>name()</code> matches a prefix, so these can't be offloaded.
+	 *
+	 * @return The list of filters, or null to receive all advertisements.
+	 */
+	@Nullable
+	private List<ScanFilter> buildScanFilters() {
+		UUID uuid = null;
+		if (isUuidFilterEnabled()) {
+			uuid = BlinkyManager.LBS_UUID_SERVICE;
+		} else {
+			try {
+				final List<UUID> uuids = FilterCompiler.getRequiredServiceUuids(getFilterExpression());
+				if (!uuids.isEmpty())
+					uuid = uuids.get(0);
+			} catch (final IllegalArgumentException e) {
+				// The stored expression is invalid and not used, see the constructor.
+			}
+		}
+		if (uuid == null)
+			return null;
+
+		final List<ScanFilter> filters = new ArrayList<>();
+		filters.add(new ScanFilter.Builder()
+				.setServiceUuid(new ParcelUuid(uuid))
+				.build());
+		return filters;
+	}
+
+	/**
+	 * Periodically checks whether the scan policy should change, and if so, restarts the scan.
+	 */
+	private final Runnable schedulerTask = new Runnable() {
+		@Override
+		public void run() {
+			final ScanScheduler.Policy policy = scanScheduler.evaluate();
+			if (scanPolicy != null && policy != scanPolicy) {
+				restartScan(policy);
+			}
+			handler.postDelayed(this, SCHEDULER_INTERVAL);
+		}
+	};
+
+	/**
+	 * Periodically removes devices that have not been seen recently. Devices are not evicted
+	 * while the scan is stopped, so the list doesn't empty itself when the app is in background.
+	 * The eviction itself runs on the ingestion thread, after pending results are applied.
+	 */
+	private final Runnable evictionTask = new Runnable() {
+		@Override
+		public void run() {
+			scanIngestor.post(evictExpiredDevices);
+			handler.postDelayed(this, EVICTION_INTERVAL);
+		}
+	};
+
+	private final Runnable evictExpiredDevices = () -> {
+		if (devicesLiveData.evictExpired(Clock.SYSTEM.elapsedRealtime())
+				&& !devicesLiveData.dispatchChanges()) {
+			scannerStateLiveData.clearRecords();
+		}
+	};
+
+	/**
+	 * Applies scan results received during the coalescing window. Called on the ingestion
+	 * thread, so the device list is updated and dispatched once per window.
+	 *
+	 * @param results the coalesced results.
+	 */
+	private void onResultsIngested(@NonNull final List<ScanIngestor.CoalescedResult> results) {
+		devicesLiveData.devicesDiscovered(results);
+		reportDiscoveredDevices();
+		if (devicesLiveData.dispatchChanges()) {
+			scannerStateLiveData.recordFound();
+		}
+	}
+
+	/**
+	 * Opens the recent device cache, if not opened yet. Called on the ingestion thread.
+	 *
+	 * @return The cache, or null if it could not be opened.
+	 */
+	@Nullable
+	private RecentDeviceCache openRecentDeviceCache() {
+		if (recentDeviceCache == null) {
+			try {
+				recentDeviceCache = new RecentDeviceCache(
+						new File(getApplication().getFilesDir(), RECENT_DEVICES_FILE),
+						RECENT_DEVICES_CAPACITY);
+			} catch (final IOException e) {
+				Log.w(TAG, "Opening recent device cache failed", e);
+			}
+		}
+		return recentDeviceCache;
+	}
+
+	private void closeRecentDeviceCache() {
+		if (recentDeviceCache != null) {
+			try {
+				recentDeviceCache.close();
+			} catch (final IOException e) {
+				Log.w(TAG, "Closing recent device cache failed", e);
+			}
+			recentDeviceCache = null;
+		}
+	}
+
+	/**
+	 * Adds devices from the recent device cache to the list. Called on the ingestion thread.
+	 */
+	private void restoreRecentDevices() {
+		final RecentDeviceCache cache = openRecentDeviceCache();
+		if (cache == null)
+			return;
+
+		final List<RecentDeviceCache.Entry> entries =
+				cache.load(System.currentTimeMillis() - RECENT_DEVICE_MAX_AGE);
+		// Restored devices expire as if they were just seen.
+		final long timestampNanos = Clock.SYSTEM.elapsedRealtime() * 1_000_000L;
+		final List<ScanResult> results = new ArrayList<>(entries.size());
+		for (final RecentDeviceCache.Entry entry : entries)
+			results.add(entry.toScanResult(timestampNanos));
+		devicesLiveData.addRecentDevices(results);
+		if (devicesLiveData.dispatchChanges())
+			scannerStateLiveData.recordFound();
+		else
+			scannerStateLiveData.clearRecords();
+	}
+
+	/**
+	 * Stores the most recently scanned devices in the recent device cache.
+	 * Called on the ingestion thread.
+	 */
+	private void saveRecentDevices() {
+		final RecentDeviceCache cache = openRecentDeviceCache();
+		if (cache == null)
+			return;
+
+		final List<DiscoveredBluetoothDevice> devices = devicesLiveData.getScannedDevices();
+		Collections.sort(devices, (d1, d2) -> Long.compare(d2.getLastSeen(), d1.getLastSeen()));
+		final int count = Math.min(devices.size(), RECENT_DEVICES_CAPACITY);
+		for (int i = count - 1; i >= 0; i--) {
+			final DiscoveredBluetoothDevice device = devices.get(i);
+			cache.put(device.getId(), toWallTime(device.getLastSeen()),
+					device.getSmoothedRssi(), device.getScanRecord());
+		}
+	}
+
+	/**
+	 * Converts the time in milliseconds of {@link Clock#SYSTEM} to milliseconds of
+	 * {@link System#currentTimeMillis()}, which survive a reboot.
+	 */
+	private static long toWallTime(final long elapsedRealtime) {
+		return System.currentTimeMillis() - (Clock.SYSTEM.elapsedRealtime() - elapsedRealtime);
+	}
+
+	/**
+	 * Reports devices discovered since the last call to the scan scheduler.
+	 */
+	private void reportDiscoveredDevices() {
+		final int discoveredCount = devicesLiveData.getDiscoveredCount();
+		scanScheduler.onDevicesDiscovered(discoveredCount - reportedDiscoveredCount);
+		reportedDiscoveredCount = discoveredCount;
 	}
 
 	private final ScanCallback scanCallback = new ScanCallback() {
@@ -177,10 +728,8 @@ public class ScannerViewModel extends AndroidViewModel {
 			if (Utils.isLocationRequired(getApplication()) && !Utils.isLocationEnabled(getApplication()))
 				Utils.markLocationNotRequired(getApplication());
 
-			if (devicesLiveData.deviceDiscovered(result)) {
-				devicesLiveData.applyFilter();
-				scannerStateLiveData.recordFound();
-			}
+			scanStatistics.onCallback(1);
+			scanIngestor.submit(result);
 		}
 
 		@Override
@@ -191,18 +740,26 @@ public class ScannerViewModel extends AndroidViewModel {
 			if (Utils.isLocationRequired(getApplication()) && !Utils.isLocationEnabled(getApplication()))
 				Utils.markLocationNotRequired(getApplication());
 
-			boolean atLeastOneMatchedFilter = false;
-			for (final ScanResult result : results)
-				atLeastOneMatchedFilter = devicesLiveData.deviceDiscovered(result) || atLeastOneMatchedFilter;
-			if (atLeastOneMatchedFilter) {
-				devicesLiveData.applyFilter();
-				scannerStateLiveData.recordFound();
-			}
+			scanStatistics.onCallback(results.size());
+			scanIngestor.submit(results);
 		}
 
 		@Override
 		public void onScanFailed(final int errorCode) {
+			// If the controller can't filter or batch, fall back to doing that in software.
+			if (hardwareOffload && scanPolicy != null
+					&& (errorCode == SCAN_FAILED_FEATURE_UNSUPPORTED
+					|| errorCode == SCAN_FAILED_OUT_OF_HARDWARE_RESOURCES)) {
+				Log.w(TAG, "Hardware offload rejected (error " + errorCode + "), using software fallback");
+				hardwareOffload = false;
+				restartScan(scanPolicy);
+				return;
+			}
+
 			// TODO This should be handled
+			handler.removeCallbacks(schedulerTask);
+			handler.removeCallbacks(evictionTask);
+			scanPolicy = null;
 			scannerStateLiveData.scanningStopped();
 		}
 	};
@@ -212,6 +769,7 @@ public class ScannerViewModel extends AndroidViewModel {
 	 */
 	private void registerBroadcastReceivers(@NonNull final Application application) {
 		application.registerReceiver(bluetoothStateBroadcastReceiver, new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED));
+		application.registerReceiver(batteryStateBroadcastReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
 		if (Utils.isMarshmallowOrAbove()) {
 			application.registerReceiver(locationProviderChangedReceiver, new IntentFilter(LocationManager.MODE_CHANGED_ACTION));
 		}
@@ -228,6 +786,22 @@ public class ScannerViewModel extends AndroidViewModel {
 		}
 	};
 
+	/**
+	 * Broadcast receiver to monitor the battery level. The battery changed broadcast is sticky,
+	 * so the current state is delivered immediately after registering.
+	 */
+	private final BroadcastReceiver batteryStateBroadcastReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(final Context context, final Intent intent) {
+			final int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+			final int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+			final int plugged = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+			if (level >= 0 && scale > 0) {
+				scanScheduler.setBatteryState(level * 100 / scale, plugged != 0);
+			}
+		}
+	};
+
 	/**
 	 * Broadcast receiver to monitor the changes in the bluetooth adapter.
 	 */
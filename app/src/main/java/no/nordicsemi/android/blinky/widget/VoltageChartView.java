@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.widget;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+import androidx.core.view.ViewCompat;
+
+import no.nordicsemi.android.blinky.R;
+import no.nordicsemi.android.blinky.stream.ChartDecimator;
+
+/**
+ * A chart of the voltage sample stream, drawn from frames decimated by a {@link ChartDecimator}.
+ * <p>
+ * Each pixel column is drawn as a vertical line from the minimum to the maximum sample in it,
+ * joined with the neighbouring columns, so the chart costs the same to draw at any sample
+ * rate. All buffers are allocated when the size changes, not when drawing. The decimator
+ * invalidates the view once per frame while it is attached. The time span is zoomed with
+ * a horizontal pinch, from 1 second up to the history kept by the decimator.
+ */
+public class VoltageChartView extends View {
+	private static final long MIN_SPAN = 1_000_000_000L; // 1 s
+	private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+	private final Paint linePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+	private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+	private final ScaleGestureDetector scaleDetector;
+	private final ChartDecimator.Frame frame = new ChartDecimator.Frame();
+	/** Line segments, 4 coordinates for each column and each join with the previous one. */
+	@NonNull
+	private float[] lines = new float[0];
+	@Nullable
+	private ChartDecimator decimator;
+	private final Runnable invalidateTask = this::postInvalidateOnAnimation;
+
+	// Labels are formatted only when their values change.
+	private int labelMin = Integer.MIN_VALUE, labelMax = Integer.MIN_VALUE;
+	private long labelSpan = Long.MIN_VALUE;
+	private String minText, maxText, spanText;
+
+	public VoltageChartView(final Context context) {
+		this(context, null);
+	}
+
+	public VoltageChartView(final Context context, @Nullable final AttributeSet attrs) {
+		super(context, attrs);
+		linePaint.setColor(ContextCompat.getColor(context, R.color.colorPrimary));
+		linePaint.setStrokeWidth(getResources().getDisplayMetrics().density);
+		labelPaint.setColor(ContextCompat.getColor(context, R.color.colorOnBackground));
+		labelPaint.setTextSize(12 * getResources().getDisplayMetrics().scaledDensity);
+		scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+			@Override
+			public boolean onScale(final ScaleGestureDetector detector) {
+				final ChartDecimator decimator = VoltageChartView.this.decimator;
+				if (decimator == null || detector.getCurrentSpanX() <= 0)
+					return false;
+				final float factor = detector.getPreviousSpanX() / detector.getCurrentSpanX();
+				final long span = (long) (decimator.getSpan() * factor);
+				decimator.setViewport(getWidth(), Math.max(MIN_SPAN, span));
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * Sets the decimator providing frames to draw, or null to clear the chart.
+	 */
+	public void setDecimator(@Nullable final ChartDecimator decimator) {
+		if (this.decimator != null)
+			this.decimator.setOnFrameReadyListener(null);
+		this.decimator = decimator;
+		if (decimator != null) {
+			decimator.setViewport(getWidth(), decimator.getSpan());
+			if (ViewCompat.isAttachedToWindow(this))
+				decimator.setOnFrameReadyListener(invalidateTask);
+		}
+		invalidate();
+	}
+
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		if (decimator != null)
+			decimator.setOnFrameReadyListener(invalidateTask);
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		if (decimator != null)
+			decimator.setOnFrameReadyListener(null);
+	}
+
+	@Override
+	protected void onSizeChanged(final int w, final int h, final int oldw, final int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		lines = new float[w * 8];
+		if (decimator != null)
+			decimator.setViewport(w, decimator.getSpan());
+	}
+
+	@Override
+	public boolean onTouchEvent(final MotionEvent event) {
+		// Don't let the scroll view take over a pinch.
+		if (event.getPointerCount() > 1)
+			getParent().requestDisallowInterceptTouchEvent(true);
+		scaleDetector.onTouchEvent(event);
+		return true;
+	}
+
+	@Override
+	protected void onDraw(final Canvas canvas) {
+		final ChartDecimator decimator = this.decimator;
+		if (decimator == null || !decimator.copyFrame(frame))
+			return;
+
+		final float textHeight = labelPaint.getTextSize();
+		final float top = getPaddingTop() + textHeight;
+		final float bottom = getHeight() - textHeight - getPaddingBottom();
+		updateLabels();
+		canvas.drawText(maxText, getPaddingLeft(), getPaddingTop() + textHeight, labelPaint);
+		canvas.drawText(minText, getPaddingLeft(), getHeight() - getPaddingBottom(), labelPaint);
+		canvas.drawText(spanText, getWidth() - getPaddingRight() - labelPaint.measureText(spanText),
+				getHeight() - getPaddingBottom(), labelPaint);
+		if (Float.isNaN(frame.min))
+			return;
+
+		// Scale to the visible range, keeping a flat signal in the middle.
+		final float range = Math.max(frame.max - frame.min, 1);
+		final float mid = (frame.max + frame.min) / 2;
+		final float scale = (bottom - top) / range;
+		final float centre = (top + bottom) / 2;
+
+		final int width = Math.min(frame.width, lines.length / 8);
+		int n = 0;
+		float previousTop = Float.NaN, previousBottom = Float.NaN;
+		for (int x = 0; x < width; x++) {
+			if (Float.isNaN(frame.mins[x])) {
+				previousTop = Float.NaN;
+				previousBottom = Float.NaN;
+				continue;
+			}
+			final float yMax = centre - (frame.maxs[x] - mid) * scale;
+			final float yMin = centre - (frame.mins[x] - mid) * scale;
+			// Join with the previous column, unless they overlap.
+			if (yMax > previousBottom) {
+				lines[n++] = x - 1;
+				lines[n++] = previousBottom;
+				lines[n++] = x;
+				lines[n++] = yMax;
+			} else if (yMin < previousTop) {
+				lines[n++] = x - 1;
+				lines[n++] = previousTop;
+				lines[n++] = x;
+				lines[n++] = yMin;
+			}
+			lines[n++] = x;
+			lines[n++] = yMax;
+			lines[n++] = x;
+			lines[n++] = yMin + 1;
+			previousTop = yMax;
+			previousBottom = yMin;
+		}
+		canvas.drawLines(lines, 0, n, linePaint);
+	}
+
+	private void updateLabels() {
+		final int min = Float.isNaN(frame.min) ? Integer.MIN_VALUE : (int) frame.min;
+		final int max = Float.isNaN(frame.max) ? Integer.MIN_VALUE : (int) frame.max;
+		if (min != labelMin || minText == null) {
+			labelMin = min;
+			minText = min == Integer.MIN_VALUE ? "" : Integer.toString(min);
+		}
+		if (max != labelMax || maxText == null) {
+			labelMax = max;
+			maxText = max == Integer.MIN_VALUE ? "" : Integer.toString(max);
+		}
+		if (frame.span != labelSpan) {
+			labelSpan = frame.span;
+			final long seconds = frame.span / NANOS_PER_SECOND;
+			if (seconds >= 3600)
+				spanText = getContext().getString(R.string.chart_span_hours, seconds / 3600f);
+			else if (seconds >= 60)
+				spanText = getContext().getString(R.string.chart_span_minutes, seconds / 60f);
+			else
+				spanText = getContext().getString(R.string.chart_span_seconds, frame.span / (float) NANOS_PER_SECOND);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.filter;
+
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdvertisingMatchersTest {
+	private static final UUID LBS_UUID = UUID.fromString("00001523-1212-EFDE-1523-785FEABCD123");
+
+	@Test
+	public void uuidInEachListSize() {
+		final AdvertisingMatcher uuid16 = new AdvertisingMatchers.Uuid(
+				UUID.fromString("0000180F-0000-1000-8000-00805F9B34FB"));
+		// Incomplete list of 16-bit UUIDs, the matching one second.
+		assertTrue(matches(uuid16, new byte[] { 5, 0x02, 0x0D, 0x18, 0x0F, 0x18 }));
+		// Only whole UUIDs are compared, not bytes in between.
+		assertFalse(matches(uuid16, new byte[] { 7, 0x03, 0x00, 0x0F, 0x18, 0x00, 0x00, 0x00 }));
+		// Complete list of 32-bit UUIDs.
+		assertTrue(matches(uuid16, new byte[] { 5, 0x05, 0x0F, 0x18, 0x00, 0x00 }));
+
+		final AdvertisingMatcher uuid128 = new AdvertisingMatchers.Uuid(LBS_UUID);
+		final byte[] data = new byte[18];
+		data[0] = 17;
+		data[1] = 0x07;
+		final long lsb = LBS_UUID.getLeastSignificantBits();
+		final long msb = LBS_UUID.getMostSignificantBits();
+		for (int i = 0; i < 8; i++) {
+			data[2 + i] = (byte) (lsb >>> (8 * i));
+			data[10 + i] = (byte) (msb >>> (8 * i));
+		}
+		assertTrue(matches(uuid128, data));
+		data[17] ^= 1;
+		assertFalse(matches(uuid128, data));
+	}
+
+	@Test
+	public void matchesAtOffset() {
+		final AdvertisingMatcher name = new AdvertisingMatchers.NamePrefix("LED");
+		final byte[] data = { 0x55, 0x55, 4, 0x08, 'L', 'E', 'D', 0x55 };
+		assertTrue(name.matches(data, 2, 5, -60, false));
+		// The field does not fit in the given length.
+		assertFalse(name.matches(data, 2, 4, -60, false));
+		assertFalse(name.matches(data, 2, 0, -60, false));
+	}
+
+	@Test
+	public void malformedDataDoesNotMatch() {
+		final AdvertisingMatcher name = new AdvertisingMatchers.NamePrefix("A");
+		// A zero length field ends the data.
+		assertFalse(matches(name, new byte[] { 0, 0x09, 2, 0x09, 'A' }));
+		// A field longer than the data.
+		assertFalse(matches(name, new byte[] { 9, 0x09, 'A' }));
+		assertFalse(matches(new AdvertisingMatchers.Manufacturer(0x59, new byte[0], new byte[0]),
+				new byte[] { 2, (byte) 0xFF, 0x59 }));
+	}
+
+	@Test
+	public void nameRegexReadsBytes() {
+		final AdvertisingMatcher regex = new AdvertisingMatchers.NameRegex(Pattern.compile("^[0-9]+$"));
+		assertTrue(matches(regex, new byte[] { 4, 0x09, '1', '2', '3' }));
+		assertFalse(matches(regex, new byte[] { 4, 0x09, '1', 'x', '3' }));
+		// The shortened name is checked too.
+		assertTrue(matches(regex, new byte[] { 2, 0x09, 'x', 2, 0x08, '7' }));
+	}
+
+	@Test
+	public void rssiHysteresis() {
+		final AdvertisingMatcher rssi = new AdvertisingMatchers.Rssi(-50, Byte.MAX_VALUE);
+		final int outside = -50 - AdvertisingMatchers.RSSI_HYSTERESIS;
+		assertFalse(rssi.matches(new byte[0], 0, 0, -51, false));
+		assertTrue(rssi.matches(new byte[0], 0, 0, outside, true));
+		assertFalse(rssi.matches(new byte[0], 0, 0, outside - 1, true));
+
+		// A device hidden by "not rssi" is shown again only well outside the range.
+		final AdvertisingMatcher not = new AdvertisingMatchers.Not(rssi);
+		assertTrue(not.matches(new byte[0], 0, 0, -51, true));
+		assertFalse(not.matches(new byte[0], 0, 0, -51, false));
+		assertTrue(not.matches(new byte[0], 0, 0, outside - 1, false));
+	}
+
+	private static boolean matches(final AdvertisingMatcher matcher, final byte[] data) {
+		return matcher.matches(data, 0, data.length, -60, false);
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.filter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FilterCompilerTest {
+	/** Flags, the 16-bit Heart Rate Service UUID, the name "Nordic_HRM" and Nordic manufacturer data. */
+	private static final byte[] DATA = {
+			2, 0x01, 0x06,
+			3, 0x03, 0x0D, 0x18,
+			11, 0x09, 'N', 'o', 'r', 'd', 'i', 'c', '_', 'H', 'R', 'M',
+			5, (byte) 0xFF, 0x59, 0x00, 0x01, 0x02
+	};
+
+	private static boolean matches(final String expression, final int rssi) {
+		return FilterCompiler.compile(expression).matches(DATA, 0, DATA.length, rssi, false);
+	}
+
+	private static boolean matches(final String expression) {
+		return matches(expression, -60);
+	}
+
+	@Test
+	public void emptyExpressionMatchesAll() {
+		assertSame(AdvertisingMatcher.ALL, FilterCompiler.compile(null));
+		assertSame(AdvertisingMatcher.ALL, FilterCompiler.compile("  "));
+	}
+
+	@Test
+	public void predicates() {
+		assertTrue(matches("uuid(180D)"));
+		assertTrue(matches("uuid(0000180D)"));
+		assertTrue(matches("uuid(0000180d-0000-1000-8000-00805f9b34fb)"));
+		assertFalse(matches("uuid(180F)"));
+		assertTrue(matches("manufacturer(0x0059)"));
+		assertTrue(matches("manufacturer(0x0059, 0102)"));
+		assertTrue(matches("manufacturer(0x0059, 0x0100, FF00)"));
+		assertFalse(matches("manufacturer(0x0059, 0103)"));
+		assertFalse(matches("manufacturer(0x004C)"));
+		assertTrue(matches("name(\"Nordic\")"));
+		assertFalse(matches("name(\"HRM\")"));
+		assertTrue(matches("name_regex(\"_H.M$\")"));
+		assertFalse(matches("name_regex(\"^HRM\")"));
+		assertTrue(matches("rssi(-70)", -60));
+		assertFalse(matches("rssi(-50)", -60));
+		assertFalse(matches("rssi(-70, -65)", -60));
+	}
+
+	@Test
+	public void operators() {
+		assertTrue(matches("uuid(180D) and name(\"Nordic\")"));
+		assertFalse(matches("uuid(180D) && name(\"DFU\")"));
+		assertTrue(matches("uuid(180F) or name(\"Nordic\")"));
+		assertTrue(matches("uuid(180F) || !name(\"DFU\")"));
+		assertFalse(matches("NOT uuid(180D)"));
+		// "not" binds strongest, "or" weakest.
+		assertTrue(matches("not uuid(180F) and uuid(180D) or uuid(180F)"));
+		assertFalse(matches("not (uuid(180F) or uuid(180D))"));
+	}
+
+	@Test
+	public void keywordPrefixOfIdentifierIsNotKeyword() {
+		try {
+			FilterCompiler.compile("notname(\"x\")");
+			fail();
+		} catch (final IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Unknown predicate: notname"));
+		}
+	}
+
+	@Test
+	public void errorsReportPosition() {
+		assertError("uuid(180D) and", "Unexpected end of expression at position 15");
+		assertError("uuid(180D))", "Unexpected ')' at position 11");
+		assertError("rssi(-50, -40, 0)", "rssi() takes 1 to 2 argument(s), 3 given at position 1");
+		assertError("uuid(18)", "Invalid UUID: 18 at position 1");
+		assertError("manufacturer(0x10000)", "Invalid company ID: 0x10000 at position 1");
+		assertError("manufacturer(0x0059, 0102, FF)", "Data and mask lengths differ at position 1");
+		assertError("name(\"Nordic)", "Unterminated string at position 14");
+		assertError("rssi(-40, -50)", "Invalid RSSI range: -40, -50 at position 1");
+		assertError("(uuid(180D)", "Expected ')' at position 12");
+	}
+
+	@Test
+	public void requiredServiceUuids() {
+		final UUID hrs = UUID.fromString("0000180D-0000-1000-8000-00805F9B34FB");
+		final UUID lbs = UUID.fromString("00001523-1212-EFDE-1523-785FEABCD123");
+		final List<UUID> none = Collections.emptyList();
+		assertEquals(none, FilterCompiler.getRequiredServiceUuids(null));
+		assertEquals(Collections.singletonList(hrs), FilterCompiler.getRequiredServiceUuids("uuid(180D)"));
+		assertEquals(Arrays.asList(hrs, lbs), FilterCompiler.getRequiredServiceUuids(
+				"uuid(180D) and name(\"Nordic\") and (rssi(-70) && uuid(00001523-1212-EFDE-1523-785FEABCD123))"));
+		assertEquals(none, FilterCompiler.getRequiredServiceUuids("name(\"Nordic\") and rssi(-70)"));
+		assertEquals(none, FilterCompiler.getRequiredServiceUuids("uuid(180D) or name(\"Nordic\")"));
+		assertEquals(none, FilterCompiler.getRequiredServiceUuids("not uuid(180D) and rssi(-70)"));
+		assertEquals(none, FilterCompiler.getRequiredServiceUuids("(uuid(180D) or uuid(1523)) and rssi(-70)"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidRegex() {
+		FilterCompiler.compile("name_regex(\"[\")");
+	}
+
+	private static void assertError(final String expression, final String message) {
+		try {
+			FilterCompiler.compile(expression);
+			fail("Compiled: " + expression);
+		} catch (final IllegalArgumentException e) {
+			if (!message.equals(e.getMessage()))
+				fail("Expected \"" + message + "\", was \"" + e.getMessage() + "\"");
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package no.nordicsemi.android.blinky.scanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RssiHistoryTest {
+
+	@Test
+	public void keepsSamplesNewestFirst() {
+		final RssiHistory history = new RssiHistory();
+		assertEquals(0, history.size());
+		history.add(-50);
+		history.add(-60);
+		history.add(-70);
+		assertEquals(3, history.size());
+		assertEquals(-70, history.get(0));
+		assertEquals(-60, history.get(1));
+		assertEquals(-50, history.get(2));
+	}
+
+	@Test
+	public void overwritesOldestSamplesWhenFull() {
+		final RssiHistory history = new RssiHistory();
+		for (int i = 1; i <= RssiHistory.CAPACITY + 3; i++)
+			history.add(-i);
+		assertEquals(RssiHistory.CAPACITY, history.size());
+		for (int age = 0; age < RssiHistory.CAPACITY; age++)
+			assertEquals(-(RssiHistory.CAPACITY + 3 - age), history.get(age));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void getBeyondSize() {
+		final RssiHistory history = new RssiHistory();
+		history.add(-50);
+		history.get(1);
+	}
+
+	@Test
+	public void clampsSamples() {
+		final RssiHistory history = new RssiHistory();
+		history.add(-200);
+		assertEquals(-127, history.get(0));
+	}
+
+	@Test
+	public void keepsSamplesWhenStateIsReset() {
+		final RssiHistory history = new RssiHistory();
+		history.add(-50);
+		assertFalse(history.isInitialized());
+		history.setState(-52.5f, 3.0f);
+		assertTrue(history.isInitialized());
+		assertEquals(-52.5f, history.getEstimate(), 0.0f);
+		assertEquals(3.0f, history.getVariance(), 0.0f);
+
+		history.resetState();
+		assertFalse(history.isInitialized());
+		assertEquals(1, history.size());
+		assertEquals(-50, history.get(0));
+
+		history.setState(-50, 0);
+		history.clear();
+		assertFalse(history.isInitialized());
+		assertEquals(0, history.size());
+	}
+
+	@Test
+	public void slotsOfSharedStorageAreIndependent() {
+		final byte[] samples = new byte[2 * RssiHistory.SAMPLES_PER_SLOT];
+		final byte[] meta = new byte[2];
+		final float[] state = new float[2 * RssiHistory.STATE_PER_SLOT];
+		final RssiHistory history = new RssiHistory();
+		for (int i = 0; i < RssiHistory.CAPACITY + 1; i++)
+			history.wrap(samples, meta, state, 0).add(-40 - i);
+		history.wrap(samples, meta, state, 1).add(-90);
+		history.setState(-90, 1);
+
+		history.wrap(samples, meta, state, 0);
+		assertEquals(RssiHistory.CAPACITY, history.size());
+		assertEquals(-40 - RssiHistory.CAPACITY, history.get(0));
+		assertFalse(history.isInitialized());
+		history.wrap(samples, meta, state, 1);
+		assertEquals(1, history.size());
+		assertEquals(-90, history.get(0));
+		assertTrue(history.isInitialized());
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package no.nordicsemi.android.blinky.scanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RssiSmootherTest {
+	private static final float DELTA = 1e-4f;
+
+	@Test
+	public void emaWeighsNewSamples() {
+		final RssiHistory history = new RssiHistory();
+		final RssiSmoother smoother = new RssiSmoother.Ema(0.3f);
+		assertEquals(-60, smooth(smoother, history, -60), DELTA);
+		assertEquals(-63, smooth(smoother, history, -70), DELTA);
+		assertEquals(-62.1f, smooth(smoother, history, -60), DELTA);
+	}
+
+	@Test
+	public void kalmanConvergesWithDecreasingGain() {
+		final RssiHistory history = new RssiHistory();
+		final RssiSmoother smoother = new RssiSmoother.Kalman(0.5f, 16.0f);
+		assertEquals(-60, smooth(smoother, history, -60), DELTA);
+		assertEquals(16.0f, history.getVariance(), DELTA);
+
+		// The predicted variance is 16.5, so the gain is 16.5 / 32.5.
+		final float gain = 16.5f / 32.5f;
+		assertEquals(-60 - 10 * gain, smooth(smoother, history, -70), DELTA);
+		assertEquals((1 - gain) * 16.5f, history.getVariance(), DELTA);
+
+		float previous = history.getVariance();
+		for (int i = 0; i < 50; i++) {
+			smooth(smoother, history, -70);
+			assertTrue(history.getVariance() <= previous);
+			previous = history.getVariance();
+		}
+		assertEquals(-70, history.getEstimate(), 0.1f);
+	}
+
+	@Test
+	public void kalmanIgnoresSingleOutlierBetterThanRawValue() {
+		final RssiHistory history = new RssiHistory();
+		for (int i = 0; i < 20; i++)
+			smooth(RssiSmoother.KALMAN, history, -60);
+		final float smoothed = smooth(RssiSmoother.KALMAN, history, -90);
+		assertTrue(smoothed > -70);
+	}
+
+	@Test
+	public void medianOfOddWindow() {
+		final RssiHistory history = new RssiHistory();
+		final RssiSmoother smoother = new RssiSmoother.Median(5);
+		assertEquals(-60, smooth(smoother, history, -60), DELTA);
+		// Even number of samples, the average of the middle two.
+		assertEquals(-75, smooth(smoother, history, -90), DELTA);
+		assertEquals(-61, smooth(smoother, history, -61), DELTA);
+		smooth(smoother, history, -62);
+		assertEquals(-62, smooth(smoother, history, -100), DELTA);
+	}
+
+	@Test
+	public void medianUsesOnlyWindowAfterWraparound() {
+		final RssiHistory history = new RssiHistory();
+		final RssiSmoother smoother = new RssiSmoother.Median(3);
+		for (int i = 0; i < RssiHistory.CAPACITY + 2; i++)
+			smooth(smoother, history, -100);
+		smooth(smoother, history, -50);
+		smooth(smoother, history, -52);
+		assertEquals(-51, smooth(smoother, history, -51), DELTA);
+		// Duplicates are counted.
+		assertEquals(-51, smooth(smoother, history, -51), DELTA);
+	}
+
+	@Test
+	public void emaRestartsAfterStateReset() {
+		final RssiHistory history = new RssiHistory();
+		smooth(RssiSmoother.EMA, history, -60);
+		smooth(RssiSmoother.EMA, history, -80);
+		history.resetState();
+		assertEquals(-40, smooth(RssiSmoother.EMA, history, -40), DELTA);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidEmaFactor() {
+		new RssiSmoother.Ema(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidKalmanNoise() {
+		new RssiSmoother.Kalman(0.5f, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidMedianWindow() {
+		new RssiSmoother.Median(RssiHistory.CAPACITY + 1);
+	}
+
+	private static float smooth(final RssiSmoother smoother, final RssiHistory history, final int rssi) {
+		history.add(rssi);
+		return smoother.smooth(history, rssi);
+	}
+}
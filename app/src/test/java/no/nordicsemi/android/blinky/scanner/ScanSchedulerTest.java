@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.scanner;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import no.nordicsemi.android.blinky.utils.Clock;
+
+import static org.junit.Assert.assertEquals;
+
+public class ScanSchedulerTest {
+	private long now;
+	private ScanScheduler scheduler;
+
+	@Before
+	public void setUp() {
+		now = 1_000_000;
+		final Clock clock = () -> now;
+		scheduler = new ScanScheduler(clock);
+	}
+
+	@Test
+	public void settlesWithoutNewDevices() {
+		assertEquals(ScanScheduler.Policy.LOW_LATENCY, scheduler.evaluate());
+		now += 10_000;
+		assertEquals(ScanScheduler.Policy.BALANCED, scheduler.evaluate());
+		now += 60_000;
+		assertEquals(ScanScheduler.Policy.LOW_POWER, scheduler.evaluate());
+	}
+
+	@Test
+	public void burstContinuesWhileDevicesAppear() {
+		now += 9_000;
+		scheduler.onDevicesDiscovered(1);
+		now += 1_000;
+		scheduler.onDevicesDiscovered(1);
+		assertEquals(ScanScheduler.Policy.LOW_LATENCY, scheduler.evaluate());
+		now += 10_000;
+		assertEquals(ScanScheduler.Policy.BALANCED, scheduler.evaluate());
+	}
+
+	@Test
+	public void policyKeptForMinDwellTime() {
+		now += 10_000;
+		assertEquals(ScanScheduler.Policy.BALANCED, scheduler.evaluate());
+		scheduler.onDevicesDiscovered(2);
+		now += 9_999;
+		assertEquals(ScanScheduler.Policy.BALANCED, scheduler.evaluate());
+		now += 1;
+		scheduler.onDevicesDiscovered(2);
+		assertEquals(ScanScheduler.Policy.LOW_LATENCY, scheduler.evaluate());
+	}
+
+	@Test
+	public void resetClearsDiscoveryHistory() {
+		// Move the history index away from the start.
+		for (int i = 0; i < 5; i++) {
+			now += 1_000;
+			scheduler.onDevicesDiscovered(1);
+		}
+		now += 100_000;
+		scheduler.reset();
+		now += 11_000;
+		scheduler.onDevicesDiscovered(2);
+		assertEquals(ScanScheduler.Policy.LOW_LATENCY, scheduler.evaluate());
+	}
+
+	@Test
+	public void onlyRecentDiscoveriesCount() {
+		now += 10_000;
+		assertEquals(ScanScheduler.Policy.BALANCED, scheduler.evaluate());
+		// More discoveries than the history holds, all but the last one too old.
+		for (int i = 0; i < 20; i++) {
+			scheduler.onDevicesDiscovered(1);
+			now += 31_000;
+		}
+		now -= 31_000;
+		assertEquals(ScanScheduler.Policy.BALANCED, scheduler.evaluate());
+		now += 1_000;
+		scheduler.onDevicesDiscovered(1);
+		assertEquals(ScanScheduler.Policy.LOW_LATENCY, scheduler.evaluate());
+	}
+
+	@Test
+	public void batteryState() {
+		scheduler.setBatteryState(10, false);
+		now += 9_000;
+		scheduler.onDevicesDiscovered(2);
+		now += 1_000;
+		assertEquals(ScanScheduler.Policy.BALANCED, scheduler.evaluate());
+
+		now += 60_000;
+		scheduler.setBatteryState(10, true);
+		assertEquals(ScanScheduler.Policy.BALANCED, scheduler.evaluate());
+		scheduler.setBatteryState(50, false);
+		assertEquals(ScanScheduler.Policy.LOW_POWER, scheduler.evaluate());
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.stream;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SampleRingBufferTest {
+
+	@Test
+	public void capacityRoundedUpToPowerOfTwo() {
+		assertEquals(1, new SampleRingBuffer(1, SampleRingBuffer.OverflowPolicy.DROP_OLDEST).getCapacity());
+		assertEquals(8, new SampleRingBuffer(5, SampleRingBuffer.OverflowPolicy.DROP_OLDEST).getCapacity());
+		assertEquals(8, new SampleRingBuffer(8, SampleRingBuffer.OverflowPolicy.DROP_OLDEST).getCapacity());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidCapacity() {
+		new SampleRingBuffer(0, SampleRingBuffer.OverflowPolicy.DROP_OLDEST);
+	}
+
+	@Test
+	public void readsSamplesWithTimestamps() throws InterruptedException {
+		final SampleRingBuffer buffer = new SampleRingBuffer(8, SampleRingBuffer.OverflowPolicy.DROP_OLDEST);
+		final SampleRingBuffer.Cursor cursor = buffer.newCursor();
+		buffer.write(new int[] { 1, 2 }, 2, 100);
+		buffer.write(new int[] { 0xFFFF }, 1, 200);
+		assertEquals(3, cursor.available());
+
+		final int[] samples = new int[4];
+		final long[] timestamps = new long[4];
+		assertEquals(3, cursor.read(samples, timestamps, 1, 3));
+		assertArrayEquals(new int[] { 0, 1, 2, 0xFFFF }, samples);
+		assertArrayEquals(new long[] { 0, 100, 100, 200 }, timestamps);
+		assertEquals(0, cursor.read(samples, null, 0, 4));
+	}
+
+	@Test
+	public void cursorReadsOnlyNewSamples() throws InterruptedException {
+		final SampleRingBuffer buffer = new SampleRingBuffer(8, SampleRingBuffer.OverflowPolicy.DROP_OLDEST);
+		buffer.write(new int[] { 1, 2 }, 2, 0);
+		final SampleRingBuffer.Cursor cursor = buffer.newCursor();
+		buffer.write(new int[] { 3 }, 1, 0);
+
+		final int[] samples = new int[8];
+		assertEquals(1, cursor.read(samples, null, 0, 8));
+		assertEquals(3, samples[0]);
+
+		buffer.write(new int[] { 4, 5 }, 2, 0);
+		cursor.skipToLatest();
+		assertEquals(0, cursor.available());
+	}
+
+	@Test
+	public void dropOldestCountsDroppedPerCursor() throws InterruptedException {
+		final SampleRingBuffer buffer = new SampleRingBuffer(4, SampleRingBuffer.OverflowPolicy.DROP_OLDEST);
+		final SampleRingBuffer.Cursor slow = buffer.newCursor();
+		final SampleRingBuffer.Cursor fast = buffer.newCursor();
+		final int[] samples = new int[10];
+
+		for (int i = 0; i < 10; i++) {
+			buffer.write(new int[] { i }, 1, i);
+			assertEquals(1, fast.read(samples, null, 0, 10));
+		}
+		assertEquals(10, buffer.getWrittenCount());
+		assertEquals(0, fast.getDroppedCount());
+
+		// Only the last 4 samples are kept.
+		assertEquals(10, slow.available());
+		assertEquals(4, slow.read(samples, null, 0, 10));
+		assertEquals(6, slow.getDroppedCount());
+		assertArrayEquals(new int[] { 6, 7, 8, 9 }, Arrays.copyOf(samples, 4));
+	}
+
+	@Test
+	public void writeLargerThanCapacityKeepsNewest() throws InterruptedException {
+		final SampleRingBuffer buffer = new SampleRingBuffer(4, SampleRingBuffer.OverflowPolicy.DROP_OLDEST);
+		final SampleRingBuffer.Cursor cursor = buffer.newCursor();
+		buffer.write(new int[] { 1, 2, 3, 4, 5, 6 }, 6, 0);
+
+		final int[] samples = new int[4];
+		assertEquals(4, cursor.read(samples, null, 0, 4));
+		assertArrayEquals(new int[] { 3, 4, 5, 6 }, samples);
+		assertEquals(2, cursor.getDroppedCount());
+	}
+
+	@Test(timeout = 5000)
+	public void blockWaitsForSlowestCursor() throws InterruptedException {
+		final SampleRingBuffer buffer = new SampleRingBuffer(4, SampleRingBuffer.OverflowPolicy.BLOCK);
+		final SampleRingBuffer.Cursor cursor = buffer.newCursor();
+		final int total = 1000;
+		final Thread producer = new Thread(() -> {
+			try {
+				for (int i = 0; i < total; i += 10) {
+					final int[] chunk = new int[10];
+					for (int j = 0; j < 10; j++)
+						chunk[j] = i + j;
+					buffer.write(chunk, 10, i);
+				}
+			} catch (final InterruptedException e) {
+				// The test fails on the sample count.
+			}
+		});
+		producer.start();
+
+		final int[] samples = new int[3];
+		int expected = 0;
+		while (expected < total) {
+			final int count = cursor.read(samples, null, 0, samples.length);
+			for (int i = 0; i < count; i++)
+				assertEquals(expected++, samples[i]);
+			if (count == 0)
+				Thread.sleep(1);
+		}
+		producer.join();
+		assertEquals(0, cursor.getDroppedCount());
+		assertTrue(buffer.getBlockedCount() > 0);
+	}
+
+	@Test(timeout = 5000)
+	public void closedCursorDoesNotBlock() throws InterruptedException {
+		final SampleRingBuffer buffer = new SampleRingBuffer(4, SampleRingBuffer.OverflowPolicy.BLOCK);
+		final SampleRingBuffer.Cursor cursor = buffer.newCursor();
+		buffer.write(new int[] { 1, 2, 3, 4 }, 4, 0);
+		final Thread closer = new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			} catch (final InterruptedException e) {
+				// close anyway
+			}
+			cursor.close();
+		});
+		closer.start();
+		// Blocks until the cursor is closed.
+		buffer.write(new int[] { 5 }, 1, 0);
+		closer.join();
+		assertEquals(5, buffer.getWrittenCount());
+		assertEquals(1, buffer.getBlockedCount());
+	}
+}
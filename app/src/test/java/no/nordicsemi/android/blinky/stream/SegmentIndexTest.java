@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package no.nordicsemi.android.blinky.stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentIndexTest {
+	private File segment;
+
+	@Before
+	public void setUp() throws IOException {
+		segment = new File(Files.createTempDirectory("session").toFile(), "segment-000000.blkv");
+	}
+
+	@After
+	public void tearDown() {
+		SegmentIndex.getFile(segment).delete();
+		segment.getParentFile().delete();
+	}
+
+	@Test
+	public void indexFileNamedAfterSegment() {
+		assertEquals(new File(segment.getParentFile(), "segment-000000.blki"), SegmentIndex.getFile(segment));
+	}
+
+	@Test
+	public void summarizesBlocks() throws IOException {
+		final int count = SegmentIndex.BLOCK_SIZE + 2;
+		final ByteBuffer records = records(count);
+		final SegmentIndex index = SegmentIndex.open(segment, records, count, false);
+		assertFalse(SegmentIndex.getFile(segment).exists());
+		assertEquals(2, index.getBlockCount());
+		assertEquals(SegmentIndex.BLOCK_SIZE, index.getCount(0));
+		assertEquals(2, index.getCount(1));
+		assertEquals(0, index.getMin(0));
+		assertEquals(SegmentIndex.BLOCK_SIZE - 1, index.getMax(0));
+		assertEquals((long) SegmentIndex.BLOCK_SIZE * (SegmentIndex.BLOCK_SIZE - 1) / 2, index.getSum(0));
+		assertEquals(2L * SegmentIndex.BLOCK_SIZE + 1, index.getSum(1));
+		assertEquals(10, index.getFirstTimestamp(0));
+		assertEquals(10L * SegmentIndex.BLOCK_SIZE, index.getLastTimestamp(0));
+		assertEquals(10L * (SegmentIndex.BLOCK_SIZE + 1), index.getFirstTimestamp(1));
+	}
+
+	@Test
+	public void findsBlocks() throws IOException {
+		final int count = SegmentIndex.BLOCK_SIZE * 3;
+		final SegmentIndex index = SegmentIndex.open(segment, records(count), count, false);
+		assertEquals(0, index.findBlock(0));
+		assertEquals(0, index.findBlock(10L * SegmentIndex.BLOCK_SIZE));
+		assertEquals(1, index.findBlock(10L * SegmentIndex.BLOCK_SIZE + 1));
+		assertEquals(2, index.findBlock(10L * count));
+		assertEquals(3, index.findBlock(10L * count + 1));
+	}
+
+	@Test
+	public void rebuildsIndexOfDifferentCount() throws IOException {
+		final int count = SegmentIndex.BLOCK_SIZE * 2;
+		final ByteBuffer records = records(count);
+		SegmentIndex.write(segment, records, SegmentIndex.BLOCK_SIZE);
+		assertTrue(SegmentIndex.getFile(segment).isFile());
+
+		final SegmentIndex index = SegmentIndex.open(segment, records, count, true);
+		assertEquals(2, index.getBlockCount());
+		assertEquals(SegmentIndex.BLOCK_SIZE, index.getCount(1));
+		assertEquals(2, SegmentIndex.open(segment, records, count, true).getBlockCount());
+	}
+
+	/**
+	 * Returns a segment with samples 0, 1, 2... at timestamps 10, 20, 30...
+	 */
+	private static ByteBuffer records(final int count) {
+		final ByteBuffer buffer = ByteBuffer.allocate(SessionWriter.HEADER_SIZE + count * SessionWriter.RECORD_SIZE);
+		for (int i = 0; i < count; i++) {
+			final int record = SessionWriter.HEADER_SIZE + i * SessionWriter.RECORD_SIZE;
+			buffer.putLong(record + SessionWriter.OFFSET_TIMESTAMP, 10L * (i + 1));
+			buffer.putShort(record + SessionWriter.OFFSET_SAMPLE, (short) i);
+		}
+		return buffer;
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package no.nordicsemi.android.blinky.stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SessionExporterTest {
+	private static final long ADDRESS = 0x0102030405L;
+	/** Longer than the export buffer, so that it's split where the buffer is flushed. */
+	private static final int LONG_RUN = 35_000;
+
+	private File session;
+	private int[] samples;
+	private long[] timestamps;
+
+	@Before
+	public void setUp() throws IOException {
+		session = Files.createTempDirectory("session").toFile();
+
+		final List<Long> times = new ArrayList<>();
+		long time = 5_000_000_000L;
+		// Runs of 3, 1, 2 and 1 samples, with differences needing 1, 2 and 5 byte varints.
+		for (int i = 0; i < 3; i++)
+			times.add(time);
+		times.add(time += 100);
+		times.add(time += 300);
+		times.add(time);
+		times.add(time += 1_000_000_000L);
+		// A long run, and 5 runs of 1 sample, 1 us apart.
+		time += 1_000;
+		for (int i = 0; i < LONG_RUN; i++)
+			times.add(time);
+		for (int i = 0; i < 5; i++)
+			times.add(time += 1_000);
+
+		samples = new int[times.size()];
+		timestamps = new long[times.size()];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = (i * 7919) & 0xFFFF;
+			timestamps[i] = times.get(i);
+		}
+		try (SessionWriter writer = new SessionWriter(session, ADDRESS, 10_000)) {
+			writer.append(samples, timestamps, 0, samples.length);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		final File[] files = session.listFiles();
+		if (files != null)
+			for (final File file : files)
+				file.delete();
+		session.delete();
+	}
+
+	@Test
+	public void exportsBinary() throws IOException {
+		final SessionReader reader = new SessionReader(session);
+		final byte[] bytes = export(reader, SessionExporter.Format.BINARY);
+
+		// The first run length is padded to 3 bytes, after the 48 byte header and the
+		// difference of the first timestamp.
+		assertEquals(0, bytes[48]);
+		assertEquals((byte) 0x83, bytes[49]);
+		assertEquals((byte) 0x80, bytes[50]);
+		assertEquals(0, bytes[51]);
+
+		final DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+		assertEquals(SessionExporter.MAGIC, input.readInt());
+		assertEquals(SessionExporter.VERSION, input.readShort());
+		assertEquals(0, input.readShort());
+		assertEquals(ADDRESS, input.readLong());
+		assertEquals(reader.getWallTime(), input.readLong());
+		assertEquals(reader.getMonotonicTime(), input.readLong());
+		assertEquals(timestamps[0], input.readLong());
+		assertEquals(samples.length, input.readLong());
+
+		final List<Long> differences = new ArrayList<>();
+		final List<Long> lengths = new ArrayList<>();
+		long time = timestamps[0];
+		int i = 0;
+		while (input.available() > 0) {
+			final long difference = readVarint(input);
+			final long length = readVarint(input);
+			differences.add(difference);
+			lengths.add(length);
+			time += difference;
+			for (int j = 0; j < length; j++, i++) {
+				assertEquals(timestamps[i], time);
+				assertEquals(samples[i], input.readUnsignedShort());
+			}
+		}
+		assertEquals(samples.length, i);
+
+		// The long run is split in two, the second part continues with no difference.
+		assertEquals(11, lengths.size());
+		assertEquals(3L, (long) lengths.get(0));
+		assertEquals(0L, (long) differences.get(0));
+		assertEquals(100L, (long) differences.get(1));
+		assertEquals(300L, (long) differences.get(2));
+		assertEquals(1_000_000_000L, (long) differences.get(3));
+		assertEquals(LONG_RUN, lengths.get(4) + lengths.get(5));
+		assertTrue(lengths.get(4) > 0 && lengths.get(5) > 0);
+		assertEquals(0L, (long) differences.get(5));
+		assertEquals(1L, (long) lengths.get(6));
+	}
+
+	@Test
+	public void exportsCsv() throws IOException {
+		final SessionReader reader = new SessionReader(session);
+		final String[] lines = new String(export(reader, SessionExporter.Format.CSV),
+				Charset.forName("US-ASCII")).split("\n");
+
+		assertEquals("timestamp_us,sample", lines[0]);
+		assertEquals(samples.length + 1, lines.length);
+		final long[] micros = new long[samples.length];
+		for (int i = 0; i < samples.length; i++) {
+			final String[] fields = lines[i + 1].split(",");
+			micros[i] = Long.parseLong(fields[0]);
+			assertEquals(reader.getWallTime() * 1000L + (timestamps[i] - reader.getMonotonicTime()) / 1000L,
+					micros[i]);
+			assertEquals(samples[i], Integer.parseInt(fields[1]));
+		}
+		// Timestamps are in microseconds, not rounded to milliseconds.
+		for (int i = samples.length - 5; i < samples.length; i++)
+			assertEquals(1, micros[i] - micros[i - 1]);
+	}
+
+	@Test
+	public void reportsProgress() throws IOException {
+		final SessionReader reader = new SessionReader(session);
+		final long[] progress = new long[2];
+		final SessionExporter exporter = new SessionExporter(SessionExporter.Format.CSV);
+		assertTrue(exporter.export(reader, Channels.newChannel(new ByteArrayOutputStream()),
+				(exported, total) -> {
+					assertTrue(exported > progress[0]);
+					progress[0] = exported;
+					progress[1] = total;
+				}));
+		assertEquals(samples.length, progress[0]);
+		assertEquals(samples.length, progress[1]);
+	}
+
+	private static byte[] export(final SessionReader reader, final SessionExporter.Format format)
+			throws IOException {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		assertTrue(new SessionExporter(format).export(reader, Channels.newChannel(output), null));
+		return output.toByteArray();
+	}
+
+	private static long readVarint(final DataInputStream input) throws IOException {
+		long value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = input.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+}
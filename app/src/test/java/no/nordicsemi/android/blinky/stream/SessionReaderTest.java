@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package no.nordicsemi.android.blinky.stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SessionReaderTest {
+	private static final int SEGMENT_CAPACITY = 3000;
+
+	private File session;
+	private int[] samples;
+	private long[] timestamps;
+
+	@Before
+	public void setUp() throws IOException {
+		session = Files.createTempDirectory("session").toFile();
+		final int count = SEGMENT_CAPACITY * 2 + 500;
+		samples = new int[count];
+		timestamps = new long[count];
+		for (int i = 0; i < count; i++) {
+			samples[i] = (i * 7919) & 0xFFFF;
+			// Pairs of samples with the same timestamp.
+			timestamps[i] = 1000 + (i / 2) * 10;
+		}
+	}
+
+	@After
+	public void tearDown() {
+		final File[] files = session.listFiles();
+		if (files != null)
+			for (final File file : files)
+				file.delete();
+		session.delete();
+	}
+
+	@Test
+	public void readsAcrossSegments() throws IOException {
+		write();
+		final SessionReader reader = new SessionReader(session);
+		assertEquals(samples.length, reader.getCount());
+		assertEquals(0x0102030405L, reader.getAddress());
+		assertEquals(timestamps[0], reader.getFirstTimestamp());
+		assertEquals(timestamps[samples.length - 1], reader.getLastTimestamp());
+
+		final int position = SEGMENT_CAPACITY - 5;
+		final int[] read = new int[10];
+		final long[] readTimestamps = new long[10];
+		assertEquals(10, reader.read(position, read, readTimestamps, 0, 10));
+		for (int i = 0; i < 10; i++) {
+			assertEquals(samples[position + i], read[i]);
+			assertEquals(timestamps[position + i], readTimestamps[i]);
+		}
+		assertEquals(3, reader.read(samples.length - 3, read, null, 0, 10));
+		assertEquals(samples[samples.length - 1], reader.getSample(samples.length - 1));
+	}
+
+	@Test
+	public void findsTimestamps() throws IOException {
+		write();
+		final SessionReader reader = new SessionReader(session);
+		assertEquals(0, reader.find(0));
+		assertEquals(0, reader.find(timestamps[0]));
+		// The first of the pair.
+		assertEquals(SEGMENT_CAPACITY, reader.find(timestamps[SEGMENT_CAPACITY + 1]));
+		assertEquals(SEGMENT_CAPACITY + 2, reader.find(timestamps[SEGMENT_CAPACITY + 1] + 1));
+		assertEquals(samples.length, reader.find(timestamps[samples.length - 1] + 1));
+	}
+
+	@Test
+	public void aggregatesRanges() throws IOException {
+		write();
+		final SessionReader reader = new SessionReader(session);
+		final SessionReader.Summary summary = new SessionReader.Summary();
+		final long[][] ranges = {
+				{ 0, Long.MAX_VALUE },
+				{ timestamps[10], timestamps[20] },
+				{ timestamps[SegmentIndex.BLOCK_SIZE - 3], timestamps[SEGMENT_CAPACITY * 2 + 7] },
+				{ timestamps[SEGMENT_CAPACITY - 1], timestamps[SEGMENT_CAPACITY + 1] },
+		};
+		for (final long[] range : ranges) {
+			assertTrue(reader.aggregate(range[0], range[1], summary));
+			long count = 0, sum = 0;
+			int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+			for (int i = 0; i < samples.length; i++) {
+				if (timestamps[i] < range[0] || timestamps[i] >= range[1])
+					continue;
+				count++;
+				sum += samples[i];
+				min = Math.min(min, samples[i]);
+				max = Math.max(max, samples[i]);
+			}
+			assertEquals(count, summary.count);
+			assertEquals(sum, summary.sum);
+			assertEquals(min, summary.min);
+			assertEquals(max, summary.max);
+		}
+		assertFalse(reader.aggregate(timestamps[10], timestamps[10], summary));
+		assertFalse(reader.aggregate(timestamps[samples.length - 1] + 1, Long.MAX_VALUE, summary));
+	}
+
+	@Test
+	public void readsSegmentBeingWritten() throws IOException {
+		try (SessionWriter writer = new SessionWriter(session, 0, SEGMENT_CAPACITY)) {
+			writer.append(samples, timestamps, 0, 100);
+			final SessionReader reader = new SessionReader(session);
+			assertEquals(100, reader.getCount());
+			assertEquals(timestamps[99], reader.getLastTimestamp());
+		}
+	}
+
+	@Test
+	public void ignoresIncompleteRecordsOfUnclosedSegment() throws IOException {
+		try (SessionWriter writer = new SessionWriter(session, 0, SEGMENT_CAPACITY)) {
+			writer.append(samples, timestamps, 0, 100);
+		}
+		final File segment = SessionWriter.listSegments(session)[0];
+		try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+			final long size = SessionWriter.HEADER_SIZE + (long) SEGMENT_CAPACITY * SessionWriter.RECORD_SIZE;
+			file.setLength(size);
+			final MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.putInt(SessionWriter.OFFSET_FLAGS, 0);
+			// The written count was stored, but the records after the 100th were not.
+			buffer.putLong(SessionWriter.OFFSET_WRITTEN, 120);
+		}
+
+		final SessionReader reader = new SessionReader(session);
+		assertEquals(100, reader.getCount());
+		assertEquals(timestamps[99], reader.getLastTimestamp());
+		final int[] read = new int[5];
+		assertEquals(5, reader.read(95, read, null, 0, 5));
+		final int[] expected = new int[5];
+		System.arraycopy(samples, 95, expected, 0, 5);
+		assertArrayEquals(expected, read);
+	}
+
+	@Test(expected = IOException.class)
+	public void emptySession() throws IOException {
+		new SessionReader(session);
+	}
+
+	private void write() throws IOException {
+		try (SessionWriter writer = new SessionWriter(session, 0x0102030405L, SEGMENT_CAPACITY)) {
+			// Blocks of samples not aligned with segments.
+			for (int i = 0; i < samples.length; i += 700)
+				writer.append(samples, timestamps, i, Math.min(700, samples.length - i));
+		}
+	}
+}
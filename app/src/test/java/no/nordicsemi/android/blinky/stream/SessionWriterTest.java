@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package no.nordicsemi.android.blinky.stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SessionWriterTest {
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("recordings").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		delete(directory);
+	}
+
+	@Test
+	public void writesRecords() throws IOException {
+		final File session = new File(directory, "1");
+		try (SessionWriter writer = new SessionWriter(session, 0x123456789AL, 100)) {
+			writer.append(new int[] { 1, 2, 0xFFFF }, new long[] { 10, 20, 20 }, 0, 3);
+			writer.commit();
+			assertEquals(3, writer.getCount());
+			assertEquals(3, writer.getCommittedCount());
+		}
+
+		final File[] segments = SessionWriter.listSegments(session);
+		assertEquals(1, segments.length);
+		final ByteBuffer buffer = map(segments[0]);
+		assertEquals(SessionWriter.HEADER_SIZE + 3 * SessionWriter.RECORD_SIZE, buffer.capacity());
+		assertEquals(SessionWriter.MAGIC, buffer.getInt(0));
+		assertEquals(SessionWriter.FLAG_CLOSED, buffer.getInt(SessionWriter.OFFSET_FLAGS));
+		assertEquals(3, buffer.getLong(SessionWriter.OFFSET_WRITTEN));
+		assertEquals(3, buffer.getLong(SessionWriter.OFFSET_COMMITTED));
+		assertEquals(0x123456789AL, buffer.getLong(SessionWriter.OFFSET_ADDRESS));
+		assertEquals(20, SessionWriter.timestampAt(buffer, 2));
+		assertEquals(0xFFFF, sampleAt(buffer, 2));
+		assertTrue(SegmentIndex.getFile(segments[0]).isFile());
+	}
+
+	@Test
+	public void rollsOverToNewSegments() throws IOException {
+		final File session = new File(directory, "1");
+		final int count = 25;
+		try (SessionWriter writer = new SessionWriter(session, 0, 10)) {
+			for (int i = 0; i < count; i++)
+				writer.append(new int[] { i }, new long[] { i + 1 }, 0, 1);
+		}
+
+		final File[] segments = SessionWriter.listSegments(session);
+		assertEquals(3, segments.length);
+		int i = 0;
+		for (int s = 0; s < segments.length; s++) {
+			final ByteBuffer buffer = map(segments[s]);
+			assertEquals(s, buffer.getInt(SessionWriter.OFFSET_SEGMENT));
+			final long written = buffer.getLong(SessionWriter.OFFSET_WRITTEN);
+			assertEquals(s < 2 ? 10 : 5, written);
+			for (int r = 0; r < written; r++, i++) {
+				assertEquals(i, sampleAt(buffer, r));
+				assertEquals(i + 1, SessionWriter.timestampAt(buffer, r));
+			}
+		}
+		assertEquals(count, i);
+	}
+
+	@Test
+	public void continuesWithNewSegment() throws IOException {
+		final File session = new File(directory, "1");
+		try (SessionWriter writer = new SessionWriter(session, 0, 10)) {
+			writer.append(new int[] { 1 }, new long[] { 1 }, 0, 1);
+		}
+		try (SessionWriter writer = new SessionWriter(session, 0, 10)) {
+			writer.append(new int[] { 2 }, new long[] { 2 }, 0, 1);
+		}
+		final File[] segments = SessionWriter.listSegments(session);
+		assertEquals(2, segments.length);
+		assertEquals(1, map(segments[1]).getInt(SessionWriter.OFFSET_SEGMENT));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void decreasingTimestamps() throws IOException {
+		try (SessionWriter writer = new SessionWriter(new File(directory, "1"), 0, 10)) {
+			writer.append(new int[] { 1, 2 }, new long[] { 2, 1 }, 0, 2);
+		}
+	}
+
+	@Test
+	public void writesBlockAggregates() throws IOException {
+		final File session = new File(directory, "1");
+		final int count = SegmentIndex.BLOCK_SIZE * 2 + 100;
+		final int[] samples = new int[count];
+		final long[] timestamps = new long[count];
+		for (int i = 0; i < count; i++) {
+			samples[i] = (i * 7919) & 0xFFFF;
+			timestamps[i] = 1000 + i * 3;
+		}
+		try (SessionWriter writer = new SessionWriter(session, 0, count)) {
+			writer.append(samples, timestamps, 0, count);
+		}
+
+		final File segment = SessionWriter.listSegments(session)[0];
+		final SegmentIndex index = SegmentIndex.open(segment, map(segment), count, true);
+		assertEquals(3, index.getBlockCount());
+		for (int block = 0; block < index.getBlockCount(); block++) {
+			final int from = block * SegmentIndex.BLOCK_SIZE;
+			final int to = Math.min(count, from + SegmentIndex.BLOCK_SIZE);
+			long sum = 0;
+			int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+			for (int i = from; i < to; i++) {
+				sum += samples[i];
+				min = Math.min(min, samples[i]);
+				max = Math.max(max, samples[i]);
+			}
+			assertEquals(to - from, index.getCount(block));
+			assertEquals(sum, index.getSum(block));
+			assertEquals(min, index.getMin(block));
+			assertEquals(max, index.getMax(block));
+			assertEquals(timestamps[from], index.getFirstTimestamp(block));
+			assertEquals(timestamps[to - 1], index.getLastTimestamp(block));
+		}
+	}
+
+	@Test
+	public void recoversUnclosedSegment() throws IOException {
+		final File session = new File(directory, "1");
+		final File segment = writeUnclosed(session, 5, 2);
+
+		assertEquals(1, SessionWriter.recover(session));
+		final ByteBuffer buffer = map(segment);
+		assertEquals(SessionWriter.HEADER_SIZE + 5 * SessionWriter.RECORD_SIZE, buffer.capacity());
+		assertEquals(5, buffer.getLong(SessionWriter.OFFSET_WRITTEN));
+		assertEquals(5, buffer.getLong(SessionWriter.OFFSET_COMMITTED));
+		assertEquals(SessionWriter.FLAG_CLOSED, buffer.getInt(SessionWriter.OFFSET_FLAGS));
+		assertEquals(5, SessionWriter.timestampAt(buffer, 4));
+		assertTrue(SegmentIndex.getFile(segment).isFile());
+	}
+
+	@Test
+	public void recoversTruncatedSegment() throws IOException {
+		final File session = new File(directory, "1");
+		final File segment = writeUnclosed(session, 5, 0);
+		// A partial record at the end, as if the file was cut.
+		try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+			file.setLength(SessionWriter.HEADER_SIZE + 3 * SessionWriter.RECORD_SIZE + 4);
+		}
+
+		SessionWriter.recover(session);
+		final ByteBuffer buffer = map(segment);
+		assertEquals(3, buffer.getLong(SessionWriter.OFFSET_WRITTEN));
+		assertEquals(SessionWriter.HEADER_SIZE + 3 * SessionWriter.RECORD_SIZE, buffer.capacity());
+	}
+
+	@Test
+	public void deletesSegmentWithoutHeader() throws IOException {
+		final File session = new File(directory, "1");
+		final File segment = writeUnclosed(session, 5, 0);
+		try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+			file.setLength(SessionWriter.HEADER_SIZE - 1);
+		}
+
+		assertEquals(0, SessionWriter.recover(session));
+		assertFalse(segment.exists());
+		assertFalse(SegmentIndex.getFile(segment).exists());
+	}
+
+	@Test
+	public void recoversSessionsExceptOpenOnes() throws IOException {
+		final File first = new File(directory, "1");
+		final File second = new File(directory, "2");
+		final File firstSegment = writeUnclosed(first, 3, 1);
+		final File secondSegment = writeUnclosed(second, 4, 1);
+
+		try (SessionWriter writer = new SessionWriter(new File(directory, "3"), 0, 10)) {
+			writer.append(new int[] { 1 }, new long[] { 1 }, 0, 1);
+			SessionWriter.recoverSessions(directory);
+
+			assertEquals(3, map(firstSegment).getLong(SessionWriter.OFFSET_WRITTEN));
+			assertEquals(4, map(secondSegment).getLong(SessionWriter.OFFSET_WRITTEN));
+			final ByteBuffer open = map(SessionWriter.listSegments(writer.getDirectory())[0]);
+			assertEquals(0, open.getInt(SessionWriter.OFFSET_FLAGS) & SessionWriter.FLAG_CLOSED);
+		}
+	}
+
+	/**
+	 * Writes a closed segment and reopens it as if the writer had been killed, with the
+	 * given number of records after the written ones that were never completed.
+	 */
+	private static File writeUnclosed(final File session, final int count, final int partial) throws IOException {
+		try (SessionWriter writer = new SessionWriter(session, 0, 100)) {
+			for (int i = 0; i < count; i++)
+				writer.append(new int[] { i }, new long[] { i + 1 }, 0, 1);
+		}
+		final File segment = SessionWriter.listSegments(session)[0];
+		SegmentIndex.delete(segment);
+		try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+			final long size = SessionWriter.HEADER_SIZE + 100L * SessionWriter.RECORD_SIZE;
+			file.setLength(size);
+			final MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.putInt(SessionWriter.OFFSET_FLAGS, 0);
+			buffer.putLong(SessionWriter.OFFSET_COMMITTED, 0);
+			// The sparse records have a timestamp of 0, lower than the last written one.
+			buffer.putLong(SessionWriter.OFFSET_WRITTEN, count + partial);
+		}
+		return segment;
+	}
+
+	private static ByteBuffer map(final File file) throws IOException {
+		try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+			return input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+		}
+	}
+
+	private static int sampleAt(final ByteBuffer buffer, final int index) {
+		return buffer.getShort(SessionWriter.HEADER_SIZE + index * SessionWriter.RECORD_SIZE
+				+ SessionWriter.OFFSET_SAMPLE) & 0xFFFF;
+	}
+
+	private static void delete(final File file) {
+		final File[] files = file.listFiles();
+		if (files != null)
+			for (final File child : files)
+				delete(child);
+		file.delete();
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.utils;
+
+import org.junit.Test;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExpiryQueueTest {
+
+	@Test
+	public void pollsInTimeOrder() {
+		final ExpiryQueue queue = new ExpiryQueue(1);
+		queue.add(1, 300);
+		queue.add(2, 100);
+		queue.add(3, 200);
+		assertEquals(3, queue.size());
+		assertEquals(100, queue.peekTime());
+		assertEquals(2, queue.peekId());
+		assertEquals(2, queue.poll());
+		assertEquals(3, queue.poll());
+		assertEquals(1, queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void pollEmpty() {
+		final ExpiryQueue queue = new ExpiryQueue();
+		queue.add(1, 100);
+		queue.poll();
+		queue.poll();
+	}
+
+	@Test
+	public void clearRemovesAll() {
+		final ExpiryQueue queue = new ExpiryQueue();
+		for (int i = 0; i < 100; i++)
+			queue.add(i, i);
+		queue.clear();
+		assertTrue(queue.isEmpty());
+		queue.add(7, 50);
+		assertEquals(7, queue.poll());
+	}
+
+	/**
+	 * Re-adds devices seen since they were queued, the way the device list evicts them.
+	 */
+	@Test
+	public void lazyExpiry() {
+		final ExpiryQueue queue = new ExpiryQueue();
+		final long[] lastSeen = { 100, 200, 300 };
+		for (int id = 0; id < lastSeen.length; id++)
+			queue.add(id, lastSeen[id]);
+		// Device 0 has been seen since it was added.
+		lastSeen[0] = 400;
+
+		final long threshold = 350;
+		int expired = 0;
+		while (!queue.isEmpty() && queue.peekTime() <= threshold) {
+			final int id = (int) queue.poll();
+			if (lastSeen[id] <= threshold)
+				expired++;
+			else
+				queue.add(id, lastSeen[id]);
+		}
+		assertEquals(2, expired);
+		assertEquals(1, queue.size());
+		assertEquals(0, queue.peekId());
+		assertEquals(400, queue.peekTime());
+	}
+
+	@Test
+	public void matchesPriorityQueue() {
+		final Random random = new Random(42);
+		final ExpiryQueue queue = new ExpiryQueue();
+		final PriorityQueue<long[]> expected = new PriorityQueue<>(16,
+				(a, b) -> Long.compare(a[0], b[0]));
+		for (int i = 0; i < 100000; i++) {
+			if (random.nextInt(3) != 0 || expected.isEmpty()) {
+				final long time = random.nextInt(1000);
+				queue.add(i, time);
+				expected.add(new long[] { time, i });
+			} else {
+				// Ids with equal times may be polled in any order, so only times are compared.
+				final long time = queue.peekTime();
+				queue.poll();
+				assertEquals(expected.poll()[0], time);
+			}
+			assertEquals(expected.size(), queue.size());
+		}
+		assertFalse(queue.isEmpty());
+	}
+}
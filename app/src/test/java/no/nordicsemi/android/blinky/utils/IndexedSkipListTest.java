@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class IndexedSkipListTest {
+	private static final Comparator<Integer> ORDER = new Comparator<Integer>() {
+		@Override
+		public int compare(final Integer o1, final Integer o2) {
+			return o1.compareTo(o2);
+		}
+	};
+
+	@Test
+	public void addReturnsSortedIndex() {
+		final IndexedSkipList<Integer> list = new IndexedSkipList<>(ORDER);
+		assertEquals(0, list.add(20));
+		assertEquals(0, list.add(10));
+		assertEquals(2, list.add(40));
+		assertEquals(2, list.add(30));
+		assertEquals(4, list.size());
+		assertEquals(10, (int) list.get(0));
+		assertEquals(40, (int) list.get(3));
+		assertEquals(2, list.indexOf(30));
+		assertEquals(-1, list.indexOf(35));
+	}
+
+	@Test
+	public void removeReturnsIndex() {
+		final IndexedSkipList<Integer> list = new IndexedSkipList<>(ORDER);
+		for (int i = 0; i < 10; i++)
+			list.add(i);
+		assertEquals(4, list.remove(4));
+		assertEquals(-1, list.remove(4));
+		assertEquals(9, list.size());
+		assertEquals(5, (int) list.get(4));
+		assertEquals(4, list.indexOf(5));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void getOutOfRange() {
+		final IndexedSkipList<Integer> list = new IndexedSkipList<>(ORDER);
+		list.add(1);
+		list.get(1);
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void iteratorEnds() {
+		final IndexedSkipList<Integer> list = new IndexedSkipList<>(ORDER);
+		list.add(1);
+		final Iterator<Integer> iterator = list.iterator();
+		iterator.next();
+		assertFalse(iterator.hasNext());
+		iterator.next();
+	}
+
+	@Test
+	public void clearRemovesAll() {
+		final IndexedSkipList<Integer> list = new IndexedSkipList<>(ORDER);
+		for (int i = 0; i < 100; i++)
+			list.add(i);
+		list.clear();
+		assertEquals(0, list.size());
+		assertEquals(-1, list.indexOf(5));
+		assertEquals(0, list.add(5));
+		assertEquals(5, (int) list.get(0));
+	}
+
+	@Test
+	public void matchesSortedList() {
+		final Random random = new Random(42);
+		final IndexedSkipList<Integer> list = new IndexedSkipList<>(ORDER);
+		final List<Integer> expected = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			final Integer value = random.nextInt(2000);
+			final int position = Collections.binarySearch(expected, value);
+			if (position >= 0) {
+				expected.remove(position);
+				assertEquals(position, list.remove(value));
+			} else {
+				expected.add(-position - 1, value);
+				assertEquals(-position - 1, list.add(value));
+			}
+			assertEquals(expected.size(), list.size());
+			if (!expected.isEmpty()) {
+				final int index = random.nextInt(expected.size());
+				assertEquals(expected.get(index), list.get(index));
+				assertEquals(index, list.indexOf(expected.get(index)));
+			}
+		}
+
+		final List<Integer> copy = new ArrayList<>();
+		list.copyTo(copy);
+		assertEquals(expected, copy);
+		final List<Integer> iterated = new ArrayList<>();
+		for (final Integer value : list)
+			iterated.add(value);
+		assertEquals(expected, iterated);
+	}
+}
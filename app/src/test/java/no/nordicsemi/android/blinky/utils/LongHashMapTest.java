@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.utils;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LongHashMapTest {
+
+	@Test
+	public void putGetRemove() {
+		final LongHashMap<String> map = new LongHashMap<>();
+		assertTrue(map.isEmpty());
+		assertNull(map.put(0xF0F1F2F3F4F5L, "a"));
+		assertNull(map.put(1, "b"));
+		assertEquals("a", map.get(0xF0F1F2F3F4F5L));
+		assertEquals("b", map.get(1));
+		assertNull(map.get(2));
+		assertEquals(2, map.size());
+
+		assertEquals("a", map.remove(0xF0F1F2F3F4F5L));
+		assertNull(map.remove(0xF0F1F2F3F4F5L));
+		assertFalse(map.containsKey(0xF0F1F2F3F4F5L));
+		assertEquals(1, map.size());
+	}
+
+	@Test
+	public void putReplacesValue() {
+		final LongHashMap<String> map = new LongHashMap<>();
+		map.put(7, "a");
+		assertEquals("a", map.put(7, "b"));
+		assertEquals("b", map.get(7));
+		assertEquals(1, map.size());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void nullValueRejected() {
+		//noinspection ConstantConditions
+		new LongHashMap<String>().put(1, null);
+	}
+
+	@Test
+	public void clearRemovesAll() {
+		final LongHashMap<String> map = new LongHashMap<>();
+		for (long key = 0; key < 100; key++)
+			map.put(key, "v");
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(5));
+		map.put(5, "w");
+		assertEquals("w", map.get(5));
+	}
+
+	/**
+	 * Inserts and removes random keys, many of them sequential addresses, through several
+	 * resizes, and compares the map with a HashMap after each operation.
+	 */
+	@Test
+	public void matchesHashMap() {
+		final Random random = new Random(42);
+		final LongHashMap<Long> map = new LongHashMap<>(4);
+		final Map<Long, Long> expected = new HashMap<>();
+		for (int i = 0; i < 20000; i++) {
+			final long key = random.nextBoolean() ? random.nextInt(2000) : random.nextLong() & 0xFFFFFFFFFFFFL;
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key), map.remove(key));
+			} else {
+				assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (final Map.Entry<Long, Long> entry : expected.entrySet())
+			assertEquals(entry.getValue(), map.get(entry.getKey()));
+		for (long key = 0; key < 2000; key++)
+			assertEquals(expected.get(key), map.get(key));
+	}
+}
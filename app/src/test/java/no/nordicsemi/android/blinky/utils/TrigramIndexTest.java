@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TrigramIndexTest {
+
+	@Test
+	public void candidatesContainMatches() {
+		final TrigramIndex<String> index = new TrigramIndex<>();
+		index.add("a", "nordic_hrm");
+		index.add("b", "nordic_lbs");
+		index.add("c", "thingy");
+
+		final List<String> candidates = new ArrayList<>();
+		assertTrue(index.candidates("dic_h", candidates));
+		// "c_h" occurs only in the first key, so its posting list is the shortest.
+		assertEquals(1, candidates.size());
+		assertEquals("a", candidates.get(0));
+
+		candidates.clear();
+		assertTrue(index.candidates("nordic", candidates));
+		assertEquals(2, candidates.size());
+		assertTrue(candidates.contains("a"));
+		assertTrue(candidates.contains("b"));
+	}
+
+	@Test
+	public void unknownTrigramHasNoCandidates() {
+		final TrigramIndex<String> index = new TrigramIndex<>();
+		index.add("a", "nordic");
+		final List<String> candidates = new ArrayList<>();
+		assertTrue(index.candidates("nordix", candidates));
+		assertTrue(candidates.isEmpty());
+	}
+
+	@Test
+	public void shortQueryIsNotLookedUp() {
+		final TrigramIndex<String> index = new TrigramIndex<>();
+		index.add("a", "nordic");
+		final List<String> candidates = new ArrayList<>();
+		assertFalse(index.candidates("no", candidates));
+		assertTrue(candidates.isEmpty());
+	}
+
+	@Test
+	public void removedElementsStayUntilCompaction() {
+		final TrigramIndex<Integer> index = new TrigramIndex<>();
+		// 10 characters, so 8 postings per key.
+		for (int i = 0; i < 200; i++)
+			index.add(i, String.format("device%04d", i));
+		for (int i = 0; i < 129; i++)
+			index.remove(String.format("device%04d", i));
+		// 1032 of 1600 postings are stale.
+		assertTrue(index.isCompactionNeeded());
+
+		final List<Integer> candidates = new ArrayList<>();
+		index.candidates("device0000", candidates);
+		assertTrue(candidates.contains(0));
+
+		index.clear();
+		assertFalse(index.isCompactionNeeded());
+		candidates.clear();
+		index.candidates("device0000", candidates);
+		assertTrue(candidates.isEmpty());
+	}
+
+	@Test
+	public void fewStalePostingsDoNotNeedCompaction() {
+		final TrigramIndex<Integer> index = new TrigramIndex<>();
+		index.add(1, "device0001");
+		index.remove("device0001");
+		assertFalse(index.isCompactionNeeded());
+	}
+}
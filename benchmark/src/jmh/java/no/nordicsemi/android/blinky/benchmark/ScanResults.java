@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.benchmark;
+
+import android.bluetooth.BluetoothDevice;
+
+import androidx.annotation.NonNull;
+
+import java.util.Random;
+
+import no.nordicsemi.android.blinky.profile.BlinkyManager;
+import no.nordicsemi.android.support.v18.scanner.ScanRecord;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+/**
+ * Creates scan results resembling a busy environment: every other device advertises
+ * the LED Button Service, and the manufacturer data contain a counter.
+ */
+public final class ScanResults {
+	/** Legacy advertising data and scan response. */
+	private static final int RECORD_SIZE = 62;
+
+	private ScanResults() {
+		// empty
+	}
+
+	/**
+	 * Creates scan results for the given number of devices.
+	 *
+	 * @param devices  number of devices.
+	 * @param rounds   number of results per device.
+	 * @param seed     random seed, so that runs are repeatable.
+	 * @return Results, grouped by round: all devices in round 0, then round 1, etc.
+	 */
+	@NonNull
+	public static ScanResult[] create(final int devices, final int rounds, final long seed) {
+		final Random random = new Random(seed);
+		final BluetoothDevice[] bluetoothDevices = new BluetoothDevice[devices];
+		for (int i = 0; i < devices; i++) {
+			bluetoothDevices[i] = new BluetoothDevice(String.format("C0:%02X:%02X:%02X:%02X:%02X",
+					i >> 24 & 0xFF, i >> 16 & 0xFF, i >> 8 & 0xFF, i & 0xFF, random.nextInt(256)));
+		}
+
+		final ScanResult[] results = new ScanResult[devices * rounds];
+		long time = 1_000_000_000L;
+		for (int round = 0; round < rounds; round++) {
+			for (int i = 0; i < devices; i++) {
+				// The counter changes every other round, so some results carry unchanged data.
+				final byte[] record = createRecord(i, round / 2, i % 2 == 0);
+				final int rssi = -40 - (i % 50) - random.nextInt(10);
+				time += 1_000_000L;
+				results[round * devices + i] = new ScanResult(bluetoothDevices[i],
+						ScanRecord.parseFromBytes(record), rssi, time);
+			}
+		}
+		return results;
+	}
+
+	private static byte[] createRecord(final int device, final int counter, final boolean lbs) {
+		final byte[] record = new byte[RECORD_SIZE];
+		int offset = 0;
+		// Flags
+		record[offset++] = 2;
+		record[offset++] = 0x01;
+		record[offset++] = 0x06;
+		if (lbs) {
+			// Complete list of 128-bit service UUIDs
+			record[offset++] = 17;
+			record[offset++] = 0x07;
+			final long lsb = BlinkyManager.LBS_UUID_SERVICE.getLeastSignificantBits();
+			final long msb = BlinkyManager.LBS_UUID_SERVICE.getMostSignificantBits();
+			for (int i = 0; i < 8; i++)
+				record[offset++] = (byte) (lsb >>> (8 * i));
+			for (int i = 0; i < 8; i++)
+				record[offset++] = (byte) (msb >>> (8 * i));
+		}
+		// Manufacturer data: Nordic company ID and a counter
+		record[offset++] = 5;
+		record[offset++] = (byte) 0xFF;
+		record[offset++] = 0x59;
+		record[offset++] = 0x00;
+		record[offset++] = (byte) counter;
+		record[offset++] = (byte) (counter >> 8);
+		// Complete local name, in the scan response
+		final byte[] name = ("Device " + device).getBytes();
+		record[offset++] = (byte) (name.length + 1);
+		record[offset++] = 0x09;
+		System.arraycopy(name, 0, record, offset, name.length);
+		return record;
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.profile.callback;
+
+import android.bluetooth.BluetoothDevice;
+
+import androidx.annotation.NonNull;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import no.nordicsemi.android.ble.data.Data;
+
+/**
+ * Measures parsing of Button and LED characteristic values, as received in notifications.
+ * The packed Button value holds as many voltage samples as fit in a notification with
+ * the 247 byte MTU.
+ */
+@State(Scope.Thread)
+public class ProfileCallbackBenchmark {
+	private final BluetoothDevice device = new BluetoothDevice("C0:00:00:00:00:01");
+	private final Data buttonData = new Data(new byte[]{0x34, 0x12});
+	private final Data packedButtonData = new Data(new byte[244]);
+	private final Data ledData = Data.opCode((byte) 0x01);
+
+	private BlinkyButtonDataCallback buttonCallback;
+	private BlinkyLedDataCallback ledCallback;
+
+	@Setup
+	public void setUp(final Blackhole blackhole) {
+		buttonCallback = new BlinkyButtonDataCallback() {
+			@Override
+			public void onButtonStateChanged(@NonNull final BluetoothDevice device, final Integer pressed) {
+				blackhole.consume(pressed);
+			}
+		};
+		ledCallback = new BlinkyLedDataCallback() {
+			@Override
+			public void onLedStateChanged(@NonNull final BluetoothDevice device, final Integer on) {
+				blackhole.consume(on);
+			}
+		};
+	}
+
+	@Benchmark
+	public void parseButtonState() {
+		buttonCallback.onDataReceived(device, buttonData);
+	}
+
+	@Benchmark
+	public void parseButtonSamples() {
+		buttonCallback.onDataReceived(device, packedButtonData);
+	}
+
+	@Benchmark
+	public void parseLedState() {
+		ledCallback.onDataReceived(device, ledData);
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Measures the voltage chart history: adding notifications of 122 samples, reported per
+ * sample, and decimating a 1080 pixel wide chart of the given time span, once per frame.
+ */
+@State(Scope.Thread)
+public class MinMaxHistoryBenchmark {
+	private static final int SAMPLES_PER_NOTIFICATION = 122;
+	private static final long SAMPLE_INTERVAL = 100_000L; // [ns], 10 000 samples per second
+	private static final int WIDTH = 1080;
+
+	/** The chart span, in seconds. */
+	@Param({"1", "10", "600", "36000"})
+	public int span;
+
+	private MinMaxHistory history;
+	private final int[] samples = new int[SAMPLES_PER_NOTIFICATION];
+	private final long[] timestamps = new long[SAMPLES_PER_NOTIFICATION];
+	private final float[] mins = new float[WIDTH];
+	private final float[] maxs = new float[WIDTH];
+	private long time;
+
+	@Setup
+	public void setUp() {
+		history = new MinMaxHistory();
+		final Random random = new Random(42);
+		for (int i = 0; i < SAMPLES_PER_NOTIFICATION; i++)
+			samples[i] = random.nextInt(1 << 16);
+		// Fill an hour of history, at a lower rate to keep the setup short.
+		for (time = 0; time < 3_600_000_000_000L; time += 10_000_000L) {
+			timestamps[0] = time;
+			history.add(samples, timestamps, 1);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES_PER_NOTIFICATION)
+	public void add() {
+		for (int i = 0; i < SAMPLES_PER_NOTIFICATION; i++) {
+			timestamps[i] = time;
+			time += SAMPLE_INTERVAL;
+		}
+		history.add(samples, timestamps, SAMPLES_PER_NOTIFICATION);
+	}
+
+	@Benchmark
+	public int decimate() {
+		return history.decimate(time, span * 1_000_000_000L, WIDTH, mins, maxs);
+	}
+}
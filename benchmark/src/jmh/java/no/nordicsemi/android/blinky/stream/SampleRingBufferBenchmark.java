@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the voltage sample pipeline: writing notifications of 122 samples, the most that
+ * fit with the 247 byte MTU, and reading them by consumers. Throughput is reported per sample.
+ */
+@State(Scope.Group)
+public class SampleRingBufferBenchmark {
+	private static final int SAMPLES_PER_NOTIFICATION = 122;
+
+	private SampleRingBuffer buffer;
+
+	@State(Scope.Thread)
+	public static class Consumer {
+		private final int[] samples = new int[4096];
+		private final long[] timestamps = new long[4096];
+		private SampleRingBuffer.Cursor cursor;
+
+		@Setup
+		public void setUp(final SampleRingBufferBenchmark benchmark) {
+			cursor = benchmark.buffer.newCursor();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Producer {
+		private final int[] samples = new int[SAMPLES_PER_NOTIFICATION];
+		private long timestamp;
+	}
+
+	@Setup
+	public void setUp() {
+		buffer = new SampleRingBuffer(1 << 16, SampleRingBuffer.OverflowPolicy.DROP_OLDEST);
+	}
+
+	/**
+	 * Writes a single notification without consumers.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES_PER_NOTIFICATION)
+	public void write(final Producer producer) throws InterruptedException {
+		buffer.write(producer.samples, SAMPLES_PER_NOTIFICATION, producer.timestamp++);
+	}
+
+	/**
+	 * Writes notifications while two consumers read, each at its own pace.
+	 */
+	@Benchmark
+	@Group("stream")
+	@GroupThreads(1)
+	@OperationsPerInvocation(SAMPLES_PER_NOTIFICATION)
+	public void produce(final Producer producer) throws InterruptedException {
+		buffer.write(producer.samples, SAMPLES_PER_NOTIFICATION, producer.timestamp++);
+	}
+
+	@Benchmark
+	@Group("stream")
+	@GroupThreads(2)
+	public int consume(final Consumer consumer) {
+		return consumer.cursor.read(consumer.samples, consumer.timestamps, 0, consumer.samples.length);
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Measures exporting a recorded session of 1 million samples to a channel that discards the
+ * data, so that only reading and formatting are measured. Throughput is reported per sample.
+ */
+@State(Scope.Thread)
+public class SessionExporterBenchmark {
+	private static final int SAMPLES = 1_000_000;
+	private static final int SAMPLES_PER_NOTIFICATION = 122;
+	private static final long NOTIFICATION_INTERVAL = 22_000_000L; // [ns]
+
+	@Param({"CSV", "BINARY"})
+	public SessionExporter.Format format;
+
+	private File directory;
+	private SessionReader reader;
+	private SessionExporter exporter;
+
+	private final WritableByteChannel channel = new WritableByteChannel() {
+		@Override
+		public int write(final ByteBuffer src) {
+			final int remaining = src.remaining();
+			src.position(src.limit());
+			return remaining;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	};
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		final Random random = new Random(1);
+		final int[] samples = new int[4096];
+		final long[] timestamps = new long[4096];
+		directory = Files.createTempDirectory("session").toFile();
+		try (SessionWriter writer = new SessionWriter(directory, 0xF0F1F2F3F4F5L,
+				SessionWriter.DEFAULT_SEGMENT_CAPACITY)) {
+			long timestamp = 1;
+			for (int written = 0; written < SAMPLES; written += samples.length) {
+				final int count = Math.min(samples.length, SAMPLES - written);
+				for (int i = 0; i < count; i++) {
+					if ((written + i) % SAMPLES_PER_NOTIFICATION == 0)
+						timestamp += NOTIFICATION_INTERVAL;
+					samples[i] = random.nextInt(4096);
+					timestamps[i] = timestamp;
+				}
+				writer.append(samples, timestamps, 0, count);
+			}
+		}
+		reader = new SessionReader(directory);
+		exporter = new SessionExporter(format);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		final File[] files = directory.listFiles();
+		if (files != null)
+			for (final File file : files)
+				Files.delete(file.toPath());
+		Files.delete(directory.toPath());
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public boolean export() throws IOException {
+		return exporter.export(reader, channel, null);
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Measures recording voltage samples to memory-mapped segments, in blocks of 4096 samples as
+ * read by the recorder, with and without a group commit after each block. Throughput is
+ * reported per sample.
+ */
+@State(Scope.Thread)
+public class SessionWriterBenchmark {
+	private static final int BLOCK = 4096;
+
+	private final int[] samples = new int[BLOCK];
+	private final long[] timestamps = new long[BLOCK];
+	private File directory;
+	private SessionWriter writer;
+	private long timestamp;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws IOException {
+		for (int i = 0; i < BLOCK; i++)
+			samples[i] = i & 0xFFF;
+		directory = Files.createTempDirectory("session").toFile();
+		// Small segments, so that segments are also opened and closed.
+		writer = new SessionWriter(directory, 0xF0F1F2F3F4F5L, 1 << 20);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws IOException {
+		writer.close();
+		for (final File segment : SessionWriter.listSegments(directory))
+			Files.delete(segment.toPath());
+		Files.delete(directory.toPath());
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BLOCK)
+	public void append() throws IOException {
+		for (int i = 0; i < BLOCK; i++)
+			timestamps[i] = ++timestamp;
+		writer.append(samples, timestamps, 0, BLOCK);
+	}
+
+	/**
+	 * Forces each block to storage, as if the commit interval was shorter than the block.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BLOCK)
+	public void appendAndCommit() throws IOException {
+		for (int i = 0; i < BLOCK; i++)
+			timestamps[i] = ++timestamp;
+		writer.append(samples, timestamps, 0, BLOCK);
+		writer.commit();
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Measures the device index: looking up the device of each scan result by its packed address,
+ * and indexing new devices. The cost per result should not depend on the number of devices.
+ */
+@State(Scope.Thread)
+public class LongHashMapBenchmark {
+	private static final int LOOKUPS = 1000;
+
+	@Param({"10", "100", "1000", "10000"})
+	public int devices;
+
+	private long[] ids;
+	private LongHashMap<Object> map;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		final Random random = new Random(42);
+		ids = new long[devices];
+		map = new LongHashMap<>();
+		for (int i = 0; i < devices; i++) {
+			// Addresses of a single vendor share the upper 3 bytes.
+			ids[i] = 0xC0FFEE000000L | (random.nextInt() & 0xFFFFFF);
+			map.put(ids[i], ids);
+		}
+	}
+
+	/**
+	 * Looks up known devices, as for scan results of devices already discovered.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public int lookUpKnownDevices() {
+		int found = 0;
+		for (int i = 0; i < LOOKUPS; i++) {
+			if (map.get(ids[next]) != null)
+				found++;
+			if (++next == devices)
+				next = 0;
+		}
+		return found;
+	}
+
+	/**
+	 * Indexes all devices in an empty map, as when a scan starts. Reported per device.
+	 */
+	@Benchmark
+	public LongHashMap<Object> indexNewDevices() {
+		final LongHashMap<Object> map = new LongHashMap<>();
+		for (final long id : ids)
+			map.put(id, ids);
+		return map;
+	}
+}
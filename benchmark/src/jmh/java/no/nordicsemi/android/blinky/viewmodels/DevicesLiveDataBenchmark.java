@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import no.nordicsemi.android.blinky.benchmark.ScanResults;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+/**
+ * Measures the device registry: applying scan results to known and new devices, and
+ * re-filtering the list when the filter changes or a search query is typed. Throughput is
+ * reported per scan result, per filter change or per keystroke.
+ */
+@State(Scope.Thread)
+public class DevicesLiveDataBenchmark {
+	private static final int ROUNDS = 8;
+	/** A query typed one character at a time, and then cleared. */
+	private static final String[] KEYSTROKES = {
+			"d", "de", "dev", "devi", "devic", "device", "device ", "device 1", "device 12",
+			"device 123", ""
+	};
+
+	@Param({"10", "100", "1000", "10000"})
+	public int devices;
+
+	private ScanResult[] results;
+	private DevicesLiveData devicesLiveData;
+	private int round;
+	private boolean nearbyOnly;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		results = ScanResults.create(devices, ROUNDS, 42);
+		devicesLiveData = new DevicesLiveData(true, false);
+		for (int i = 0; i < devices; i++)
+			devicesLiveData.deviceDiscovered(results[i]);
+		devicesLiveData.dispatchChanges();
+	}
+
+	/**
+	 * Applies one round of results to known devices and dispatches the changes,
+	 * as a batch scan callback does.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(1000)
+	public boolean updateKnownDevices() {
+		round = (round + 1) % ROUNDS;
+		final int offset = round * devices;
+		// The number of results per invocation is constant, so results are comparable
+		// between device counts.
+		for (int i = 0; i < 1000; i++)
+			devicesLiveData.deviceDiscovered(results[offset + i % devices]);
+		return devicesLiveData.dispatchChanges();
+	}
+
+	/**
+	 * Discovers all devices in an empty registry.
+	 */
+	@Benchmark
+	public DevicesUpdate discoverNewDevices() {
+		final DevicesLiveData liveData = new DevicesLiveData(true, false);
+		for (int i = 0; i < devices; i++)
+			liveData.deviceDiscovered(results[i]);
+		liveData.dispatchChanges();
+		return liveData.getValue();
+	}
+
+	/**
+	 * Toggles the nearby filter, which re-evaluates all devices.
+	 */
+	@Benchmark
+	public boolean toggleNearbyFilter() {
+		nearbyOnly = !nearbyOnly;
+		return devicesLiveData.filterByDistance(nearbyOnly);
+	}
+
+	/**
+	 * Types a search query and clears it. The first keystrokes match most devices.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(11)
+	public boolean typeSearchQuery() {
+		boolean hasRecords = false;
+		for (final String query : KEYSTROKES)
+			hasRecords |= devicesLiveData.setSearchQuery(query);
+		return hasRecords;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import androidx.annotation.NonNull;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import no.nordicsemi.android.blinky.benchmark.ScanResults;
+import no.nordicsemi.android.blinky.scanner.ScanRecorder;
+import no.nordicsemi.android.blinky.scanner.ScanReplayer;
+import no.nordicsemi.android.blinky.utils.Clock;
+import no.nordicsemi.android.support.v18.scanner.ScanCallback;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+/**
+ * Replays a recorded scan session into the device registry as fast as possible.
+ * One operation is a replay of the whole session.
+ * <p>
+ * A session recorded on a phone may be given with <code>-Dblinky.capture=path</code>.
+ * Otherwise a session with the given number of devices is generated.
+ */
+@State(Scope.Thread)
+public class ReplayBenchmark {
+	private static final int ROUNDS = 8;
+
+	@Param({"1000", "10000"})
+	public int devices;
+
+	private File capture;
+	private boolean generated;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		final String path = System.getProperty("blinky.capture");
+		if (path != null) {
+			capture = new File(path);
+			return;
+		}
+
+		capture = File.createTempFile("scan", ".blks");
+		generated = true;
+		try (ScanRecorder recorder = new ScanRecorder(capture)) {
+			for (final ScanResult result : ScanResults.create(devices, ROUNDS, 42))
+				recorder.write(result);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (generated)
+			//noinspection ResultOfMethodCallIgnored
+			capture.delete();
+	}
+
+	@Benchmark
+	public DevicesUpdate replay() throws IOException {
+		final DevicesLiveData devicesLiveData = new DevicesLiveData(false, false);
+		final ScanReplayer replayer = new ScanReplayer(capture, ScanReplayer.SPEED_UNLIMITED,
+				Clock.SYSTEM, new ScanCallback() {
+			@Override
+			public void onBatchScanResults(@NonNull final List<ScanResult> results) {
+				for (int i = 0; i < results.size(); i++)
+					devicesLiveData.deviceDiscovered(results.get(i));
+				devicesLiveData.dispatchChanges();
+			}
+		});
+		replayer.replay();
+		return devicesLiveData.getValue();
+	}
+}
@@ -20,40 +20,29 @@
  * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
-package no.nordicsemi.android.blinky.adapter;
+package android.os;
 
-import androidx.recyclerview.widget.DiffUtil;
+import java.util.UUID;
 
-import java.util.List;
+/** Stand-in for the Android ParcelUuid. */
+public final class ParcelUuid {
+	private final UUID uuid;
 
-public class DeviceDiffCallback extends DiffUtil.Callback {
-	private final List<DiscoveredBluetoothDevice> oldList;
-	private final List<DiscoveredBluetoothDevice> newList;
-
-	DeviceDiffCallback(final List<DiscoveredBluetoothDevice> oldList,
-					   final List<DiscoveredBluetoothDevice> newList) {
-		this.oldList = oldList;
-		this.newList = newList;
+	public ParcelUuid(final UUID uuid) {
+		this.uuid = uuid;
 	}
 
-	@Override
-	public int getOldListSize() {
-		return oldList != null ? oldList.size() : 0;
-	}
-
-	@Override
-	public int getNewListSize() {
-		return newList != null ? newList.size() : 0;
+	public UUID getUuid() {
+		return uuid;
 	}
 
 	@Override
-	public boolean areItemsTheSame(final int oldItemPosition, final int newItemPosition) {
-		return oldList.get(oldItemPosition) == newList.get(newItemPosition);
+	public boolean equals(final Object o) {
+		return o instanceof ParcelUuid && uuid.equals(((ParcelUuid) o).uuid);
 	}
 
 	@Override
-	public boolean areContentsTheSame(final int oldItemPosition, final int newItemPosition) {
-		final DiscoveredBluetoothDevice device = oldList.get(oldItemPosition);
-		return device.hasRssiLevelChanged();
+	public int hashCode() {
+		return uuid.hashCode();
 	}
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.ble.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/** Stand-in for the BLE library Data, with the integer formats used by the app. */
+public class Data {
+	public static final int FORMAT_UINT8 = 0x11;
+	public static final int FORMAT_UINT16 = 0x12;
+
+	@Nullable
+	private final byte[] value;
+
+	public Data(@Nullable final byte[] value) {
+		this.value = value;
+	}
+
+	@NonNull
+	public static Data opCode(final byte opCode) {
+		return new Data(new byte[]{opCode});
+	}
+
+	@Nullable
+	public byte[] getValue() {
+		return value;
+	}
+
+	public int size() {
+		return value != null ? value.length : 0;
+	}
+
+	@Nullable
+	public Integer getIntValue(final int formatType, final int offset) {
+		if (value == null || offset + (formatType & 0xF) > value.length)
+			return null;
+		switch (formatType) {
+			case FORMAT_UINT8:
+				return value[offset] & 0xFF;
+			case FORMAT_UINT16:
+				return (value[offset] & 0xFF) | ((value[offset + 1] & 0xFF) << 8);
+		}
+		return null;
+	}
+}
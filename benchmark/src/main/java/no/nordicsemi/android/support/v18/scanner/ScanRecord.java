@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.support.v18.scanner;
+
+import android.os.ParcelUuid;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Stand-in for the scanner library ScanRecord. Only the fields used by the app are parsed.
+ * Unlike in the library, {@link #parseFromBytes(byte[])} is public, so that benchmarks can
+ * create records.
+ */
+public final class ScanRecord {
+	private static final UUID BASE_UUID = UUID.fromString("00000000-0000-1000-8000-00805F9B34FB");
+
+	private final byte[] bytes;
+	@Nullable
+	private final List<ParcelUuid> serviceUuids;
+	@Nullable
+	private final String deviceName;
+
+	private ScanRecord(final byte[] bytes, @Nullable final List<ParcelUuid> serviceUuids,
+					   @Nullable final String deviceName) {
+		this.bytes = bytes;
+		this.serviceUuids = serviceUuids;
+		this.deviceName = deviceName;
+	}
+
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	@Nullable
+	public List<ParcelUuid> getServiceUuids() {
+		return serviceUuids;
+	}
+
+	@Nullable
+	public String getDeviceName() {
+		return deviceName;
+	}
+
+	@Nullable
+	public static ScanRecord parseFromBytes(@Nullable final byte[] bytes) {
+		if (bytes == null)
+			return null;
+		List<ParcelUuid> uuids = null;
+		String name = null;
+		int offset = 0;
+		while (offset < bytes.length) {
+			final int length = bytes[offset++] & 0xFF;
+			if (length == 0 || offset + length > bytes.length)
+				break;
+			final int type = bytes[offset] & 0xFF;
+			final int start = offset + 1;
+			final int dataLength = length - 1;
+			switch (type) {
+				case 0x02:
+				case 0x03:
+					for (int i = 0; i + 1 < dataLength; i += 2) {
+						final long uuid16 = (bytes[start + i] & 0xFF) | ((bytes[start + i + 1] & 0xFF) << 8);
+						if (uuids == null)
+							uuids = new ArrayList<>();
+						uuids.add(new ParcelUuid(new UUID(BASE_UUID.getMostSignificantBits() | (uuid16 << 32),
+								BASE_UUID.getLeastSignificantBits())));
+					}
+					break;
+				case 0x06:
+				case 0x07:
+					for (int i = 0; i + 15 < dataLength; i += 16) {
+						long lsb = 0, msb = 0;
+						for (int j = 7; j >= 0; j--)
+							lsb = (lsb << 8) | (bytes[start + i + j] & 0xFF);
+						for (int j = 15; j >= 8; j--)
+							msb = (msb << 8) | (bytes[start + i + j] & 0xFF);
+						if (uuids == null)
+							uuids = new ArrayList<>();
+						uuids.add(new ParcelUuid(new UUID(msb, lsb)));
+					}
+					break;
+				case 0x08:
+				case 0x09:
+					name = new String(bytes, start, dataLength);
+					break;
+			}
+			offset += length;
+		}
+		return new ScanRecord(bytes, uuids, name);
+	}
+}
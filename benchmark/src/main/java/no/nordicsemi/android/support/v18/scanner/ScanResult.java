@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.support.v18.scanner;
+
+import android.bluetooth.BluetoothDevice;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/** Stand-in for the scanner library ScanResult. */
+public final class ScanResult {
+	public static final int PHY_UNUSED = 0;
+	public static final int PHY_LE_1M = 1;
+	public static final int SID_NOT_PRESENT = 0xFF;
+	public static final int TX_POWER_NOT_PRESENT = 0x7F;
+	public static final int PERIODIC_INTERVAL_NOT_PRESENT = 0;
+	private static final int ET_CONNECTABLE_MASK = 0x01;
+	private static final int ET_LEGACY_MASK = 0x10;
+
+	@NonNull
+	private final BluetoothDevice device;
+	@Nullable
+	private final ScanRecord scanRecord;
+	private final int eventType;
+	private final int primaryPhy;
+	private final int secondaryPhy;
+	private final int advertisingSid;
+	private final int txPower;
+	private final int rssi;
+	private final int periodicAdvertisingInterval;
+	private final long timestampNanos;
+
+	public ScanResult(@NonNull final BluetoothDevice device, @Nullable final ScanRecord scanRecord,
+					  final int rssi, final long timestampNanos) {
+		this(device, ET_LEGACY_MASK | ET_CONNECTABLE_MASK, PHY_LE_1M, PHY_UNUSED, SID_NOT_PRESENT,
+				TX_POWER_NOT_PRESENT, rssi, PERIODIC_INTERVAL_NOT_PRESENT, scanRecord, timestampNanos);
+	}
+
+	public ScanResult(@NonNull final BluetoothDevice device, final int eventType,
+					  final int primaryPhy, final int secondaryPhy,
+					  final int advertisingSid, final int txPower, final int rssi,
+					  final int periodicAdvertisingInterval,
+					  @Nullable final ScanRecord scanRecord, final long timestampNanos) {
+		this.device = device;
+		this.eventType = eventType;
+		this.primaryPhy = primaryPhy;
+		this.secondaryPhy = secondaryPhy;
+		this.advertisingSid = advertisingSid;
+		this.txPower = txPower;
+		this.rssi = rssi;
+		this.periodicAdvertisingInterval = periodicAdvertisingInterval;
+		this.scanRecord = scanRecord;
+		this.timestampNanos = timestampNanos;
+	}
+
+	@NonNull
+	public BluetoothDevice getDevice() {
+		return device;
+	}
+
+	@Nullable
+	public ScanRecord getScanRecord() {
+		return scanRecord;
+	}
+
+	public int getRssi() {
+		return rssi;
+	}
+
+	public long getTimestampNanos() {
+		return timestampNanos;
+	}
+
+	public int getEventType() {
+		return eventType;
+	}
+
+	public int getPrimaryPhy() {
+		return primaryPhy;
+	}
+
+	public int getSecondaryPhy() {
+		return secondaryPhy;
+	}
+
+	public int getAdvertisingSid() {
+		return advertisingSid;
+	}
+
+	public int getTxPower() {
+		return txPower;
+	}
+
+	public int getPeriodicAdvertisingInterval() {
+		return periodicAdvertisingInterval;
+	}
+
+	public boolean isConnectable() {
+		return (eventType & ET_CONNECTABLE_MASK) != 0;
+	}
+}
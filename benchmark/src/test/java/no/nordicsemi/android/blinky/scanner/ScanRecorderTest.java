@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package no.nordicsemi.android.blinky.scanner;
+
+import android.bluetooth.BluetoothDevice;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import no.nordicsemi.android.support.v18.scanner.ScanCallback;
+import no.nordicsemi.android.support.v18.scanner.ScanRecord;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Records scan results with {@link ScanRecorder} and replays them with {@link ScanReplayer}.
+ */
+public class ScanRecorderTest {
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("scan", ".blks");
+	}
+
+	@After
+	public void tearDown() {
+		//noinspection ResultOfMethodCallIgnored
+		file.delete();
+	}
+
+	@Test
+	public void replaysRecordedResults() throws IOException {
+		final List<ScanResult> recorded = new ArrayList<>();
+		recorded.add(new ScanResult(new BluetoothDevice("C0:01:02:03:04:05"), 0x1B, 1, 0, 3, -8,
+				-67, 0x0190, ScanRecord.parseFromBytes(new byte[] { 2, 0x01, 0x06, 3, 0x09, 'A', 'B' }), 1_000_000L));
+		recorded.add(new ScanResult(new BluetoothDevice("FF:EE:DD:CC:BB:AA"), null, -100, 2_000_000L));
+		recorded.add(new ScanResult(new BluetoothDevice("C0:01:02:03:04:05"),
+				ScanRecord.parseFromBytes(new byte[] { 4, (byte) 0xFF, 0x59, 0x00, 0x7F }), -20, 3_000_000L));
+		try (ScanRecorder recorder = new ScanRecorder(file)) {
+			for (final ScanResult result : recorded)
+				recorder.write(result);
+			assertEquals(3, recorder.getCount());
+		}
+
+		final RecordingCallback callback = new RecordingCallback();
+		final ScanReplayer replayer = new ScanReplayer(file, ScanReplayer.SPEED_UNLIMITED, () -> 5, callback);
+		assertEquals(3, replayer.replay());
+		assertEquals(1, callback.batches);
+		assertEquals(recorded.size(), callback.results.size());
+		for (int i = 0; i < recorded.size(); i++) {
+			final ScanResult expected = recorded.get(i);
+			final ScanResult result = callback.results.get(i);
+			assertEquals(expected.getDevice().getAddress(), result.getDevice().getAddress());
+			assertEquals(expected.getRssi(), result.getRssi());
+			assertEquals(expected.getEventType(), result.getEventType());
+			assertEquals(expected.getPrimaryPhy(), result.getPrimaryPhy());
+			assertEquals(expected.getSecondaryPhy(), result.getSecondaryPhy());
+			assertEquals(expected.getAdvertisingSid(), result.getAdvertisingSid());
+			assertEquals(expected.getTxPower(), result.getTxPower());
+			assertEquals(expected.getPeriodicAdvertisingInterval(), result.getPeriodicAdvertisingInterval());
+			// Timestamps are shifted to the replay clock.
+			assertEquals(5_000_000L, result.getTimestampNanos());
+			if (expected.getScanRecord() == null)
+				assertNull(result.getScanRecord());
+			else
+				assertArrayEquals(expected.getScanRecord().getBytes(), result.getScanRecord().getBytes());
+		}
+		// Devices are reused.
+		assertSame(callback.results.get(0).getDevice(), callback.results.get(2).getDevice());
+	}
+
+	@Test
+	public void replaysInBatches() throws IOException {
+		final int count = ScanReplayer.BATCH_SIZE + 10;
+		try (ScanRecorder recorder = new ScanRecorder(file)) {
+			for (int i = 0; i < count; i++)
+				recorder.write(new ScanResult(new BluetoothDevice(String.format(Locale.US,
+						"C0:00:00:00:%02X:%02X", i >> 8, i & 0xFF)), null, -i % 100, i));
+		}
+
+		final RecordingCallback callback = new RecordingCallback();
+		assertEquals(count, new ScanReplayer(file, ScanReplayer.SPEED_UNLIMITED, () -> 0, callback).replay());
+		assertEquals(2, callback.batches);
+		assertEquals(count, callback.results.size());
+		assertEquals("C0:00:00:00:03:F1", callback.results.get(1009).getDevice().getAddress());
+		assertEquals(-9, callback.results.get(1009).getRssi());
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsOtherFiles() throws IOException {
+		new ScanRecorder(file).close();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.writeInt(0);
+		}
+		new ScanReplayer(file, ScanReplayer.SPEED_UNLIMITED, () -> 0, new RecordingCallback()).replay();
+	}
+
+	private static final class RecordingCallback extends ScanCallback {
+		private final List<ScanResult> results = new ArrayList<>();
+		private int batches;
+
+		@Override
+		public void onScanResult(final int callbackType, @NonNull final ScanResult result) {
+			results.add(result);
+		}
+
+		@Override
+		public void onBatchScanResults(@NonNull final List<ScanResult> results) {
+			batches++;
+			this.results.addAll(results);
+		}
+	}
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.bluetooth.BluetoothDevice;
+
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import no.nordicsemi.android.blinky.adapter.DiscoveredBluetoothDevice;
+import no.nordicsemi.android.support.v18.scanner.ScanRecord;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Applies each dispatched {@link DevicesUpdate} to a plain list, as the adapter does, and
+ * compares the list with a snapshot of the filtered list.
+ */
+public class DevicesLiveDataTest {
+	private DevicesLiveData devicesLiveData;
+	/** The list, as the adapter shows it. */
+	private List<DevicesUpdate.Item> list;
+	private DevicesUpdate lastUpdate;
+	private final RecordingCallback callback = new RecordingCallback();
+
+	@Before
+	public void setUp() {
+		devicesLiveData = new DevicesLiveData(false, false);
+		lastUpdate = devicesLiveData.snapshot();
+		list = new ArrayList<>(lastUpdate.getItems());
+		callback.size = list.size();
+	}
+
+	@Test
+	public void insertsDevicesAsRange() {
+		for (int i = 0; i < 3; i++)
+			devicesLiveData.deviceDiscovered(result(i, -60, 1));
+		devicesLiveData.dispatchChanges();
+
+		final DevicesUpdate update = devicesLiveData.getValue();
+		assertEquals(3, update.getOperationCount());
+		assertEquals(3, update.size());
+		applyAndVerify();
+		assertEquals(1, callback.inserts);
+	}
+
+	@Test
+	public void insertAndRemoveInOneGeneration() {
+		devicesLiveData.setEvictionPolicy(100, Integer.MAX_VALUE);
+		devicesLiveData.deviceDiscovered(result(0, -60, 10));
+		devicesLiveData.deviceDiscovered(result(1, -60, 10));
+		devicesLiveData.dispatchChanges();
+		applyAndVerify();
+
+		// Device 2 is inserted and evicted before the update is dispatched.
+		devicesLiveData.deviceDiscovered(result(2, -60, 20));
+		devicesLiveData.deviceDiscovered(result(3, -60, 500));
+		devicesLiveData.deviceDiscovered(result(1, -60, 500));
+		assertTrue(devicesLiveData.evictExpired(450));
+		devicesLiveData.dispatchChanges();
+		applyAndVerify();
+		assertEquals(2, list.size());
+		assertEquals(1, list.get(0).getDevice().getId() & 0xFF);
+		assertEquals(3, list.get(1).getDevice().getId() & 0xFF);
+	}
+
+	@Test
+	public void adjacentExpiriesMergedIntoOneRemove() {
+		devicesLiveData.setEvictionPolicy(100, Integer.MAX_VALUE);
+		for (int i = 0; i < 5; i++)
+			devicesLiveData.deviceDiscovered(result(i, -60, 10 + i));
+		devicesLiveData.dispatchChanges();
+		applyAndVerify();
+
+		// The first and the last device are seen again, the three in the middle expire.
+		devicesLiveData.deviceDiscovered(result(0, -60, 300));
+		devicesLiveData.deviceDiscovered(result(4, -60, 300));
+		devicesLiveData.dispatchChanges();
+		applyAndVerify();
+		assertTrue(devicesLiveData.evictExpired(200));
+		devicesLiveData.dispatchChanges();
+
+		final DevicesUpdate update = devicesLiveData.getValue();
+		assertEquals(1, update.getOperationCount());
+		assertEquals(DevicesUpdate.REMOVE, update.getType(0));
+		assertEquals(1, update.getPosition(0));
+		assertEquals(3, update.getCount(0));
+		applyAndVerify();
+		assertEquals(2, list.size());
+	}
+
+	@Test
+	public void movesDevicesSortedByRssi() {
+		devicesLiveData.setSortOrder(SortOrder.RSSI);
+		for (int i = 0; i < 4; i++)
+			devicesLiveData.deviceDiscovered(result(i, -50 - 10 * i, 1));
+		devicesLiveData.dispatchChanges();
+		applyAndVerify();
+		assertEquals(0, list.get(0).getDevice().getId() & 0xFF);
+
+		// The weakest device comes closer until it's the strongest.
+		for (int t = 2; t < 40; t++)
+			devicesLiveData.deviceDiscovered(result(3, -30, t));
+		devicesLiveData.dispatchChanges();
+
+		final DevicesUpdate update = devicesLiveData.getValue();
+		boolean moved = false;
+		for (int i = 0; i < update.getOperationCount(); i++)
+			moved |= update.getType(i) == DevicesUpdate.MOVE;
+		assertTrue(moved);
+		applyAndVerify();
+		assertEquals(3, list.get(0).getDevice().getId() & 0xFF);
+	}
+
+	@Test
+	public void rssiLevelChangeRebindsOnlySignal() {
+		devicesLiveData.deviceDiscovered(result(0, -100, 1, 0));
+		devicesLiveData.deviceDiscovered(result(1, -100, 1, 0));
+		devicesLiveData.dispatchChanges();
+		applyAndVerify();
+
+		// A change within the same level is not dispatched.
+		final DevicesUpdate unchanged = devicesLiveData.getValue();
+		devicesLiveData.deviceDiscovered(result(1, -101, 2, 0));
+		devicesLiveData.dispatchChanges();
+		assertEquals(unchanged, devicesLiveData.getValue());
+
+		for (int t = 2; t < 40; t++)
+			devicesLiveData.deviceDiscovered(result(1, -40, t, 0));
+		devicesLiveData.dispatchChanges();
+		DevicesUpdate update = devicesLiveData.getValue();
+		assertEquals(1, update.getOperationCount());
+		assertEquals(DevicesUpdate.CHANGE_RSSI, update.getType(0));
+		assertEquals(1, update.getPosition(0));
+		callback.payloads.clear();
+		applyAndVerify();
+		assertEquals(1, callback.payloads.size());
+		assertSame(DevicesUpdate.PAYLOAD_RSSI, callback.payloads.get(0));
+
+		// A renamed device is rebound completely.
+		devicesLiveData.deviceDiscovered(result(0, -100, 40, 1));
+		devicesLiveData.dispatchChanges();
+		update = devicesLiveData.getValue();
+		assertEquals(1, update.getOperationCount());
+		assertEquals(DevicesUpdate.CHANGE, update.getType(0));
+		assertEquals(0, update.getPosition(0));
+		callback.payloads.clear();
+		applyAndVerify();
+		assertNull(callback.payloads.get(0));
+		assertEquals("Device 0 1", list.get(0).getName());
+	}
+
+	@Test
+	public void resetSnapshot() {
+		for (int i = 0; i < 3; i++)
+			devicesLiveData.deviceDiscovered(result(i, -50 - 10 * i, 1));
+		devicesLiveData.dispatchChanges();
+		applyAndVerify();
+
+		devicesLiveData.setSortOrder(SortOrder.RSSI);
+		final DevicesUpdate update = devicesLiveData.getValue();
+		assertTrue(update.isReset());
+		assertEquals(3, update.getItems().size());
+		applyAndVerify();
+
+		final DevicesUpdate snapshot = devicesLiveData.snapshot();
+		assertTrue(snapshot.isReset());
+		assertEquals(snapshot, devicesLiveData.getValue());
+		applyAndVerify();
+	}
+
+	@Test
+	public void toScanResultParsesRecord() {
+		devicesLiveData.deviceDiscovered(result(5, -42, 3, 1));
+		devicesLiveData.dispatchChanges();
+		applyAndVerify();
+
+		final ScanResult result = list.get(0).getDevice().toScanResult();
+		assertEquals("C0:00:00:00:00:05", result.getDevice().getAddress());
+		assertEquals(-42, result.getRssi());
+		assertEquals(3_000_000L, result.getTimestampNanos());
+		assertEquals("Device 5 1", result.getScanRecord().getDeviceName());
+	}
+
+	@Test
+	public void randomChanges() {
+		final Random random = new Random(7);
+		final SortOrder[] orders = SortOrder.values();
+		long time = 1;
+		for (int step = 0; step < 2000; step++) {
+			final int action = random.nextInt(100);
+			if (action < 80) {
+				final int count = 1 + random.nextInt(8);
+				for (int i = 0; i < count; i++) {
+					time += random.nextInt(20);
+					devicesLiveData.deviceDiscovered(result(random.nextInt(40),
+							-30 - random.nextInt(70), time, random.nextInt(4)));
+				}
+			} else if (action < 88) {
+				devicesLiveData.setEvictionPolicy(200 + random.nextInt(800), 10 + random.nextInt(40));
+				devicesLiveData.evictExpired(time);
+			} else if (action < 93) {
+				devicesLiveData.filterByDistance(random.nextBoolean());
+			} else if (action < 96) {
+				devicesLiveData.setSearchQuery(random.nextBoolean() ? null : "device " + random.nextInt(4));
+			} else if (action < 99) {
+				devicesLiveData.setSortOrder(orders[random.nextInt(orders.length)]);
+			} else {
+				devicesLiveData.clear();
+			}
+			devicesLiveData.dispatchChanges();
+			// Observers may miss updates, which are then applied together.
+			if (random.nextInt(3) == 0)
+				applyAndVerify();
+		}
+		applyAndVerify();
+	}
+
+	/**
+	 * Applies all updates since the last applied one, and compares the list with a snapshot.
+	 */
+	private void applyAndVerify() {
+		final DevicesUpdate update = devicesLiveData.getValue();
+		while (lastUpdate != update) {
+			lastUpdate = lastUpdate.getNext();
+			lastUpdate.applyTo(list, callback);
+			assertEquals(lastUpdate.size(), list.size());
+		}
+		assertEquals(list.size(), callback.size);
+
+		final List<DevicesUpdate.Item> expected = devicesLiveData.snapshot().getItems();
+		assertEquals(expected.size(), list.size());
+		for (int i = 0; i < expected.size(); i++) {
+			final DevicesUpdate.Item item = list.get(i);
+			final DevicesUpdate.Item expectedItem = expected.get(i);
+			assertEquals(expectedItem.getDevice(), item.getDevice());
+			assertEquals(expectedItem.getName(), item.getName());
+			assertEquals(DiscoveredBluetoothDevice.getRssiLevel(expectedItem.getRssi()),
+					DiscoveredBluetoothDevice.getRssiLevel(item.getRssi()));
+		}
+		// The snapshot is linked after the last update.
+		lastUpdate = devicesLiveData.getValue();
+	}
+
+	private static ScanResult result(final int device, final int rssi, final long timeMillis) {
+		return result(device, rssi, timeMillis, -1);
+	}
+
+	/**
+	 * Creates a scan result of the given device, with the name "Device n" followed by
+	 * the version, or without a name if the version is negative.
+	 */
+	private static ScanResult result(final int device, final int rssi, final long timeMillis,
+									 final int nameVersion) {
+		final byte[] record = new byte[31];
+		if (nameVersion >= 0) {
+			final byte[] name = String.format(Locale.US, "Device %d %d", device, nameVersion)
+					.getBytes(Charset.forName("UTF-8"));
+			record[0] = (byte) (name.length + 1);
+			record[1] = 0x09; // Complete Local Name
+			System.arraycopy(name, 0, record, 2, name.length);
+		}
+		return new ScanResult(new BluetoothDevice(String.format(Locale.US, "C0:00:00:00:00:%02X", device)),
+				ScanRecord.parseFromBytes(record), rssi, timeMillis * 1_000_000L);
+	}
+
+	/**
+	 * Tracks the size of the list from the notifications, checks their positions, and keeps
+	 * the payloads of changes.
+	 */
+	private static final class RecordingCallback implements ListUpdateCallback {
+		private int size;
+		private int inserts;
+		private final List<Object> payloads = new ArrayList<>();
+
+		@Override
+		public void onInserted(final int position, final int count) {
+			assertTrue(position >= 0 && position <= size && count > 0);
+			size += count;
+			inserts++;
+		}
+
+		@Override
+		public void onRemoved(final int position, final int count) {
+			assertTrue(position >= 0 && position + count <= size && count > 0);
+			size -= count;
+		}
+
+		@Override
+		public void onMoved(final int fromPosition, final int toPosition) {
+			assertTrue(fromPosition >= 0 && fromPosition < size && toPosition >= 0 && toPosition < size);
+		}
+
+		@Override
+		public void onChanged(final int position, final int count, @Nullable final Object payload) {
+			assertTrue(position >= 0 && position + count <= size);
+			payloads.add(payload);
+		}
+	}
+}